@@ -0,0 +1,184 @@
+package com.flippingutilities;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.RecipeFlip;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.flippingutilities.utilities.Recipe;
+import com.flippingutilities.utilities.RecipeItem;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds synthetic accounts for the benchmarks. The offers are spread evenly over the items of every account and over
+ * the last year. Each item's history looks roughly like a real one:
+ * <ul>
+ *     <li>buy and sell trades of random sizes, never selling more than has been bought</li>
+ *     <li>a margin check (an insta buy followed by an insta sell) every now and then</li>
+ *     <li>the last trade still in progress</li>
+ * </ul>
+ * Recipe flips are made between neighbouring items so that the partial offer adjustments get exercised too. The same
+ * seed always gives the same accounts.
+ */
+public class TradeHistoryGenerator {
+    //enough offers per item that the per item work matters, while the bigger sizes still get a lot of items
+    private static final int OFFERS_PER_ITEM = 500;
+    private static final int MIN_ITEMS = 10;
+    private static final int OFFERS_PER_RECIPE_FLIP = 200;
+    private static final int GE_LIMIT = 10000;
+
+    private final Random random;
+
+    public TradeHistoryGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @param totalOffers how many offers to make over all the accounts
+     * @param accounts    how many accounts to spread the offers over, every account trades the same items
+     */
+    public List<AccountData> generate(int totalOffers, int accounts) {
+        int items = Math.max(MIN_ITEMS, totalOffers / OFFERS_PER_ITEM);
+        int offersPerItem = Math.max(1, totalOffers / (items * accounts));
+        Instant start = Instant.now().minus(365, ChronoUnit.DAYS);
+        long millisBetweenOffers = ChronoUnit.MILLIS.between(start, Instant.now()) / offersPerItem;
+
+        List<AccountData> accountData = new ArrayList<>();
+        for (int a = 0; a < accounts; a++) {
+            String accountName = "account" + a;
+            List<FlippingItem> trades = new ArrayList<>();
+            for (int itemId = 1; itemId <= items; itemId++) {
+                trades.add(generateItem(itemId, accountName, offersPerItem, start, millisBetweenOffers));
+            }
+
+            AccountData data = new AccountData();
+            data.setRecipeFlipGroups(generateRecipeFlipGroups(trades, totalOffers / accounts / OFFERS_PER_RECIPE_FLIP));
+            //the trades list is kept with the most recently traded item first
+            Collections.reverse(trades);
+            data.setTrades(trades);
+            accountData.add(data);
+        }
+        return accountData;
+    }
+
+    private FlippingItem generateItem(int itemId, String accountName, int offers, Instant start, long millisBetweenOffers) {
+        String itemName = "Item " + itemId;
+        FlippingItem item = new FlippingItem(itemId, itemName, GE_LIMIT, accountName);
+        int buyPrice = 100 + random.nextInt(100000);
+        int quantityHeld = 0;
+        Instant time = start;
+
+        for (int i = 0; i < offers; i++) {
+            time = time.plusMillis(millisBetweenOffers / 2 + (long) (random.nextDouble() * millisBetweenOffers));
+            int price = buyPrice + random.nextInt(Math.max(1, buyPrice / 10));
+            boolean lastOffer = i == offers - 1;
+
+            if (random.nextInt(20) == 0 && !lastOffer) {
+                //margin check, the insta sell comes in a few seconds after the insta buy
+                add(item, offer(itemId, itemName, accountName, true, 1, 1, price, time, GrandExchangeOfferState.BOUGHT, 1));
+                add(item, offer(itemId, itemName, accountName, false, 1, 1, price - 5, time.plusSeconds(5), GrandExchangeOfferState.SOLD, 1));
+                i++;
+                continue;
+            }
+
+            boolean buy = quantityHeld == 0 || (random.nextBoolean() && quantityHeld < GE_LIMIT);
+            int quantity = 1 + random.nextInt(buy ? 500 : quantityHeld);
+            if (lastOffer) {
+                //the trade is still in progress
+                add(item, offer(itemId, itemName, accountName, buy, quantity / 2, quantity, price, time,
+                    buy ? GrandExchangeOfferState.BUYING : GrandExchangeOfferState.SELLING, 10));
+            } else {
+                add(item, offer(itemId, itemName, accountName, buy, quantity, quantity, price, time,
+                    buy ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 10));
+            }
+            quantityHeld += buy ? quantity : -quantity;
+        }
+        return item;
+    }
+
+    private void add(FlippingItem item, OfferEvent offer) {
+        item.updateHistory(offer);
+        item.updateLatestProperties(offer);
+    }
+
+    private OfferEvent offer(int itemId, String itemName, String accountName, boolean buy, int quantity, int totalQuantity,
+                             int price, Instant time, GrandExchangeOfferState state, int ticksSinceFirstOffer) {
+        return new OfferEvent(
+            new UUID(random.nextLong(), random.nextLong()).toString(),
+            buy,
+            itemId,
+            quantity,
+            price,
+            time,
+            random.nextInt(8),
+            state,
+            0,
+            ticksSinceFirstOffer,
+            totalQuantity,
+            null,
+            false,
+            accountName,
+            itemName,
+            0,
+            0);
+    }
+
+    /**
+     * Makes recipe flips that turn one of an item into one of the next item, each using up one item of a random buy of
+     * the first item and a random sell of the second.
+     */
+    private List<RecipeFlipGroup> generateRecipeFlipGroups(List<FlippingItem> items, int recipeFlips) {
+        Map<Integer, RecipeFlipGroup> groups = new HashMap<>();
+        for (int i = 0; i < recipeFlips; i++) {
+            int inputIdx = random.nextInt(items.size() - 1);
+            FlippingItem input = items.get(inputIdx);
+            FlippingItem output = items.get(inputIdx + 1);
+            OfferEvent inputOffer = randomOffer(input, true);
+            OfferEvent outputOffer = randomOffer(output, false);
+            if (inputOffer == null || outputOffer == null) {
+                continue;
+            }
+
+            RecipeFlipGroup group = groups.computeIfAbsent(inputIdx, idx -> new RecipeFlipGroup(new Recipe(
+                Collections.singletonList(new RecipeItem(input.getItemId(), 1)),
+                Collections.singletonList(new RecipeItem(output.getItemId(), 1)),
+                input.getItemName() + " to " + output.getItemName())));
+            group.addRecipeFlip(new RecipeFlip(
+                outputOffer.getTime(),
+                partialOffers(output.getItemId(), outputOffer),
+                partialOffers(input.getItemId(), inputOffer),
+                0));
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private OfferEvent randomOffer(FlippingItem item, boolean buy) {
+        List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
+        for (int attempt = 0; attempt < 10; attempt++) {
+            OfferEvent offer = offers.get(random.nextInt(offers.size()));
+            if (offer.isBuy() == buy && offer.isComplete()) {
+                return offer;
+            }
+        }
+        return null;
+    }
+
+    private static Map<Integer, Map<String, PartialOffer>> partialOffers(int itemId, OfferEvent offer) {
+        Map<String, PartialOffer> offerIdToPartialOffer = new HashMap<>();
+        offerIdToPartialOffer.put(offer.getUuid(), new PartialOffer(offer, 1));
+        Map<Integer, Map<String, PartialOffer>> partialOffers = new HashMap<>();
+        partialOffers.put(itemId, offerIdToPartialOffer);
+        return partialOffers;
+    }
+}
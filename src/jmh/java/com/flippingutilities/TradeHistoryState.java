@@ -0,0 +1,32 @@
+package com.flippingutilities;
+
+import com.flippingutilities.model.AccountData;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * The accounts the benchmarks run against, see {@link TradeHistoryGenerator}. Every benchmark taking this state is
+ * run for each combination of offer count and account count.
+ */
+@State(Scope.Benchmark)
+public class TradeHistoryState {
+    private static final long SEED = 42;
+
+    @Param({"1000", "100000", "1000000"})
+    public int offers;
+
+    @Param({"1", "4"})
+    public int accounts;
+
+    public List<AccountData> accountData;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        accountData = new TradeHistoryGenerator(SEED).generate(offers, accounts);
+    }
+}
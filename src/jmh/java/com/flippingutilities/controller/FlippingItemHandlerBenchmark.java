@@ -0,0 +1,98 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.TradeHistoryState;
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.flippingutilities.utilities.SORT;
+import com.google.gson.Gson;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Sorting the statistics tab and building the account wide item list, the two things done over every item whenever
+ * the statistics tab is rebuilt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FlippingItemHandlerBenchmark {
+    @Param({"TIME", "TOTAL_PROFIT", "PROFIT_EACH", "ROI", "FLIP_COUNT"})
+    public SORT sort;
+
+    private BenchmarkPlugin plugin;
+    private FlippingItemHandler flippingItemHandler;
+    private List<FlippingItem> accountWideItems;
+    private Instant startOfInterval;
+
+    @Setup(Level.Trial)
+    public void setUp(TradeHistoryState state) {
+        plugin = new BenchmarkPlugin(state.accountData);
+        flippingItemHandler = new FlippingItemHandler(plugin);
+        accountWideItems = FlippingItemHandler.createAccountWideFlippingItemList(state.accountData);
+        startOfInterval = Instant.now().minus(30, ChronoUnit.DAYS);
+    }
+
+    /**
+     * Sorting with the item aggregates already cached, which is the case when the sort is changed or the tab is
+     * rebuilt without the offers having changed.
+     */
+    @Benchmark
+    public List<FlippingItem> sortItems() {
+        return flippingItemHandler.sortItems(accountWideItems, sort, startOfInterval);
+    }
+
+    /**
+     * Sorting after the recipe flips changed, so every item's aggregate has to be calculated again.
+     */
+    @Benchmark
+    public List<FlippingItem> sortItemsUncached() {
+        plugin.setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
+        return flippingItemHandler.sortItems(accountWideItems, sort, startOfInterval);
+    }
+
+    @Benchmark
+    public List<FlippingItem> createAccountWideFlippingItemList(TradeHistoryState state) {
+        return FlippingItemHandler.createAccountWideFlippingItemList(state.accountData);
+    }
+
+    /**
+     * The plugin without anything injected, only the parts the item handler uses work. Recipe flips come from the
+     * generated accounts rather than the data handler.
+     */
+    private static class BenchmarkPlugin extends FlippingPlugin {
+        private final RecipeHandler benchmarkRecipeHandler = new RecipeHandler(new Gson(), new OkHttpClient(), null);
+        private final List<RecipeFlipGroup> recipeFlipGroups;
+
+        BenchmarkPlugin(List<AccountData> accountData) {
+            recipeFlipGroups = accountData.stream().flatMap(a -> a.getRecipeFlipGroups().stream()).collect(Collectors.toList());
+        }
+
+        @Override
+        public Map<String, PartialOffer> getOfferIdToPartialOffer(int itemId) {
+            return benchmarkRecipeHandler.getOfferIdToPartialOffer(recipeFlipGroups, itemId);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.TradeHistoryState;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.google.gson.Gson;
+import okhttp3.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Looking up how much of each offer recipe flips consumed, which is done for every item the statistics tab shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecipeHandlerBenchmark {
+    private RecipeHandler recipeHandler;
+    private List<RecipeFlipGroup> recipeFlipGroups;
+    private int[] itemIds;
+
+    @Setup(Level.Trial)
+    public void setUp(TradeHistoryState state) {
+        //the recipes are fetched on creation, that failing (no network) doesn't matter as they aren't used here
+        recipeHandler = new RecipeHandler(new Gson(), new OkHttpClient(), null);
+        recipeFlipGroups = state.accountData.stream().flatMap(a -> a.getRecipeFlipGroups().stream()).collect(Collectors.toList());
+        itemIds = state.accountData.get(0).getTrades().stream().mapToInt(FlippingItem::getItemId).toArray();
+    }
+
+    @Benchmark
+    public void getOfferIdToPartialOffer(Blackhole blackhole) {
+        for (int itemId : itemIds) {
+            blackhole.consume(recipeHandler.getOfferIdToPartialOffer(recipeFlipGroups, itemId));
+        }
+    }
+}
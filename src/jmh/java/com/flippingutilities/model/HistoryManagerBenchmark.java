@@ -0,0 +1,42 @@
+package com.flippingutilities.model;
+
+import com.flippingutilities.TradeHistoryState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The flip and profit calculations the statistics tab does for every item, run over every item of every account.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class HistoryManagerBenchmark {
+
+    @Benchmark
+    public void getFlips(TradeHistoryState state, Blackhole blackhole) {
+        for (AccountData accountData : state.accountData) {
+            for (FlippingItem item : accountData.getTrades()) {
+                blackhole.consume(HistoryManager.getFlips(item.getHistory().getCompressedOfferEvents()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void getProfit(TradeHistoryState state, Blackhole blackhole) {
+        for (AccountData accountData : state.accountData) {
+            for (FlippingItem item : accountData.getTrades()) {
+                blackhole.consume(HistoryManager.getProfit(item.getHistory().getCompressedOfferEvents()));
+            }
+        }
+    }
+}
@@ -113,6 +113,14 @@ public interface FlippingConfig extends Config
 	)
 	default boolean verboseViewEnabled() { return true; }
 
+	@ConfigItem(
+		keyName = "compactOfferHistory",
+		name = "compact trade history",
+		description = "Keep your trade history in a compact form that uses much less memory. This is worth turning on" +
+			" if you have a very large trade history, but makes things like sorting the statistics tab a bit slower"
+	)
+	default boolean compactOfferHistory() { return false; }
+
 	@ConfigItem(
 			keyName = "slotTimerBuyTextColor",
 			name = "slot timer buy text color",
@@ -202,6 +210,26 @@ public interface FlippingConfig extends Config
 		return true;
 	}
 
+	@ConfigSection(
+			name = "Storage",
+			description = "Configure how trade data is stored",
+			position = 105
+	)
+	String storageSection = "storageSection";
+
+	@ConfigItem(
+			keyName = "archiveOffersAfterDays",
+			name = "Archive offers after (days)",
+			description = "Move offers older than this many days to an archive when an account is loaded, so they aren't kept" +
+					" in memory. They still count towards the stats and can be loaded in an item's trade history. 0 turns it off",
+			section = storageSection,
+			position = 1
+	)
+	@Range(min = 0)
+	default int archiveOffersAfterDays() {
+		return 0;
+	}
+
 	@ConfigSection(
 			name = "Custom Recipes",
 			description = "Settings for custom recipe search",
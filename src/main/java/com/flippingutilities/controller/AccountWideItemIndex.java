@@ -0,0 +1,77 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the account wide trade list up to date. The account wide trade list has one flipping item per item id which
+ * holds the offers for that item from every account. Rebuilding it means merging every item of every account, which
+ * gets slow with a lot of accounts, so instead only the items that changed since the last build are merged again.
+ * Changes that touch many items (an account being reloaded, offers being deleted across the board, etc) still cause
+ * a full rebuild.
+ */
+class AccountWideItemIndex {
+    private final Map<Integer, FlippingItem> mergedItems = new HashMap<>();
+    private final Set<Integer> changedItemIds = new HashSet<>();
+    private boolean fullRebuildNeeded = true;
+    private List<FlippingItem> items = new ArrayList<>();
+
+    void markItemChanged(int itemId) {
+        changedItemIds.add(itemId);
+    }
+
+    void markAllChanged() {
+        fullRebuildNeeded = true;
+    }
+
+    List<FlippingItem> getItems(Collection<AccountData> allAccountData) {
+        if (fullRebuildNeeded) {
+            mergedItems.clear();
+            FlippingItemHandler.createAccountWideFlippingItemList(allAccountData).forEach(item -> mergedItems.put(item.getItemId(), item));
+        } else if (!changedItemIds.isEmpty()) {
+            for (int itemId : changedItemIds) {
+                remerge(itemId, allAccountData);
+            }
+        } else {
+            return items;
+        }
+
+        fullRebuildNeeded = false;
+        changedItemIds.clear();
+        items = new ArrayList<>(mergedItems.values());
+        items.sort(Collections.reverseOrder(Comparator.comparing(FlippingItem::getLatestActivityTime)));
+        return items;
+    }
+
+    private void remerge(int itemId, Collection<AccountData> allAccountData) {
+        List<FlippingItem> accountItems = new ArrayList<>();
+        for (AccountData accountData : allAccountData) {
+            FlippingItem accountItem = accountData.getTrades().findByItemId(itemId);
+            if (accountItem != null) {
+                accountItems.add(accountItem);
+            }
+        }
+
+        if (accountItems.isEmpty()) {
+            mergedItems.remove(itemId);
+            return;
+        }
+
+        FlippingItem merged = FlippingItem.merge(accountItems);
+        //keep the panel expanded/collapsed as the user left it
+        FlippingItem previous = mergedItems.put(itemId, merged);
+        if (previous != null) {
+            merged.setExpand(previous.getExpand());
+        }
+    }
+}
@@ -26,29 +26,49 @@
 
 package com.flippingutilities.controller;
 
+import com.flippingutilities.db.ChangeLogRepository;
 import com.flippingutilities.db.TradePersister;
 import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.AccountWideData;
-import com.flippingutilities.model.BackupCheckpoints;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.TradeList;
 import lombok.extern.slf4j.Slf4j;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Responsible for loading data from disk, handling any operations to
  * access/change data during the plugin's life, and storing
  * data to disk.
+ * <p>
+ * Only the names of the accounts are loaded on startup. An account's full data is loaded the first time it's
+ * needed, in the background when it logs in or is picked in the account selector (see {@link #loadAccountDataAsync}).
+ * Until it's in, asking for the account's data gives null rather than loading it there and then, which would hold up
+ * whichever thread asked while the database is read. When data is stored, the accounts that haven't been used in a while
+ * are unloaded again if more than {@link #MAX_LOADED_ACCOUNTS} are loaded, so memory doesn't grow with the number of
+ * accounts.
  */
 @Slf4j
 public class DataHandler {
+    //the logged in account, the viewed account and accounts with changes that haven't been written yet can go over this
+    private static final int MAX_LOADED_ACCOUNTS = 3;
+    //an account used more recently than this is never unloaded, whoever used it could still be holding on to it
+    private static final long MIN_IDLE_MILLIS_BEFORE_UNLOAD = 60_000;
+
     FlippingPlugin plugin;
     private AccountWideData accountWideData;
-    private BackupCheckpoints backupCheckpoints;
-    private Map<String, AccountData> accountSpecificData = new HashMap<>();
+    //every account there is data for, loaded or not
+    private final Set<String> accountNames = new LinkedHashSet<>();
+    //the accounts that are loaded, from least to most recently used
+    private final Map<String, AccountData> accountSpecificData = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> accountLastUsedAt = new HashMap<>();
+    private final Map<String, CompletableFuture<Void>> accountsLoading = new HashMap<>();
+    //a session is started for an account the first time it's loaded, not every time it's loaded again after being unloaded
+    private final Set<String> accountsLoadedThisSession = new HashSet<>();
     private boolean accountWideDataChanged = false;
     private Set<String> accountsWithUnsavedChanges = new HashSet<>();
-    public String thisClientLastStored;
 
     public DataHandler(FlippingPlugin plugin) {
         this.plugin = plugin;
@@ -63,26 +83,53 @@ public class DataHandler {
         return accountWideData;
     }
 
-    public void addAccount(String displayName) {
+    public synchronized void addAccount(String displayName) {
         log.info("adding {} to data handler", displayName);
         AccountData accountData = new AccountData();
         accountData.prepareForUse(plugin);
+        accountNames.add(displayName);
+        accountsLoadedThisSession.add(displayName);
         accountSpecificData.put(displayName, accountData);
+        accountLastUsedAt.put(displayName, System.currentTimeMillis());
     }
 
-    public void deleteAccount(String displayName) {
+    public synchronized void deleteAccount(String displayName) {
         log.info("deleting account: {}", displayName);
+        accountNames.remove(displayName);
         accountSpecificData.remove(displayName);
+        accountLastUsedAt.remove(displayName);
+        accountsWithUnsavedChanges.remove(displayName);
         TradePersister.deleteFile(displayName + ".json");
     }
 
-    public Collection<AccountData> getAllAccountData() {
+    /**
+     * Returns the accounts that are loaded, for changing all of them. Load every account first with
+     * {@link #loadAccountDataAsync} for {@link FlippingPlugin#ACCOUNT_WIDE}, loading them here would hold up
+     * whichever thread asked for them.
+     */
+    public synchronized Collection<AccountData> getAllAccountData() {
         accountsWithUnsavedChanges.addAll(accountSpecificData.keySet());
-        return accountSpecificData.values();
+        accountSpecificData.keySet().forEach(name -> accountLastUsedAt.put(name, System.currentTimeMillis()));
+        return new ArrayList<>(accountSpecificData.values());
+    }
+
+    /**
+     * Only returns the accounts that are already loaded, without loading the rest. For changes that an account picks
+     * up by itself when it's loaded later.
+     */
+    public synchronized Collection<AccountData> viewLoadedAccountData() {
+        return new ArrayList<>(accountSpecificData.values());
     }
 
-    public Collection<AccountData> viewAllAccountData() {
-        return accountSpecificData.values();
+    /**
+     * Only returns the accounts that are already loaded, the rest are loaded in the background. It's used to
+     * build the account wide view, which is built again once they are in.
+     */
+    public synchronized Collection<AccountData> viewAllAccountData() {
+        if (accountSpecificData.size() < accountNames.size()) {
+            loadAccountDataAsync(FlippingPlugin.ACCOUNT_WIDE);
+        }
+        return new ArrayList<>(accountSpecificData.values());
     }
 
     // TODO this is a weird solution to the problem of having to know whether data
@@ -91,44 +138,116 @@ public class DataHandler {
     // start and compares it to
     // TODO data at logout/plugin shutdown.
     // calls it if data is going to be updated,
-    public AccountData getAccountData(String displayName) {
-        accountsWithUnsavedChanges.add(displayName);
-        return accountSpecificData.get(displayName);
+    // null if the account isn't loaded yet, see loadedAccountData
+    public synchronized AccountData getAccountData(String displayName) {
+        AccountData accountData = loadedAccountData(displayName);
+        if (accountData != null) {
+            accountsWithUnsavedChanges.add(displayName);
+        }
+        return accountData;
+    }
+
+    /**
+     * Like {@link #getAccountData}, but doesn't start loading an account that isn't loaded. For the
+     * {@link TradeStateWriter}, whatever publishes to it loads the account with {@link #loadAccountDataAsync} first.
+     *
+     * @return null if the account isn't loaded
+     */
+    public synchronized AccountData getLoadedAccountData(String displayName) {
+        AccountData accountData = accountSpecificData.get(displayName);
+        if (accountData != null) {
+            accountsWithUnsavedChanges.add(displayName);
+            accountLastUsedAt.put(displayName, System.currentTimeMillis());
+        }
+        return accountData;
     }
 
     // is called if account data just needs to be viewed, not updated
-    public AccountData viewAccountData(String displayName) {
-        return accountSpecificData.get(displayName);
+    // null if the account isn't loaded yet, see loadedAccountData
+    public synchronized AccountData viewAccountData(String displayName) {
+        return loadedAccountData(displayName);
+    }
+
+    public synchronized Set<String> getCurrentAccounts() {
+        return new LinkedHashSet<>(accountNames);
     }
 
-    public Set<String> getCurrentAccounts() {
-        return accountSpecificData.keySet();
+    public synchronized boolean isAccountLoaded(String displayName) {
+        return accountSpecificData.containsKey(displayName);
     }
 
-    public void markDataAsHavingChanged(String displayName) {
+    public synchronized void markDataAsHavingChanged(String displayName) {
         if (displayName.equals(FlippingPlugin.ACCOUNT_WIDE)) {
             accountWideDataChanged = true;
         } else {
             accountsWithUnsavedChanges.add(displayName);
+            AccountData data = accountSpecificData.get(displayName);
+            if (data != null) {
+                //the change may have been to an item's favorite or favorite code
+                data.getTrades().favoritesChanged();
+            }
         }
     }
 
+    /**
+     * The accounts are stored on the {@link TradeStateWriter}, as storing one snapshots its trades, which mustn't
+     * change while that happens. They stay marked as changed until then so that they can't be unloaded in between.
+     */
     public void storeData() {
-        log.debug("storing data");
-        if (accountsWithUnsavedChanges.size() > 0) {
-            log.debug("accounts with unsaved changes are {}. Saving them.", accountsWithUnsavedChanges);
-            accountsWithUnsavedChanges.forEach(accountName -> storeAccountData(accountName));
-            accountsWithUnsavedChanges.clear();
+        Set<String> accountsToStore;
+        //not publishing while holding the lock, the writer may be waiting on it
+        synchronized (this) {
+            log.debug("storing data");
+            //accounts stored last time round have most likely been written by now
+            unloadLeastRecentlyUsed();
+            accountsToStore = new HashSet<>(accountsWithUnsavedChanges);
+
+            if (accountWideDataChanged) {
+                log.debug("accountwide data changed, saving it.");
+                storeData("accountwide", accountWideData);
+                accountWideDataChanged = false;
+            }
+        }
+        if (accountsToStore.size() > 0) {
+            plugin.getTradeStateWriter().publish(() -> storeAccountData(accountsToStore));
         }
+    }
 
-        if (accountWideDataChanged) {
-            log.debug("accountwide data changed, saving it.");
-            storeData("accountwide", accountWideData);
-            accountWideDataChanged = false;
+    private synchronized void storeAccountData(Set<String> displayNames) {
+        log.debug("accounts with unsaved changes are {}. Saving them.", displayNames);
+        for (String displayName : displayNames) {
+            accountsWithUnsavedChanges.remove(displayName);
+            storeAccountData(displayName);
+        }
+    }
+
+    /**
+     * Waits for the stores queued by {@link #storeData()} to be written, for when the client is about to exit.
+     */
+    public void flushStoredData() {
+        //the stores themselves are made on the trade state writer
+        if (!plugin.drainTradeStateWriter()) {
+            log.warn("not all data could be stored before the timeout");
+        }
+        if (!plugin.tradePersister.flush()) {
+            log.warn("not all data could be written before the timeout");
         }
     }
 
-    public void loadData() {
+    /**
+     * Snapshots the loaded accounts that have been written in full, so that the next start can load their trades
+     * without going through the database. Meant to be called on shutdown, after {@link #flushStoredData()}, on the
+     * {@link TradeStateWriter} like the stores.
+     */
+    public synchronized void writeSnapshots() {
+        accountSpecificData.forEach((displayName, data) -> {
+            if (!accountsWithUnsavedChanges.contains(displayName)) {
+                plugin.tradePersister.writeSnapshot(displayName, data);
+            }
+        });
+    }
+
+    public synchronized void loadData() {
         log.debug("Loading data on startup");
         try {
             plugin.tradePersister.setupFlippingFolder();
@@ -136,51 +255,144 @@ public class DataHandler {
             log.warn("Couldn't set up flipping folder, setting defaults", e);
             accountWideData = new AccountWideData();
             accountWideData.setDefaults();
-            accountSpecificData = new HashMap<>();
+            accountNames.clear();
+            accountSpecificData.clear();
             accountWideDataChanged = true;
             plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
             return;
         }
 
-        backupCheckpoints = plugin.tradePersister.fetchBackupCheckpoints();
         accountWideData = fetchAccountWideData();
         plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
-        accountSpecificData = fetchAndPrepareAllAccountData();
-        backupAllAccountData();
-    }
-
-    private void backupAllAccountData() {
-        log.debug("backing up account data");
-        boolean backupCheckpointsChanged = false;
-        for (String displayName : accountSpecificData.keySet()) {
-            AccountData accountData = accountSpecificData.get(displayName);
-            // the data could be empty because there was an exception when loading it (such
-            // as in fetchAccountData)
-            // or perhaps there are legitimately no trades because it is a new file or the
-            // user reset their history. In
-            // any of these cases, we shouldn't back it up as its useless to backup an empty
-            // AccountData and, even worse,
-            // we may overwrite a previous backup with nothing.
-
-            if (!accountData.getTrades().isEmpty()
-                    && backupCheckpoints.shouldBackup(displayName, accountData.getLastStoredAt())) {
+        accountNames.addAll(plugin.tradePersister.loadAccountNames());
+        log.debug("found {} accounts, their data is loaded when it's first needed", accountNames.size());
+    }
+
+    /**
+     * Starts loading the account's data in the background if it isn't loaded yet, or every account's data for the
+     * account wide view. The data is read from the database on the plugin's executor and then prepared on the
+     * client thread, as preparing it uses the item manager. Before it is read, its offers older than the configured
+     * age are moved to the archive (see TradePersister.archiveOldOffers).
+     *
+     * @return completes once the data is loaded
+     */
+    public synchronized CompletableFuture<Void> loadAccountDataAsync(String displayName) {
+        Collection<String> names = displayName.equals(FlippingPlugin.ACCOUNT_WIDE) ?
+                accountNames : Collections.singletonList(displayName);
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for (String name : names) {
+            if (accountNames.contains(name) && !accountSpecificData.containsKey(name)) {
+                loads.add(accountsLoading.computeIfAbsent(name, this::startLoading));
+            }
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
+    }
+
+    private CompletableFuture<Void> startLoading(String displayName) {
+        log.debug("loading data for {} in the background", displayName);
+        CompletableFuture<Void> loaded = new CompletableFuture<>();
+        plugin.getExecutor().execute(() -> {
+            AccountData accountData = null;
+            try {
+                int archiveAfterDays = plugin.getConfig().archiveOffersAfterDays();
+                if (archiveAfterDays > 0) {
+                    plugin.tradePersister.archiveOldOffers(displayName, Duration.ofDays(archiveAfterDays));
+                }
+                accountData = plugin.tradePersister.loadAccount(displayName);
+            } catch (Exception e) {
+                log.warn("couldn't load trades for {} in the background", displayName, e);
+            }
+            AccountData loadedData = accountData;
+            plugin.getClientThread().invokeLater(() -> {
                 try {
-                    plugin.tradePersister.writeToFile(displayName + ".backup", accountData);
-                    backupCheckpoints.getAccountToBackupTime().put(displayName, accountData.getLastStoredAt());
-                    backupCheckpointsChanged = true;
-                } catch (Exception e) {
-                    log.warn("Couldn't backup account data for {} due to {}", displayName, e);
+                    finishLoading(displayName, loadedData);
+                } finally {
+                    loaded.complete(null);
                 }
-            } else {
-                log.debug("Not backing up data for {} as it's empty or it hasn't changed since last backup",
-                        displayName);
+            });
+        });
+        return loaded;
+    }
+
+    private synchronized void finishLoading(String displayName, AccountData accountData) {
+        accountsLoading.remove(displayName);
+        //it may have been added or deleted while it was loading
+        if (accountSpecificData.containsKey(displayName) || !accountNames.contains(displayName)) {
+            return;
+        }
+        addLoadedAccount(displayName, accountData != null ? prepareAccountData(displayName, accountData) :
+                fetchAccountData(displayName));
+    }
+
+    /**
+     * The logged in and the viewed account are only switched to once they are loaded, and aren't unloaded while
+     * they are in use (see {@link #canUnload}), so their data is always there. Any other account that isn't loaded
+     * is loaded in the background, whoever needs it waits for that with {@link #loadAccountDataAsync}.
+     *
+     * @return null if the account isn't loaded
+     */
+    private AccountData loadedAccountData(String displayName) {
+        AccountData accountData = accountSpecificData.get(displayName);
+        if (accountData != null) {
+            accountLastUsedAt.put(displayName, System.currentTimeMillis());
+            return accountData;
+        }
+        if (accountNames.contains(displayName)) {
+            log.debug("data for {} is needed before it was loaded, loading it in the background", displayName);
+            loadAccountDataAsync(displayName);
+        }
+        return null;
+    }
+
+    private void addLoadedAccount(String displayName, AccountData accountData) {
+        if (accountsLoadedThisSession.add(displayName)) {
+            accountData.startNewSession();
+        }
+        accountSpecificData.put(displayName, accountData);
+        accountLastUsedAt.put(displayName, System.currentTimeMillis());
+        plugin.markAllAccountWideItemsChanged();
+    }
+
+    /**
+     * Unloads the least recently used accounts until no more than {@link #MAX_LOADED_ACCOUNTS} are loaded, skipping
+     * the ones that can't be unloaded.
+     */
+    private void unloadLeastRecentlyUsed() {
+        //the account wide view needs every account
+        if (FlippingPlugin.ACCOUNT_WIDE.equals(plugin.getAccountCurrentlyViewed())) {
+            return;
+        }
+        int excess = accountSpecificData.size() - MAX_LOADED_ACCOUNTS;
+        boolean unloaded = false;
+        Iterator<String> leastRecentlyUsed = accountSpecificData.keySet().iterator();
+        while (excess > 0 && leastRecentlyUsed.hasNext()) {
+            String displayName = leastRecentlyUsed.next();
+            if (canUnload(displayName)) {
+                log.debug("unloading data for {} as it hasn't been used in a while", displayName);
+                leastRecentlyUsed.remove();
+                accountLastUsedAt.remove(displayName);
+                excess--;
+                unloaded = true;
             }
         }
-        if (backupCheckpointsChanged) {
-            storeData("backupCheckpoints.special", backupCheckpoints);
+        if (unloaded) {
+            plugin.markAllAccountWideItemsChanged();
         }
     }
 
+    /**
+     * An account with changes that haven't made it to the database yet has to stay loaded, otherwise loading it
+     * again would lose them. So does one that was just used, as it may be about to be changed.
+     */
+    private boolean canUnload(String displayName) {
+        long idleMillis = System.currentTimeMillis() - accountLastUsedAt.getOrDefault(displayName, 0L);
+        return idleMillis >= MIN_IDLE_MILLIS_BEFORE_UNLOAD
+                && !displayName.equals(plugin.getCurrentlyLoggedInAccount())
+                && !displayName.equals(plugin.getAccountCurrentlyViewed())
+                && !accountsWithUnsavedChanges.contains(displayName)
+                && !plugin.tradePersister.hasPendingWrite(displayName);
+    }
+
     private AccountWideData fetchAccountWideData() {
         try {
             log.debug("Fetching accountwide data");
@@ -197,58 +409,98 @@ public class DataHandler {
         }
     }
 
-    private Map<String, AccountData> fetchAndPrepareAllAccountData() {
-        Map<String, AccountData> accounts = fetchAllAccountData();
-        prepareAllAccountData(accounts);
-        return accounts;
+    // Used by other components to set accountWideData on DataHandler
+    public synchronized void loadAccountWideData() {
+        accountWideData = fetchAccountWideData();
+        plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
     }
 
-    private void prepareAllAccountData(Map<String, AccountData> allAccountData) {
-
-        for (String displayName : allAccountData.keySet()) {
-            AccountData accountData = allAccountData.get(displayName);
-            try {
-                accountData.startNewSession();
-                accountData.prepareForUse(plugin);
+    // Used by other components to set account data on DataHandler. An account that isn't loaded is only
+    // registered, its data is loaded when it's needed like any other account's.
+    public synchronized void loadAccountData(String displayName) {
+        log.info("loading data for {}", displayName);
+        accountNames.add(displayName);
+        if (accountSpecificData.containsKey(displayName)) {
+            accountSpecificData.put(displayName, fetchAccountData(displayName));
+        }
+    }
 
+    /**
+     * Applies the changes other clients stored (see {@link TradePersister#pollChanges()}) by reloading only the items
+     * they name. Accounts that aren't loaded only need to be known about, they are up to date whenever they are
+     * loaded. An item this client has changes of its own to store is left alone, as its next store overwrites the
+     * other client's changes anyway. Has to run on the {@link TradeStateWriter}, so that an offer can't be added to an
+     * item while it's being replaced.
+     *
+     * @param geLimits the ge limits of the changed items, looked up on the client thread as the item manager can only
+     *                 be used there
+     * @return the names of the accounts whose trades changed
+     */
+    public synchronized Set<String> applyChanges(List<ChangeLogRepository.Change> changes, Map<Integer, Integer> geLimits) {
+        //only the latest change of an item matters
+        Map<String, Map<Integer, ChangeLogRepository.Kind>> itemChanges = new LinkedHashMap<>();
+        boolean accountWideDataChanged = false;
+        for (ChangeLogRepository.Change change : changes) {
+            if (change.getKind() == ChangeLogRepository.Kind.ACCOUNT_WIDE_CHANGED) {
+                accountWideDataChanged = true;
+            } else {
+                itemChanges.computeIfAbsent(change.getAccountName(), k -> new LinkedHashMap<>())
+                        .put(change.getItemId(), change.getKind());
             }
+        }
+        if (accountWideDataChanged) {
+            loadAccountWideData();
+        }
 
-            catch (Exception e) {
-                log.warn("Couldn't prepare account data for {} due to {}, setting default", displayName, e);
-                AccountData newAccountData = new AccountData();
-                newAccountData.startNewSession();
-                newAccountData.prepareForUse(plugin);
-                allAccountData.put(displayName, newAccountData);
+        Set<String> changedAccounts = new HashSet<>();
+        itemChanges.forEach((displayName, kinds) -> {
+            changedAccounts.add(displayName);
+            accountNames.add(displayName);
+            AccountData data = accountSpecificData.get(displayName);
+            if (data == null) {
+                return;
             }
-        }
+            kinds.forEach((itemId, kind) -> applyItemChange(displayName, data, itemId, kind, geLimits.getOrDefault(itemId, 0)));
+        });
+        return changedAccounts;
     }
 
-    private Map<String, AccountData> fetchAllAccountData() {
-        try {
-            return plugin.tradePersister.loadAllAccounts();
-        } catch (Exception e) {
-            log.warn(
-                    "error propagated from tradePersister.loadAllAccounts() when fetching all account data, returning empty hashmap",
-                    e);
-            return new HashMap<>();
+    private void applyItemChange(String displayName, AccountData data, int itemId, ChangeLogRepository.Kind kind,
+                                 int geLimit) {
+        TradeList trades = data.getTrades();
+        FlippingItem existingItem = trades.findByItemId(itemId);
+        if (existingItem != null && !existingItem.getHistory().getPendingChanges().isEmpty()) {
+            log.debug("not applying the change of item {} of {} as this client has changed it too", itemId, displayName);
+            return;
         }
-    }
 
-    // Used by other components to set accountWideData on DataHandler
-    public void loadAccountWideData() {
-        accountWideData = fetchAccountWideData();
-        plugin.getRecipeHandler().setLocalRecipes(accountWideData.getLocalRecipes());
+        if (kind == ChangeLogRepository.Kind.ITEM_REMOVED) {
+            if (existingItem != null) {
+                //not through removeTrades, the other client has deleted it already
+                trades.remove(existingItem);
+            }
+            return;
+        }
+        FlippingItem item = plugin.tradePersister.loadItem(displayName, itemId);
+        if (item == null) {
+            //removed again since, which comes with a change of its own
+            return;
+        }
+        item.hydrate(geLimit);
+        item.getHistory().setColumnarStorage(plugin.getConfig().compactOfferHistory());
+        if (existingItem != null) {
+            trades.set(trades.indexOf(existingItem), item);
+        } else {
+            trades.add(0, item);
+        }
     }
 
-    // Used by other components to set account data on DataHandler
-    public void loadAccountData(String displayName) {
-        log.info("loading data for {}", displayName);
-        accountSpecificData.put(displayName, fetchAccountData(displayName));
+    private AccountData fetchAccountData(String displayName) {
+        return prepareAccountData(displayName, plugin.tradePersister.loadAccount(displayName));
     }
 
-    private AccountData fetchAccountData(String displayName) {
+    private AccountData prepareAccountData(String displayName, AccountData accountData) {
         try {
-            AccountData accountData = plugin.tradePersister.loadAccount(displayName);
             accountData.prepareForUse(plugin);
             return accountData;
         } catch (Exception e) {
@@ -260,14 +512,16 @@ public class DataHandler {
     private void storeAccountData(String displayName) {
         try {
             AccountData data = accountSpecificData.get(displayName);
+            if (data == null && accountNames.contains(displayName)) {
+                log.debug("not storing {} as it isn't loaded, so nothing can have changed", displayName);
+                return;
+            }
             if (data == null) {
                 log.debug("for an unknown reason the data associated with {} has been set to null. Storing" +
                         "an empty AccountData object instead.", displayName);
                 data = new AccountData();
             }
-            thisClientLastStored = displayName;
-            data.setLastStoredAt(Instant.now());
-            plugin.tradePersister.writeToFile(displayName, data);
+            plugin.tradePersister.store(displayName, data);
         } catch (Exception e) {
             log.warn("couldn't store trades, error = " + e);
         }
@@ -275,7 +529,7 @@ public class DataHandler {
 
     private void storeData(String fileName, Object data) {
         try {
-            plugin.tradePersister.writeToFile(fileName, data);
+            plugin.tradePersister.store(fileName, data);
         } catch (Exception e) {
             log.warn("couldn't store data to {} bc of {}", fileName, e);
         }
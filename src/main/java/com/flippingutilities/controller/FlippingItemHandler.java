@@ -2,8 +2,7 @@ package com.flippingutilities.controller;
 
 import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.FlippingItem;
-import com.flippingutilities.model.OfferEvent;
-import com.flippingutilities.model.PartialOffer;
+import com.flippingutilities.model.ItemAggregate;
 import com.flippingutilities.utilities.SORT;
 
 import java.time.Instant;
@@ -32,86 +31,69 @@ public class FlippingItemHandler {
                 break;
 
             case TOTAL_PROFIT:
-                result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    ArrayList<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                    return FlippingItem.getProfit(adjustedOffers);
-                }));
+                result.sort(Comparator.comparing(item -> plugin.getIntervalAggregate(item, startOfInterval).getProfit()));
                 break;
 
             case PROFIT_EACH:
                 result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    ArrayList<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                    long quantity = FlippingItem.countFlipQuantity(adjustedOffers);
+                    ItemAggregate aggregate = plugin.getIntervalAggregate(item, startOfInterval);
+                    long quantity = aggregate.getFlipQuantity();
                     if (quantity == 0) {
                         return Long.MIN_VALUE;
                     }
 
-                    long profit = FlippingItem.getProfit(adjustedOffers);
-                    return profit / quantity;
+                    return aggregate.getProfit() / quantity;
                 }));
                 break;
             case ROI:
                 result.sort(Comparator.comparing(item -> {
-                    Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                    List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                    List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-
-                    long profit = FlippingItem.getProfit(adjustedOffers);
-                    long expense = FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
+                    ItemAggregate aggregate = plugin.getIntervalAggregate(item, startOfInterval);
+                    long expense = aggregate.getExpense();
                     if (expense == 0) {
                         return Float.MIN_VALUE;
                     }
 
-                    return (float) profit / expense * 100;
+                    return (float) aggregate.getProfit() / expense * 100;
                 }));
                 break;
             case FLIP_COUNT:
-                result.sort(Comparator.comparing(
-                    item -> {
-                        Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-                        List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-                        List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
-                        return FlippingItem.countFlipQuantity(adjustedOffers);
-                    }));
+                result.sort(Comparator.comparing(item -> plugin.getIntervalAggregate(item, startOfInterval).getFlipQuantity()));
                 break;
         }
         Collections.reverse(result);
         return result;
     }
 
-    public void deleteRemovedItems(List<FlippingItem> currItems) {
-        currItems.removeIf((item) ->
+    public void deleteRemovedItems(AccountData accountData) {
+        accountData.removeTrades((item) ->
         {
+            //an item with archived offers is kept, removing it would delete them along with it
             if (item.getGeLimitResetTime() != null) {
                 Instant startOfRefresh = item.getGeLimitResetTime().minus(4, ChronoUnit.HOURS);
 
-                return !item.getValidFlippingPanelItem() && !item.hasValidOffers()
+                return !item.getValidFlippingPanelItem() && !item.hasValidOffers() && !item.getHistory().hasArchivedOffers()
                     && (!Instant.now().isAfter(item.getGeLimitResetTime()) || item.getGeLimitResetTime().isBefore(startOfRefresh));
             }
-            return !item.getValidFlippingPanelItem() && !item.hasValidOffers();
+            return !item.getValidFlippingPanelItem() && !item.hasValidOffers() && !item.getHistory().hasArchivedOffers();
         });
     }
 
     /**
      * creates a view of an "account wide tradelist". An account wide tradelist is just a reflection of the flipping
      * items currently in each of the account's tradelists. It does this by merging the flipping items of the same type
-     * from each account's trade list into one flipping item.
+     * from each account's trade list into one flipping item. The merged items share the offers of the account's items,
+     * see FlippingItem.merge. This builds the whole list, AccountWideItemIndex keeps it up to date after that.
      */
-    List<FlippingItem> createAccountWideFlippingItemList(Collection<AccountData> allAccountData) {
-        //take all flipping items from the account cache, regardless of account, and segregate them based on item name.
+    static List<FlippingItem> createAccountWideFlippingItemList(Collection<AccountData> allAccountData) {
+        //take all flipping items from the account cache, regardless of account, and segregate them based on item id.
         Map<Integer, List<FlippingItem>> groupedItems = allAccountData.stream().
             flatMap(accountData -> accountData.getTrades().stream()).
-            map(FlippingItem::clone).
             collect(Collectors.groupingBy(FlippingItem::getItemId));
 
-        //take every list containing flipping items of the same type and reduce it to one merged flipping item and put that
+        //take every list containing flipping items of the same type and merge it into one flipping item and put that
         //item in a final merged list
         List<FlippingItem> mergedItems = groupedItems.values().stream().
-            map(list -> list.stream().reduce(FlippingItem::merge)).filter(Optional::isPresent).map(Optional::get).
+            map(FlippingItem::merge).
             collect(Collectors.toList());
 
         mergedItems.sort(Collections.reverseOrder(Comparator.comparing(FlippingItem::getLatestActivityTime)));
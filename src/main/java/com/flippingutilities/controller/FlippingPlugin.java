@@ -27,6 +27,8 @@
 package com.flippingutilities.controller;
 
 import com.flippingutilities.FlippingConfig;
+import com.flippingutilities.db.ChangeLogRepository;
+import com.flippingutilities.db.DatabaseConstants;
 import com.flippingutilities.db.TradePersister;
 import com.flippingutilities.jobs.SlotSenderJob;
 import com.flippingutilities.jobs.TimeseriesFetcher;
@@ -86,9 +88,12 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -110,6 +115,7 @@ public class FlippingPlugin extends Plugin {
         "autoSaveEnabled",
         "autoSaveInterval"
     );
+    private static final long TRADE_STATE_DRAIN_TIMEOUT_MILLIS = 2000;
 
     @Inject
     @Getter
@@ -171,9 +177,11 @@ public class FlippingPlugin extends Plugin {
     private boolean previouslyLoggedIn;
 
     //the display name of the account whose trade list the user is currently looking at as selected
-    //through the dropdown menu
+    //through the dropdown menu. Only switched to once the account's data is loaded, see changeView.
     @Getter
-    private String accountCurrentlyViewed = ACCOUNT_WIDE;
+    private volatile String accountCurrentlyViewed = ACCOUNT_WIDE;
+    //the last view picked in the dropdown menu, which may still be loading
+    private volatile String accountViewRequested = ACCOUNT_WIDE;
 
     //the display name of the currently logged in user. This is the only account that can actually receive offers
     //as this is the only account currently logged in.
@@ -186,13 +194,18 @@ public class FlippingPlugin extends Plugin {
     @Getter
     private List<OfferEvent> eventsReceivedBeforeFullLogin = new ArrayList<>();
 
-    //building the account wide trade list is an expensive operation so we store it in this variable and only recompute
-    //it if we have gotten an update since the last account wide trade list build.
-    @Setter
-    boolean updateSinceLastItemAccountWideBuild = true;
-    @Setter
+    //the account that has logged in while its data is still loading, see handleLogin
+    @Getter
+    private String accountLoggingIn;
+
+    //building the account wide trade list is an expensive operation so the index keeps the last build and only merges
+    //the items that changed since then again.
+    private final AccountWideItemIndex accountWideItemIndex = new AccountWideItemIndex();
+    private final AtomicBoolean changePollScheduled = new AtomicBoolean();
     boolean updateSinceLastRecipeFlipGroupAccountWideBuild = true;
-    List<FlippingItem> prevBuiltAccountWideItemList;
+    //bumped every time the recipe flips change, which is what decides how much of each offer is consumed by recipe
+    //flips. Item aggregates are cached against it, see getIntervalAggregate.
+    private long partialOfferVersion;
     List<RecipeFlipGroup> prevBuildAccountWideRecipeFlipGroup;
 
     //updates the cache by monitoring the directory and loading a file's contents into the cache if it has been changed
@@ -215,6 +228,7 @@ public class FlippingPlugin extends Plugin {
     private DataHandler dataHandler;
     private GameUiChangesHandler gameUiChangesHandler;
     private NewOfferEventPipelineHandler newOfferEventPipelineHandler;
+    private TradeStateWriter tradeStateWriter;
     @Getter
     private ApiAuthHandler apiAuthHandler;
     @Getter
@@ -240,6 +254,7 @@ public class FlippingPlugin extends Plugin {
     @Override
     protected void startUp() {
         accountCurrentlyViewed = ACCOUNT_WIDE;
+        accountViewRequested = ACCOUNT_WIDE;
 
         tradePersister = new TradePersister(gson);
         recipeHandler = new RecipeHandler(gson, httpClient, null);
@@ -248,7 +263,9 @@ public class FlippingPlugin extends Plugin {
         optionHandler = new OptionHandler(this);
         dataHandler = new DataHandler(this);
         gameUiChangesHandler = new GameUiChangesHandler(this);
-        newOfferEventPipelineHandler = new NewOfferEventPipelineHandler(this);
+        tradeStateWriter = new TradeStateWriter();
+        newOfferEventPipelineHandler = new NewOfferEventPipelineHandler(this, tradeStateWriter,
+                new PanelRebuildScheduler(this, executor, tradeStateWriter));
         apiAuthHandler = new ApiAuthHandler(this);
         apiRequestHandler = new ApiRequestHandler(this);
         slotStateDrawer = new SlotStateDrawer(this, this.tooltipManager, client, timeseriesFetcher);
@@ -316,6 +333,8 @@ public class FlippingPlugin extends Plugin {
             autoSaveTask = null;
         }
 
+        tradeStateWriter.close(TRADE_STATE_DRAIN_TIMEOUT_MILLIS);
+        tradePersister.close();
         masterPanel.dispose();
 
         clientToolbar.removeNavigation(navButton);
@@ -331,7 +350,13 @@ public class FlippingPlugin extends Plugin {
             slotTimersTask.cancel(true);
             slotTimersTask = null;
         }
+        //so the offers still being applied make it into the store
+        tradeStateWriter.drain(TRADE_STATE_DRAIN_TIMEOUT_MILLIS);
         dataHandler.storeData();
+        //saves are written in the background, make sure they have made it to disk before the client exits
+        dataHandler.flushStoredData();
+        tradeStateWriter.publish(dataHandler::writeSnapshots);
+        tradeStateWriter.drain(TRADE_STATE_DRAIN_TIMEOUT_MILLIS);
         cacheUpdaterJob.stop();
         wikiDataFetcherJob.stop();
         slotStateSenderJob.stop();
@@ -346,6 +371,12 @@ public class FlippingPlugin extends Plugin {
             if (currentlyLoggedInAccount != null && client.getGameState() != GameState.LOGGED_IN) {
                 handleLogout();
             }
+            //logged out before the account's data finished loading. The slots report their offers again on the
+            //next login, so the held ones can go.
+            if (accountLoggingIn != null && client.getGameState() != GameState.LOGGED_IN) {
+                accountLoggingIn = null;
+                eventsReceivedBeforeFullLogin.clear();
+            }
         }
     }
 
@@ -393,29 +424,54 @@ public class FlippingPlugin extends Plugin {
                 return;
             }
 
+        //the login task runs again while the account's data is still loading
+        if (displayName.equals(accountLoggingIn)) {
+            return;
+        }
+
         log.debug("{} has just logged in!", displayName);
         if (!dataHandler.getCurrentAccounts().contains(displayName)) {
             log.debug("data handler does not contain data for {}", displayName);
             dataHandler.addAccount(displayName);
             masterPanel.getAccountSelector().addItem(displayName);
         }
+
+        loginTickCount = client.getTickCount();
+        accountLoggingIn = displayName;
+        //the account's data is loaded in the background and the login is finished once it's in. Until then there is
+        //no logged in account, so the offers that come in are held along with the ones from before the display name
+        //was known, instead of whatever handles them loading the data there and then.
+        dataHandler.loadAccountDataAsync(displayName).thenRun(() -> {
+            //logged out before it finished loading
+            if (!displayName.equals(accountLoggingIn)) {
+                return;
+            }
+            accountLoggingIn = null;
+            finishLogin(displayName);
+        });
+    }
+
+    /**
+     * The rest of {@link #handleLogin} once the account's data is loaded, on the client thread.
+     */
+    private void finishLogin(String displayName) {
         //see documentation for AccountData.fixIncorrectItemNames
         if (client.getWorldType().contains(WorldType.MEMBERS)) {
             dataHandler.viewAccountData(displayName).fixIncorrectItemNames(itemManager);
         }
 
-        loginTickCount = client.getTickCount();
         currentlyLoggedInAccount = displayName;
 
         //now that we have a display name we can process any events that we received before the display name
         //was set.
-        eventsReceivedBeforeFullLogin.forEach(newOfferEventPipelineHandler::onNewOfferEvent);
+        newOfferEventPipelineHandler.publishLoginBurst(new ArrayList<>(eventsReceivedBeforeFullLogin));
         eventsReceivedBeforeFullLogin.clear();
 
         if (dataHandler.getCurrentAccounts().size() > 1) {
             masterPanel.getAccountSelector().setVisible(true);
         }
         accountCurrentlyViewed = displayName;
+        accountViewRequested = displayName;
         //this will cause changeView to be invoked which will cause a rebuildItemsDisplay of
         //flipping and stats panel
         masterPanel.getAccountSelector().setSelectedItem(displayName);
@@ -431,6 +487,7 @@ public class FlippingPlugin extends Plugin {
     public void handleLogout() {
         log.debug("{} is logging out", currentlyLoggedInAccount);
 
+        tradeStateWriter.drain(TRADE_STATE_DRAIN_TIMEOUT_MILLIS);
         dataHandler.getAccountData(currentlyLoggedInAccount).setLastSessionTimeUpdate(null);
         dataHandler.storeData();
 
@@ -521,25 +578,71 @@ public class FlippingPlugin extends Plugin {
         return configManager.getConfig(FlippingConfig.class);
     }
 
-    public void truncateTradeList() {
-        if (accountCurrentlyViewed.equals(ACCOUNT_WIDE)) {
-            dataHandler.getAllAccountData().forEach(accountData -> flippingItemHandler.deleteRemovedItems(accountData.getTrades()));
-        } else {
-            flippingItemHandler.deleteRemovedItems(getItemsForCurrentView());
-        }
+    public CompletableFuture<Void> truncateTradeList() {
+        return changeTradesInView(accounts -> accounts.forEach(flippingItemHandler::deleteRemovedItems));
+    }
+
+    /**
+     * Makes a change to the trades of the current view (every account's, for the account wide view) once they are
+     * loaded. The change is published to the trade state writer, so it can't interleave with an offer being applied
+     * to the same trades.
+     *
+     * @return completes, on the trade state writer, once the change has been made
+     */
+    private CompletableFuture<Void> changeTradesInView(Consumer<Collection<AccountData>> change) {
+        String viewedAccount = accountCurrentlyViewed;
+        CompletableFuture<Void> changed = new CompletableFuture<>();
+        //the view's data is loaded before it's shown, so this only waits if an account was unloaded since
+        dataHandler.loadAccountDataAsync(viewedAccount).thenRun(() -> tradeStateWriter.publish(() -> {
+            try {
+                if (viewedAccount.equals(ACCOUNT_WIDE)) {
+                    change.accept(dataHandler.getAllAccountData());
+                } else {
+                    AccountData accountData = dataHandler.getLoadedAccountData(viewedAccount);
+                    change.accept(accountData != null ? Collections.singletonList(accountData) : Collections.emptyList());
+                }
+            } finally {
+                changed.complete(null);
+            }
+        }));
+        return changed;
+    }
+
+    TradeStateWriter getTradeStateWriter() {
+        return tradeStateWriter;
+    }
+
+    /**
+     * Waits for everything published to the trade state writer so far to be applied.
+     *
+     * @return false if it wasn't applied within the timeout
+     */
+    boolean drainTradeStateWriter() {
+        return tradeStateWriter.drain(TRADE_STATE_DRAIN_TIMEOUT_MILLIS);
     }
 
     /**
      * This method is invoked every time a user selects a username from the dropdown at the top of the
-     * panel. If the username selected does not exist in the cache, it uses loadTradeHistory to load it from
-     * disk and set the cache. Otherwise, it just reads what in the cache for that username. It updates the displays
-     * with the trades it either found in the cache or from disk.
+     * panel. If the data for the username selected (or for every account, for the account wide view) isn't
+     * loaded yet, it is loaded in the background first. The view is only switched to once it's loaded, so whatever
+     * reads the viewed account's data never finds it missing. It then updates the displays with the trades of the
+     * selected view.
      *
      * @param selectedName the username the user selected from the dropdown menu.
      */
     public void changeView(String selectedName) {
         log.debug("changing view to {}", selectedName);
-        accountCurrentlyViewed = selectedName;
+        accountViewRequested = selectedName;
+        dataHandler.loadAccountDataAsync(selectedName).thenRun(() -> SwingUtilities.invokeLater(() -> {
+            //another view could have been picked while this one was loading
+            if (selectedName.equals(accountViewRequested)) {
+                accountCurrentlyViewed = selectedName;
+                rebuildDisplaysForCurrentView();
+            }
+        }));
+    }
+
+    private void rebuildDisplaysForCurrentView() {
         List<FlippingItem> itemsForCurrentView = viewItemsForCurrentView();
         statPanel.resetPaginators();
         flippingPanel.getPaginator().setPageNumber(1);
@@ -571,57 +674,67 @@ public class FlippingPlugin extends Plugin {
     }
 
     /**
-     * This is a callback executed by the cacheUpdater when it notices the directory has changed. If the
-     * file changed belonged to a different acc than the currently logged in one, it updates the cache of that
-     * account to ensure this client has the most up to date data on each account. If the user is currently looking
-     * at the account that had its cache updated, a rebuildItemsDisplay takes place to display the most recent trade list.
+     * This is a callback executed by the cacheUpdater when it notices the directory has changed. When the database
+     * changed, this client reads what other clients stored since it last looked (see
+     * {@link TradePersister#pollChanges()}) and reloads just the items they changed. If the user is currently looking
+     * at an account that changed, a rebuildItemsDisplay takes place to display the most recent trade list.
      *
      * @param fileName name of the file which was modified.
      */
     public void onDirectoryUpdate(String fileName) {
-        if (!fileName.contains(".json") || fileName.contains(".backup.json") || fileName.contains(".special.json")) {
-            return;
-        }
-        String displayNameOfChangedAcc = fileName.split("\\.")[0];
-
-        if (displayNameOfChangedAcc.equals(dataHandler.thisClientLastStored)) {
-            log.debug("not reloading data for {} into the cache as this client was the last one to store it", displayNameOfChangedAcc);
-            dataHandler.thisClientLastStored = null;
+        //the database and its -wal and -shm files
+        if (!fileName.startsWith(DatabaseConstants.DATABASE_FILE_NAME)) {
             return;
         }
-
-        if (fileName.equals("accountwide.json")) {
-            executor.schedule(() -> {
-                dataHandler.loadAccountWideData();
-            }, 1000, TimeUnit.MILLISECONDS);
+        //a store touches the files several times, one poll a second after the first is enough to pick it up
+        if (!changePollScheduled.compareAndSet(false, true)) {
             return;
         }
 
         executor.schedule(() ->
         {
-            //have to run on client thread cause loadAccount calls accountData.prepareForUse which uses the itemmanager
+            changePollScheduled.set(false);
+            List<ChangeLogRepository.Change> changes = tradePersister.pollChanges();
+            if (changes.isEmpty()) {
+                return;
+            }
+            //itemmanager can only be used on the client thread
             clientThread.invokeLater(() -> {
-                log.debug("second has passed, updating cache for {}", displayNameOfChangedAcc);
-                dataHandler.loadAccountData(displayNameOfChangedAcc);
-                if (!masterPanel.getViewSelectorItems().contains(displayNameOfChangedAcc)) {
-                    masterPanel.getAccountSelector().addItem(displayNameOfChangedAcc);
+                Map<Integer, Integer> geLimits = new HashMap<>();
+                for (ChangeLogRepository.Change change : changes) {
+                    if (change.getKind() == ChangeLogRepository.Kind.ITEM_CHANGED) {
+                        ItemStats itemStats = itemManager.getItemStats(change.getItemId());
+                        geLimits.put(change.getItemId(), itemStats != null ? itemStats.getGeLimit() : 0);
+                    }
                 }
+                //on the trade state writer, so an offer being applied can't interleave with its item being replaced
+                tradeStateWriter.publish(() -> applyChanges(changes, geLimits));
+            });
+        }, 1000, TimeUnit.MILLISECONDS);
+    }
 
-                if (dataHandler.getCurrentAccounts().size() > 1) {
-                    masterPanel.getAccountSelector().setVisible(true);
-                }
+    private void applyChanges(List<ChangeLogRepository.Change> changes, Map<Integer, Integer> geLimits) {
+        Set<String> changedAccounts = dataHandler.applyChanges(changes, geLimits);
+        log.debug("applied {} changes made by other clients to {}", changes.size(), changedAccounts);
+        for (String displayName : changedAccounts) {
+            if (!masterPanel.getViewSelectorItems().contains(displayName)) {
+                masterPanel.getAccountSelector().addItem(displayName);
+            }
+        }
 
-                updateSinceLastItemAccountWideBuild = true;
+        if (dataHandler.getCurrentAccounts().size() > 1) {
+            masterPanel.getAccountSelector().setVisible(true);
+        }
 
-                //rebuildItemsDisplay if you are currently looking at the account who's cache just got updated or the account wide view.
-                if (accountCurrentlyViewed.equals(ACCOUNT_WIDE) || accountCurrentlyViewed.equals(displayNameOfChangedAcc)) {
-                    List<FlippingItem> tradesForCurrentView = viewItemsForCurrentView();
-                    flippingPanel.rebuild(tradesForCurrentView);
-                    statPanel.rebuildItemsDisplay(tradesForCurrentView);
-                    statPanel.rebuildRecipesDisplay(viewRecipeFlipGroupsForCurrentView());
-                }
-            });
-        }, 1000, TimeUnit.MILLISECONDS);
+        accountWideItemIndex.markAllChanged();
+
+        //rebuildItemsDisplay if you are currently looking at an account that changed or the account wide view.
+        if (accountCurrentlyViewed.equals(ACCOUNT_WIDE) || changedAccounts.contains(accountCurrentlyViewed)) {
+            List<FlippingItem> tradesForCurrentView = viewItemsForCurrentView();
+            flippingPanel.rebuild(tradesForCurrentView);
+            statPanel.rebuildItemsDisplay(tradesForCurrentView);
+            statPanel.rebuildRecipesDisplay(viewRecipeFlipGroupsForCurrentView());
+        }
     }
 
     //TODO this caching logic can be generalized and put into another component. There are also a bunch of
@@ -639,19 +752,28 @@ public class FlippingPlugin extends Plugin {
     }
 
     private List<FlippingItem> createAccountWideFlippingItemList() {
-        //since this is an expensive operation, cache its results and only recompute it if there has been an update
-        //to one of the account's tradelists, (updateSinceLastAccountWideBuild is set in onGrandExchangeOfferChanged)
-        if (!updateSinceLastItemAccountWideBuild) {
-            return prevBuiltAccountWideItemList;
-        }
-
         if (dataHandler.getCurrentAccounts().size() == 0) {
             return new ArrayList<>();
         }
 
-        updateSinceLastItemAccountWideBuild = false;
-        prevBuiltAccountWideItemList = flippingItemHandler.createAccountWideFlippingItemList(dataHandler.viewAllAccountData());;
-        return prevBuiltAccountWideItemList;
+        return accountWideItemIndex.getItems(dataHandler.viewAllAccountData());
+    }
+
+    /**
+     * Marks an item as changed in one of the accounts so it gets merged again the next time the account wide
+     * trade list is viewed.
+     */
+    public void markAccountWideItemChanged(int itemId) {
+        accountWideItemIndex.markItemChanged(itemId);
+    }
+
+    /**
+     * Makes the account wide trade list and recipe flips get built again from scratch the next time they're viewed,
+     * for when an account's data is loaded or unloaded.
+     */
+    public void markAllAccountWideItemsChanged() {
+        accountWideItemIndex.markAllChanged();
+        setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
     }
 
     public List<FlippingItem> sortItems(List<FlippingItem> items, SORT sort, Instant startOfInterval) {
@@ -754,53 +876,64 @@ public class FlippingPlugin extends Plugin {
     }
 
     public void setFavoriteOnAllAccounts(FlippingItem item, boolean favoriteStatus) {
-        for (String accountName : dataHandler.getCurrentAccounts()) {
-            AccountData account = dataHandler.viewAccountData(accountName);
-            account.
-                    getTrades().
-                    stream().
-                    filter(accountItem -> accountItem.getItemId() == item.getItemId()).
-                    findFirst().
-                    ifPresent(accountItem -> {
-                        accountItem.setFavorite(favoriteStatus);
-                        markAccountTradesAsHavingChanged(accountName);
-                    });
-        }
+        changeItemOnAllAccounts(item.getItemId(), accountItem -> accountItem.setFavorite(favoriteStatus));
     }
 
     public void setFavoriteCodeOnAllAccounts(FlippingItem item, String favoriteCode) {
+        changeItemOnAllAccounts(item.getItemId(), accountItem -> accountItem.setFavoriteCode(favoriteCode));
+    }
+
+    /**
+     * Changes the item in every account that has it. The account wide view loads every account, the ones that
+     * haven't finished loading yet are changed once they have.
+     */
+    private void changeItemOnAllAccounts(int itemId, Consumer<FlippingItem> change) {
         for (String accountName : dataHandler.getCurrentAccounts()) {
-            AccountData account = dataHandler.viewAccountData(accountName);
-            account.
-                    getTrades().
-                    stream().
-                    filter(accountItem -> accountItem.getItemId() == item.getItemId()).
-                    findFirst().
-                    ifPresent(accountItem -> {
-                        accountItem.setFavoriteCode(favoriteCode);
-                        markAccountTradesAsHavingChanged(accountName);
-                    });
+            if (dataHandler.isAccountLoaded(accountName)) {
+                changeAccountItem(accountName, itemId, change);
+            } else {
+                dataHandler.loadAccountDataAsync(accountName).thenRun(() -> changeAccountItem(accountName, itemId, change));
+            }
         }
+        accountWideItemIndex.markItemChanged(itemId);
     }
 
-    public void addSelectedGeTabOffers(List<OfferEvent> selectedOffers) {
-        for (OfferEvent offerEvent : selectedOffers) {
-            addSelectedGeTabOffer(offerEvent);
+    private void changeAccountItem(String accountName, int itemId, Consumer<FlippingItem> change) {
+        AccountData account = dataHandler.viewAccountData(accountName);
+        FlippingItem accountItem = account != null ? account.getTrades().findByItemId(itemId) : null;
+        if (accountItem != null) {
+            change.accept(accountItem);
+            markAccountTradesAsHavingChanged(accountName);
         }
+    }
 
-        //have to add a delay before rebuilding as item limit and name may not have been set yet in addSelectedGeTabOffer due to
-        //clientThread being async and not offering a future to wait on when you submit a runnable...
-        executor.schedule(() -> {
-            flippingPanel.rebuild(viewItemsForCurrentView());
-            statPanel.rebuildItemsDisplay(viewItemsForCurrentView());
-        }, 500, TimeUnit.MILLISECONDS);
+    public void addSelectedGeTabOffers(List<OfferEvent> selectedOffers) {
+        //itemmanager can only be used on the client thread, so the names and limits of items that may not be in the
+        //trades yet are looked up there before the offers are published
+        clientThread.invokeLater(() -> {
+            for (OfferEvent offerEvent : selectedOffers) {
+                int tradeItemId = offerEvent.getItemId();
+                String itemName = itemManager.getItemComposition(tradeItemId).getName();
+                ItemStats itemStats = itemManager.getItemStats(tradeItemId);
+                int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
+                tradeStateWriter.publish(() -> addSelectedGeTabOffer(offerEvent, itemName, geLimit));
+            }
+            //after the offers, which are published before it
+            tradeStateWriter.publish(() -> {
+                flippingPanel.rebuild(viewItemsForCurrentView());
+                statPanel.rebuildItemsDisplay(viewItemsForCurrentView());
+            });
+        });
     }
 
-    private void addSelectedGeTabOffer(OfferEvent selectedOffer) {
-        if (currentlyLoggedInAccount == null) {
+    private void addSelectedGeTabOffer(OfferEvent selectedOffer, String itemName, int geLimit) {
+        //the logged in account is loaded before it counts as logged in and isn't unloaded while it is
+        AccountData accountData = currentlyLoggedInAccount == null ? null : dataHandler.getLoadedAccountData(currentlyLoggedInAccount);
+        if (accountData == null) {
             return;
         }
-        Optional<FlippingItem> flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().stream().filter(item -> item.getItemId() == selectedOffer.getItemId()).findFirst();
+        accountWideItemIndex.markItemChanged(selectedOffer.getItemId());
+        Optional<FlippingItem> flippingItem = Optional.ofNullable(accountData.getTrades().findByItemId(selectedOffer.getItemId()));
         if (flippingItem.isPresent()) {
             flippingItem.get().updateHistory(selectedOffer);
             flippingItem.get().updateLatestProperties(selectedOffer);
@@ -808,23 +941,11 @@ public class FlippingPlugin extends Plugin {
             flippingItem.get().setValidFlippingPanelItem(true);
         } else {
             int tradeItemId = selectedOffer.getItemId();
-            FlippingItem item = new FlippingItem(tradeItemId, "", -1, currentlyLoggedInAccount);
+            FlippingItem item = new FlippingItem(tradeItemId, itemName, geLimit, currentlyLoggedInAccount);
             item.setValidFlippingPanelItem(true);
             item.updateLatestProperties(selectedOffer);
             item.updateHistory(selectedOffer);
-            dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().add(0, item);
-
-            //itemmanager can only be used on the client thread.
-            //i can't put everything in the runnable given to the client thread cause then it executes async and if there
-            //are multiple offers for the same flipping item that doesn't yet exist in trades list, it might create multiple
-            //of them.
-            clientThread.invokeLater(() -> {
-                String itemName = itemManager.getItemComposition(tradeItemId).getName();
-                ItemStats itemStats = itemManager.getItemStats(tradeItemId);
-                int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
-                item.setItemName(itemName);
-                item.setTotalGELimit(geLimit);
-            });
+            accountData.getTrades().add(0, item);
         }
     }
 
@@ -844,11 +965,11 @@ public class FlippingPlugin extends Plugin {
     }
 
     public List<OfferEvent> findOfferMatches(OfferEvent offerEvent, int limit) {
-        Optional<FlippingItem> flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().stream().filter(item -> item.getItemId() == offerEvent.getItemId()).findFirst();
-        if (!flippingItem.isPresent()) {
+        FlippingItem flippingItem = dataHandler.getAccountData(currentlyLoggedInAccount).getTrades().findByItemId(offerEvent.getItemId());
+        if (flippingItem == null) {
             return new ArrayList<>();
         }
-        return flippingItem.get().getOfferMatches(offerEvent, limit);
+        return flippingItem.getOfferMatches(offerEvent, limit);
     }
 
     public Font getFont() {
@@ -858,50 +979,56 @@ public class FlippingPlugin extends Plugin {
     /**
      * Used by the stats panel to invalidate all offers for a certain interval when a user hits the reset button.
      */
-    public void deleteOffers(Instant startOfInterval) {
-        if (accountCurrentlyViewed.equals(ACCOUNT_WIDE)) {
-            for (AccountData accountData : dataHandler.getAllAccountData()) {
+    public CompletableFuture<Void> deleteOffers(Instant startOfInterval) {
+        return changeTradesInView(accounts -> {
+            for (AccountData accountData : accounts) {
                 accountData.getTrades().forEach(item -> {
-                    deleteOffers(item.getIntervalHistory(startOfInterval), item);
+                    deleteIntervalOffers(startOfInterval, item);
                 });
             }
-        } else {
-            getItemsForCurrentView().forEach(item -> {
-                deleteOffers(item.getIntervalHistory(startOfInterval), item);
-            });
-        }
 
-        updateSinceLastItemAccountWideBuild = true;
-        updateSinceLastRecipeFlipGroupAccountWideBuild = true;
-        truncateTradeList();
+            accountWideItemIndex.markAllChanged();
+            setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
+            accounts.forEach(flippingItemHandler::deleteRemovedItems);
+        });
+    }
+
+    /**
+     * Deletes the item's offers after startOfInterval, archived ones included.
+     */
+    public CompletableFuture<Void> deleteOffers(Instant startOfInterval, FlippingItem item) {
+        return changeTradesInView(accounts -> deleteIntervalOffers(startOfInterval, item));
+    }
+
+    public CompletableFuture<Void> deleteOffers(List<OfferEvent> offers, FlippingItem item) {
+        return changeTradesInView(accounts -> deleteOffers(offers, viewRecipeFlipGroupsForCurrentView(), item));
     }
 
-    public void deleteOffers(List<OfferEvent> offers, FlippingItem item) {
-        deleteOffers(offers, viewRecipeFlipGroupsForCurrentView(), item);
+    private void deleteIntervalOffers(Instant startOfInterval, FlippingItem item) {
+        item.getHistory().deleteArchivedOffers(startOfInterval);
+        deleteOffers(item.getIntervalHistory(startOfInterval), viewRecipeFlipGroupsForCurrentView(), item);
     }
 
     private void deleteOffers(List<OfferEvent> offers, List<RecipeFlipGroup> recipeFlipGroups, FlippingItem item) {
         item.deleteOffers(offers);
         recipeHandler.deleteInvalidRecipeFlips(offers, recipeFlipGroups);
         markAccountTradesAsHavingChanged(accountCurrentlyViewed);
-        updateSinceLastItemAccountWideBuild = true;
-        updateSinceLastRecipeFlipGroupAccountWideBuild = true;
+        accountWideItemIndex.markItemChanged(item.getItemId());
+        setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
     }
 
     /**
      * Used by the flipping panel to hide all items (set the validfFippingItem property to false) when a user hits the
      * reset button
      */
-    public void setAllFlippingItemsAsHidden() {
-        if (accountCurrentlyViewed.equals(ACCOUNT_WIDE)) {
-            for (AccountData accountData : dataHandler.getAllAccountData()) {
+    public CompletableFuture<Void> setAllFlippingItemsAsHidden() {
+        return changeTradesInView(accounts -> {
+            for (AccountData accountData : accounts) {
                 accountData.getTrades().forEach(item -> item.setValidFlippingPanelItem(false));
             }
-        } else {
-            getItemsForCurrentView().forEach(flippingItem -> flippingItem.setValidFlippingPanelItem(false));
-        }
-        updateSinceLastItemAccountWideBuild = true;
-        truncateTradeList();
+            accountWideItemIndex.markAllChanged();
+            accounts.forEach(flippingItemHandler::deleteRemovedItems);
+        });
     }
 
     public void exportToCsv(File parentDirectory, Instant startOfInterval, String startOfIntervalName) throws IOException {
@@ -978,6 +1105,7 @@ public class FlippingPlugin extends Plugin {
 
     public void deleteAccount(String displayName) {
         dataHandler.deleteAccount(displayName);
+        accountWideItemIndex.markAllChanged();
         if (accountCurrentlyViewed.equals(displayName)) {
             masterPanel.getAccountSelector().setSelectedItem(dataHandler.getCurrentAccounts().toArray()[0]);
         }
@@ -1035,10 +1163,27 @@ public class FlippingPlugin extends Plugin {
     public Map<String, PartialOffer> getOfferIdToPartialOffer(int itemId) {
         return recipeHandler.getOfferIdToPartialOffer(viewRecipeFlipGroupsForCurrentView(), itemId);
     }
+
+    //see HistoryManager.getAggregate
+    public ItemAggregate getIntervalAggregate(FlippingItem item, Instant startOfInterval) {
+        return item.getHistory().getAggregate(startOfInterval, partialOfferVersion, () -> getOfferIdToPartialOffer(item.getItemId()));
+    }
+
+    //see HistoryManager.getIntervalFlips
+    public List<Flip> getIntervalFlips(FlippingItem item, Instant startOfInterval) {
+        return item.getHistory().getIntervalFlips(startOfInterval, partialOfferVersion, () -> getOfferIdToPartialOffer(item.getItemId()));
+    }
+
+    public void setUpdateSinceLastRecipeFlipGroupAccountWideBuild(boolean updateSinceLastRecipeFlipGroupAccountWideBuild) {
+        this.updateSinceLastRecipeFlipGroupAccountWideBuild = updateSinceLastRecipeFlipGroupAccountWideBuild;
+        if (updateSinceLastRecipeFlipGroupAccountWideBuild) {
+            partialOfferVersion++;
+        }
+    }
     public void addRecipeFlip(RecipeFlip recipeFlip, Recipe recipe) {
         AccountData account = dataHandler.getAccountData(accountCurrentlyViewed);
         recipeHandler.addRecipeFlip(account.getRecipeFlipGroups(), recipeFlip, recipe);
-        updateSinceLastRecipeFlipGroupAccountWideBuild = true;
+        setUpdateSinceLastRecipeFlipGroupAccountWideBuild(true);
     }
 
     /**
@@ -1058,16 +1203,27 @@ public class FlippingPlugin extends Plugin {
     }
 
     private void addFavoritedItem(FlippingItem flippingItem, String accountName) {
-        List<FlippingItem> items = dataHandler.getAccountData(accountName).getTrades();
-        Optional<FlippingItem> existingItem = items.stream().filter(item -> item.getItemId() == flippingItem.getItemId()).findFirst();
-        if (existingItem.isPresent()) {
-            existingItem.get().setFavorite(true);
+        AccountData account = dataHandler.getAccountData(accountName);
+        if (account == null) {
+            //one the account wide view hasn't finished loading yet
+            dataHandler.loadAccountDataAsync(accountName).thenRun(() -> {
+                if (dataHandler.isAccountLoaded(accountName)) {
+                    addFavoritedItem(flippingItem, accountName);
+                }
+            });
+            return;
+        }
+        TradeList items = account.getTrades();
+        FlippingItem existingItem = items.findByItemId(flippingItem.getItemId());
+        if (existingItem != null) {
+            existingItem.setFavorite(true);
+            items.favoritesChanged();
         }
         else {
             flippingItem.setFlippedBy(accountName);
             items.add(0, flippingItem);
             markAccountTradesAsHavingChanged(accountName);
-            updateSinceLastItemAccountWideBuild = true;
+            accountWideItemIndex.markItemChanged(flippingItem.getItemId());
         }
     }
 
@@ -1091,8 +1247,8 @@ public class FlippingPlugin extends Plugin {
         final String input = client.getVarcStrValue(VarClientStr.INPUT_TEXT);
         Set<Integer> ids = dataHandler.viewAccountData(currentlyLoggedInAccount).
                 getTrades()
+                .findFavoritesByCode(input)
                 .stream()
-                .filter(item -> item.isFavorite() && input.equals(item.getFavoriteCode()))
                 .map(FlippingItem::getItemId)
                 .collect(Collectors.toSet());
 
@@ -1134,6 +1290,7 @@ public class FlippingPlugin extends Plugin {
 
         handleSlotTimersConfigChange(event);
         handleAutoSaveConfigChange(event);
+        handleCompactOfferHistoryConfigChange(event);
 
         statPanel.rebuildItemsDisplay(viewItemsForCurrentView());
         flippingPanel.rebuild(viewItemsForCurrentView());
@@ -1155,6 +1312,21 @@ public class FlippingPlugin extends Plugin {
         dataHandler.viewAccountData(currentlyLoggedInAccount).getSlotTimers().forEach(SlotActivityTimer::resetToDefault);
     }
 
+    private void handleCompactOfferHistoryConfigChange(ConfigChanged event) {
+        if (!event.getKey().equals("compactOfferHistory")) {
+            return;
+        }
+
+        //the accounts that aren't loaded pick the setting up when they are, see AccountData.prepareForUse
+        boolean compact = config.compactOfferHistory();
+        //changing the storage of a history mustn't interleave with an offer being added to it
+        tradeStateWriter.publish(() -> {
+            dataHandler.viewLoadedAccountData().forEach(accountData ->
+                accountData.getTrades().forEach(item -> item.getHistory().setColumnarStorage(compact)));
+            accountWideItemIndex.markAllChanged();
+        });
+    }
+
     private void handleAutoSaveConfigChange(ConfigChanged event) {
         String eventKey = event.getKey();
         if (!AUTO_SAVE_CONFIG_KEYS.contains(eventKey)) {
@@ -1,8 +1,11 @@
 package com.flippingutilities.controller;
 
+import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.TradeList;
 import com.flippingutilities.ui.widgets.SlotActivityTimer;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import net.runelite.api.WorldType;
 import net.runelite.api.events.GrandExchangeOfferChanged;
@@ -11,13 +14,32 @@ import net.runelite.client.game.ItemStats;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class NewOfferEventPipelineHandler {
     FlippingPlugin plugin;
+    private final TradeStateWriter writer;
+    private final PanelRebuildScheduler rebuildScheduler;
+    //the last publish, which the next one waits for so that they reach the writer in the order they were made
+    private CompletableFuture<Void> published = CompletableFuture.completedFuture(null);
 
-    NewOfferEventPipelineHandler(FlippingPlugin plugin) {
+    /**
+     * An offer as the client thread captured it, with everything looked up that can only be looked up on the client
+     * thread. The offer itself belongs to the writer once it's published.
+     */
+    @Value
+    static class CapturedOffer {
+        OfferEvent offer;
+        String displayName;
+        String itemName;
+        int geLimit;
+    }
+
+    NewOfferEventPipelineHandler(FlippingPlugin plugin, TradeStateWriter writer, PanelRebuildScheduler rebuildScheduler) {
         this.plugin = plugin;
+        this.writer = writer;
+        this.rebuildScheduler = rebuildScheduler;
     }
 
     /**
@@ -42,7 +64,9 @@ public class NewOfferEventPipelineHandler {
             //event came in before account was fully logged in. This means that the offer actually came through
             //sometime when the account was logged out, at an undetermined time. We need to mark the offer as such to
             //avoid adjusting ge limits and slot timers incorrectly (cause we don't know exactly when the offer came in)
-            newOfferEvent.setBeforeLogin(true);
+            //An offer that came in after the login tick, while the account's data was still loading, did happen now.
+            newOfferEvent.setBeforeLogin(plugin.getAccountLoggingIn() == null
+                    || newOfferEvent.getTickArrivedAt() == plugin.getLoginTickCount());
             plugin.getEventsReceivedBeforeFullLogin().add(newOfferEvent);
             return;
         }
@@ -50,16 +74,71 @@ public class NewOfferEventPipelineHandler {
         if (newOfferEvent.getTickArrivedAt() == plugin.getLoginTickCount()) {
             newOfferEvent.setBeforeLogin(true);
         }
-        onNewOfferEvent(newOfferEvent);
+        publish(newOfferEvent);
+    }
+
+    /**
+     * Captures the offer for the currently logged in account and publishes it to the trade state writer, which
+     * runs it through the rest of the pipeline (see {@link #onNewOfferEvent}). Has to be called on the client
+     * thread.
+     */
+    public void publish(OfferEvent newOfferEvent) {
+        CapturedOffer captured = capture(newOfferEvent, plugin.getCurrentlyLoggedInAccount());
+        publishWhenLoaded(captured.getDisplayName(), () -> onNewOfferEvent(captured));
+    }
+
+    /**
+     * Publishes the offers that came in before the account was fully logged in as one batch, see
+     * {@link #onLoginBurst}. Has to be called on the client thread.
+     */
+    public void publishLoginBurst(List<OfferEvent> offers) {
+        if (offers.isEmpty()) {
+            return;
+        }
+        String displayName = plugin.getCurrentlyLoggedInAccount();
+        List<CapturedOffer> burst = new ArrayList<>(offers.size());
+        for (OfferEvent offer : offers) {
+            burst.add(capture(offer, displayName));
+        }
+        publishWhenLoaded(displayName, () -> onLoginBurst(burst, displayName));
+    }
+
+    /**
+     * Publishes the work once the account's data is loaded, so the writer never has to load it from the database
+     * itself. The logged in account is nearly always loaded already, in which case it's published there and then.
+     */
+    private void publishWhenLoaded(String displayName, Runnable work) {
+        published = published
+                .thenCompose(v -> plugin.getDataHandler().loadAccountDataAsync(displayName))
+                .thenRun(() -> writer.publish(work))
+                .exceptionally(e -> {
+                    log.warn("Failed to publish offers of {} to the trade state writer", displayName, e);
+                    return null;
+                });
+    }
+
+    private CapturedOffer capture(OfferEvent newOfferEvent, String displayName) {
+        int itemId = newOfferEvent.getItemId();
+        //the item manager can only be used on the client thread, and the offer may be the account's first of the item
+        String itemName = plugin.getItemManager().getItemComposition(itemId).getName();
+        ItemStats itemStats = plugin.getItemManager().getItemStats(itemId);
+        int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
+        return new CapturedOffer(newOfferEvent, displayName, itemName, geLimit);
     }
 
-    public void onNewOfferEvent(OfferEvent newOfferEvent) {
-        String currentlyLoggedInAccount = plugin.getCurrentlyLoggedInAccount();
+    private void onNewOfferEvent(CapturedOffer captured) {
+        OfferEvent newOfferEvent = captured.getOffer();
+        String currentlyLoggedInAccount = captured.getDisplayName();
         if (currentlyLoggedInAccount != null) {
             newOfferEvent.setMadeBy(currentlyLoggedInAccount);
         }
 
-        Optional<OfferEvent> screenedOfferEvent = screenOfferEvent(newOfferEvent);
+        AccountData accountData = loadedAccountData(currentlyLoggedInAccount);
+        if (accountData == null) {
+            return;
+        }
+
+        Optional<OfferEvent> screenedOfferEvent = screenOfferEvent(newOfferEvent, accountData);
 
         if (!screenedOfferEvent.isPresent()) {
             return;
@@ -67,32 +146,112 @@ public class NewOfferEventPipelineHandler {
 
         OfferEvent finalizedOfferEvent = screenedOfferEvent.get();
         
-        List<FlippingItem> currentlyLoggedInAccountsTrades = plugin.getDataHandler().getAccountData(currentlyLoggedInAccount).getTrades();
+        TradeList currentlyLoggedInAccountsTrades = accountData.getTrades();
+
+        Optional<FlippingItem> flippingItem = Optional.ofNullable(currentlyLoggedInAccountsTrades.findByItemId(finalizedOfferEvent.getItemId()));
+
+        FlippingItem updatedItem = updateTradesList(currentlyLoggedInAccountsTrades, flippingItem, finalizedOfferEvent.clone(), captured);
 
-        Optional<FlippingItem> flippingItem = currentlyLoggedInAccountsTrades.stream().filter(item -> item.getItemId() == finalizedOfferEvent.getItemId()).findFirst();
+        //so the offer isn't lost if the client crashes before the next store
+        plugin.tradePersister.journalOffer(currentlyLoggedInAccount, updatedItem, finalizedOfferEvent);
 
-        updateTradesList(currentlyLoggedInAccountsTrades, flippingItem, finalizedOfferEvent.clone());
+        plugin.markAccountWideItemChanged(finalizedOfferEvent.getItemId());
 
-        plugin.setUpdateSinceLastItemAccountWideBuild(true);
+        rebuildDisplayAfterOfferEvents(Collections.singleton(finalizedOfferEvent.getItemId()), currentlyLoggedInAccount);
+    }
+
+    /**
+     * Applies the offers every slot reports on login in one go, instead of running each of them through
+     * {@link #onNewOfferEvent} with its own lookups and rebuild. Every slot reports its state at least twice, so the
+     * duplicates are dropped before screening. What's left is screened in the order it came in, as screening goes
+     * by the slot's last offer, and then each item gets all of its offers at once.
+     */
+    private void onLoginBurst(List<CapturedOffer> burst, String displayName) {
+        AccountData accountData = loadedAccountData(displayName);
+        if (accountData == null) {
+            return;
+        }
+        List<CapturedOffer> withoutDuplicates = dropDuplicates(burst);
+        Map<Integer, List<OfferEvent>> offersByItem = new LinkedHashMap<>();
+        Map<Integer, CapturedOffer> capturedByItem = new HashMap<>();
+        for (CapturedOffer captured : withoutDuplicates) {
+            OfferEvent newOfferEvent = captured.getOffer();
+            newOfferEvent.setMadeBy(displayName);
+            screenOfferEvent(newOfferEvent, accountData).ifPresent(offer -> {
+                offersByItem.computeIfAbsent(offer.getItemId(), k -> new ArrayList<>()).add(offer);
+                capturedByItem.putIfAbsent(offer.getItemId(), captured);
+            });
+        }
+        log.debug("{} offers came in before login, {} were duplicates and {} items got new offers", burst.size(),
+                burst.size() - withoutDuplicates.size(), offersByItem.size());
+        if (offersByItem.isEmpty()) {
+            return;
+        }
+
+        TradeList trades = accountData.getTrades();
+        offersByItem.forEach((itemId, offers) -> {
+            FlippingItem item = trades.findByItemId(itemId);
+            if (item == null) {
+                CapturedOffer captured = capturedByItem.get(itemId);
+                item = new FlippingItem(itemId, captured.getItemName(), captured.getGeLimit(), displayName);
+                trades.add(0, item);
+            }
+            item.setValidFlippingPanelItem(true);
+            for (OfferEvent offer : offers) {
+                OfferEvent clone = offer.clone();
+                item.updateHistory(clone);
+                item.updateLatestProperties(clone);
+                plugin.tradePersister.journalOffer(displayName, item, offer);
+            }
+            plugin.markAccountWideItemChanged(itemId);
+        });
+
+        rebuildDisplayAfterOfferEvents(offersByItem.keySet(), displayName);
+    }
 
-        rebuildDisplayAfterOfferEvent(finalizedOfferEvent);
+    /**
+     * Drops the offers that only repeat the offer before them in the same slot, keeping the order of the rest.
+     */
+    static List<CapturedOffer> dropDuplicates(List<CapturedOffer> burst) {
+        Map<Integer, OfferEvent> lastOfferForEachSlot = new HashMap<>();
+        List<CapturedOffer> withoutDuplicates = new ArrayList<>(burst.size());
+        for (CapturedOffer captured : burst) {
+            OfferEvent newOfferEvent = captured.getOffer();
+            OfferEvent previous = lastOfferForEachSlot.put(newOfferEvent.getSlot(), newOfferEvent);
+            if (previous == null || !previous.isDuplicate(newOfferEvent)) {
+                withoutDuplicates.add(captured);
+            }
+        }
+        return withoutDuplicates;
+    }
+
+    /**
+     * The account is loaded before its offers are published (see {@link #publishWhenLoaded}) and the logged in account
+     * isn't unloaded, so this only comes up empty if the account was deleted in between.
+     */
+    private AccountData loadedAccountData(String displayName) {
+        AccountData accountData = plugin.getDataHandler().getLoadedAccountData(displayName);
+        if (accountData == null) {
+            log.warn("not applying offers of {} as its data isn't loaded", displayName);
+        }
+        return accountData;
     }
 
     /**
      * There is no point rebuilding either the stats panel or flipping panel when the user is looking at the trades list of
      * one of their accounts that isn't logged in as that trades list won't be being updated anyway.
      *
-     * @param offerEvent   offer event just received
+     * @param itemIds      the items of the offer events just received
+     * @param displayName  the account the offers were made on
      */
-    private void rebuildDisplayAfterOfferEvent(OfferEvent offerEvent) {
+    private void rebuildDisplayAfterOfferEvents(Collection<Integer> itemIds, String displayName) {
 
-        if (!(plugin.getAccountCurrentlyViewed().equals(plugin.getCurrentlyLoggedInAccount()) ||
+        if (!(plugin.getAccountCurrentlyViewed().equals(displayName) ||
                 plugin.getAccountCurrentlyViewed().equals(FlippingPlugin.ACCOUNT_WIDE))) {
             return;
         }
 
-        plugin.getFlippingPanel().onNewOfferEventRebuild(offerEvent);
-        plugin.getStatPanel().rebuildItemsDisplay(plugin.viewItemsForCurrentView());
+        rebuildScheduler.requestOfferRebuild(itemIds);
     }
 
     /**
@@ -110,13 +269,19 @@ public class NewOfferEventPipelineHandler {
      * to that component in this method itself. We currently do this with the slotsPanel and slotActivityTimer.
      *
      * @param newOfferEvent event that just occurred
+     * @param displayName   the account the offer was made on
      * @return an optional containing an OfferEvent.
      */
-    public Optional<OfferEvent> screenOfferEvent(OfferEvent newOfferEvent) {
+    public Optional<OfferEvent> screenOfferEvent(OfferEvent newOfferEvent, String displayName) {
+        AccountData accountData = loadedAccountData(displayName);
+        return accountData == null ? Optional.empty() : screenOfferEvent(newOfferEvent, accountData);
+    }
+
+    private Optional<OfferEvent> screenOfferEvent(OfferEvent newOfferEvent, AccountData accountData) {
         plugin.getSlotsPanel().update(newOfferEvent);
 
-        Map<Integer, OfferEvent> lastOfferEventForEachSlot = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getLastOffers();
-        List<SlotActivityTimer> slotActivityTimers = plugin.getDataHandler().getAccountData(plugin.getCurrentlyLoggedInAccount()).getSlotTimers();
+        Map<Integer, OfferEvent> lastOfferEventForEachSlot = accountData.getLastOffers();
+        List<SlotActivityTimer> slotActivityTimers = accountData.getSlotTimers();
         OfferEvent lastOfferEvent = lastOfferEventForEachSlot.get(newOfferEvent.getSlot());
 
         //completely useless updates
@@ -184,8 +349,11 @@ public class NewOfferEventPipelineHandler {
      * @param trades       the trades list to update
      * @param flippingItem the flipping item to be updated in the tradeslist, if it even exists
      * @param newOffer     new offer that just came in
+     * @param captured     the offer as it was captured, for the item's name and ge limit
+     * @return the flipping item the offer was added to
      */
-    private void updateTradesList(List<FlippingItem> trades, Optional<FlippingItem> flippingItem, OfferEvent newOffer) {
+    private FlippingItem updateTradesList(List<FlippingItem> trades, Optional<FlippingItem> flippingItem, OfferEvent newOffer,
+            CapturedOffer captured) {
         if (flippingItem.isPresent()) {
             FlippingItem item = flippingItem.get();
 
@@ -196,8 +364,9 @@ public class NewOfferEventPipelineHandler {
 
             item.updateHistory(newOffer);
             item.updateLatestProperties(newOffer);
+            return item;
         } else {
-            addToTradesList(trades, newOffer);
+            return addToTradesList(trades, newOffer, captured);
         }
     }
 
@@ -208,19 +377,17 @@ public class NewOfferEventPipelineHandler {
      *
      * @param tradesList the trades list to be updated
      * @param newOffer   the offer to update the trade list with
+     * @param captured   the offer as it was captured, for the item's name and ge limit
+     * @return the flipping item that was added
      */
-    private void addToTradesList(List<FlippingItem> tradesList, OfferEvent newOffer) {
-        int tradeItemId = newOffer.getItemId();
-        String itemName = plugin.getItemManager().getItemComposition(tradeItemId).getName();
-
-        ItemStats itemStats = plugin.getItemManager().getItemStats(tradeItemId);
-        int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
-
-        FlippingItem flippingItem = new FlippingItem(tradeItemId, itemName, geLimit, plugin.getCurrentlyLoggedInAccount());
+    private FlippingItem addToTradesList(List<FlippingItem> tradesList, OfferEvent newOffer, CapturedOffer captured) {
+        FlippingItem flippingItem = new FlippingItem(newOffer.getItemId(), captured.getItemName(), captured.getGeLimit(),
+                captured.getDisplayName());
         flippingItem.setValidFlippingPanelItem(true);
         flippingItem.updateHistory(newOffer);
         flippingItem.updateLatestProperties(newOffer);
 
         tradesList.add(0, flippingItem);
+        return flippingItem;
     }
 }
@@ -0,0 +1,137 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.model.FlippingItem;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the rebuilds offers ask for. Every slot can produce several offers on the same tick (and all of them do
+ * on login), and rebuilding the flipping and stats panels for each one means merging the account wide trade list
+ * and laying out the panels over and over for a result that only the last rebuild shows.
+ * <p>
+ * A request only marks the panels dirty. The first request after a rebuild schedules the next one a short window
+ * later, and that rebuild covers every request made up to when it runs, using the trade list as it is then, so
+ * requests made for an older state of the trades are dropped rather than rebuilt.
+ * <p>
+ * The trade list is copied on the {@link TradeStateWriter}, so it can't change while it's copied, and the panels are
+ * laid out from the copy on the swing thread while the writer carries on. The items in it are still the live ones,
+ * what the panels read of their offers is read under the history's lock, see HistoryManager.
+ */
+@Slf4j
+class PanelRebuildScheduler {
+    //a tick's offers all come in within a few ms of each other, well within this
+    private static final long WINDOW_MILLIS = 100;
+
+    /**
+     * What is rebuilt, the plugin's panels outside of tests.
+     */
+    interface Panels {
+        List<FlippingItem> viewItemsForCurrentView();
+
+        void rebuildFlippingPanel(Set<Integer> itemIds, List<FlippingItem> items);
+
+        void rebuildStatsPanel(List<FlippingItem> items);
+    }
+
+    private final Panels panels;
+    private final ScheduledExecutorService executor;
+    private final TradeStateWriter writer;
+
+    private final Object lock = new Object();
+    private final Set<Integer> offerItemIds = new HashSet<>();
+    private boolean rebuildScheduled;
+    //counted per panel, a request asks for the stats panel and, if it has items, the flipping panel
+    private long rebuildsRequested;
+    private long rebuildsExecuted;
+
+    PanelRebuildScheduler(FlippingPlugin plugin, ScheduledExecutorService executor, TradeStateWriter writer) {
+        this(new Panels() {
+            @Override
+            public List<FlippingItem> viewItemsForCurrentView() {
+                return plugin.viewItemsForCurrentView();
+            }
+
+            @Override
+            public void rebuildFlippingPanel(Set<Integer> itemIds, List<FlippingItem> items) {
+                //it looks at the panels it's showing to decide whether to rebuild, which only the swing thread may do
+                SwingUtilities.invokeLater(() -> plugin.getFlippingPanel().onNewOfferEventRebuild(itemIds, items));
+            }
+
+            @Override
+            public void rebuildStatsPanel(List<FlippingItem> items) {
+                plugin.getStatPanel().rebuildItemsDisplay(items);
+            }
+        }, executor, writer);
+    }
+
+    PanelRebuildScheduler(Panels panels, ScheduledExecutorService executor, TradeStateWriter writer) {
+        this.panels = panels;
+        this.executor = executor;
+        this.writer = writer;
+    }
+
+    /**
+     * Asks for both panels to be rebuilt after offers for the items came in.
+     */
+    void requestOfferRebuild(Collection<Integer> itemIds) {
+        synchronized (lock) {
+            offerItemIds.addAll(itemIds);
+            rebuildsRequested += itemIds.isEmpty() ? 1 : 2;
+            if (!rebuildScheduled) {
+                rebuildScheduled = true;
+                executor.schedule(() -> writer.publish(this::rebuild), WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * How many panel rebuilds have been asked for, counting each panel separately.
+     */
+    public long getRebuildsRequested() {
+        synchronized (lock) {
+            return rebuildsRequested;
+        }
+    }
+
+    /**
+     * How many panel rebuilds actually ran, the difference with {@link #getRebuildsRequested()} being the ones that
+     * were coalesced.
+     */
+    public long getRebuildsExecuted() {
+        synchronized (lock) {
+            return rebuildsExecuted;
+        }
+    }
+
+    private void rebuild() {
+        Set<Integer> itemIds;
+        synchronized (lock) {
+            itemIds = new HashSet<>(offerItemIds);
+            offerItemIds.clear();
+            rebuildScheduled = false;
+        }
+
+        //a copy, the panels read it on the swing thread while the writer can be adding to the trade list
+        List<FlippingItem> items = new ArrayList<>(panels.viewItemsForCurrentView());
+        //only scheduled by a request, which always asks for the stats panel
+        int executed = 1;
+        if (!itemIds.isEmpty()) {
+            panels.rebuildFlippingPanel(itemIds, items);
+            executed++;
+        }
+        panels.rebuildStatsPanel(items);
+
+        synchronized (lock) {
+            rebuildsExecuted += executed;
+            log.debug("{} panel rebuilds requested, {} executed", rebuildsRequested, rebuildsExecuted);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.flippingutilities.controller;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one thread that applies offers to the trade state. The client thread only captures an offer and publishes it
+ * here, so a burst of GE activity doesn't hold up game ticks with screening, history updates and the rebuilds that
+ * follow them.
+ * <p>
+ * Work runs in the order it was published, so a slot's offers are always applied in the order they came in. Other
+ * changes to the trade state that could interleave with an offer (changes made by other clients, offers added from
+ * the GE history tab, offers deleted from the panels) are published here as well, so the offers never have a second
+ * writer to race with. So is storing the trades, which snapshots them.
+ * <p>
+ * The buffer is a bounded ring buffer. If the writer falls that far behind, publishing waits for room rather than
+ * growing the buffer without limit or dropping offers, which would lose trades.
+ */
+@Slf4j
+class TradeStateWriter {
+    private static final int CAPACITY = 1024;
+
+    private final BlockingQueue<Runnable> buffer = new ArrayBlockingQueue<>(CAPACITY);
+    private final Thread thread;
+    private volatile boolean closed;
+
+    TradeStateWriter() {
+        thread = new Thread(this::run, "flipping-utilities-trade-state");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void publish(Runnable work) {
+        if (closed) {
+            //nothing is left to race with once the writer has stopped
+            work.run();
+            return;
+        }
+        if (buffer.offer(work)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Uninterruptibles.putUninterruptibly(buffer, work);
+        log.debug("waited {}ms for room to publish to the trade state writer", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Waits for everything published so far to be applied.
+     *
+     * @return false if it wasn't applied within the timeout
+     */
+    boolean drain(long timeoutMillis) {
+        if (closed || Thread.currentThread() == thread) {
+            return true;
+        }
+        CountDownLatch drained = new CountDownLatch(1);
+        publish(drained::countDown);
+        try {
+            return drained.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Applies whatever is still buffered and stops the writer.
+     */
+    void close(long timeoutMillis) {
+        if (!drain(timeoutMillis)) {
+            log.warn("not everything published to the trade state writer was applied before the timeout");
+        }
+        closed = true;
+        thread.interrupt();
+    }
+
+    private void run() {
+        while (true) {
+            Runnable work;
+            try {
+                work = buffer.take();
+            } catch (InterruptedException e) {
+                if (closed) {
+                    //anything published between the drain and the close
+                    while ((work = buffer.poll()) != null) {
+                        apply(work);
+                    }
+                    return;
+                }
+                continue;
+            }
+            apply(work);
+        }
+    }
+
+    private void apply(Runnable work) {
+        try {
+            work.run();
+        } catch (Exception e) {
+            //one bad offer mustn't stop the offers after it from being applied
+            log.warn("Failed to apply a change to the trade state", e);
+        }
+    }
+}
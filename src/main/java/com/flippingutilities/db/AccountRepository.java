@@ -40,7 +40,15 @@ public class AccountRepository {
 
     private static final String INSERT_LAST_OFFER_SQL = "INSERT OR REPLACE INTO last_offer (account_name, slot, offer_event_uuid) VALUES (?, ?, ?)";
 
-    private static final String SELECT_LAST_OFFERS_SQL = "SELECT slot, offer_event_uuid FROM last_offer WHERE account_name = ?";
+    private static final String SELECT_LAST_OFFERS_SQL = "SELECT lo.slot AS last_offer_slot, oe.* FROM last_offer lo "
+            +
+            "JOIN offer_event oe ON oe.uuid = lo.offer_event_uuid WHERE lo.account_name = ?";
+
+    private static final String SAVE_JOURNAL_SEQUENCE_SQL = "INSERT OR REPLACE INTO offer_journal_checkpoint (account_name, sequence) VALUES (?, ?)";
+
+    private static final String SELECT_JOURNAL_SEQUENCES_SQL = "SELECT account_name, sequence FROM offer_journal_checkpoint";
+
+    private static final String JOURNAL_CHECKPOINT_TABLE_EXISTS_SQL = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'offer_journal_checkpoint'";
 
     private final DatabaseConnectionManager connectionManager;
     private final FlippingItemRepository flippingItemRepository;
@@ -105,7 +113,7 @@ public class AccountRepository {
 
     public List<String> findAllAccountNames() throws SQLException {
         List<String> names = new ArrayList<>();
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_ALL_SQL);
                 ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
@@ -116,28 +124,47 @@ public class AccountRepository {
     }
 
     public AccountData findByName(String displayName) throws SQLException {
-        Connection conn = connectionManager.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_NAME_SQL)) {
-            stmt.setString(1, displayName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return mapResultSetToAccountData(rs, displayName);
+        return findByName(displayName, null);
+    }
+
+    /**
+     * Same as {@link #findByName(String)}, but takes the account's trades from its snapshot if it has a current one.
+     * The account is read in one read transaction on a read connection of its own, so all of its rows are read from
+     * the same consistent snapshot and sqlite doesn't have to acquire a lock per query. Its trades are loaded with a fixed number of queries (see
+     * {@link FlippingItemRepository#findByAccountNameWithOffers}).
+     */
+    public AccountData findByName(String displayName, AccountSnapshotStore snapshots) throws SQLException {
+        long start = System.currentTimeMillis();
+        AccountData data = connectionManager.readOnOwnConnection(() -> {
+            Connection conn = connectionManager.getReadConnection();
+            conn.setAutoCommit(false);
+            try {
+                AccountData found = null;
+                try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_NAME_SQL)) {
+                    stmt.setString(1, displayName);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            found = mapResultSetToAccountData(rs, displayName, snapshots);
+                        }
+                    }
                 }
+                conn.commit();
+                return found;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
             }
-        }
-        return null;
-    }
+        });
 
-    public Map<String, AccountData> findAll() throws SQLException {
-        Map<String, AccountData> accounts = new HashMap<>();
-        List<String> names = findAllAccountNames();
-        for (String name : names) {
-            AccountData data = findByName(name);
-            if (data != null) {
-                accounts.put(name, data);
+        if (data != null) {
+            int offersRead = 0;
+            for (FlippingItem item : data.getTrades()) {
+                offersRead += item.getHistory().getCompressedOfferEvents().size();
             }
+            log.info("Loaded {} ({} items, {} offers) in {} ms", displayName, data.getTrades().size(), offersRead,
+                    System.currentTimeMillis() - start);
         }
-        return accounts;
+        return data;
     }
 
     public void delete(String displayName) throws SQLException {
@@ -154,33 +181,64 @@ public class AccountRepository {
             for (Map.Entry<Integer, OfferEvent> entry : lastOffers.entrySet()) {
                 stmt.setString(1, displayName);
                 stmt.setInt(2, entry.getKey());
-                stmt.setString(3, entry.getValue().getUuid());
+                stmt.setObject(3, OfferEventRepository.encodeUuid(entry.getValue().getUuid()));
                 stmt.addBatch();
             }
             stmt.executeBatch();
         }
     }
 
+    /**
+     * Records that the account has been stored up to the sequence of the offer journal, see {@link OfferJournal}.
+     * Has to be in the same transaction as the store itself.
+     */
+    public void saveJournalSequence(String displayName, long sequence) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(SAVE_JOURNAL_SEQUENCE_SQL)) {
+            stmt.setString(1, displayName);
+            stmt.setLong(2, sequence);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return how far into the offer journal each account has been stored. Empty if the table hasn't been made
+     * yet by its migration, in which case nothing has been stored from the journal either.
+     */
+    public Map<String, Long> findJournalSequences() throws SQLException {
+        Map<String, Long> sequences = new HashMap<>();
+        Connection conn = connectionManager.getReadConnection();
+        try (PreparedStatement exists = conn.prepareStatement(JOURNAL_CHECKPOINT_TABLE_EXISTS_SQL);
+                ResultSet rs = exists.executeQuery()) {
+            if (!rs.next()) {
+                return sequences;
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_JOURNAL_SEQUENCES_SQL);
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                sequences.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return sequences;
+    }
+
     public Map<Integer, OfferEvent> loadLastOffers(String displayName) throws SQLException {
         Map<Integer, OfferEvent> lastOffers = new HashMap<>();
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_LAST_OFFERS_SQL)) {
             stmt.setString(1, displayName);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    int slot = rs.getInt("slot");
-                    String uuid = rs.getString("offer_event_uuid");
-                    OfferEvent offer = offerEventRepository.findByUuid(uuid);
-                    if (offer != null) {
-                        lastOffers.put(slot, offer);
-                    }
+                    lastOffers.put(rs.getInt("last_offer_slot"), offerEventRepository.mapResultSetToOfferEvent(rs));
                 }
             }
         }
         return lastOffers;
     }
 
-    private AccountData mapResultSetToAccountData(ResultSet rs, String displayName) throws SQLException {
+    private AccountData mapResultSetToAccountData(ResultSet rs, String displayName, AccountSnapshotStore snapshots)
+            throws SQLException {
         AccountData data = new AccountData();
 
         String sessionStartStr = rs.getString("session_start_time");
@@ -205,13 +263,20 @@ public class AccountRepository {
             data.setLastModifiedAt(Instant.parse(lastModifiedStr));
         }
 
-        List<FlippingItem> trades = flippingItemRepository.findByAccountNameWithOffers(displayName);
+        List<FlippingItem> trades = snapshots != null ? snapshots.read(displayName, data.getLastStoredAt()) : null;
+        if (trades == null) {
+            trades = flippingItemRepository.findByAccountNameWithOffers(displayName);
+        }
         data.setTrades(trades);
 
         Map<Integer, OfferEvent> lastOffers = loadLastOffers(displayName);
         data.setLastOffers(lastOffers);
 
-        List<RecipeFlipGroup> recipeFlipGroups = recipeFlipRepository.findGroupsByAccountName(displayName);
+        Map<String, OfferEvent> offersByUuid = new HashMap<>();
+        for (FlippingItem item : trades) {
+            item.getHistory().getCompressedOfferEvents().forEach(o -> offersByUuid.put(o.getUuid(), o));
+        }
+        List<RecipeFlipGroup> recipeFlipGroups = recipeFlipRepository.findGroupsByAccountName(displayName, offersByUuid);
         data.setRecipeFlipGroups(recipeFlipGroups);
 
         return data;
@@ -0,0 +1,303 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferRollup;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a binary copy of each account's trades, written when the client shuts down, so that the next start can map
+ * the file and build the trade list straight from it instead of querying and parsing every offer. The offers come
+ * out of it with their names and who made them already filled in, so they don't have to be hydrated again either.
+ * <p>
+ * A snapshot holds what was in the database for the account when it was written and is stamped with the account's
+ * last_stored_at. It is only used if that is still the account's last_stored_at, which every store changes, so a
+ * store made by another client, or one that never got to write a new snapshot because of a crash, makes it stale and
+ * the account is loaded from the database as usual. Anything else that changes an account's offers without storing
+ * it (archiving them, for one) has to {@link #delete} its snapshot.
+ */
+@Slf4j
+@Singleton
+public class AccountSnapshotStore {
+
+    private static final int MAGIC = 0x46555353;
+    //bump when the layout changes, snapshots of other versions are ignored
+    private static final int VERSION = 1;
+    private static final String FILE_SUFFIX = ".snap";
+
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final byte NO_UUID = 0;
+    private static final byte CANONICAL_UUID = 1;
+    private static final byte RAW_UUID = 2;
+    private static final byte BUY = 1;
+    private static final byte BEFORE_LOGIN = 1 << 1;
+
+    private final File directory;
+    //the stamp of each snapshot known to be current, so unchanged accounts aren't written again at shutdown
+    private final Map<String, Instant> currentStamps = new ConcurrentHashMap<>();
+
+    @Inject
+    public AccountSnapshotStore() {
+        this(DatabaseConstants.SNAPSHOT_DIRECTORY);
+    }
+
+    AccountSnapshotStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param lastStoredAt the account's last_stored_at in the database
+     * @return the account's trades, or null if there is no usable snapshot for them
+     */
+    public List<FlippingItem> read(String displayName, Instant lastStoredAt) {
+        File file = fileFor(displayName);
+        if (lastStoredAt == null || !file.exists()) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                log.debug("the snapshot of {} is from another version, loading it from the database", displayName);
+                return null;
+            }
+            Instant stamp = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+            if (!stamp.equals(lastStoredAt)) {
+                log.debug("the snapshot of {} is stale, loading it from the database", displayName);
+                return null;
+            }
+            List<FlippingItem> items = readItems(buffer);
+            currentStamps.put(displayName, stamp);
+            log.debug("loaded {} items of {} from its snapshot in {}ms", items.size(), displayName,
+                    System.currentTimeMillis() - start);
+            return items;
+        } catch (IOException | RuntimeException | SQLException e) {
+            //a damaged snapshot only costs a load from the database
+            log.warn("Failed to read the snapshot of {}, loading it from the database", displayName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the account's trades, unless the snapshot on disk already has them. The account must have been
+     * stored with nothing changed since, so that its trades are the same as what is in the database.
+     */
+    public void write(String displayName, AccountData data) {
+        Instant stamp = data.getLastStoredAt();
+        if (stamp == null || stamp.equals(currentStamps.get(displayName))) {
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            log.warn("Failed to create the snapshot directory {}", directory);
+            return;
+        }
+        File file = fileFor(displayName);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp.getEpochSecond());
+                out.writeInt(stamp.getNano());
+                writeItems(out, data.getTrades());
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            currentStamps.put(displayName, stamp);
+        } catch (IOException e) {
+            log.warn("Failed to write the snapshot of {}", displayName, e);
+            temp.delete();
+        }
+    }
+
+    public void delete(String displayName) {
+        currentStamps.remove(displayName);
+        File file = fileFor(displayName);
+        if (file.exists() && !file.delete()) {
+            log.warn("Failed to delete the snapshot of {}", displayName);
+        }
+    }
+
+    private File fileFor(String displayName) {
+        //display names can hold characters that aren't allowed in file names
+        StringBuilder name = new StringBuilder();
+        for (byte b : displayName.getBytes(StandardCharsets.UTF_8)) {
+            name.append(String.format("%02x", b));
+        }
+        return new File(directory, name.append(FILE_SUFFIX).toString());
+    }
+
+    private void writeItems(DataOutputStream out, List<FlippingItem> items) throws IOException {
+        out.writeInt(items.size());
+        for (FlippingItem item : items) {
+            out.writeInt(item.getItemId());
+            writeString(out, item.getItemName());
+            out.writeInt(item.getTotalGELimit());
+            writeString(out, item.getFlippedBy());
+            out.writeBoolean(Boolean.TRUE.equals(item.getValidFlippingPanelItem()));
+            out.writeBoolean(item.isFavorite());
+            writeString(out, item.getFavoriteCode());
+
+            List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
+            out.writeInt(offers.size());
+            for (OfferEvent offer : offers) {
+                writeOffer(out, offer);
+            }
+
+            List<OfferRollup> rollups = item.getHistory().getArchivedRollups(Instant.EPOCH);
+            out.writeInt(rollups.size());
+            for (OfferRollup rollup : rollups) {
+                out.writeLong(rollup.getDay());
+                out.writeLong(rollup.getBuyQuantity());
+                out.writeLong(rollup.getBuyValue());
+                out.writeLong(rollup.getSellQuantity());
+                out.writeLong(rollup.getSellValue());
+                out.writeLong(rollup.getTaxPaid());
+                out.writeInt(rollup.getFlipCount());
+            }
+        }
+    }
+
+    private void writeOffer(DataOutputStream out, OfferEvent offer) throws IOException {
+        Object uuid = OfferEventRepository.encodeUuid(offer.getUuid());
+        if (uuid == null) {
+            out.writeByte(NO_UUID);
+        } else if (uuid instanceof byte[]) {
+            out.writeByte(CANONICAL_UUID);
+            out.write((byte[]) uuid);
+        } else {
+            out.writeByte(RAW_UUID);
+            writeString(out, offer.getUuid());
+        }
+        out.writeByte((offer.isBuy() ? BUY : 0) | (offer.isBeforeLogin() ? BEFORE_LOGIN : 0));
+        out.writeInt(offer.getItemId());
+        out.writeInt(offer.getCurrentQuantityInTrade());
+        out.writeInt(offer.getPreTaxPrice());
+        out.writeLong(offer.getTime().toEpochMilli());
+        out.writeInt(offer.getSlot());
+        out.writeByte(OfferEventRepository.encodeState(offer.getState()));
+        out.writeInt(offer.getTickArrivedAt());
+        out.writeInt(offer.getTicksSinceFirstOffer());
+        out.writeInt(offer.getTotalQuantityInTrade());
+        out.writeLong(offer.getTradeStartedAt() != null ? offer.getTradeStartedAt().toEpochMilli() : NO_TIME);
+    }
+
+    private List<FlippingItem> readItems(ByteBuffer in) throws SQLException {
+        int itemCount = in.getInt();
+        List<FlippingItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            FlippingItem item = new FlippingItem(in.getInt(), readString(in), in.getInt(), readString(in));
+            item.setValidFlippingPanelItem(in.get() != 0);
+            item.setFavorite(in.get() != 0);
+            item.setFavoriteCode(readString(in));
+
+            int offerCount = in.getInt();
+            List<OfferEvent> offers = new ArrayList<>(offerCount);
+            for (int j = 0; j < offerCount; j++) {
+                offers.add(readOffer(in, item));
+            }
+            int rollupCount = in.getInt();
+            List<OfferRollup> rollups = new ArrayList<>(rollupCount);
+            for (int j = 0; j < rollupCount; j++) {
+                rollups.add(new OfferRollup(in.getLong(), in.getLong(), in.getLong(), in.getLong(), in.getLong(),
+                        in.getLong(), in.getInt()));
+            }
+
+            //a fresh history, so the item isn't seen as changed
+            HistoryManager history = new HistoryManager();
+            history.setCompressedOfferEvents(offers);
+            history.setArchivedRollups(rollups);
+            item.setHistory(history);
+            item.setOffersHydrated(true);
+            items.add(item);
+        }
+        if (in.hasRemaining()) {
+            throw new BufferUnderflowException();
+        }
+        return items;
+    }
+
+    private OfferEvent readOffer(ByteBuffer in, FlippingItem item) throws SQLException {
+        String uuid;
+        byte uuidKind = in.get();
+        if (uuidKind == CANONICAL_UUID) {
+            uuid = new UUID(in.getLong(), in.getLong()).toString();
+        } else if (uuidKind == RAW_UUID) {
+            uuid = readString(in);
+        } else {
+            uuid = null;
+        }
+        byte flags = in.get();
+        int itemId = in.getInt();
+        int currentQuantity = in.getInt();
+        int price = in.getInt();
+        Instant time = Instant.ofEpochMilli(in.getLong());
+        int slot = in.getInt();
+        int state = in.get();
+        int tickArrivedAt = in.getInt();
+        int ticksSinceFirstOffer = in.getInt();
+        int totalQuantity = in.getInt();
+        long tradeStartedAt = in.getLong();
+        return new OfferEvent(
+                uuid,
+                (flags & BUY) != 0,
+                itemId,
+                currentQuantity,
+                price,
+                time,
+                slot,
+                OfferEventRepository.decodeState(state),
+                tickArrivedAt,
+                ticksSinceFirstOffer,
+                totalQuantity,
+                tradeStartedAt == NO_TIME ? null : Instant.ofEpochMilli(tradeStartedAt),
+                (flags & BEFORE_LOGIN) != 0,
+                item.getFlippedBy(),
+                item.getItemName(),
+                0,
+                0);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
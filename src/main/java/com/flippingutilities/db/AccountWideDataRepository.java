@@ -56,7 +56,7 @@ public class AccountWideDataRepository {
     }
 
     public AccountWideData load() throws SQLException {
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_SQL)) {
             stmt.setInt(1, SINGLETON_ID);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -0,0 +1,59 @@
+package com.flippingutilities.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A schema version that has to rewrite a lot of data. The schema version's sql file (if it has one) is run first,
+ * then the data is migrated in batches, each one committed together with a checkpoint saying how far the migration
+ * has got. If the client is closed part way through, the next start carries on from the last checkpoint. Once there
+ * is nothing left, {@link #finish} runs in the same transaction that records the new schema version.
+ * <p>
+ * These migrations run on a background thread after the plugin has started, so until {@link #finish} has run the
+ * plugin is still reading the old schema and the migration must leave it readable.
+ */
+interface BatchedMigration {
+
+    int getVersion();
+
+    String getDescription();
+
+    /**
+     * How much work is left after the checkpoint, in the same units {@link #migrateBatch} returns. Only used to
+     * report progress.
+     */
+    long countRemaining(Connection conn, long checkpoint) throws SQLException;
+
+    /**
+     * Migrates the next batch after the checkpoint, which starts off at 0, and moves the checkpoint past it.
+     *
+     * @return how much was migrated, 0 once there is nothing left
+     */
+    int migrateBatch(Connection conn, Checkpoint checkpoint) throws SQLException;
+
+    void finish(Connection conn) throws SQLException;
+
+    /**
+     * Whether {@link #finish} has to run with foreign keys turned off, for example because it drops a table other
+     * tables point at.
+     */
+    default boolean finishesWithoutForeignKeys() {
+        return false;
+    }
+
+    class Checkpoint {
+        private long value;
+
+        Checkpoint(long value) {
+            this.value = value;
+        }
+
+        long get() {
+            return value;
+        }
+
+        void set(long value) {
+            this.value = value;
+        }
+    }
+}
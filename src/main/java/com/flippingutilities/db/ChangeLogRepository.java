@@ -0,0 +1,205 @@
+package com.flippingutilities.db;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The change log of V6__change_log.sql. Every store records which of the account's items it changed or removed (or
+ * that it changed the account wide data) in the same transaction, tagged with the id of the client that made it.
+ * Other clients read the rows after their cursor and only reload what the rows name, see
+ * {@link TradePersister#pollChanges()}.
+ * <p>
+ * The log only has to cover the time between two polls of the running clients, as a client that starts loads
+ * everything from the tables anyway. Rows are deleted once every running client has read past them, or after a day
+ * regardless, and a client that hasn't moved its cursor in a day is taken to be gone.
+ */
+@Slf4j
+@Singleton
+public class ChangeLogRepository {
+
+    public enum Kind {
+        ITEM_CHANGED,
+        ITEM_REMOVED,
+        ACCOUNT_WIDE_CHANGED
+    }
+
+    @Value
+    public static class Change {
+        long seq;
+        String clientId;
+        Kind kind;
+        //null for ACCOUNT_WIDE_CHANGED
+        String accountName;
+        int itemId;
+    }
+
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    private static final String INSERT_SQL = "INSERT INTO change_log (client_id, kind, account_name, item_id, changed_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_AFTER_SQL = "SELECT * FROM change_log WHERE seq > ? ORDER BY seq ASC LIMIT ?";
+
+    private static final String SELECT_LATEST_SEQ_SQL = "SELECT MAX(seq) FROM change_log";
+
+    private static final String SAVE_CURSOR_SQL = "INSERT OR REPLACE INTO change_log_cursor (client_id, seq, updated_at) VALUES (?, ?, ?)";
+
+    private static final String DELETE_CURSOR_SQL = "DELETE FROM change_log_cursor WHERE client_id = ?";
+
+    private static final String DELETE_GONE_CURSORS_SQL = "DELETE FROM change_log_cursor WHERE updated_at < ?";
+
+    private static final String DELETE_READ_SQL = "DELETE FROM change_log WHERE changed_at < ? "
+            +
+            "OR seq <= (SELECT MIN(seq) FROM change_log_cursor)";
+
+    private static final String TABLE_EXISTS_SQL = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'change_log'";
+
+    private final DatabaseConnectionManager connectionManager;
+    //the table is made by a migration that may still be running in the background
+    private volatile boolean tableExists;
+
+    @Inject
+    public ChangeLogRepository(DatabaseConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Has to be in the same transaction as the store that made the changes.
+     */
+    public void insertAll(String clientId, Kind kind, String accountName, Collection<Integer> itemIds) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        if (itemIds.isEmpty() || !hasTable(conn)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            for (int itemId : itemIds) {
+                stmt.setString(1, clientId);
+                stmt.setInt(2, kind.ordinal());
+                stmt.setString(3, accountName);
+                stmt.setInt(4, itemId);
+                stmt.setLong(5, now);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    public void insertAccountWideChange(String clientId) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        if (!hasTable(conn)) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setString(1, clientId);
+            stmt.setInt(2, Kind.ACCOUNT_WIDE_CHANGED.ordinal());
+            stmt.setNull(3, java.sql.Types.VARCHAR);
+            stmt.setNull(4, java.sql.Types.INTEGER);
+            stmt.setLong(5, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return at most limit changes after the seq, including the ones made by this client
+     */
+    public List<Change> findAfter(long seq, int limit) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        Connection conn = connectionManager.getReadConnection();
+        if (!hasTable(conn)) {
+            return changes;
+        }
+        Kind[] kinds = Kind.values();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_AFTER_SQL)) {
+            stmt.setLong(1, seq);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int kind = rs.getInt("kind");
+                    if (kind < 0 || kind >= kinds.length) {
+                        //written by a newer version of the plugin
+                        continue;
+                    }
+                    changes.add(new Change(
+                            rs.getLong("seq"),
+                            rs.getString("client_id"),
+                            kinds[kind],
+                            rs.getString("account_name"),
+                            rs.getInt("item_id")));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return the seq of the newest change, which is where a client that has just loaded everything starts from
+     */
+    public long findLatestSeq() throws SQLException {
+        Connection conn = connectionManager.getReadConnection();
+        if (!hasTable(conn)) {
+            return 0;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_LATEST_SEQ_SQL);
+                ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Moves the client's cursor and deletes the changes every running client has read.
+     */
+    public void saveCursor(String clientId, long seq) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        if (!hasTable(conn)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (PreparedStatement save = conn.prepareStatement(SAVE_CURSOR_SQL);
+                PreparedStatement deleteGone = conn.prepareStatement(DELETE_GONE_CURSORS_SQL);
+                PreparedStatement deleteRead = conn.prepareStatement(DELETE_READ_SQL)) {
+            save.setString(1, clientId);
+            save.setLong(2, seq);
+            save.setLong(3, now);
+            save.executeUpdate();
+            deleteGone.setLong(1, now - RETENTION_MILLIS);
+            deleteGone.executeUpdate();
+            deleteRead.setLong(1, now - RETENTION_MILLIS);
+            int deleted = deleteRead.executeUpdate();
+            if (deleted > 0) {
+                log.debug("deleted {} changes every client has read", deleted);
+            }
+        }
+    }
+
+    public void deleteCursor(String clientId) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        if (!hasTable(conn)) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_CURSOR_SQL)) {
+            stmt.setString(1, clientId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private boolean hasTable(Connection conn) throws SQLException {
+        if (!tableExists) {
+            try (PreparedStatement stmt = conn.prepareStatement(TABLE_EXISTS_SQL);
+                    ResultSet rs = stmt.executeQuery()) {
+                tableExists = rs.next();
+            }
+        }
+        return tableExists;
+    }
+}
@@ -0,0 +1,173 @@
+package com.flippingutilities.db;
+
+import lombok.extern.slf4j.Slf4j;
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Moves the offers over to the compact table made by V2__compact_offer_event.sql, a chunk of rows at a time with the
+ * checkpoint being the rowid of the last row copied. Once every row has been copied the new table replaces the old
+ * one. While the copy runs the plugin keeps reading the old table, which {@link OfferEventRepository} can still read.
+ */
+@Slf4j
+class CompactOfferEventMigration implements BatchedMigration {
+
+    private static final int CHUNK_SIZE = 10_000;
+
+    private static final String COUNT_REMAINING_SQL = "SELECT COUNT(*) FROM offer_event WHERE rowid > ?";
+
+    private static final String SELECT_CHUNK_SQL = "SELECT rowid AS row_id, * FROM offer_event WHERE rowid > ? ORDER BY rowid LIMIT ?";
+
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO offer_event_v2 (uuid, flipping_item_id, is_buy, item_id, "
+            +
+            "current_quantity_in_trade, price, time, slot, state, tick_arrived_at, ticks_since_first_offer, " +
+            "total_quantity_in_trade, trade_started_at, before_login) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SELECT_REFERENCED_UUIDS_SQL = "SELECT offer_event_uuid FROM last_offer "
+            +
+            "UNION SELECT offer_event_uuid FROM partial_offer";
+
+    private static final String UPDATE_LAST_OFFER_UUID_SQL = "UPDATE last_offer SET offer_event_uuid = ? WHERE offer_event_uuid = ?";
+
+    private static final String UPDATE_PARTIAL_OFFER_UUID_SQL = "UPDATE partial_offer SET offer_event_uuid = ? WHERE offer_event_uuid = ?";
+
+    @Override
+    public int getVersion() {
+        return 2;
+    }
+
+    @Override
+    public String getDescription() {
+        return "compacting offer events";
+    }
+
+    @Override
+    public long countRemaining(Connection conn, long checkpoint) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(COUNT_REMAINING_SQL)) {
+            stmt.setLong(1, checkpoint);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    @Override
+    public int migrateBatch(Connection conn, Checkpoint checkpoint) throws SQLException {
+        int rowsRead = 0;
+        try (PreparedStatement select = conn.prepareStatement(SELECT_CHUNK_SQL);
+                PreparedStatement insert = conn.prepareStatement(INSERT_SQL)) {
+            select.setLong(1, checkpoint.get());
+            select.setInt(2, CHUNK_SIZE);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    rowsRead++;
+                    checkpoint.set(rs.getLong("row_id"));
+                    if (bindRow(insert, rs)) {
+                        insert.addBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+        return rowsRead;
+    }
+
+    /**
+     * Swaps the new table in for the old one. Foreign keys have to be off, otherwise dropping the old table would
+     * cascade to the last offers and partial offers pointing at it.
+     */
+    @Override
+    public void finish(Connection conn) throws SQLException {
+        convertReferencedUuids(conn);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE offer_event");
+            stmt.execute("ALTER TABLE offer_event_v2 RENAME TO offer_event");
+        }
+    }
+
+    @Override
+    public boolean finishesWithoutForeignKeys() {
+        return true;
+    }
+
+    /**
+     * last_offer and partial_offer point at offers by uuid, so their uuids need the same encoding as the offers'.
+     * Their columns are declared as TEXT, which SQLite happily stores blobs in.
+     */
+    private void convertReferencedUuids(Connection conn) throws SQLException {
+        List<String> uuids = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(SELECT_REFERENCED_UUIDS_SQL)) {
+            while (rs.next()) {
+                uuids.add(rs.getString(1));
+            }
+        }
+
+        try (PreparedStatement lastOffers = conn.prepareStatement(UPDATE_LAST_OFFER_UUID_SQL);
+                PreparedStatement partialOffers = conn.prepareStatement(UPDATE_PARTIAL_OFFER_UUID_SQL)) {
+            for (String uuid : uuids) {
+                Object encoded = OfferEventRepository.encodeUuid(uuid);
+                if (!(encoded instanceof byte[])) {
+                    continue;
+                }
+                for (PreparedStatement stmt : new PreparedStatement[]{lastOffers, partialOffers}) {
+                    stmt.setObject(1, encoded);
+                    stmt.setString(2, uuid);
+                    stmt.addBatch();
+                }
+            }
+            lastOffers.executeBatch();
+            partialOffers.executeBatch();
+        }
+    }
+
+    /**
+     * @return false if the row can't be read, in which case it is left behind
+     */
+    private boolean bindRow(PreparedStatement insert, ResultSet rs) throws SQLException {
+        String uuid = rs.getString("uuid");
+        long time;
+        Long tradeStartedAt;
+        GrandExchangeOfferState state;
+        try {
+            time = Instant.parse(rs.getString("time")).toEpochMilli();
+            String tradeStartedAtStr = rs.getString("trade_started_at");
+            tradeStartedAt = tradeStartedAtStr != null ? Instant.parse(tradeStartedAtStr).toEpochMilli() : null;
+            state = GrandExchangeOfferState.valueOf(rs.getString("state"));
+        } catch (DateTimeParseException | IllegalArgumentException | NullPointerException e) {
+            log.warn("skipping offer event {} as it can't be read: {}", uuid, e.toString());
+            return false;
+        }
+
+        //old offers could be stored before they were given uuids (see HistoryManager.setOfferIds)
+        insert.setObject(1, OfferEventRepository.encodeUuid(uuid != null ? uuid : UUID.randomUUID().toString()));
+        insert.setLong(2, rs.getLong("flipping_item_id"));
+        insert.setInt(3, rs.getInt("is_buy"));
+        insert.setInt(4, rs.getInt("item_id"));
+        insert.setInt(5, rs.getInt("current_quantity_in_trade"));
+        insert.setInt(6, rs.getInt("price"));
+        insert.setLong(7, time);
+        insert.setInt(8, rs.getInt("slot"));
+        insert.setInt(9, OfferEventRepository.encodeState(state));
+        insert.setInt(10, rs.getInt("tick_arrived_at"));
+        insert.setInt(11, rs.getInt("ticks_since_first_offer"));
+        insert.setInt(12, rs.getInt("total_quantity_in_trade"));
+        if (tradeStartedAt != null) {
+            insert.setLong(13, tradeStartedAt);
+        } else {
+            insert.setNull(13, java.sql.Types.INTEGER);
+        }
+        insert.setInt(14, rs.getInt("before_login"));
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+package com.flippingutilities.db;
+
+import lombok.extern.slf4j.Slf4j;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backs up the whole database with SQLite's online backup API, on a background thread and a connection of its own.
+ * The pages are copied a chunk at a time with a pause after each chunk, so the backup never holds up the client
+ * or the writer, and in WAL mode the writer can keep committing while it runs.
+ * <p>
+ * Each backup is a generation: a copy of the database in {@link DatabaseConstants#BACKUP_DIRECTORY} next to a file
+ * with its SHA-256. A copy is only kept if SQLite's quick check passes on it, and generations whose checksum no
+ * longer matches are deleted, so the ones left are all usable. At most {@link #MAX_GENERATIONS} are kept, and a new
+ * one is only made once the newest is a day old and the database has changed since.
+ */
+@Slf4j
+@Singleton
+public class DatabaseBackupManager {
+
+    private static final int MAX_GENERATIONS = 3;
+    private static final long BACKUP_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+    //so the backup doesn't compete with loading the accounts on startup
+    private static final long STARTUP_DELAY_SECONDS = 60;
+    //256 pages of the default 4KiB is 1MiB per step
+    private static final int PAGES_PER_STEP = 256;
+    private static final long PAUSE_BETWEEN_STEPS_MILLIS = 10;
+    //how long to wait, and how many times, when a step finds the database locked
+    private static final int BUSY_SLEEP_MILLIS = 100;
+    private static final int BUSY_RETRIES = 50;
+
+    private static final String FILE_PREFIX = "flipping-";
+    private static final String FILE_SUFFIX = ".db";
+    private static final String CHECKSUM_SUFFIX = ".sha256";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final DatabaseConnectionManager connectionManager;
+    private ScheduledExecutorService executor;
+
+    @Inject
+    public DatabaseBackupManager(DatabaseConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    /**
+     * Backs the database up in the background after a short delay, if a backup is due.
+     *
+     * @param onBackedUp run on the backup thread once there is a verified backup, whether it was made now or before
+     */
+    public synchronized void scheduleBackup(Runnable onBackedUp) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "flipping-utilities-db-backup");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        }
+        executor.schedule(() -> {
+            if (backupIfDue()) {
+                onBackedUp.run();
+            }
+        }, STARTUP_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return whether there is a verified backup afterwards
+     */
+    private boolean backupIfDue() {
+        try {
+            List<File> generations = verifiedGenerations();
+            File newest = generations.isEmpty() ? null : generations.get(0);
+            if (newest != null && !isDue(newest)) {
+                log.debug("not backing up the database, the last backup {} is recent enough", newest.getName());
+                return true;
+            }
+            File backup = backup();
+            generations.add(0, backup);
+            deleteOldGenerations(generations);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to back up the database", e);
+            return false;
+        }
+    }
+
+    private boolean isDue(File newest) {
+        if (System.currentTimeMillis() - newest.lastModified() < BACKUP_INTERVAL_MILLIS) {
+            return false;
+        }
+        File wal = new File(DatabaseConstants.DATABASE_DIRECTORY, DatabaseConstants.DATABASE_FILE_NAME + "-wal");
+        long lastChanged = Math.max(DatabaseConstants.DATABASE_FILE.lastModified(), wal.lastModified());
+        return lastChanged > newest.lastModified();
+    }
+
+    /**
+     * Copies the database to a temporary file, checks the copy, and only then gives it its generation's name.
+     */
+    private File backup() throws SQLException, IOException {
+        if (!DatabaseConstants.BACKUP_DIRECTORY.exists() && !DatabaseConstants.BACKUP_DIRECTORY.mkdirs()) {
+            throw new IOException("Failed to create backup directory " + DatabaseConstants.BACKUP_DIRECTORY);
+        }
+        String name = FILE_PREFIX + LocalDateTime.now().format(FILE_TIME_FORMAT) + FILE_SUFFIX;
+        File backup = new File(DatabaseConstants.BACKUP_DIRECTORY, name);
+        File temp = new File(DatabaseConstants.BACKUP_DIRECTORY, name + TEMP_SUFFIX);
+        Files.deleteIfExists(temp.toPath());
+
+        long start = System.currentTimeMillis();
+        try {
+            connectionManager.runOnOwnConnection(() -> copyDatabase(connectionManager.getConnection(), temp));
+            if (!passesQuickCheck(temp)) {
+                throw new IOException("The backup of the database failed its quick check");
+            }
+            String checksum = checksum(temp);
+            Files.move(temp.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.write(checksumFile(backup).toPath(), checksum.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        log.info("Backed up the database to {} in {}ms", backup.getName(), System.currentTimeMillis() - start);
+        return backup;
+    }
+
+    private void copyDatabase(Connection conn, File destination) throws SQLException {
+        DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+        int result = db.backup("main", destination.getAbsolutePath(), (remaining, pageCount) -> {
+            if (remaining > 0) {
+                try {
+                    Thread.sleep(PAUSE_BETWEEN_STEPS_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, BUSY_SLEEP_MILLIS, BUSY_RETRIES, PAGES_PER_STEP);
+        if (result != 0) {
+            throw new SQLException("Backing up the database failed with result code " + result);
+        }
+    }
+
+    private boolean passesQuickCheck(File database) throws SQLException {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath());
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("PRAGMA quick_check")) {
+            return rs.next() && "ok".equals(rs.getString(1));
+        }
+    }
+
+    /**
+     * @return the backups whose checksum matches, newest first. The others are deleted.
+     */
+    private List<File> verifiedGenerations() {
+        File[] files = DatabaseConstants.BACKUP_DIRECTORY.listFiles(
+                (dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        List<File> generations = new ArrayList<>();
+        if (files == null) {
+            return generations;
+        }
+        //the names sort by the time they were made
+        Arrays.sort(files, Comparator.comparing(File::getName).reversed());
+        for (File file : files) {
+            if (hasValidChecksum(file)) {
+                generations.add(file);
+            } else {
+                log.warn("Deleting the database backup {} as its checksum doesn't match", file.getName());
+                delete(file);
+            }
+        }
+        return generations;
+    }
+
+    private boolean hasValidChecksum(File backup) {
+        File checksumFile = checksumFile(backup);
+        if (!checksumFile.exists()) {
+            return false;
+        }
+        try {
+            String expected = new String(Files.readAllBytes(checksumFile.toPath()), StandardCharsets.UTF_8).trim();
+            return expected.equals(checksum(backup));
+        } catch (IOException e) {
+            log.warn("Failed to read the database backup {}", backup.getName(), e);
+            return false;
+        }
+    }
+
+    private void deleteOldGenerations(List<File> generations) {
+        for (int i = MAX_GENERATIONS; i < generations.size(); i++) {
+            log.debug("Deleting the old database backup {}", generations.get(i).getName());
+            delete(generations.get(i));
+        }
+    }
+
+    private void delete(File backup) {
+        try {
+            Files.deleteIfExists(backup.toPath());
+            Files.deleteIfExists(checksumFile(backup).toPath());
+        } catch (IOException e) {
+            log.warn("Failed to delete the database backup {}", backup.getName(), e);
+        }
+    }
+
+    private static File checksumFile(File backup) {
+        return new File(backup.getParentFile(), backup.getName() + CHECKSUM_SUFFIX);
+    }
+
+    private static String checksum(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 isn't available", e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -1,54 +1,254 @@
 package com.flippingutilities.db;
 
+import com.google.common.collect.ImmutableSet;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * Hands out the two connections to the database: one for writing, which the write-behind queue's writer thread
+ * uses, and a read-only one for loading. The database runs in WAL mode so that reads see the last committed state
+ * without waiting for a write in progress to finish. Both connections cache their prepared statements, see
+ * {@link StatementCache}. The pragmas they are tuned with can be overridden with system properties, see
+ * {@link DatabaseConstants#TUNING_PROPERTY_PREFIX}.
+ */
 @Slf4j
 @Singleton
 public class DatabaseConnectionManager {
 
+    public interface ConnectionWork {
+        void run() throws SQLException, IOException;
+    }
+
+    public interface ConnectionQuery<T> {
+        T run() throws SQLException;
+    }
+
+    //the pragmas are built from these, so only the values sqlite knows are let through
+    private static final Set<String> SYNCHRONOUS_VALUES = ImmutableSet.of("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final Set<String> TEMP_STORE_VALUES = ImmutableSet.of("DEFAULT", "FILE", "MEMORY");
+
+    private final File databaseFile;
+    private final String jdbcUrl;
+    private final String synchronous;
+    private final long cacheSize;
+    private final long mmapSize;
+    private final String tempStore;
     private Connection connection;
+    private Connection readConnection;
+    //set while a thread is running work on its own connection, see runOnOwnConnection
+    private final ThreadLocal<Connection> ownConnection = new ThreadLocal<>();
+    //set while a thread is reading on its own read connection, see readOnOwnConnection
+    private final ThreadLocal<Connection> ownReadConnection = new ThreadLocal<>();
 
     @Inject
     public DatabaseConnectionManager() {
+        this(DatabaseConstants.DATABASE_FILE);
+    }
+
+    DatabaseConnectionManager(File databaseFile) {
+        this.databaseFile = databaseFile;
+        this.jdbcUrl = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
+        this.synchronous = choiceSetting("synchronous", DatabaseConstants.SYNCHRONOUS, SYNCHRONOUS_VALUES);
+        this.cacheSize = numberSetting("cache_size", DatabaseConstants.CACHE_SIZE, Long.MIN_VALUE);
+        this.mmapSize = numberSetting("mmap_size", DatabaseConstants.MMAP_SIZE, 0);
+        this.tempStore = choiceSetting("temp_store", DatabaseConstants.TEMP_STORE, TEMP_STORE_VALUES);
     }
 
-    public synchronized Connection getConnection() throws SQLException {
+    public Connection getConnection() throws SQLException {
+        Connection own = ownConnection.get();
+        if (own != null) {
+            return own;
+        }
+        return getSharedConnection();
+    }
+
+    private synchronized Connection getSharedConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
             ensureDirectoryExists();
-            connection = DriverManager.getConnection(DatabaseConstants.JDBC_URL);
-            connection.setAutoCommit(true);
-            enableForeignKeys(connection);
+            connection = openWriteConnection();
+            enableWal(connection);
         }
         return connection;
     }
 
-    public synchronized void close() {
-        if (connection == null) {
+    /**
+     * Runs the work with {@link #getConnection()} returning a connection of the calling thread's own, which is
+     * closed once the work is done. This lets several threads use the repositories at the same time without their
+     * transactions getting mixed up on the shared connection. SQLite still only lets one connection write at a time
+     * (the others wait for it, up to the busy timeout), so the work should keep its transactions short.
+     */
+    public void runOnOwnConnection(ConnectionWork work) throws SQLException, IOException {
+        if (ownConnection.get() != null) {
+            work.run();
             return;
         }
+        //the shared connection creates the database and switches it to WAL if that hasn't happened yet
+        getSharedConnection();
+        Connection conn = openWriteConnection();
+        ownConnection.set(conn);
+        try {
+            work.run();
+        } finally {
+            ownConnection.remove();
+            close(conn);
+        }
+    }
+
+    /**
+     * A connection that can only read. Reads made on it never wait behind the writer, but they also won't see
+     * the writer's uncommitted changes, so anything read as part of a write should use {@link #getConnection()}.
+     * The shared read connection is used by several threads at once, so it is always in autocommit mode. Reads
+     * that need a transaction have to be made with {@link #readOnOwnConnection}.
+     */
+    public Connection getReadConnection() throws SQLException {
+        Connection own = ownReadConnection.get();
+        if (own != null) {
+            return own;
+        }
+        return getSharedReadConnection();
+    }
+
+    private synchronized Connection getSharedReadConnection() throws SQLException {
+        if (readConnection == null || readConnection.isClosed()) {
+            readConnection = openReadConnection();
+        }
+        return readConnection;
+    }
+
+    /**
+     * Runs the query with {@link #getReadConnection()} returning a read connection of the calling thread's own,
+     * which is closed once the query is done. The query can then use a transaction without the statements other
+     * threads make on the shared read connection ending up in it.
+     */
+    public <T> T readOnOwnConnection(ConnectionQuery<T> query) throws SQLException {
+        if (ownReadConnection.get() != null) {
+            return query.run();
+        }
+        Connection conn = openReadConnection();
+        ownReadConnection.set(conn);
         try {
-            connection.close();
-            connection = null;
-            log.debug("Database connection closed");
+            return query.run();
+        } finally {
+            ownReadConnection.remove();
+            close(conn);
+        }
+    }
+
+    private Connection openReadConnection() throws SQLException {
+        //the write connection creates the database and switches it to WAL if that hasn't happened yet
+        getSharedConnection();
+        Connection conn = StatementCache.wrap(DriverManager.getConnection(jdbcUrl));
+        try {
+            conn.setAutoCommit(true);
+            configure(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA query_only = ON");
+            }
+        } catch (SQLException e) {
+            close(conn);
+            throw e;
+        }
+        return conn;
+    }
+
+    public synchronized void close() {
+        readConnection = close(readConnection);
+        connection = close(connection);
+        log.debug("Database connections closed");
+    }
+
+    private Connection close(Connection conn) {
+        if (conn == null) {
+            return null;
+        }
+        try {
+            conn.close();
         } catch (SQLException e) {
             log.error("Failed to close database connection", e);
         }
+        return null;
+    }
+
+    private Connection openWriteConnection() throws SQLException {
+        Connection conn = StatementCache.wrap(DriverManager.getConnection(jdbcUrl));
+        conn.setAutoCommit(true);
+        configure(conn);
+        enableForeignKeys(conn);
+        return conn;
     }
 
     private void ensureDirectoryExists() {
-        if (DatabaseConstants.DATABASE_DIRECTORY.exists()) {
+        File directory = databaseFile.getParentFile();
+        if (directory.exists()) {
             return;
         }
-        boolean created = DatabaseConstants.DATABASE_DIRECTORY.mkdirs();
+        boolean created = directory.mkdirs();
         if (!created) {
-            log.error("Failed to create database directory: {}", DatabaseConstants.DATABASE_DIRECTORY);
+            log.error("Failed to create database directory: {}", directory);
+        }
+    }
+
+    private void configure(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + DatabaseConstants.BUSY_TIMEOUT_MILLIS);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    private static String choiceSetting(String pragma, String defaultValue, Set<String> allowed) {
+        String property = DatabaseConstants.TUNING_PROPERTY_PREFIX + pragma;
+        String value = System.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        value = value.trim().toUpperCase(Locale.ROOT);
+        if (!allowed.contains(value)) {
+            log.warn("Ignoring {}={}, it has to be one of {}", property, value, allowed);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private static long numberSetting(String pragma, long defaultValue, long min) {
+        String property = DatabaseConstants.TUNING_PROPERTY_PREFIX + pragma;
+        String value = System.getProperty(property);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.trim());
+            if (number >= min) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //same as out of range
+        }
+        log.warn("Ignoring {}={}, it has to be a number of at least {}", property, value, min);
+        return defaultValue;
+    }
+
+    /**
+     * WAL mode is stored in the database file, so this only does something the first time. It can fail if
+     * another client has the database open in the old journal mode, in which case we carry on without it.
+     */
+    private void enableWal(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = WAL");
+        } catch (SQLException e) {
+            log.warn("Couldn't switch the database to WAL mode", e);
         }
     }
 
@@ -59,6 +259,6 @@ public class DatabaseConnectionManager {
     }
 
     public boolean isDatabaseInitialized() {
-        return DatabaseConstants.DATABASE_FILE.exists();
+        return databaseFile.exists();
     }
 }
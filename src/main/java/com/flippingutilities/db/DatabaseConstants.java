@@ -9,9 +9,20 @@ public final class DatabaseConstants {
     public static final File DATABASE_DIRECTORY = new File(RuneLite.RUNELITE_DIR, "flipping");
     public static final String DATABASE_FILE_NAME = "flipping.db";
     public static final File DATABASE_FILE = new File(DATABASE_DIRECTORY, DATABASE_FILE_NAME);
-    public static final String JDBC_URL = "jdbc:sqlite:" + DATABASE_FILE.getAbsolutePath();
+    public static final File BACKUP_DIRECTORY = new File(DATABASE_DIRECTORY, "backups");
+    public static final File SNAPSHOT_DIRECTORY = new File(DATABASE_DIRECTORY, "snapshots");
 
-    public static final int CURRENT_SCHEMA_VERSION = 1;
+    // Connection tuning, see DatabaseConnectionManager. These are the defaults, each can be overridden with the
+    // system property of the prefix and the pragma's name, e.g. -Dflippingutilities.db.cache_size=-65536.
+    // In WAL mode synchronous=NORMAL only risks losing the last few commits on a power cut (never corrupting the
+    // database), which is fine for trade history that is also saved again on the next store.
+    public static final String TUNING_PROPERTY_PREFIX = "flippingutilities.db.";
+    public static final String SYNCHRONOUS = "NORMAL";
+    // negative means KiB rather than pages
+    public static final long CACHE_SIZE = -16384;
+    public static final long MMAP_SIZE = 256L * 1024 * 1024;
+    public static final String TEMP_STORE = "MEMORY";
+    public static final int BUSY_TIMEOUT_MILLIS = 5000;
 
     private DatabaseConstants() {
     }
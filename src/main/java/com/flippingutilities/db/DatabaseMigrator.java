@@ -10,18 +10,48 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Brings the database schema up to date. A schema version is made of a V&lt;version&gt;__&lt;description&gt;.sql
+ * file in the sql resource folder, a {@link BatchedMigration}, or both (the sql file is run first).
+ * <p>
+ * Versions that are only sql are quick, so they are applied straight away, each in its own transaction. The first
+ * version with a batched migration, and every version after it, are applied on a background thread so that a big
+ * database doesn't hold up the plugin starting. {@link #getCompletion()} completes once they're done and
+ * {@link #getProgress()} says how far along they are.
+ */
 @Slf4j
 @Singleton
 public class DatabaseMigrator {
 
-    private static final String SCHEMA_FILE_PREFIX = "V";
-    private static final String SCHEMA_FILE_SUFFIX = "__";
+    private static final Pattern MIGRATION_FILE_PATTERN = Pattern.compile("V(\\d+)__.+\\.sql");
+    //always there, used to find the folder the migration files are in
+    private static final String FIRST_MIGRATION_FILE = "V1__initial_schema.sql";
+
     private static final String CREATE_SCHEMA_VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (version INTEGER PRIMARY KEY, applied_at TEXT NOT NULL)";
     private static final String SELECT_MAX_VERSION = "SELECT MAX(version) as version FROM schema_version";
     private static final String INSERT_VERSION = "INSERT INTO schema_version (version, applied_at) VALUES (?, ?)";
 
+    private static final String CREATE_CHECKPOINT_TABLE = "CREATE TABLE IF NOT EXISTS migration_checkpoint (version INTEGER PRIMARY KEY, checkpoint INTEGER NOT NULL)";
+    private static final String SELECT_CHECKPOINT = "SELECT checkpoint FROM migration_checkpoint WHERE version = ?";
+    private static final String SAVE_CHECKPOINT = "INSERT OR REPLACE INTO migration_checkpoint (version, checkpoint) VALUES (?, ?)";
+    private static final String DELETE_CHECKPOINT = "DELETE FROM migration_checkpoint WHERE version = ?";
+
+    private static final List<BatchedMigration> BATCHED_MIGRATIONS = Arrays.asList(
+            new CompactOfferEventMigration()
+    );
+
     private final DatabaseConnectionManager connectionManager;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private volatile MigrationProgress progress;
 
     @Inject
     public DatabaseMigrator(DatabaseConnectionManager connectionManager) {
@@ -30,20 +60,100 @@ public class DatabaseMigrator {
 
     public void migrate() throws SQLException {
         Connection conn = connectionManager.getConnection();
+        createTrackingTables(conn);
         int currentVersion = getCurrentSchemaVersion(conn);
 
-        if (currentVersion < DatabaseConstants.CURRENT_SCHEMA_VERSION) {
-            log.info("Migrating database from version {} to {}", currentVersion,
-                    DatabaseConstants.CURRENT_SCHEMA_VERSION);
-            applyMigrations(conn, currentVersion);
+        Map<Integer, String> migrationFiles = findMigrationFiles();
+        Map<Integer, BatchedMigration> batchedMigrations = new HashMap<>();
+        BATCHED_MIGRATIONS.forEach(m -> batchedMigrations.put(m.getVersion(), m));
+        int latestVersion = 0;
+        for (int version : migrationFiles.keySet()) {
+            latestVersion = Math.max(latestVersion, version);
+        }
+        for (int version : batchedMigrations.keySet()) {
+            latestVersion = Math.max(latestVersion, version);
+        }
+
+        if (currentVersion >= latestVersion) {
+            completion.complete(null);
+            return;
+        }
+        log.info("Migrating database from version {} to {}", currentVersion, latestVersion);
+
+        int version = currentVersion + 1;
+        for (; version <= latestVersion && !batchedMigrations.containsKey(version); version++) {
+            applyVersion(conn, version, migrationFiles.get(version));
+        }
+        if (version > latestVersion) {
+            log.info("Database migration completed successfully");
+            completion.complete(null);
+            return;
+        }
+
+        int firstBackgroundVersion = version;
+        int lastVersion = latestVersion;
+        Thread thread = new Thread(() -> migrateInBackground(firstBackgroundVersion, lastVersion, migrationFiles,
+                batchedMigrations), "flipping-utilities-db-migrator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Completes once the schema is up to date, or completes exceptionally if a migration failed (the failed
+     * migration is tried again on the next start).
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    public void awaitCompletion() throws SQLException {
+        try {
+            completion.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the database migration", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("Database migration failed", e.getCause());
         }
     }
 
-    private int getCurrentSchemaVersion(Connection conn) throws SQLException {
+    /**
+     * @return the progress of the batched migration currently running, or null if none is
+     */
+    public MigrationProgress getProgress() {
+        return progress;
+    }
+
+    private void migrateInBackground(int fromVersion, int toVersion, Map<Integer, String> migrationFiles,
+            Map<Integer, BatchedMigration> batchedMigrations) {
+        try {
+            Connection conn = connectionManager.getConnection();
+            for (int version = fromVersion; version <= toVersion; version++) {
+                BatchedMigration migration = batchedMigrations.get(version);
+                if (migration != null) {
+                    applyBatchedVersion(conn, migration, migrationFiles.get(version));
+                } else {
+                    applyVersion(conn, version, migrationFiles.get(version));
+                }
+            }
+            log.info("Database migration completed successfully");
+            completion.complete(null);
+        } catch (Exception e) {
+            log.error("Database migration failed, it will be tried again on the next start", e);
+            completion.completeExceptionally(e);
+        } finally {
+            progress = null;
+        }
+    }
+
+    private void createTrackingTables(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
             stmt.execute(CREATE_SCHEMA_VERSION_TABLE);
+            stmt.execute(CREATE_CHECKPOINT_TABLE);
         }
+    }
 
+    private int getCurrentSchemaVersion(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(SELECT_MAX_VERSION)) {
             if (rs.next()) {
@@ -54,26 +164,98 @@ public class DatabaseMigrator {
         return 0;
     }
 
-    private void applyMigrations(Connection conn, int fromVersion) throws SQLException {
-        conn.setAutoCommit(false);
+    private Map<Integer, String> findMigrationFiles() {
+        Map<Integer, String> files = new HashMap<>();
+        for (String name : SqlLoader.listFiles(FIRST_MIGRATION_FILE)) {
+            Matcher matcher = MIGRATION_FILE_PATTERN.matcher(name);
+            if (!matcher.matches()) {
+                continue;
+            }
+            String previous = files.put(Integer.parseInt(matcher.group(1)), name);
+            if (previous != null) {
+                throw new IllegalStateException("Two migration files for the same version: " + previous + " and " + name);
+            }
+        }
+        return files;
+    }
+
+    private void applyVersion(Connection conn, int version, String fileName) throws SQLException {
+        if (fileName == null) {
+            throw new IllegalStateException("No migration for schema version " + version);
+        }
+        inTransaction(conn, version, () -> {
+            executeStatements(conn, version, fileName);
+            recordSchemaVersion(conn, version);
+        });
+    }
+
+    /**
+     * The version is only recorded in the same transaction as {@link BatchedMigration#finish}, so until then the
+     * old schema stays in use and an interrupted migration is picked up again from its checkpoint on the next start.
+     */
+    private void applyBatchedVersion(Connection conn, BatchedMigration migration, String fileName) throws SQLException {
+        int version = migration.getVersion();
+        if (fileName != null) {
+            inTransaction(conn, version, () -> executeStatements(conn, version, fileName));
+        }
+
+        BatchedMigration.Checkpoint checkpoint = new BatchedMigration.Checkpoint(readCheckpoint(conn, version));
+        if (checkpoint.get() > 0) {
+            log.info("Resuming migration to version {} from checkpoint {}", version, checkpoint.get());
+        }
+        long total = migration.countRemaining(conn, checkpoint.get());
+        long done = 0;
+        long start = System.currentTimeMillis();
+        progress = new MigrationProgress(version, migration.getDescription(), done, total);
+
+        int[] migrated = new int[1];
+        do {
+            inTransaction(conn, version, () -> {
+                migrated[0] = migration.migrateBatch(conn, checkpoint);
+                saveCheckpoint(conn, version, checkpoint.get());
+            });
+            done += migrated[0];
+            progress = new MigrationProgress(version, migration.getDescription(), done, total);
+            log.debug("migration to version {}: {} of {} done", version, done, total);
+        } while (migrated[0] > 0);
+
+        if (migration.finishesWithoutForeignKeys()) {
+            setForeignKeys(conn, false);
+        }
         try {
-            for (int version = fromVersion + 1; version <= DatabaseConstants.CURRENT_SCHEMA_VERSION; version++) {
-                applyVersion(conn, version);
+            inTransaction(conn, version, () -> {
+                migration.finish(conn);
+                deleteCheckpoint(conn, version);
+                recordSchemaVersion(conn, version);
+            });
+        } finally {
+            if (migration.finishesWithoutForeignKeys()) {
+                setForeignKeys(conn, true);
             }
+        }
+        log.info("Migrated {} rows to schema version {} in {} ms", done, version, System.currentTimeMillis() - start);
+    }
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    private void inTransaction(Connection conn, int version, SqlWork work) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            work.run();
             conn.commit();
-            log.info("Database migration completed successfully");
         } catch (SQLException e) {
             conn.rollback();
-            log.error("Database migration failed, rolled back changes", e);
+            log.error("Database migration to version {} failed, rolled back changes", version, e);
             throw e;
         } finally {
             conn.setAutoCommit(true);
         }
     }
 
-    private void applyVersion(Connection conn, int version) throws SQLException {
-        log.debug("Applying schema version {}", version);
-        String fileName = findMigrationFile(version);
+    private void executeStatements(Connection conn, int version, String fileName) throws SQLException {
+        log.debug("Applying schema version {} from {}", version, fileName);
         String[] statements = SqlLoader.loadStatements(fileName);
 
         try (Statement stmt = conn.createStatement()) {
@@ -84,12 +266,39 @@ public class DatabaseMigrator {
                 }
             }
         }
+    }
 
-        recordSchemaVersion(conn, version);
+    /**
+     * Can't be changed in the middle of a transaction, SQLite silently ignores it there.
+     */
+    private void setForeignKeys(Connection conn, boolean enabled) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = " + (enabled ? "ON" : "OFF"));
+        }
+    }
+
+    private long readCheckpoint(Connection conn, int version) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_CHECKPOINT)) {
+            stmt.setInt(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
     }
 
-    private String findMigrationFile(int version) {
-        return SCHEMA_FILE_PREFIX + version + SCHEMA_FILE_SUFFIX + "initial_schema.sql";
+    private void saveCheckpoint(Connection conn, int version, long checkpoint) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(SAVE_CHECKPOINT)) {
+            stmt.setInt(1, version);
+            stmt.setLong(2, checkpoint);
+            stmt.executeUpdate();
+        }
+    }
+
+    private void deleteCheckpoint(Connection conn, int version) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_CHECKPOINT)) {
+            stmt.setInt(1, version);
+            stmt.executeUpdate();
+        }
     }
 
     private void recordSchemaVersion(Connection conn, int version) throws SQLException {
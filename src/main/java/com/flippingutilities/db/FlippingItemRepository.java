@@ -3,6 +3,7 @@ package com.flippingutilities.db;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.HistoryManager;
 import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferRollup;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.inject.Inject;
@@ -14,7 +15,9 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @Singleton
@@ -33,14 +36,32 @@ public class FlippingItemRepository {
 
     private static final String SELECT_BY_ACCOUNT_SQL = "SELECT * FROM flipping_item WHERE account_name = ?";
 
+    private static final String SELECT_OFFERS_BY_ACCOUNT_SQL = "SELECT oe.* FROM offer_event oe "
+            +
+            "JOIN flipping_item fi ON fi.id = oe.flipping_item_id WHERE fi.account_name = ? " +
+            "ORDER BY oe.flipping_item_id ASC, oe.time ASC";
+
+    private static final String SELECT_ROLLUPS_BY_ACCOUNT_SQL = "SELECT r.* FROM offer_rollup r "
+            +
+            "JOIN flipping_item fi ON fi.id = r.flipping_item_id WHERE fi.account_name = ? " +
+            "ORDER BY r.flipping_item_id ASC, r.day ASC";
+
+    private static final String SELECT_ROLLUPS_BY_ITEM_SQL = "SELECT * FROM offer_rollup WHERE flipping_item_id = ? ORDER BY day ASC";
+
+    private static final String ROLLUP_TABLE_EXISTS_SQL = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'offer_rollup'";
+
     private static final String SELECT_BY_ACCOUNT_AND_ITEM_ID_SQL = "SELECT * FROM flipping_item WHERE account_name = ? AND item_id = ?";
 
     private static final String DELETE_BY_ID_SQL = "DELETE FROM flipping_item WHERE id = ?";
 
+    private static final String DELETE_BY_ACCOUNT_AND_ITEM_ID_SQL = "DELETE FROM flipping_item WHERE account_name = ? AND item_id = ?";
+
     private static final String LAST_INSERT_ID_SQL = "SELECT last_insert_rowid()";
 
     private final DatabaseConnectionManager connectionManager;
     private final OfferEventRepository offerEventRepository;
+    //the archive's tables are made by a migration that may still be running in the background
+    private volatile boolean rollupTableExists;
 
     @Inject
     public FlippingItemRepository(DatabaseConnectionManager connectionManager,
@@ -79,15 +100,6 @@ public class FlippingItemRepository {
         throw new SQLException("Failed to get last insert id");
     }
 
-    public long insertWithOffers(FlippingItem item, String accountName) throws SQLException {
-        long itemId = insert(item, accountName);
-        List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
-        if (!offers.isEmpty()) {
-            offerEventRepository.insertAll(offers, itemId);
-        }
-        return itemId;
-    }
-
     public void update(FlippingItem item, long id) throws SQLException {
         Connection conn = connectionManager.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(UPDATE_SQL)) {
@@ -107,7 +119,7 @@ public class FlippingItemRepository {
 
     public List<FlippingItem> findByAccountName(String accountName) throws SQLException {
         List<FlippingItem> items = new ArrayList<>();
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ACCOUNT_SQL)) {
             stmt.setString(1, accountName);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -119,18 +131,120 @@ public class FlippingItemRepository {
         return items;
     }
 
+    /**
+     * Loads the account's items and all of their offers using two queries: one for the items and one ordered
+     * cursor over the account's offers joined to their items. The offers arrive grouped by item, so each item's
+     * history list is built directly as the cursor is walked instead of querying the offers of each item separately.
+     * The daily totals of the items' archived offers are loaded the same way, the archived offers themselves aren't.
+     */
     public List<FlippingItem> findByAccountNameWithOffers(String accountName) throws SQLException {
-        List<FlippingItem> items = findByAccountName(accountName);
-        for (FlippingItem item : items) {
-            Long itemId = findIdByAccountAndItemId(accountName, item.getItemId());
-            if (itemId != null) {
-                List<OfferEvent> offers = offerEventRepository.findByFlippingItemId(itemId);
-                item.getHistory().setCompressedOfferEvents(offers);
+        List<FlippingItem> items = new ArrayList<>();
+        Map<Long, FlippingItem> itemsById = new HashMap<>();
+        Connection conn = connectionManager.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ACCOUNT_SQL)) {
+            stmt.setString(1, accountName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    FlippingItem item = mapResultSetToFlippingItem(rs);
+                    items.add(item);
+                    itemsById.put(rs.getLong("id"), item);
+                }
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_OFFERS_BY_ACCOUNT_SQL)) {
+            stmt.setString(1, accountName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                long currentId = -1;
+                List<OfferEvent> currentOffers = null;
+                while (rs.next()) {
+                    long flippingItemId = rs.getLong("flipping_item_id");
+                    if (flippingItemId != currentId || currentOffers == null) {
+                        currentId = flippingItemId;
+                        currentOffers = new ArrayList<>();
+                        FlippingItem item = itemsById.get(flippingItemId);
+                        if (item != null) {
+                            item.getHistory().setCompressedOfferEvents(currentOffers);
+                        }
+                    }
+                    currentOffers.add(offerEventRepository.mapResultSetToOfferEvent(rs));
+                }
+            }
+        }
+
+        if (!hasRollupTable(conn)) {
+            return items;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ROLLUPS_BY_ACCOUNT_SQL)) {
+            stmt.setString(1, accountName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                long currentId = -1;
+                List<OfferRollup> currentRollups = null;
+                while (rs.next()) {
+                    long flippingItemId = rs.getLong("flipping_item_id");
+                    if (flippingItemId != currentId || currentRollups == null) {
+                        currentId = flippingItemId;
+                        currentRollups = new ArrayList<>();
+                        FlippingItem item = itemsById.get(flippingItemId);
+                        if (item != null) {
+                            item.getHistory().setArchivedRollups(currentRollups);
+                        }
+                    }
+                    currentRollups.add(mapResultSetToRollup(rs));
+                }
             }
         }
         return items;
     }
 
+    /**
+     * Loads one of the account's items along with its offers and the daily totals of its archived offers, the same
+     * as {@link #findByAccountNameWithOffers} does for all of them.
+     *
+     * @return null if the account doesn't have the item
+     */
+    public FlippingItem findByAccountAndItemIdWithOffers(String accountName, int itemId) throws SQLException {
+        Connection conn = connectionManager.getReadConnection();
+        FlippingItem item;
+        long flippingItemId;
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ACCOUNT_AND_ITEM_ID_SQL)) {
+            stmt.setString(1, accountName);
+            stmt.setInt(2, itemId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                item = mapResultSetToFlippingItem(rs);
+                flippingItemId = rs.getLong("id");
+            }
+        }
+        item.getHistory().setCompressedOfferEvents(offerEventRepository.findByFlippingItemId(flippingItemId));
+
+        if (hasRollupTable(conn)) {
+            List<OfferRollup> rollups = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_ROLLUPS_BY_ITEM_SQL)) {
+                stmt.setLong(1, flippingItemId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rollups.add(mapResultSetToRollup(rs));
+                    }
+                }
+            }
+            item.getHistory().setArchivedRollups(rollups);
+        }
+        return item;
+    }
+
+    private boolean hasRollupTable(Connection conn) throws SQLException {
+        if (!rollupTableExists) {
+            try (PreparedStatement stmt = conn.prepareStatement(ROLLUP_TABLE_EXISTS_SQL);
+                    ResultSet rs = stmt.executeQuery()) {
+                rollupTableExists = rs.next();
+            }
+        }
+        return rollupTableExists;
+    }
+
     public Long findIdByAccountAndItemId(String accountName, int itemId) throws SQLException {
         Connection conn = connectionManager.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_ACCOUNT_AND_ITEM_ID_SQL)) {
@@ -153,6 +267,15 @@ public class FlippingItemRepository {
         }
     }
 
+    public void deleteByAccountAndItemId(String accountName, int itemId) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_BY_ACCOUNT_AND_ITEM_ID_SQL)) {
+            stmt.setString(1, accountName);
+            stmt.setInt(2, itemId);
+            stmt.executeUpdate();
+        }
+    }
+
     private FlippingItem mapResultSetToFlippingItem(ResultSet rs) throws SQLException {
         FlippingItem item = new FlippingItem(
                 rs.getInt("item_id"),
@@ -166,6 +289,17 @@ public class FlippingItemRepository {
         return item;
     }
 
+    private OfferRollup mapResultSetToRollup(ResultSet rs) throws SQLException {
+        return new OfferRollup(
+                rs.getLong("day"),
+                rs.getLong("buy_quantity"),
+                rs.getLong("buy_value"),
+                rs.getLong("sell_quantity"),
+                rs.getLong("sell_value"),
+                rs.getLong("tax_paid"),
+                rs.getInt("flip_count"));
+    }
+
     private void setNullableInstant(PreparedStatement stmt, int index, Instant value) throws SQLException {
         if (value != null) {
             stmt.setString(index, value.toString());
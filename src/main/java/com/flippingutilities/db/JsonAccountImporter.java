@@ -0,0 +1,220 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.RecipeFlipGroup;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Imports one account's json file without ever holding the whole account in memory. The file is walked with a
+ * {@link JsonReader}: the offers of each item are parsed one at a time and inserted in batches of
+ * {@link #OFFER_BATCH_SIZE}, each batch in its own short transaction. Everything else (the account's and the items'
+ * own fields, the last offers, a recipe flip group) is small and is handed to gson whole as it is reached.
+ * <p>
+ * A row can only be inserted after the rows it points at, but the fields in the json come in whatever order gson
+ * wrote them in. So the account's row is inserted with defaults first and updated with its real fields at the end,
+ * an item's row is inserted when its offers are reached and updated once the rest of its fields have been read, and
+ * the last offers and any recipe flip groups read before the items are held on to until the items are in.
+ */
+@Slf4j
+class JsonAccountImporter {
+
+    private static final int OFFER_BATCH_SIZE = 1000;
+    private static final Type LAST_OFFERS_TYPE = new TypeToken<Map<Integer, OfferEvent>>() {}.getType();
+
+    private final Gson gson;
+    private final AccountRepository accountRepository;
+    private final FlippingItemRepository flippingItemRepository;
+    private final OfferEventRepository offerEventRepository;
+    private final RecipeFlipRepository recipeFlipRepository;
+
+    JsonAccountImporter(Gson gson, AccountRepository accountRepository, FlippingItemRepository flippingItemRepository,
+            OfferEventRepository offerEventRepository, RecipeFlipRepository recipeFlipRepository) {
+        this.gson = gson;
+        this.accountRepository = accountRepository;
+        this.flippingItemRepository = flippingItemRepository;
+        this.offerEventRepository = offerEventRepository;
+        this.recipeFlipRepository = recipeFlipRepository;
+    }
+
+    /**
+     * @return how many offers were imported, or -1 if the file doesn't hold an account
+     */
+    long importAccount(File jsonFile, String displayName) throws IOException, SQLException {
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(
+                new FileInputStream(jsonFile), StandardCharsets.UTF_8)))) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                return -1;
+            }
+            //an earlier attempt could have been interrupted part way through the account
+            accountRepository.delete(displayName);
+            accountRepository.insert(displayName, new AccountData());
+
+            JsonObject accountFields = new JsonObject();
+            Map<Integer, OfferEvent> lastOffers = null;
+            List<RecipeFlipGroup> heldGroups = new ArrayList<>();
+            boolean itemsImported = false;
+            long offers = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "trades":
+                        offers += importItems(reader, displayName);
+                        itemsImported = true;
+                        for (RecipeFlipGroup group : heldGroups) {
+                            recipeFlipRepository.insertGroup(group, displayName);
+                        }
+                        heldGroups.clear();
+                        break;
+                    case "recipeFlipGroups":
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            RecipeFlipGroup group = gson.fromJson(reader, RecipeFlipGroup.class);
+                            if (group == null) {
+                                continue;
+                            }
+                            if (itemsImported) {
+                                recipeFlipRepository.insertGroup(group, displayName);
+                            } else {
+                                heldGroups.add(group);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    case "lastOffers":
+                        lastOffers = gson.fromJson(reader, LAST_OFFERS_TYPE);
+                        break;
+                    default:
+                        accountFields.add(name, gson.fromJson(reader, JsonElement.class));
+                }
+            }
+            reader.endObject();
+
+            for (RecipeFlipGroup group : heldGroups) {
+                recipeFlipRepository.insertGroup(group, displayName);
+            }
+            accountRepository.update(displayName, gson.fromJson(accountFields, AccountData.class));
+            if (lastOffers != null && !lastOffers.isEmpty()) {
+                accountRepository.saveLastOffers(displayName, lastOffers);
+            }
+            return offers;
+        }
+    }
+
+    private long importItems(JsonReader reader, String displayName) throws IOException, SQLException {
+        long offers = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            offers += importItem(reader, displayName);
+        }
+        reader.endArray();
+        return offers;
+    }
+
+    private long importItem(JsonReader reader, String displayName) throws IOException, SQLException {
+        JsonObject itemFields = new JsonObject();
+        JsonObject historyFields = new JsonObject();
+        Long rowId = null;
+        long offers = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!name.equals("h") || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                itemFields.add(name, gson.fromJson(reader, JsonElement.class));
+                continue;
+            }
+
+            //the offers need the item's row, so insert it with what has been read of the item so far
+            rowId = flippingItemRepository.insert(toItem(itemFields, historyFields), displayName);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String historyField = reader.nextName();
+                if (historyField.equals("sO") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    offers += importOffers(reader, rowId);
+                } else {
+                    historyFields.add(historyField, gson.fromJson(reader, JsonElement.class));
+                }
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+
+        FlippingItem item = toItem(itemFields, historyFields);
+        if (rowId == null) {
+            flippingItemRepository.insert(item, displayName);
+        } else {
+            flippingItemRepository.update(item, rowId);
+        }
+        return offers;
+    }
+
+    /**
+     * The item with everything but its offers, which have already been inserted by then.
+     */
+    private FlippingItem toItem(JsonObject itemFields, JsonObject historyFields) {
+        FlippingItem item = gson.fromJson(itemFields, FlippingItem.class);
+        HistoryManager history = gson.fromJson(historyFields, HistoryManager.class);
+        item.setHistory(history != null ? history : new HistoryManager());
+        return item;
+    }
+
+    private long importOffers(JsonReader reader, long flippingItemId) throws IOException, SQLException {
+        List<OfferEvent> batch = new ArrayList<>(OFFER_BATCH_SIZE);
+        long offers = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            OfferEvent offer = gson.fromJson(reader, OfferEvent.class);
+            if (offer == null) {
+                continue;
+            }
+            //old offers could be stored before they were given uuids (see HistoryManager.setOfferIds)
+            if (offer.getUuid() == null) {
+                offer.setUuid(UUID.randomUUID().toString());
+            }
+            batch.add(offer);
+            if (batch.size() == OFFER_BATCH_SIZE) {
+                offerEventRepository.insertAll(batch, flippingItemId);
+                offers += batch.size();
+                batch.clear();
+            }
+        }
+        reader.endArray();
+        if (!batch.isEmpty()) {
+            offerEventRepository.insertAll(batch, flippingItemId);
+            offers += batch.size();
+        }
+        return offers;
+    }
+}
@@ -1,9 +1,6 @@
 package com.flippingutilities.db;
 
-import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.AccountWideData;
-import com.flippingutilities.model.FlippingItem;
-import com.flippingutilities.model.RecipeFlipGroup;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
 
@@ -14,7 +11,18 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Moves the data over from the json files the plugin used to store it in. Account files are imported in parallel,
+ * each on its own connection, and are streamed rather than read whole (see {@link JsonAccountImporter}), so an
+ * account with years of offers doesn't need them all in memory at once.
+ */
 @Slf4j
 @Singleton
 public class JsonToSqliteMigrator {
@@ -24,13 +32,13 @@ public class JsonToSqliteMigrator {
     private static final String SPECIAL_SUFFIX = ".special.json";
     private static final String ACCOUNT_WIDE_FILE = "accountwide.json";
     private static final String MIGRATION_MARKER = ".sqlite_migrated";
+    //parsing is what runs in parallel, the inserts still take turns on SQLite's single writer lock
+    private static final int MAX_THREADS = 4;
 
     private final Gson gson;
     private final DatabaseConnectionManager connectionManager;
-    private final AccountRepository accountRepository;
-    private final FlippingItemRepository flippingItemRepository;
-    private final RecipeFlipRepository recipeFlipRepository;
     private final AccountWideDataRepository accountWideDataRepository;
+    private final JsonAccountImporter accountImporter;
 
     @Inject
     public JsonToSqliteMigrator(
@@ -38,14 +46,14 @@ public class JsonToSqliteMigrator {
             DatabaseConnectionManager connectionManager,
             AccountRepository accountRepository,
             FlippingItemRepository flippingItemRepository,
+            OfferEventRepository offerEventRepository,
             RecipeFlipRepository recipeFlipRepository,
             AccountWideDataRepository accountWideDataRepository) {
         this.gson = gson;
         this.connectionManager = connectionManager;
-        this.accountRepository = accountRepository;
-        this.flippingItemRepository = flippingItemRepository;
-        this.recipeFlipRepository = recipeFlipRepository;
         this.accountWideDataRepository = accountWideDataRepository;
+        this.accountImporter = new JsonAccountImporter(gson, accountRepository, flippingItemRepository,
+                offerEventRepository, recipeFlipRepository);
     }
 
     public boolean needsMigration() {
@@ -78,6 +86,7 @@ public class JsonToSqliteMigrator {
             return;
         }
 
+        List<File> accountFiles = new ArrayList<>();
         for (File f : files) {
             String name = f.getName();
             if (!name.endsWith(JSON_EXTENSION)) {
@@ -90,40 +99,73 @@ public class JsonToSqliteMigrator {
                 migrateAccountWideData(f);
                 continue;
             }
-            migrateAccountData(f);
+            accountFiles.add(f);
         }
 
+        migrateAccounts(accountFiles);
         markMigrationComplete();
         log.info("JSON to SQLite migration completed");
     }
 
+    private void migrateAccounts(List<File> accountFiles) throws IOException, SQLException {
+        if (accountFiles.isEmpty()) {
+            return;
+        }
+        int threads = Math.min(accountFiles.size(), Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "flipping-utilities-json-migrator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (File f : accountFiles) {
+                futures.add(executor.submit(() -> {
+                    connectionManager.runOnOwnConnection(() -> migrateAccountData(f));
+                    return null;
+                }));
+            }
+            //every account is waited on before failing, so none is left half imported while the plugin starts
+            Exception failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while migrating account data", e);
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof SQLException) {
+                throw (SQLException) failure;
+            }
+            if (failure != null) {
+                throw new IOException("Failed to migrate account data", failure);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private void migrateAccountData(File jsonFile) throws IOException, SQLException {
         String displayName = jsonFile.getName().replace(JSON_EXTENSION, "");
         log.debug("Migrating account data for: {}", displayName);
+        long start = System.currentTimeMillis();
 
-        String json = new String(Files.readAllBytes(jsonFile.toPath()));
-        AccountData accountData = gson.fromJson(json, AccountData.class);
-
-        if (accountData == null) {
+        long offers = accountImporter.importAccount(jsonFile, displayName);
+        if (offers < 0) {
             log.warn("Could not parse account data from: {}", jsonFile.getName());
             return;
         }
 
-        accountRepository.insert(displayName, accountData);
-
-        for (FlippingItem item : accountData.getTrades()) {
-            flippingItemRepository.insertWithOffers(item, displayName);
-        }
-
-        for (RecipeFlipGroup group : accountData.getRecipeFlipGroups()) {
-            recipeFlipRepository.insertGroup(group, displayName);
-        }
-
-        if (accountData.getLastOffers() != null && !accountData.getLastOffers().isEmpty()) {
-            accountRepository.saveLastOffers(displayName, accountData.getLastOffers());
-        }
-
         createJsonBackup(jsonFile);
+        log.debug("Migrated {} offers for {} in {}ms", offers, displayName, System.currentTimeMillis() - start);
     }
 
     private void migrateAccountWideData(File jsonFile) throws IOException, SQLException {
@@ -0,0 +1,18 @@
+package com.flippingutilities.db;
+
+import lombok.Value;
+
+/**
+ * How far a {@link BatchedMigration} running in the background has got.
+ */
+@Value
+public class MigrationProgress {
+    int version;
+    String description;
+    long done;
+    long total;
+
+    public int getPercentDone() {
+        return total <= 0 ? 100 : (int) Math.min(100, done * 100 / total);
+    }
+}
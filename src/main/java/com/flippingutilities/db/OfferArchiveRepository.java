@@ -0,0 +1,223 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferRollup;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The cold storage tier of V4__offer_archive.sql. Old offers are moved out of offer_event so they are no longer
+ * loaded with their account, and their totals are kept per item and day in offer_rollup for the stats.
+ * <p>
+ * An offer is only archived if nothing else needs it in memory: an item's latest offer stays, as it is what the
+ * item's last activity and interval checks go by, and so do offers a recipe flip consumed part of or that are a
+ * slot's last offer, as those are looked up by uuid.
+ */
+@Slf4j
+@Singleton
+public class OfferArchiveRepository {
+
+    private static final String SELECT_ITEM_IDS_SQL = "SELECT id FROM flipping_item WHERE account_name = ?";
+
+    private static final String SELECT_ARCHIVABLE_SQL = "SELECT oe.* FROM offer_event oe "
+            +
+            "WHERE oe.flipping_item_id = ? AND oe.time < ? " +
+            "AND oe.time < (SELECT MAX(latest.time) FROM offer_event latest WHERE latest.flipping_item_id = oe.flipping_item_id) " +
+            "AND NOT EXISTS (SELECT 1 FROM partial_offer po WHERE po.offer_event_uuid = oe.uuid) " +
+            "AND NOT EXISTS (SELECT 1 FROM last_offer lo WHERE lo.offer_event_uuid = oe.uuid) " +
+            "ORDER BY oe.time ASC";
+
+    private static final String COLUMNS = "flipping_item_id, time, uuid, is_buy, item_id, current_quantity_in_trade, "
+            +
+            "price, slot, state, tick_arrived_at, ticks_since_first_offer, total_quantity_in_trade, trade_started_at, " +
+            "before_login";
+
+    //the uuid is bound both encoded and as text, see OfferEventRepository.mapResultSetToOfferEvent
+    private static final String ARCHIVE_SQL = "INSERT OR IGNORE INTO offer_event_archive (" + COLUMNS + ") "
+            +
+            "SELECT " + COLUMNS + " FROM offer_event WHERE uuid IN (?, ?)";
+
+    private static final String DELETE_ARCHIVED_SQL = "DELETE FROM offer_event WHERE uuid IN (?, ?)";
+
+    private static final String ADD_TO_ROLLUP_SQL = "INSERT INTO offer_rollup (flipping_item_id, day, buy_quantity, "
+            +
+            "buy_value, sell_quantity, sell_value, tax_paid, flip_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT(flipping_item_id, day) DO UPDATE SET buy_quantity = buy_quantity + excluded.buy_quantity, " +
+            "buy_value = buy_value + excluded.buy_value, sell_quantity = sell_quantity + excluded.sell_quantity, " +
+            "sell_value = sell_value + excluded.sell_value, tax_paid = tax_paid + excluded.tax_paid, " +
+            "flip_count = flip_count + excluded.flip_count";
+
+    private static final String SELECT_ARCHIVED_PAGE_SQL = "SELECT a.* FROM offer_event_archive a "
+            +
+            "JOIN flipping_item fi ON fi.id = a.flipping_item_id " +
+            "WHERE fi.account_name = ? AND fi.item_id = ? AND a.time >= ? " +
+            "ORDER BY a.time DESC LIMIT ? OFFSET ?";
+
+    private static final String DELETE_ARCHIVED_FROM_SQL = "DELETE FROM offer_event_archive WHERE flipping_item_id = ? AND time >= ?";
+
+    private static final String DELETE_ROLLUPS_FROM_SQL = "DELETE FROM offer_rollup WHERE flipping_item_id = ? AND day >= ?";
+
+    private final DatabaseConnectionManager connectionManager;
+    private final OfferEventRepository offerEventRepository;
+
+    @Inject
+    public OfferArchiveRepository(DatabaseConnectionManager connectionManager,
+            OfferEventRepository offerEventRepository) {
+        this.connectionManager = connectionManager;
+        this.offerEventRepository = offerEventRepository;
+    }
+
+    /**
+     * Moves the account's offers from before the day the cutoff falls on to the archive, adding them to their day's
+     * rollup. Only days before the cutoff's day are archived so that a day's offers aren't split between the archive
+     * and the offers depending on the time of day the account was loaded. The offers of a day that have to stay (see
+     * above) are added to the day's rollup once they can be archived on a later load.
+     * <p>
+     * Each item is archived in its own transaction, unless the caller has already started one, so that the first
+     * archiving of a big account doesn't keep every other write waiting until it's done.
+     *
+     * @return how many offers were archived
+     */
+    public int archiveOffersBefore(String accountName, Instant cutoff) throws SQLException {
+        Instant startOfCutoffDay = OfferRollup.startOf(OfferRollup.dayOf(cutoff));
+        Connection conn = connectionManager.getConnection();
+        List<Long> flippingItemIds = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ITEM_IDS_SQL)) {
+            stmt.setString(1, accountName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    flippingItemIds.add(rs.getLong(1));
+                }
+            }
+        }
+
+        int archived = 0;
+        boolean ownsTransaction = conn.getAutoCommit();
+        for (long flippingItemId : flippingItemIds) {
+            if (ownsTransaction) {
+                conn.setAutoCommit(false);
+            }
+            try {
+                archived += archiveItemOffersBefore(conn, flippingItemId, startOfCutoffDay);
+                if (ownsTransaction) {
+                    conn.commit();
+                }
+            } catch (SQLException e) {
+                if (ownsTransaction) {
+                    conn.rollback();
+                }
+                throw e;
+            } finally {
+                if (ownsTransaction) {
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+        return archived;
+    }
+
+    private int archiveItemOffersBefore(Connection conn, long flippingItemId, Instant cutoff) throws SQLException {
+        int archived = 0;
+        try (PreparedStatement select = conn.prepareStatement(SELECT_ARCHIVABLE_SQL);
+                PreparedStatement rollup = conn.prepareStatement(ADD_TO_ROLLUP_SQL);
+                PreparedStatement archive = conn.prepareStatement(ARCHIVE_SQL);
+                PreparedStatement delete = conn.prepareStatement(DELETE_ARCHIVED_SQL)) {
+            select.setLong(1, flippingItemId);
+            select.setLong(2, cutoff.toEpochMilli());
+            try (ResultSet rs = select.executeQuery()) {
+                long currentDay = 0;
+                List<OfferEvent> dayOffers = new ArrayList<>();
+                while (rs.next()) {
+                    OfferEvent offer = offerEventRepository.mapResultSetToOfferEvent(rs);
+                    long day = OfferRollup.dayOf(offer.getTime());
+                    if (day != currentDay && !dayOffers.isEmpty()) {
+                        addRollup(rollup, flippingItemId, OfferRollup.of(currentDay, dayOffers));
+                        dayOffers.clear();
+                    }
+                    currentDay = day;
+                    dayOffers.add(offer);
+
+                    for (PreparedStatement stmt : new PreparedStatement[]{archive, delete}) {
+                        stmt.setObject(1, OfferEventRepository.encodeUuid(offer.getUuid()));
+                        stmt.setString(2, offer.getUuid());
+                        stmt.addBatch();
+                    }
+                    archived++;
+                }
+                if (!dayOffers.isEmpty()) {
+                    addRollup(rollup, flippingItemId, OfferRollup.of(currentDay, dayOffers));
+                }
+            }
+            if (archived > 0) {
+                rollup.executeBatch();
+                archive.executeBatch();
+                delete.executeBatch();
+            }
+        }
+        return archived;
+    }
+
+    private void addRollup(PreparedStatement stmt, long flippingItemId, OfferRollup rollup) throws SQLException {
+        stmt.setLong(1, flippingItemId);
+        stmt.setLong(2, rollup.getDay());
+        stmt.setLong(3, rollup.getBuyQuantity());
+        stmt.setLong(4, rollup.getBuyValue());
+        stmt.setLong(5, rollup.getSellQuantity());
+        stmt.setLong(6, rollup.getSellValue());
+        stmt.setLong(7, rollup.getTaxPaid());
+        stmt.setInt(8, rollup.getFlipCount());
+        stmt.addBatch();
+    }
+
+    /**
+     * Gets a page of an item's archived offers after earliestTime, counting from the newest.
+     *
+     * @param offset how many of the newest offers to skip, the offers of the pages before
+     * @return at most limit offers, in time order
+     */
+    public List<OfferEvent> findArchivedOffers(String accountName, int itemId, Instant earliestTime, int offset,
+            int limit) throws SQLException {
+        List<OfferEvent> offers = new ArrayList<>();
+        Connection conn = connectionManager.getReadConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ARCHIVED_PAGE_SQL)) {
+            stmt.setString(1, accountName);
+            stmt.setInt(2, itemId);
+            stmt.setLong(3, earliestTime.toEpochMilli());
+            stmt.setInt(4, limit);
+            stmt.setInt(5, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    offers.add(0, offerEventRepository.mapResultSetToOfferEvent(rs));
+                }
+            }
+        }
+        return offers;
+    }
+
+    /**
+     * Deletes the item's archived days starting at or after the time, and their offers.
+     */
+    public void deleteArchivedOffersFrom(long flippingItemId, Instant from) throws SQLException {
+        //the first day starting at or after from, same as HistoryManager.deleteArchivedOffers
+        long firstDay = OfferRollup.dayOf(from.minusMillis(1)) + 1;
+        Connection conn = connectionManager.getConnection();
+        try (PreparedStatement offers = conn.prepareStatement(DELETE_ARCHIVED_FROM_SQL);
+                PreparedStatement rollups = conn.prepareStatement(DELETE_ROLLUPS_FROM_SQL)) {
+            offers.setLong(1, flippingItemId);
+            offers.setLong(2, OfferRollup.startOf(firstDay).toEpochMilli());
+            offers.executeUpdate();
+            rollups.setLong(1, flippingItemId);
+            rollups.setLong(2, firstDay);
+            rollups.executeUpdate();
+        }
+    }
+}
@@ -6,13 +6,16 @@ import net.runelite.api.GrandExchangeOfferState;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.UUID;
 
 @Slf4j
 @Singleton
@@ -28,14 +31,35 @@ public class OfferEventRepository {
             "time = ?, slot = ?, state = ?, tick_arrived_at = ?, ticks_since_first_offer = ?, " +
             "total_quantity_in_trade = ?, trade_started_at = ?, before_login = ? WHERE uuid = ?";
 
+    private static final String UPSERT_SQL = INSERT_SQL + " ON CONFLICT(uuid) DO UPDATE SET flipping_item_id = excluded.flipping_item_id, "
+            +
+            "is_buy = excluded.is_buy, item_id = excluded.item_id, current_quantity_in_trade = excluded.current_quantity_in_trade, " +
+            "price = excluded.price, time = excluded.time, slot = excluded.slot, state = excluded.state, " +
+            "tick_arrived_at = excluded.tick_arrived_at, ticks_since_first_offer = excluded.ticks_since_first_offer, " +
+            "total_quantity_in_trade = excluded.total_quantity_in_trade, trade_started_at = excluded.trade_started_at, " +
+            "before_login = excluded.before_login";
+
+    /**
+     * The code an offer's state is stored as is its index in this array. The order must never change, new states
+     * can only be added to the end.
+     */
+    private static final GrandExchangeOfferState[] STATE_CODES = {
+            GrandExchangeOfferState.EMPTY,
+            GrandExchangeOfferState.CANCELLED_BUY,
+            GrandExchangeOfferState.CANCELLED_SELL,
+            GrandExchangeOfferState.BUYING,
+            GrandExchangeOfferState.BOUGHT,
+            GrandExchangeOfferState.SELLING,
+            GrandExchangeOfferState.SOLD
+    };
+
     private static final String SELECT_BY_FLIPPING_ITEM_SQL = "SELECT * FROM offer_event WHERE flipping_item_id = ? ORDER BY time ASC";
 
-    private static final String SELECT_BY_UUID_SQL = "SELECT * FROM offer_event WHERE uuid = ?";
+    //the uuid is bound both encoded and as text, see mapResultSetToOfferEvent
+    private static final String SELECT_BY_UUID_SQL = "SELECT * FROM offer_event WHERE uuid IN (?, ?)";
 
     private static final String DELETE_BY_UUID_SQL = "DELETE FROM offer_event WHERE uuid = ?";
 
-    private static final String DELETE_BY_FLIPPING_ITEM_SQL = "DELETE FROM offer_event WHERE flipping_item_id = ?";
-
     private final DatabaseConnectionManager connectionManager;
 
     @Inject
@@ -46,15 +70,15 @@ public class OfferEventRepository {
     public void insert(OfferEvent offer, long flippingItemId) throws SQLException {
         Connection conn = connectionManager.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
-            stmt.setString(1, offer.getUuid());
+            stmt.setObject(1, encodeUuid(offer.getUuid()));
             stmt.setLong(2, flippingItemId);
             stmt.setInt(3, offer.isBuy() ? 1 : 0);
             stmt.setInt(4, offer.getItemId());
             stmt.setInt(5, offer.getCurrentQuantityInTrade());
             stmt.setInt(6, offer.getPreTaxPrice());
-            stmt.setString(7, offer.getTime().toString());
+            stmt.setLong(7, offer.getTime().toEpochMilli());
             stmt.setInt(8, offer.getSlot());
-            stmt.setString(9, offer.getState().name());
+            stmt.setInt(9, encodeState(offer.getState()));
             stmt.setInt(10, offer.getTickArrivedAt());
             stmt.setInt(11, offer.getTicksSinceFirstOffer());
             stmt.setInt(12, offer.getTotalQuantityInTrade());
@@ -65,19 +89,38 @@ public class OfferEventRepository {
     }
 
     public void insertAll(List<OfferEvent> offers, long flippingItemId) throws SQLException {
+        executeBatch(INSERT_SQL, offers, flippingItemId);
+    }
+
+    /**
+     * Inserts the offers, or updates them if a row with the same uuid already exists. Unlike INSERT OR REPLACE,
+     * this never deletes the existing row, so partial offers and last offers referencing it are left alone.
+     */
+    public void upsertAll(List<OfferEvent> offers, long flippingItemId) throws SQLException {
+        executeBatch(UPSERT_SQL, offers, flippingItemId);
+    }
+
+    /**
+     * Runs the batch in its own transaction unless the caller has already started one, in which case the
+     * caller is responsible for committing it.
+     */
+    private void executeBatch(String sql, List<OfferEvent> offers, long flippingItemId) throws SQLException {
         Connection conn = connectionManager.getConnection();
-        conn.setAutoCommit(false);
-        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+        boolean ownsTransaction = conn.getAutoCommit();
+        if (ownsTransaction) {
+            conn.setAutoCommit(false);
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             for (OfferEvent offer : offers) {
-                stmt.setString(1, offer.getUuid());
+                stmt.setObject(1, encodeUuid(offer.getUuid()));
                 stmt.setLong(2, flippingItemId);
                 stmt.setInt(3, offer.isBuy() ? 1 : 0);
                 stmt.setInt(4, offer.getItemId());
                 stmt.setInt(5, offer.getCurrentQuantityInTrade());
                 stmt.setInt(6, offer.getPreTaxPrice());
-                stmt.setString(7, offer.getTime().toString());
+                stmt.setLong(7, offer.getTime().toEpochMilli());
                 stmt.setInt(8, offer.getSlot());
-                stmt.setString(9, offer.getState().name());
+                stmt.setInt(9, encodeState(offer.getState()));
                 stmt.setInt(10, offer.getTickArrivedAt());
                 stmt.setInt(11, offer.getTicksSinceFirstOffer());
                 stmt.setInt(12, offer.getTotalQuantityInTrade());
@@ -86,12 +129,18 @@ public class OfferEventRepository {
                 stmt.addBatch();
             }
             stmt.executeBatch();
-            conn.commit();
+            if (ownsTransaction) {
+                conn.commit();
+            }
         } catch (SQLException e) {
-            conn.rollback();
+            if (ownsTransaction) {
+                conn.rollback();
+            }
             throw e;
         } finally {
-            conn.setAutoCommit(true);
+            if (ownsTransaction) {
+                conn.setAutoCommit(true);
+            }
         }
     }
 
@@ -102,22 +151,22 @@ public class OfferEventRepository {
             stmt.setInt(2, offer.getItemId());
             stmt.setInt(3, offer.getCurrentQuantityInTrade());
             stmt.setInt(4, offer.getPreTaxPrice());
-            stmt.setString(5, offer.getTime().toString());
+            stmt.setLong(5, offer.getTime().toEpochMilli());
             stmt.setInt(6, offer.getSlot());
-            stmt.setString(7, offer.getState().name());
+            stmt.setInt(7, encodeState(offer.getState()));
             stmt.setInt(8, offer.getTickArrivedAt());
             stmt.setInt(9, offer.getTicksSinceFirstOffer());
             stmt.setInt(10, offer.getTotalQuantityInTrade());
             setNullableInstant(stmt, 11, offer.getTradeStartedAt());
             stmt.setInt(12, offer.isBeforeLogin() ? 1 : 0);
-            stmt.setString(13, offer.getUuid());
+            stmt.setObject(13, encodeUuid(offer.getUuid()));
             stmt.executeUpdate();
         }
     }
 
     public List<OfferEvent> findByFlippingItemId(long flippingItemId) throws SQLException {
         List<OfferEvent> offers = new ArrayList<>();
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_FLIPPING_ITEM_SQL)) {
             stmt.setLong(1, flippingItemId);
             try (ResultSet rs = stmt.executeQuery()) {
@@ -130,9 +179,10 @@ public class OfferEventRepository {
     }
 
     public OfferEvent findByUuid(String uuid) throws SQLException {
-        Connection conn = connectionManager.getConnection();
+        Connection conn = connectionManager.getReadConnection();
         try (PreparedStatement stmt = conn.prepareStatement(SELECT_BY_UUID_SQL)) {
-            stmt.setString(1, uuid);
+            stmt.setObject(1, encodeUuid(uuid));
+            stmt.setString(2, uuid);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
                     return mapResultSetToOfferEvent(rs);
@@ -145,36 +195,44 @@ public class OfferEventRepository {
     public void deleteByUuid(String uuid) throws SQLException {
         Connection conn = connectionManager.getConnection();
         try (PreparedStatement stmt = conn.prepareStatement(DELETE_BY_UUID_SQL)) {
-            stmt.setString(1, uuid);
+            stmt.setObject(1, encodeUuid(uuid));
             stmt.executeUpdate();
         }
     }
 
-    public void deleteByFlippingItemId(long flippingItemId) throws SQLException {
+    public void deleteByUuids(Collection<String> uuids) throws SQLException {
+        if (uuids.isEmpty()) {
+            return;
+        }
         Connection conn = connectionManager.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(DELETE_BY_FLIPPING_ITEM_SQL)) {
-            stmt.setLong(1, flippingItemId);
-            stmt.executeUpdate();
+        try (PreparedStatement stmt = conn.prepareStatement(DELETE_BY_UUID_SQL)) {
+            for (String uuid : uuids) {
+                stmt.setObject(1, encodeUuid(uuid));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
         }
     }
 
-    private OfferEvent mapResultSetToOfferEvent(ResultSet rs) throws SQLException {
-        String tradeStartedAtStr = rs.getString("trade_started_at");
-        Instant tradeStartedAt = tradeStartedAtStr != null ? Instant.parse(tradeStartedAtStr) : null;
-
+    /**
+     * Reads offers stored in the compact format of V2__compact_offer_event.sql as well as offers stored by the
+     * initial schema (times as ISO-8601 text, states by name, uuids as text), as the old table is still the one
+     * being read while {@link CompactOfferEventMigration} runs in the background.
+     */
+    OfferEvent mapResultSetToOfferEvent(ResultSet rs) throws SQLException {
         return new OfferEvent(
-                rs.getString("uuid"),
+                decodeUuid(rs.getObject("uuid")),
                 rs.getInt("is_buy") == 1,
                 rs.getInt("item_id"),
                 rs.getInt("current_quantity_in_trade"),
                 rs.getInt("price"),
-                Instant.parse(rs.getString("time")),
+                decodeInstant(rs.getObject("time")),
                 rs.getInt("slot"),
-                GrandExchangeOfferState.valueOf(rs.getString("state")),
+                decodeState(rs.getObject("state")),
                 rs.getInt("tick_arrived_at"),
                 rs.getInt("ticks_since_first_offer"),
                 rs.getInt("total_quantity_in_trade"),
-                tradeStartedAt,
+                decodeInstant(rs.getObject("trade_started_at")),
                 rs.getInt("before_login") == 1,
                 null,
                 null,
@@ -182,11 +240,70 @@ public class OfferEventRepository {
                 0);
     }
 
+    private static Instant decodeInstant(Object value) {
+        if (value instanceof Number) {
+            return Instant.ofEpochMilli(((Number) value).longValue());
+        }
+        return value == null ? null : Instant.parse(value.toString());
+    }
+
+    /**
+     * Uuids in the standard form (all of the ones made by the plugin) are stored as their 16 bytes. Anything else
+     * is stored as the string itself so it comes back exactly as it went in. Used for every column holding an
+     * offer's uuid so that they can be compared with each other.
+     */
+    static Object encodeUuid(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+        try {
+            UUID parsed = UUID.fromString(uuid);
+            //UUID.fromString is lenient, only use the bytes if they turn back into exactly the same string
+            if (parsed.toString().equals(uuid)) {
+                return ByteBuffer.allocate(16)
+                        .putLong(parsed.getMostSignificantBits())
+                        .putLong(parsed.getLeastSignificantBits())
+                        .array();
+            }
+        } catch (IllegalArgumentException e) {
+            //not a uuid, keep it as text
+        }
+        return uuid;
+    }
+
+    static String decodeUuid(Object value) {
+        if (value instanceof byte[] && ((byte[]) value).length == 16) {
+            ByteBuffer bytes = ByteBuffer.wrap((byte[]) value);
+            return new UUID(bytes.getLong(), bytes.getLong()).toString();
+        }
+        return value == null ? null : value.toString();
+    }
+
+    static int encodeState(GrandExchangeOfferState state) {
+        for (int code = 0; code < STATE_CODES.length; code++) {
+            if (STATE_CODES[code] == state) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("no code for offer state " + state);
+    }
+
+    static GrandExchangeOfferState decodeState(Object value) throws SQLException {
+        if (!(value instanceof Number)) {
+            return value == null ? null : GrandExchangeOfferState.valueOf(value.toString());
+        }
+        int code = ((Number) value).intValue();
+        if (code < 0 || code >= STATE_CODES.length) {
+            throw new SQLException("unknown offer state code " + code);
+        }
+        return STATE_CODES[code];
+    }
+
     private void setNullableInstant(PreparedStatement stmt, int index, Instant value) throws SQLException {
         if (value != null) {
-            stmt.setString(index, value.toString());
+            stmt.setLong(index, value.toEpochMilli());
         } else {
-            stmt.setNull(index, java.sql.Types.VARCHAR);
+            stmt.setNull(index, java.sql.Types.INTEGER);
         }
     }
 }
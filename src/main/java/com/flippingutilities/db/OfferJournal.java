@@ -0,0 +1,304 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.model.OfferEvent;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the offers coming out of the offer pipeline, so that a crash only loses the offers
+ * that came in during the last few milliseconds rather than everything since the last store.
+ * <p>
+ * Appending only queues the entry. A background thread writes whatever has been queued since it last woke up and
+ * fsyncs once for all of it, so the client thread never waits on the disk and a burst of offers costs one fsync.
+ * Every entry gets a sequence number and a store records how far into the journal it got in the same transaction
+ * (see {@link AccountRepository#saveJournalSequence}). Entries up to that point are then dropped by rewriting the
+ * journal without them, and whatever is left when the plugin starts is replayed.
+ * <p>
+ * An entry is a line of json followed by a tab and the crc32 of the json. A line that doesn't check out can only be
+ * the tail of a write cut short by a crash, so reading stops there.
+ */
+@Slf4j
+public class OfferJournal {
+
+    private static final String FILE_NAME = "offers.journal";
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        @SerializedName("s")
+        private final long sequence;
+        @SerializedName("a")
+        private final String accountName;
+        @SerializedName("n")
+        private final String itemName;
+        @SerializedName("l")
+        private final int geLimit;
+        @SerializedName("o")
+        private final OfferEvent offer;
+    }
+
+    private final Gson gson;
+    private final File file;
+    private final Thread writerThread;
+
+    private final Object lock = new Object();
+    //every entry that hasn't been dropped yet, in sequence order
+    private final List<Entry> entries = new ArrayList<>();
+    //entries that haven't been written to the file yet
+    private final List<Entry> unwritten = new ArrayList<>();
+    private boolean rewriteNeeded;
+    private boolean closed;
+    private long lastSequence;
+    private FileChannel channel;
+
+    /**
+     * Reads what is left in the journal and starts the thread that writes to it.
+     *
+     * @param storedSequences how far into the journal each account has been stored, so that sequence numbers keep
+     *                        going up even if the journal file was lost
+     */
+    public OfferJournal(Gson gson, Map<String, Long> storedSequences) throws IOException {
+        this(gson, new File(DatabaseConstants.DATABASE_DIRECTORY, FILE_NAME), storedSequences);
+    }
+
+    OfferJournal(Gson gson, File file, Map<String, Long> storedSequences) throws IOException {
+        this.gson = gson;
+        this.file = file;
+        for (long sequence : storedSequences.values()) {
+            lastSequence = Math.max(lastSequence, sequence);
+        }
+        boolean intact = read();
+        for (Entry entry : entries) {
+            lastSequence = Math.max(lastSequence, entry.getSequence());
+        }
+        if (!intact) {
+            //anything appended after a torn line would be lost with it
+            rewrite(new ArrayList<>(entries));
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        writerThread = new Thread(this::runWriter, "flipping-utilities-journal");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the offer to be journaled, it is written and fsynced on the journal's thread shortly after.
+     *
+     * @param offer an offer that won't be changed anymore, such as a clone
+     */
+    public void append(String accountName, String itemName, int geLimit, OfferEvent offer) {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            Entry entry = new Entry(++lastSequence, accountName, itemName, geLimit, offer);
+            entries.add(entry);
+            unwritten.add(entry);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the sequence of the latest entry. A store that snapshots the account after calling this includes
+     * every offer journaled up to it.
+     */
+    public long getLastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * @return the account's entries after the sequence it has been stored up to, in the order they were appended
+     */
+    public List<Entry> getEntriesAfter(String accountName, long storedSequence) {
+        synchronized (lock) {
+            return entries.stream()
+                    .filter(e -> e.getAccountName().equals(accountName) && e.getSequence() > storedSequence)
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @return the names of the accounts that have entries in the journal
+     */
+    public List<String> getAccountNames() {
+        synchronized (lock) {
+            return entries.stream().map(Entry::getAccountName).distinct().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Drops the account's entries up to the sequence now that they have been stored. The journal file is rewritten
+     * without them on the journal's thread.
+     */
+    public void compact(String accountName, long storedSequence) {
+        synchronized (lock) {
+            if (entries.removeIf(e -> e.getAccountName().equals(accountName) && e.getSequence() <= storedSequence)) {
+                rewriteNeeded = true;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes whatever is still queued and stops the journal's thread.
+     */
+    public void close(long timeoutMillis) {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<Entry> batch;
+            List<Entry> live = null;
+            synchronized (lock) {
+                while (unwritten.isEmpty() && !rewriteNeeded && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        //only close stops the writer, otherwise journaled offers could be lost
+                    }
+                }
+                if (unwritten.isEmpty() && !rewriteNeeded) {
+                    closeChannel();
+                    return;
+                }
+                batch = new ArrayList<>(unwritten);
+                unwritten.clear();
+                if (rewriteNeeded) {
+                    live = new ArrayList<>(entries);
+                    rewriteNeeded = false;
+                }
+            }
+
+            try {
+                if (live != null) {
+                    //the live entries include the unwritten ones that haven't been dropped already
+                    closeChannel();
+                    try {
+                        rewrite(live);
+                    } finally {
+                        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+                    }
+                } else {
+                    writeEntries(channel, batch);
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                log.warn("Failed to write {} offers to the journal", batch.size(), e);
+            }
+        }
+    }
+
+    private void writeEntries(FileChannel channel, List<Entry> batch) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Entry entry : batch) {
+            String json = gson.toJson(entry);
+            lines.append(json).append('\t').append(Long.toHexString(crc(json))).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Writes the entries to a new file and swaps it in, so a crash part way through leaves the old journal.
+     */
+    private void rewrite(List<Entry> live) throws IOException {
+        File temp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeEntries(out, live);
+            out.force(false);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return false if reading stopped at a line that didn't check out
+     */
+    private boolean read() throws IOException {
+        if (!file.exists()) {
+            return true;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry == null) {
+                    log.warn("The offer journal ends in a damaged entry, ignoring everything from it on");
+                    return false;
+                }
+                entries.add(entry);
+            }
+        }
+        if (!entries.isEmpty()) {
+            log.info("{} offers in the journal haven't been dropped yet", entries.size());
+        }
+        return true;
+    }
+
+    private Entry parse(String line) {
+        int tab = line.lastIndexOf('\t');
+        if (tab < 0) {
+            return null;
+        }
+        String json = line.substring(0, tab);
+        try {
+            if (Long.parseLong(line.substring(tab + 1), 16) != crc(json)) {
+                return null;
+            }
+            Entry entry = gson.fromJson(json, Entry.class);
+            return entry != null && entry.getAccountName() != null && entry.getOffer() != null ? entry : null;
+        } catch (NumberFormatException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void closeChannel() {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close the offer journal", e);
+        }
+    }
+
+    private static long crc(String json) {
+        CRC32 crc = new CRC32();
+        crc.update(json.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
@@ -18,6 +18,7 @@ import java.sql.Statement;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,11 +34,19 @@ public class RecipeFlipRepository {
             +
             "VALUES (?, ?, ?, ?, ?)";
 
-    private static final String SELECT_GROUPS_BY_ACCOUNT_SQL = "SELECT * FROM recipe_flip_group WHERE account_name = ?";
+    private static final String SELECT_GROUPS_BY_ACCOUNT_SQL = "SELECT * FROM recipe_flip_group WHERE account_name = ? ORDER BY id";
 
-    private static final String SELECT_FLIPS_BY_GROUP_SQL = "SELECT * FROM recipe_flip WHERE recipe_flip_group_id = ? ORDER BY time_of_creation ASC";
+    private static final String SELECT_FLIPS_BY_ACCOUNT_SQL = "SELECT f.* FROM recipe_flip f "
+            +
+            "JOIN recipe_flip_group g ON g.id = f.recipe_flip_group_id WHERE g.account_name = ? "
+            +
+            "ORDER BY f.recipe_flip_group_id, f.time_of_creation ASC";
 
-    private static final String SELECT_PARTIAL_OFFERS_BY_FLIP_SQL = "SELECT * FROM partial_offer WHERE recipe_flip_id = ?";
+    private static final String SELECT_PARTIAL_OFFERS_BY_ACCOUNT_SQL = "SELECT p.* FROM partial_offer p "
+            +
+            "JOIN recipe_flip f ON f.id = p.recipe_flip_id "
+            +
+            "JOIN recipe_flip_group g ON g.id = f.recipe_flip_group_id WHERE g.account_name = ?";
 
     private static final String DELETE_GROUP_SQL = "DELETE FROM recipe_flip_group WHERE id = ?";
 
@@ -106,7 +115,7 @@ public class RecipeFlipRepository {
                 int itemId = itemEntry.getKey();
                 for (PartialOffer partial : itemEntry.getValue().values()) {
                     stmt.setLong(1, flipId);
-                    stmt.setString(2, partial.getOffer().getUuid());
+                    stmt.setObject(2, OfferEventRepository.encodeUuid(partial.getOffer().getUuid()));
                     stmt.setInt(3, partial.getAmountConsumed());
                     stmt.setInt(4, isInput ? 1 : 0);
                     stmt.setInt(5, itemId);
@@ -117,72 +126,98 @@ public class RecipeFlipRepository {
         }
     }
 
-    public List<RecipeFlipGroup> findGroupsByAccountName(String accountName) throws SQLException {
-        List<RecipeFlipGroup> groups = new ArrayList<>();
-        Connection conn = connectionManager.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(SELECT_GROUPS_BY_ACCOUNT_SQL)) {
-            stmt.setString(1, accountName);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    long groupId = rs.getLong("id");
-                    String recipeData = rs.getString("recipe_data");
-                    Recipe recipe = gson.fromJson(recipeData, Recipe.class);
-                    RecipeFlipGroup group = new RecipeFlipGroup(recipe);
-                    group.setRecipeFlips(findFlipsByGroupId(groupId));
-                    groups.add(group);
+    /**
+     * Loads all of the account's recipe flip groups with three queries, one each for the groups, the flips and
+     * the partial offers, in one read transaction so they all see the same snapshot. The partial offers' offers
+     * are looked up in the account's offers, which have already been loaded by then; only offers missing from
+     * there are queried for.
+     *
+     * @param offersByUuid the account's offers
+     */
+    public List<RecipeFlipGroup> findGroupsByAccountName(String accountName, Map<String, OfferEvent> offersByUuid)
+            throws SQLException {
+        Map<Long, RecipeFlipGroup> groups = new LinkedHashMap<>();
+        Map<Long, RecipeFlip> flips = new HashMap<>();
+        Connection conn = connectionManager.getReadConnection();
+        //the account could already be being loaded in a read transaction
+        boolean ownsTransaction = conn.getAutoCommit();
+        if (ownsTransaction) {
+            conn.setAutoCommit(false);
+        }
+        try {
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_GROUPS_BY_ACCOUNT_SQL)) {
+                stmt.setString(1, accountName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Recipe recipe = gson.fromJson(rs.getString("recipe_data"), Recipe.class);
+                        groups.put(rs.getLong("id"), new RecipeFlipGroup(recipe));
+                    }
                 }
             }
-        }
-        return groups;
-    }
 
-    public List<RecipeFlip> findFlipsByGroupId(long groupId) throws SQLException {
-        List<RecipeFlip> flips = new ArrayList<>();
-        Connection conn = connectionManager.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(SELECT_FLIPS_BY_GROUP_SQL)) {
-            stmt.setLong(1, groupId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    long flipId = rs.getLong("id");
-                    Instant timeOfCreation = Instant.parse(rs.getString("time_of_creation"));
-                    long coinCost = rs.getLong("coin_cost");
-
-                    Map<Integer, Map<String, PartialOffer>> inputs = new HashMap<>();
-                    Map<Integer, Map<String, PartialOffer>> outputs = new HashMap<>();
-                    loadPartialOffers(flipId, inputs, outputs);
-
-                    RecipeFlip flip = new RecipeFlip(timeOfCreation, outputs, inputs, coinCost);
-                    flips.add(flip);
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_FLIPS_BY_ACCOUNT_SQL)) {
+                stmt.setString(1, accountName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        RecipeFlip flip = new RecipeFlip(
+                                Instant.parse(rs.getString("time_of_creation")),
+                                new HashMap<>(),
+                                new HashMap<>(),
+                                rs.getLong("coin_cost"));
+                        RecipeFlipGroup group = groups.get(rs.getLong("recipe_flip_group_id"));
+                        if (group != null) {
+                            flips.put(rs.getLong("id"), flip);
+                            group.getRecipeFlips().add(flip);
+                        }
+                    }
                 }
             }
-        }
-        return flips;
-    }
 
-    private void loadPartialOffers(long flipId, Map<Integer, Map<String, PartialOffer>> inputs,
-            Map<Integer, Map<String, PartialOffer>> outputs) throws SQLException {
-        Connection conn = connectionManager.getConnection();
-        try (PreparedStatement stmt = conn.prepareStatement(SELECT_PARTIAL_OFFERS_BY_FLIP_SQL)) {
-            stmt.setLong(1, flipId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String offerUuid = rs.getString("offer_event_uuid");
-                    int amountConsumed = rs.getInt("amount_consumed");
-                    boolean isInput = rs.getInt("is_input") == 1;
-                    int itemId = rs.getInt("item_id");
-
-                    OfferEvent offer = offerEventRepository.findByUuid(offerUuid);
-                    if (offer == null) {
-                        log.warn("Could not find offer event with uuid {} for partial offer", offerUuid);
-                        continue;
+            try (PreparedStatement stmt = conn.prepareStatement(SELECT_PARTIAL_OFFERS_BY_ACCOUNT_SQL)) {
+                stmt.setString(1, accountName);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        RecipeFlip flip = flips.get(rs.getLong("recipe_flip_id"));
+                        if (flip != null) {
+                            addPartialOffer(flip, rs, offersByUuid);
+                        }
                     }
-
-                    PartialOffer partial = new PartialOffer(offer, amountConsumed);
-                    Map<Integer, Map<String, PartialOffer>> targetMap = isInput ? inputs : outputs;
-                    targetMap.computeIfAbsent(itemId, k -> new HashMap<>()).put(offerUuid, partial);
                 }
             }
+            if (ownsTransaction) {
+                conn.commit();
+            }
+        } catch (SQLException e) {
+            if (ownsTransaction) {
+                conn.rollback();
+            }
+            throw e;
+        } finally {
+            if (ownsTransaction) {
+                conn.setAutoCommit(true);
+            }
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private void addPartialOffer(RecipeFlip flip, ResultSet rs, Map<String, OfferEvent> offersByUuid)
+            throws SQLException {
+        String offerUuid = OfferEventRepository.decodeUuid(rs.getObject("offer_event_uuid"));
+        int amountConsumed = rs.getInt("amount_consumed");
+        boolean isInput = rs.getInt("is_input") == 1;
+        int itemId = rs.getInt("item_id");
+
+        OfferEvent offer = offersByUuid.get(offerUuid);
+        //partial offers hold their own copy of the offer, like they do when they're created
+        offer = offer != null ? offer.clone() : offerEventRepository.findByUuid(offerUuid);
+        if (offer == null) {
+            log.warn("Could not find offer event with uuid {} for partial offer", offerUuid);
+            return;
         }
+
+        PartialOffer partial = new PartialOffer(offer, amountConsumed);
+        Map<Integer, Map<String, PartialOffer>> targetMap = isInput ? flip.getInputs() : flip.getOutputs();
+        targetMap.computeIfAbsent(itemId, k -> new HashMap<>()).put(offerUuid, partial);
     }
 
     public void deleteGroup(long groupId) throws SQLException {
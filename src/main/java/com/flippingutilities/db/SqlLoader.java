@@ -3,12 +3,19 @@ package com.flippingutilities.db;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 @Slf4j
 public final class SqlLoader {
@@ -69,4 +76,48 @@ public final class SqlLoader {
 
         return statements.toArray(new String[0]);
     }
+
+    /**
+     * Lists the names of the files in the sql resource folder. The resources are a plain directory when running
+     * from an IDE or the tests and packed in the plugin's jar otherwise, so both are handled. The folder is found
+     * through a file that is always there, as a jar doesn't necessarily have entries for its directories.
+     */
+    public static List<String> listFiles(String knownFileName) {
+        String path = SQL_RESOURCE_PATH + knownFileName;
+        URL url = SqlLoader.class.getResource(path);
+        if (url == null) {
+            throw new IllegalArgumentException("SQL file not found: " + path);
+        }
+
+        List<String> names = new ArrayList<>();
+        try {
+            if (url.getProtocol().equals("jar")) {
+                JarURLConnection connection = (JarURLConnection) url.openConnection();
+                //a cached jar file is shared with the class loader, closing it would break loading classes
+                connection.setUseCaches(false);
+                String folder = connection.getEntryName().substring(0, connection.getEntryName().lastIndexOf('/') + 1);
+                try (JarFile jar = connection.getJarFile()) {
+                    Enumeration<JarEntry> entries = jar.entries();
+                    while (entries.hasMoreElements()) {
+                        String name = entries.nextElement().getName();
+                        if (name.startsWith(folder) && name.length() > folder.length()
+                                && name.indexOf('/', folder.length()) == -1) {
+                            names.add(name.substring(folder.length()));
+                        }
+                    }
+                }
+            } else {
+                File[] files = new File(url.toURI()).getParentFile().listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        names.add(file.getName());
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException e) {
+            log.error("Failed to list SQL files next to: {}", path, e);
+            throw new RuntimeException("Failed to list SQL files next to: " + path, e);
+        }
+        return names;
+    }
 }
@@ -0,0 +1,139 @@
+package com.flippingutilities.db;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wraps a connection so that {@link Connection#prepareStatement(String)} reuses statements prepared earlier for the
+ * same sql instead of compiling the sql again every time. The repositories don't need to know about it: they keep
+ * closing their statements with try-with-resources, and closing a cached statement puts it back in the cache rather
+ * than closing it.
+ * <p>
+ * A cached statement is only handed out to one user at a time. If it is already in use (another thread is reading
+ * with it, for example) a new statement is prepared, and it goes back in the cache when closed if there is room.
+ */
+@Slf4j
+final class StatementCache implements InvocationHandler {
+
+    private static final int MAX_CACHED_STATEMENTS = 64;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> idleStatements = new HashMap<>();
+
+    private StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new StatementCache(connection));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getName().equals("prepareStatement") && args.length == 1) {
+            return checkOut((String) args[0]);
+        }
+        if (method.getName().equals("close")) {
+            closeIdleStatements();
+        }
+        return invokeOn(connection, method, args);
+    }
+
+    private PreparedStatement checkOut(String sql) throws SQLException {
+        PreparedStatement statement;
+        synchronized (this) {
+            statement = idleStatements.remove(sql);
+        }
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+        }
+        return (PreparedStatement) Proxy.newProxyInstance(
+                StatementCache.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new CachedStatement(sql, statement));
+    }
+
+    private void checkIn(String sql, PreparedStatement statement) throws SQLException {
+        if (connection.isClosed()) {
+            statement.close();
+            return;
+        }
+        statement.clearParameters();
+        statement.clearBatch();
+        synchronized (this) {
+            if (idleStatements.size() < MAX_CACHED_STATEMENTS && !idleStatements.containsKey(sql)) {
+                idleStatements.put(sql, statement);
+                return;
+            }
+        }
+        statement.close();
+    }
+
+    private void closeIdleStatements() {
+        List<PreparedStatement> statements;
+        synchronized (this) {
+            statements = new ArrayList<>(idleStatements.values());
+            idleStatements.clear();
+        }
+        for (PreparedStatement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                log.debug("failed to close cached statement", e);
+            }
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * One user's lease of a cached statement. Closing it returns the statement to the cache, closing it again does
+     * nothing so the statement can't end up being used by two leases at once.
+     */
+    private class CachedStatement implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean returned;
+
+        private CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        checkIn(sql, statement);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || statement.isClosed();
+                default:
+                    return invokeOn(statement, method, args);
+            }
+        }
+    }
+}
@@ -4,7 +4,7 @@ import com.flippingutilities.model.AccountData;
 import com.flippingutilities.model.AccountWideData;
 import com.flippingutilities.model.FlippingItem;
 import com.flippingutilities.model.OfferEvent;
-import com.flippingutilities.model.BackupCheckpoints;
+import com.flippingutilities.model.PendingChanges;
 import com.flippingutilities.model.RecipeFlipGroup;
 import com.flippingutilities.ui.uiutilities.TimeFormatters;
 import com.google.gson.Gson;
@@ -19,10 +19,17 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Singleton
@@ -30,6 +37,14 @@ public class TradePersister {
 
 	public static final File PARENT_DIRECTORY = new File(RuneLite.RUNELITE_DIR, "flipping");
 	public static final File OLD_FILE = new File(PARENT_DIRECTORY, "trades.json");
+	//accounts that used to be backed up by storing a copy of them under this suffix, see deleteLegacyBackups
+	private static final String LEGACY_BACKUP_SUFFIX = ".backup";
+	//how long a flush on logout/shutdown waits for the writer thread
+	private static final long FLUSH_TIMEOUT_MILLIS = 10_000;
+	private static final int CHANGE_PAGE_SIZE = 500;
+	//the cursor is only there for pruning the change log, so it doesn't have to be saved on every poll
+	private static final long CHANGE_CURSOR_SAVE_INTERVAL_MILLIS = 60_000;
+	private static final String CHANGE_CURSOR_WRITE_KEY = "changeLogCursor";
 
 	private final Gson gson;
 	private final DatabaseConnectionManager connectionManager;
@@ -39,7 +54,19 @@ public class TradePersister {
 	private final RecipeFlipRepository recipeFlipRepository;
 	private final AccountRepository accountRepository;
 	private final AccountWideDataRepository accountWideDataRepository;
+	private final OfferArchiveRepository offerArchiveRepository;
 	private final JsonToSqliteMigrator jsonToSqliteMigrator;
+	private final WriteBehindQueue writeQueue;
+	private final DatabaseBackupManager backupManager;
+	private final AccountSnapshotStore accountSnapshots;
+	private final ChangeLogRepository changeLogRepository;
+	//tags the changes this client writes to the change log, so it can skip them when reading it
+	private final String clientId = UUID.randomUUID().toString();
+	//the seq of the last change read from the change log, -1 until the change log can be read
+	private long changeCursor = -1;
+	private long changeCursorSavedAt;
+	//opened in setupFlippingFolder, once the folder and database are there
+	private volatile OfferJournal offerJournal;
 
 	/**
 	 * Simple constructor for backward compatibility with FlippingPlugin.
@@ -55,9 +82,14 @@ public class TradePersister {
 		this.accountRepository = new AccountRepository(connectionManager, flippingItemRepository, recipeFlipRepository,
 				offerEventRepository);
 		this.accountWideDataRepository = new AccountWideDataRepository(connectionManager, gson);
+		this.offerArchiveRepository = new OfferArchiveRepository(connectionManager, offerEventRepository);
 		this.jsonToSqliteMigrator = new JsonToSqliteMigrator(
-				gson, connectionManager, accountRepository, flippingItemRepository, recipeFlipRepository,
-				accountWideDataRepository);
+				gson, connectionManager, accountRepository, flippingItemRepository, offerEventRepository,
+				recipeFlipRepository, accountWideDataRepository);
+		this.writeQueue = new WriteBehindQueue(connectionManager);
+		this.backupManager = new DatabaseBackupManager(connectionManager);
+		this.accountSnapshots = new AccountSnapshotStore();
+		this.changeLogRepository = new ChangeLogRepository(connectionManager);
 	}
 
 	@Inject
@@ -69,7 +101,11 @@ public class TradePersister {
 			FlippingItemRepository flippingItemRepository,
 			RecipeFlipRepository recipeFlipRepository,
 			AccountRepository accountRepository,
-			AccountWideDataRepository accountWideDataRepository) {
+			AccountWideDataRepository accountWideDataRepository,
+			OfferArchiveRepository offerArchiveRepository,
+			DatabaseBackupManager backupManager,
+			AccountSnapshotStore accountSnapshots,
+			ChangeLogRepository changeLogRepository) {
 		this.gson = gson;
 		this.connectionManager = connectionManager;
 		this.databaseMigrator = databaseMigrator;
@@ -78,9 +114,14 @@ public class TradePersister {
 		this.recipeFlipRepository = recipeFlipRepository;
 		this.accountRepository = accountRepository;
 		this.accountWideDataRepository = accountWideDataRepository;
+		this.offerArchiveRepository = offerArchiveRepository;
 		this.jsonToSqliteMigrator = new JsonToSqliteMigrator(
-				gson, connectionManager, accountRepository, flippingItemRepository, recipeFlipRepository,
-				accountWideDataRepository);
+				gson, connectionManager, accountRepository, flippingItemRepository, offerEventRepository,
+				recipeFlipRepository, accountWideDataRepository);
+		this.writeQueue = new WriteBehindQueue(connectionManager);
+		this.backupManager = backupManager;
+		this.accountSnapshots = accountSnapshots;
+		this.changeLogRepository = changeLogRepository;
 	}
 
 	public void setupFlippingFolder() throws IOException {
@@ -98,32 +139,146 @@ public class TradePersister {
 
 		try {
 			databaseMigrator.migrate();
+			//the stores are written in the new schema, so they are held back until the migrations running in the
+			//background are done. If one fails the old schema is still in use and nothing can be written.
+			writeQueue.pause();
+			databaseMigrator.getCompletion().whenComplete((result, error) -> {
+				if (error == null) {
+					writeQueue.resume();
+				} else {
+					log.error("Not saving anything until the database migration succeeds");
+				}
+			});
 			if (jsonToSqliteMigrator.needsMigration()) {
+				databaseMigrator.awaitCompletion();
 				jsonToSqliteMigrator.migrate();
 			}
+			openJournal();
+			databaseMigrator.getCompletion().thenRun(this::startReadingChanges);
+			//a backup taken part way through a migration would have to be migrated again if it was ever restored
+			databaseMigrator.getCompletion().thenRun(() -> backupManager.scheduleBackup(this::deleteLegacyBackups));
 		} catch (SQLException e) {
 			log.error("Failed to initialize database", e);
 			throw new IOException("Failed to initialize SQLite database", e);
 		}
 	}
 
-	public Map<String, AccountData> loadAllAccounts() {
+	private void openJournal() throws SQLException {
+		if (offerJournal != null) {
+			return;
+		}
+		try {
+			offerJournal = new OfferJournal(gson, accountRepository.findJournalSequences());
+		} catch (IOException e) {
+			log.warn("Failed to open the offer journal, offers will only be saved when the accounts are stored", e);
+			return;
+		}
+		//the replayed offers are stored in the new schema, which they have to wait for if it's still migrating
+		if (databaseMigrator.getCompletion().isDone()) {
+			replayJournal();
+			flush();
+		} else {
+			databaseMigrator.getCompletion().thenRun(this::replayJournal);
+		}
+	}
+
+	/**
+	 * Stores the offers the journal has that never made it into a store, because the client crashed or was closed
+	 * before it could store them. Loading an account adds them (see {@link #applyJournal}) and also picks up any
+	 * that haven't been stored yet by the time it is loaded.
+	 */
+	private void replayJournal() {
+		for (String displayName : offerJournal.getAccountNames()) {
+			store(displayName, loadAccount(displayName));
+		}
+	}
+
+	/**
+	 * Everything is loaded from the tables from here on, so only the changes made after this point are of interest.
+	 */
+	synchronized void startReadingChanges() {
 		try {
-			return accountRepository.findAll();
+			changeCursor = changeLogRepository.findLatestSeq();
+			saveChangeCursor();
 		} catch (SQLException e) {
-			log.error("Failed to load accounts from database", e);
-			return new HashMap<>();
+			log.warn("Failed to read the change log, changes made by other clients won't be picked up", e);
+		}
+	}
+
+	/**
+	 * Reads the changes other clients have stored since the last poll, see {@link ChangeLogRepository}. It only
+	 * reads the rows after the cursor, so it is cheap enough to call whenever the database changes.
+	 */
+	public synchronized List<ChangeLogRepository.Change> pollChanges() {
+		List<ChangeLogRepository.Change> changes = new ArrayList<>();
+		if (changeCursor < 0) {
+			return changes;
+		}
+		try {
+			List<ChangeLogRepository.Change> page;
+			do {
+				page = changeLogRepository.findAfter(changeCursor, CHANGE_PAGE_SIZE);
+				for (ChangeLogRepository.Change change : page) {
+					if (!change.getClientId().equals(clientId)) {
+						changes.add(change);
+					}
+					changeCursor = change.getSeq();
+				}
+			} while (page.size() == CHANGE_PAGE_SIZE);
+		} catch (SQLException e) {
+			log.warn("Failed to read the change log", e);
+		}
+		//saving the cursor is a write, which other clients see as a change too. Only saving it after reading their
+		//changes keeps clients from setting each other off.
+		if (!changes.isEmpty() && System.currentTimeMillis() - changeCursorSavedAt > CHANGE_CURSOR_SAVE_INTERVAL_MILLIS) {
+			saveChangeCursor();
+		}
+		return changes;
+	}
+
+	private void saveChangeCursor() {
+		long cursor = changeCursor;
+		changeCursorSavedAt = System.currentTimeMillis();
+		writeQueue.enqueue(CHANGE_CURSOR_WRITE_KEY, () -> changeLogRepository.saveCursor(clientId, cursor));
+	}
+
+	/**
+	 * Loads one of the account's items as it is in the database.
+	 *
+	 * @return null if the account doesn't have the item or it couldn't be loaded
+	 */
+	public FlippingItem loadItem(String displayName, int itemId) {
+		try {
+			return flippingItemRepository.findByAccountAndItemIdWithOffers(displayName, itemId);
+		} catch (SQLException e) {
+			log.warn("Failed to load item {} of {}", itemId, displayName, e);
+			return null;
+		}
+	}
+
+	/**
+	 * The names of every account there is data for, without loading any of the data.
+	 */
+	public List<String> loadAccountNames() {
+		try {
+			List<String> names = accountRepository.findAllAccountNames();
+			names.removeIf(name -> name.endsWith(LEGACY_BACKUP_SUFFIX));
+			return names;
+		} catch (SQLException e) {
+			log.error("Failed to load account names from database", e);
+			return new ArrayList<>();
 		}
 	}
 
 	public AccountData loadAccount(String displayName) {
 		log.debug("loading data for {}", displayName);
 		try {
-			AccountData data = accountRepository.findByName(displayName);
+			AccountData data = accountRepository.findByName(displayName, accountSnapshots);
 			if (data == null) {
 				log.debug("No data found for {}, returning new AccountData", displayName);
-				return new AccountData();
+				data = new AccountData();
 			}
+			applyJournal(displayName, data);
 			return data;
 		} catch (SQLException e) {
 			log.error("Failed to load account data for {}", displayName, e);
@@ -131,6 +286,110 @@ public class TradePersister {
 		}
 	}
 
+	/**
+	 * Adds the account's journaled offers that haven't been stored, the same way the offer pipeline added them in the
+	 * first place. They become pending changes of their items, so the next store writes them.
+	 */
+	private void applyJournal(String displayName, AccountData data) throws SQLException {
+		if (offerJournal == null) {
+			return;
+		}
+		long storedSequence = accountRepository.findJournalSequences().getOrDefault(displayName, 0L);
+		List<OfferJournal.Entry> entries = offerJournal.getEntriesAfter(displayName, storedSequence);
+		if (entries.isEmpty()) {
+			return;
+		}
+		Map<Integer, Set<String>> knownOfferIds = new HashMap<>();
+		int replayed = 0;
+		for (OfferJournal.Entry entry : entries) {
+			OfferEvent offer = entry.getOffer();
+			FlippingItem existingItem = data.getTrades().findByItemId(offer.getItemId());
+			FlippingItem item = existingItem != null
+					? existingItem
+					: new FlippingItem(offer.getItemId(), entry.getItemName(), entry.getGeLimit(), displayName);
+			if (existingItem == null) {
+				data.getTrades().add(0, item);
+			}
+			Set<String> offerIds = knownOfferIds.computeIfAbsent(offer.getItemId(), itemId ->
+					item.getHistory().getCompressedOfferEvents().stream().map(OfferEvent::getUuid).collect(Collectors.toSet()));
+			//the offer may have made it into a store that snapshotted the account just before it was journaled
+			if (!offerIds.add(offer.getUuid())) {
+				continue;
+			}
+			offer.setMadeBy(displayName);
+			item.setValidFlippingPanelItem(true);
+			item.updateHistory(offer);
+			item.updateLatestProperties(offer);
+			replayed++;
+		}
+		if (replayed > 0) {
+			log.info("replayed {} offers of {} from the offer journal", replayed, displayName);
+		}
+	}
+
+	/**
+	 * Journals an offer the offer pipeline just added to the item, see {@link OfferJournal}. Doesn't wait for it to
+	 * be written.
+	 */
+	public void journalOffer(String displayName, FlippingItem item, OfferEvent offer) {
+		OfferJournal journal = offerJournal;
+		if (journal != null) {
+			journal.append(displayName, item.getItemName(), item.getTotalGELimit(), offer.clone());
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the account's trades for the next start to load, see {@link AccountSnapshotStore}. Only
+	 * does so if everything about the account has been written to the database, so call it after flushing.
+	 */
+	public void writeSnapshot(String displayName, AccountData data) {
+		if (hasPendingWrite(displayName) || !data.getRemovedItemIds().isEmpty()) {
+			return;
+		}
+		for (FlippingItem item : data.getTrades()) {
+			if (!item.getHistory().getPendingChanges().isEmpty()) {
+				return;
+			}
+		}
+		accountSnapshots.write(displayName, data);
+	}
+
+	/**
+	 * Moves the account's offers older than the age to the archive, see {@link OfferArchiveRepository}. Meant to be
+	 * called right before the account is loaded, when none of its offers are in memory. It runs on its own
+	 * connection so the writes of other accounts aren't held up by it.
+	 */
+	public void archiveOldOffers(String displayName, Duration age) {
+		//the archive is made by a migration that may still be running
+		if (!databaseMigrator.getCompletion().isDone() || databaseMigrator.getCompletion().isCompletedExceptionally()) {
+			return;
+		}
+		try {
+			connectionManager.runOnOwnConnection(() -> {
+				long start = System.currentTimeMillis();
+				int archived = offerArchiveRepository.archiveOffersBefore(displayName, Instant.now().minus(age));
+				if (archived > 0) {
+					accountSnapshots.delete(displayName);
+					log.info("archived {} offers of {} in {}ms", archived, displayName, System.currentTimeMillis() - start);
+				}
+			});
+		} catch (SQLException | IOException e) {
+			log.warn("Failed to archive old offers of {}", displayName, e);
+		}
+	}
+
+	/**
+	 * Gets a page of an item's archived offers after earliestTime, counting from the newest.
+	 */
+	public List<OfferEvent> loadArchivedOffers(String displayName, int itemId, Instant earliestTime, int offset, int limit) {
+		try {
+			return offerArchiveRepository.findArchivedOffers(displayName, itemId, earliestTime, offset, limit);
+		} catch (SQLException e) {
+			log.error("Failed to load archived offers of item {} for {}", itemId, displayName, e);
+			return new ArrayList<>();
+		}
+	}
+
 	public AccountWideData loadAccountWideData() throws IOException {
 		try {
 			AccountWideData data = accountWideDataRepository.load();
@@ -141,43 +400,169 @@ public class TradePersister {
 		}
 	}
 
-	public BackupCheckpoints fetchBackupCheckpoints() {
-		return new BackupCheckpoints();
+	/**
+	 * Takes a snapshot of what needs writing on the calling thread and hands it over to the writer thread, so
+	 * the caller never waits on the database. A store replaces a queued but not yet written store of the same
+	 * name. Use {@link #flush()} to wait for the queued stores to be written.
+	 */
+	public void store(String displayName, Object data) {
+		WriteBehindQueue.Write write = createWrite(displayName, data);
+		if (write != null) {
+			writeQueue.enqueue(displayName, write);
+		}
 	}
 
-	public void writeToFile(String displayName, Object data) throws IOException {
-		log.debug("Writing to database for {}", displayName);
-		try {
-			if (data instanceof AccountData) {
-				saveAccountData(displayName, (AccountData) data);
-			} else if (data instanceof AccountWideData) {
-				accountWideDataRepository.save((AccountWideData) data);
-			} else {
-				log.warn("Unknown data type for writeToFile: {}", data.getClass().getName());
-			}
-		} catch (SQLException e) {
-			log.error("Failed to write data for {}", displayName, e);
-			throw new IOException("Failed to write to database", e);
+	/**
+	 * Waits for everything stored so far to be written.
+	 *
+	 * @return false if the writes didn't finish in time
+	 */
+	public boolean flush() {
+		return writeQueue.flush(FLUSH_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Whether a store for the account is still waiting to be written, in which case loading it from the database
+	 * would give old data.
+	 */
+	public boolean hasPendingWrite(String displayName) {
+		return writeQueue.isPending(displayName);
+	}
+
+	public int getWriteQueueDepth() {
+		return writeQueue.getQueueDepth();
+	}
+
+	public long getLastWriteLatencyMillis() {
+		return writeQueue.getLastFlushLatencyMillis();
+	}
+
+	/**
+	 * @return how far along the database migration running in the background is, or null if there isn't one
+	 */
+	public MigrationProgress getMigrationProgress() {
+		return databaseMigrator.getProgress();
+	}
+
+	private WriteBehindQueue.Write createWrite(String displayName, Object data) {
+		if (data instanceof AccountData) {
+			return accountDataWrite(displayName, (AccountData) data);
+		} else if (data instanceof AccountWideData) {
+			//a private copy, the options and sections can be edited from the ui while the write is queued
+			AccountWideData copy = gson.fromJson(gson.toJson(data), AccountWideData.class);
+			return () -> {
+				accountWideDataRepository.save(copy);
+				changeLogRepository.insertAccountWideChange(clientId);
+			};
+		} else {
+			log.warn("Unknown data type to store: {}", data.getClass().getName());
+			return null;
 		}
 	}
 
-	private void saveAccountData(String displayName, AccountData data) throws SQLException {
+	/**
+	 * Only writes what changed since the last store (see {@link PendingChanges}), so the cost of a store grows
+	 * with the number of new offers rather than the size of the account's history. The changes are snapshotted
+	 * on the calling thread and only cleared from the items once the writer thread's transaction commits.
+	 * <p>
+	 * The account and item rows are made from the objects' fields as they are when the write runs, which is fine
+	 * as they are plain values and the newest ones are what we want stored anyway. A newly stored item has had all
+	 * of its offers recorded as added, so its offers come from the snapshot too rather than from its history,
+	 * which the trade state writer may be appending to.
+	 */
+	private WriteBehindQueue.Write accountDataWrite(String displayName, AccountData data) {
 		data.setLastStoredAt(Instant.now());
-		accountRepository.insertOrUpdate(displayName, data);
+		//taken before the snapshot, so every offer journaled up to it is in the snapshot
+		OfferJournal journal = offerJournal;
+		long journalSequence = journal != null ? journal.getLastSequence() : 0;
 
+		Set<Integer> removedItemIds = new HashSet<>(data.getRemovedItemIds());
+		Map<FlippingItem, PendingChanges.Snapshot> changedItems = new IdentityHashMap<>();
 		for (FlippingItem item : data.getTrades()) {
-			Long existingId = flippingItemRepository.findIdByAccountAndItemId(displayName, item.getItemId());
-			if (existingId != null) {
-				flippingItemRepository.update(item, existingId);
-				offerEventRepository.deleteByFlippingItemId(existingId);
-				offerEventRepository.insertAll(item.getHistory().getCompressedOfferEvents(), existingId);
-			} else {
-				flippingItemRepository.insertWithOffers(item, displayName);
+			PendingChanges pendingChanges = item.getHistory().getPendingChanges();
+			if (!pendingChanges.isEmpty()) {
+				changedItems.put(item, pendingChanges.snapshot());
 			}
 		}
+		Map<Integer, OfferEvent> lastOffers = data.getLastOffers() == null ? null : new HashMap<>(data.getLastOffers());
+
+		return new WriteBehindQueue.Write() {
+			private int offersWritten;
+			private int offersDeleted;
+
+			@Override
+			public void write() throws SQLException {
+				offersWritten = 0;
+				offersDeleted = 0;
+				accountRepository.insertOrUpdate(displayName, data);
+
+				for (int itemId : removedItemIds) {
+					flippingItemRepository.deleteByAccountAndItemId(displayName, itemId);
+				}
 
-		if (data.getLastOffers() != null && !data.getLastOffers().isEmpty()) {
-			accountRepository.saveLastOffers(displayName, data.getLastOffers());
+				for (Map.Entry<FlippingItem, PendingChanges.Snapshot> entry : changedItems.entrySet()) {
+					FlippingItem item = entry.getKey();
+					PendingChanges.Snapshot changes = entry.getValue();
+					Long existingId = flippingItemRepository.findIdByAccountAndItemId(displayName, item.getItemId());
+					if (existingId != null) {
+						flippingItemRepository.update(item, existingId);
+						offerEventRepository.deleteByUuids(changes.getDeletedOfferIds());
+						offerEventRepository.upsertAll(changes.getAddedOffers(), existingId);
+						offersDeleted += changes.getDeletedOfferIds().size();
+						if (changes.getArchivedOffersDeletedFrom() != null) {
+							offerArchiveRepository.deleteArchivedOffersFrom(existingId, changes.getArchivedOffersDeletedFrom());
+						}
+					} else {
+						long newId = flippingItemRepository.insert(item, displayName);
+						offerEventRepository.insertAll(changes.getAddedOffers(), newId);
+					}
+					offersWritten += changes.getAddedOffers().size();
+				}
+
+				if (lastOffers != null && !lastOffers.isEmpty()) {
+					accountRepository.saveLastOffers(displayName, lastOffers);
+				}
+				if (journalSequence > 0) {
+					accountRepository.saveJournalSequence(displayName, journalSequence);
+				}
+
+				changeLogRepository.insertAll(clientId, ChangeLogRepository.Kind.ITEM_CHANGED, displayName,
+						changedItems.keySet().stream().map(FlippingItem::getItemId).collect(Collectors.toList()));
+				changeLogRepository.insertAll(clientId, ChangeLogRepository.Kind.ITEM_REMOVED, displayName, removedItemIds);
+			}
+
+			@Override
+			public void committed() {
+				changedItems.forEach((item, changes) -> item.getHistory().getPendingChanges().clear(changes));
+				data.getRemovedItemIds().removeAll(removedItemIds);
+				if (journalSequence > 0) {
+					journal.compact(displayName, journalSequence);
+				}
+				log.debug("stored {} changed items for {}: {} offers written, {} offers deleted, {} items removed",
+						changedItems.size(), displayName, offersWritten, offersDeleted, removedItemIds.size());
+			}
+		};
+	}
+
+	/**
+	 * Accounts used to be backed up by storing a full copy of them as "name.backup" on every start. The whole
+	 * database is backed up by {@link DatabaseBackupManager} now, so once it has made a backup those copies are
+	 * dropped.
+	 */
+	private void deleteLegacyBackups() {
+		List<String> legacyBackups;
+		try {
+			legacyBackups = accountRepository.findAllAccountNames();
+		} catch (SQLException e) {
+			log.warn("Failed to look for old account backups", e);
+			return;
+		}
+		legacyBackups.removeIf(name -> !name.endsWith(LEGACY_BACKUP_SUFFIX));
+		for (String name : legacyBackups) {
+			writeQueue.enqueue(name, () -> {
+				accountRepository.delete(name);
+				log.info("Deleted the old account backup {}", name);
+			});
 		}
 	}
 
@@ -222,7 +607,16 @@ public class TradePersister {
 		csvWriter.close();
 	}
 
+	/**
+	 * Writes whatever is still queued before closing the connection.
+	 */
 	public void close() {
+		backupManager.shutdown();
+		if (offerJournal != null) {
+			offerJournal.close(FLUSH_TIMEOUT_MILLIS);
+		}
+		writeQueue.enqueue(CHANGE_CURSOR_WRITE_KEY, () -> changeLogRepository.deleteCursor(clientId));
+		writeQueue.close(FLUSH_TIMEOUT_MILLIS);
 		connectionManager.close();
 	}
 }
@@ -0,0 +1,296 @@
+package com.flippingutilities.db;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the database writes on one background thread so that saving never holds up the client thread, the slot
+ * timers or the offer pipeline. Callers hand over a {@link Write} that only touches an immutable snapshot of what
+ * needs storing, taken on their own thread.
+ * <p>
+ * Writes are keyed (by account name, for example) and a new write replaces a queued write with the same key, as a
+ * newer snapshot always covers everything an older, unwritten one did. Everything queued when the writer wakes up is
+ * written in a single transaction. The queue is bounded by the number of distinct keys, and callers only ever wait
+ * for room when that many different things are waiting to be written.
+ */
+@Slf4j
+public class WriteBehindQueue {
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    public interface Write {
+        /**
+         * Called on the writer thread inside the batch's transaction.
+         */
+        void write() throws SQLException;
+
+        /**
+         * Called on the writer thread once the write has been committed.
+         */
+        default void committed() {
+        }
+    }
+
+    private final DatabaseConnectionManager connectionManager;
+    private final int capacity;
+    private final Thread writerThread;
+
+    private final Object lock = new Object();
+    private final Map<String, QueuedWrite> queued = new LinkedHashMap<>();
+    //keys of the batch the writer is writing right now
+    private final Set<String> writing = new HashSet<>();
+    //sequence number of the last write queued and of the last write the writer got through, used by flush
+    private long lastQueued;
+    private long lastWritten;
+    private boolean closed;
+    private boolean paused;
+
+    private volatile long lastFlushLatencyMillis;
+    private volatile long lastFlushDurationMillis;
+    private volatile int lastFlushSize;
+
+    public WriteBehindQueue(DatabaseConnectionManager connectionManager) {
+        this(connectionManager, DEFAULT_CAPACITY);
+    }
+
+    public WriteBehindQueue(DatabaseConnectionManager connectionManager, int capacity) {
+        this.connectionManager = connectionManager;
+        this.capacity = capacity;
+        this.writerThread = new Thread(this::runWriter, "flipping-utilities-db-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues the write, replacing any queued write with the same key. Only blocks if the queue is full of writes
+     * with other keys.
+     */
+    public void enqueue(String key, Write write) {
+        synchronized (lock) {
+            if (closed) {
+                log.warn("write for {} queued after the writer was closed, it is being dropped", key);
+                return;
+            }
+            while (queued.size() >= capacity && !queued.containsKey(key)) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("interrupted while waiting for room to queue the write for {}", key);
+                    return;
+                }
+            }
+            QueuedWrite previous = queued.remove(key);
+            long firstQueuedAt = previous != null ? previous.firstQueuedAt : System.currentTimeMillis();
+            queued.put(key, new QueuedWrite(key, write, firstQueuedAt));
+            lastQueued++;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Holds on to the queued writes without writing them until {@link #resume()} is called. Writes keep being
+     * queued (and replacing each other) in the meantime.
+     */
+    public void pause() {
+        synchronized (lock) {
+            paused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (lock) {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until everything queued before this call has been written (or failed to be written). Doesn't wait
+     * at all while the queue is paused, as nothing would be written.
+     *
+     * @return false if the timeout ran out first, or the queue is paused with writes waiting
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            long target = lastQueued;
+            while (lastWritten < target) {
+                if (paused) {
+                    log.warn("{} queued writes can't be flushed as writing is paused", queued.size());
+                    return false;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !writerThread.isAlive()) {
+                    log.warn("gave up waiting for {} queued writes to be flushed", target - lastWritten);
+                    return false;
+                }
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Writes whatever is still queued and stops the writer thread.
+     */
+    public void close(long timeoutMillis) {
+        flush(timeoutMillis);
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether a write with the key is queued or being written, meaning what's in the database for it may not be
+     * current yet.
+     */
+    public boolean isPending(String key) {
+        synchronized (lock) {
+            return queued.containsKey(key) || writing.contains(key);
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return queued.size();
+        }
+    }
+
+    /**
+     * How long the oldest write of the last batch waited between being queued and being committed.
+     */
+    public long getLastFlushLatencyMillis() {
+        return lastFlushLatencyMillis;
+    }
+
+    /**
+     * How long the last batch's transaction took.
+     */
+    public long getLastFlushDurationMillis() {
+        return lastFlushDurationMillis;
+    }
+
+    public int getLastFlushSize() {
+        return lastFlushSize;
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<QueuedWrite> batch;
+            long batchEnd;
+            synchronized (lock) {
+                while ((queued.isEmpty() || paused) && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        //only close stops the writer, otherwise queued writes could be lost
+                    }
+                }
+                if (queued.isEmpty() || paused) {
+                    if (!queued.isEmpty()) {
+                        log.warn("closing with {} writes that couldn't be written as writing is paused", queued.size());
+                    }
+                    return;
+                }
+                batch = new ArrayList<>(queued.values());
+                batchEnd = lastQueued;
+                writing.addAll(queued.keySet());
+                queued.clear();
+                lock.notifyAll();
+            }
+
+            try {
+                writeBatch(batch);
+            } catch (Exception e) {
+                log.error("unexpected error writing {} queued writes", batch.size(), e);
+            }
+
+            synchronized (lock) {
+                lastWritten = batchEnd;
+                writing.clear();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void writeBatch(List<QueuedWrite> batch) throws SQLException {
+        long start = System.currentTimeMillis();
+        long oldest = batch.stream().mapToLong(w -> w.firstQueuedAt).min().orElse(start);
+
+        if (!writeInTransaction(batch) && batch.size() > 1) {
+            //don't let one bad write take the others down with it
+            log.warn("writing {} queued writes together failed, writing them one at a time", batch.size());
+            for (QueuedWrite write : batch) {
+                writeInTransaction(Collections.singletonList(write));
+            }
+        }
+
+        long end = System.currentTimeMillis();
+        lastFlushDurationMillis = end - start;
+        lastFlushLatencyMillis = end - oldest;
+        lastFlushSize = batch.size();
+        log.debug("wrote {} queued writes in {}ms, oldest was queued {}ms ago", batch.size(),
+                lastFlushDurationMillis, lastFlushLatencyMillis);
+    }
+
+    private boolean writeInTransaction(List<QueuedWrite> writes) throws SQLException {
+        Connection conn = connectionManager.getConnection();
+        conn.setAutoCommit(false);
+        try {
+            for (QueuedWrite write : writes) {
+                write.write.write();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            //a write that blew up has to be rolled back as well, or turning autocommit back on would commit the
+            //writes that came before it
+            log.warn("failed to write {}", writes.size() == 1 ? writes.get(0).key : writes.size() + " queued writes", e);
+            conn.rollback();
+            return false;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        for (QueuedWrite write : writes) {
+            try {
+                write.write.committed();
+            } catch (Exception e) {
+                log.warn("error after committing the write for {}", write.key, e);
+            }
+        }
+        return true;
+    }
+
+    private static class QueuedWrite {
+        private final String key;
+        private final Write write;
+        private final long firstQueuedAt;
+
+        private QueuedWrite(String key, Write write, long firstQueuedAt) {
+            this.key = key;
+            this.write = write;
+            this.firstQueuedAt = firstQueuedAt;
+        }
+    }
+}
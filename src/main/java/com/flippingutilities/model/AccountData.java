@@ -36,15 +36,18 @@ import net.runelite.client.game.ItemStats;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Data
 public class AccountData {
     private Map<Integer, OfferEvent> lastOffers = new HashMap<>();
-    private List<FlippingItem> trades = new ArrayList<>();
+    private TradeList trades = new TradeList();
     private Instant sessionStartTime = Instant.now();
     private long accumulatedSessionTimeMillis = 0;
     private Instant lastSessionTimeUpdate;
@@ -52,6 +55,12 @@ public class AccountData {
     private List<RecipeFlipGroup> recipeFlipGroups = new ArrayList<>();
     private Instant lastStoredAt = Instant.EPOCH;
     private Instant lastModifiedAt = Instant.now();
+    //ids of items removed from the trades list since the last store, so their rows can be deleted
+    private transient Set<Integer> removedItemIds = new HashSet<>();
+
+    public void setTrades(List<FlippingItem> trades) {
+        this.trades = trades instanceof TradeList ? (TradeList) trades : new TradeList(trades);
+    }
 
     /**
      * Resets all session related data associated with an account. This is called when the plugin first starts
@@ -80,6 +89,7 @@ public class AccountData {
             int geLimit = itemStats != null ? itemStats.getGeLimit() : 0;
 
             item.hydrate(geLimit);
+            item.getHistory().setColumnarStorage(plugin.getConfig().compactOfferHistory());
             item.getHistory().getCompressedOfferEvents().forEach(o -> hydratedOffers.put(o.getUuid(), o));
         }
 
@@ -87,6 +97,20 @@ public class AccountData {
         hydrateSlotTimers(plugin);
     }
 
+    /**
+     * Removes the items matching the predicate from the trades list. The ids of the removed items are remembered
+     * so the persister knows to delete them on the next store.
+     */
+    public void removeTrades(Predicate<FlippingItem> shouldRemove) {
+        trades.removeIf(item -> {
+            if (shouldRemove.test(item)) {
+                removedItemIds.add(item.getItemId());
+                return true;
+            }
+            return false;
+        });
+    }
+
     private void hydrateSlotTimers(FlippingPlugin plugin) {
         if (slotTimers == null) {
             slotTimers = setupSlotTimers(plugin);
@@ -0,0 +1,426 @@
+package com.flippingutilities.model;
+
+import net.runelite.api.GrandExchangeOfferState;
+
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * A list of offers that keeps every field of an offer in its own primitive array instead of holding an
+ * {@link OfferEvent} object (plus its uuid string and Instants) per offer. This is a lot smaller for accounts with
+ * huge trade histories, see {@link HistoryManager#setColumnarStorage(boolean)}.
+ * <p>
+ * {@link #get(int)} creates a new OfferEvent from the columns every time it is called, so the returned offer is a
+ * copy: changing it does not change the list, use {@link #set(int, OfferEvent)} (or replaceAll) to write it back.
+ * A few things are not kept exactly:
+ * <ul>
+ *     <li>times are kept as epoch millis, so anything below a millisecond is dropped</li>
+ *     <li>listedPrice and spent are not kept at all, they only matter for the live slot view and are never read from
+ *     an item's history</li>
+ * </ul>
+ */
+public class ColumnarOfferList extends AbstractList<OfferEvent> implements RandomAccess
+{
+	private static final int DEFAULT_CAPACITY = 8;
+	private static final GrandExchangeOfferState[] STATES = GrandExchangeOfferState.values();
+	private static final long NO_TIME = Long.MIN_VALUE;
+	private static final short NO_STRING = -1;
+
+	private static final byte BUY = 1;
+	private static final byte BEFORE_LOGIN = 1 << 1;
+	private static final byte MARGIN_CHECK = 1 << 2;
+	private static final byte NO_UUID = 1 << 3;
+	//the uuid isn't a canonical UUID string, the msb column holds its index into rawUuids instead
+	private static final byte RAW_UUID = 1 << 4;
+
+	private int size;
+	private long[] uuidMsbs;
+	private long[] uuidLsbs;
+	private long[] times;
+	private long[] tradeStartedAts;
+	private int[] itemIds;
+	private int[] prices;
+	private int[] currentQuantities;
+	private int[] totalQuantities;
+	private int[] ticksArrivedAt;
+	private int[] ticksSinceFirstOffer;
+	private byte[] slots;
+	private byte[] states;
+	private byte[] flags;
+	private short[] itemNames;
+	private short[] madeBys;
+
+	//item names and account names are the same for almost every offer in a list, so they are kept once here and
+	//the columns only hold an index into this table.
+	private final List<String> strings = new ArrayList<>();
+	private final Map<String, Short> stringIndexes = new HashMap<>();
+	private final List<String> rawUuids = new ArrayList<>();
+	private final Map<String, Integer> rawUuidIndexes = new HashMap<>();
+
+	public ColumnarOfferList()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	public ColumnarOfferList(int initialCapacity)
+	{
+		allocate(Math.max(initialCapacity, DEFAULT_CAPACITY));
+	}
+
+	public ColumnarOfferList(Collection<OfferEvent> offers)
+	{
+		this(offers.size());
+		offers.forEach(this::add);
+	}
+
+	/**
+	 * @return a copy of this list which doesn't share any state with it. This is much cheaper than copying the
+	 * offers one by one as it is just a copy of each column.
+	 */
+	public ColumnarOfferList copy()
+	{
+		ColumnarOfferList copy = new ColumnarOfferList(0);
+		copy.size = size;
+		copy.uuidMsbs = uuidMsbs.clone();
+		copy.uuidLsbs = uuidLsbs.clone();
+		copy.times = times.clone();
+		copy.tradeStartedAts = tradeStartedAts.clone();
+		copy.itemIds = itemIds.clone();
+		copy.prices = prices.clone();
+		copy.currentQuantities = currentQuantities.clone();
+		copy.totalQuantities = totalQuantities.clone();
+		copy.ticksArrivedAt = ticksArrivedAt.clone();
+		copy.ticksSinceFirstOffer = ticksSinceFirstOffer.clone();
+		copy.slots = slots.clone();
+		copy.states = states.clone();
+		copy.flags = flags.clone();
+		copy.itemNames = itemNames.clone();
+		copy.madeBys = madeBys.clone();
+		copy.strings.addAll(strings);
+		copy.stringIndexes.putAll(stringIndexes);
+		copy.rawUuids.addAll(rawUuids);
+		copy.rawUuidIndexes.putAll(rawUuidIndexes);
+		return copy;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public OfferEvent get(int index)
+	{
+		checkIndex(index);
+		byte flag = flags[index];
+		int state = states[index];
+		return new OfferEvent(
+			uuidAt(index),
+			(flag & BUY) != 0,
+			itemIds[index],
+			currentQuantities[index],
+			prices[index],
+			times[index] == NO_TIME ? null : Instant.ofEpochMilli(times[index]),
+			slots[index],
+			state < 0 ? null : STATES[state],
+			ticksArrivedAt[index],
+			ticksSinceFirstOffer[index],
+			totalQuantities[index],
+			tradeStartedAts[index] == NO_TIME ? null : Instant.ofEpochMilli(tradeStartedAts[index]),
+			(flag & BEFORE_LOGIN) != 0,
+			stringAt(madeBys[index]),
+			stringAt(itemNames[index]),
+			0,
+			0);
+	}
+
+	/**
+	 * Reads the time of an offer without creating the OfferEvent for it.
+	 */
+	public long getEpochMilli(int index)
+	{
+		checkIndex(index);
+		return times[index];
+	}
+
+	public boolean isBuy(int index)
+	{
+		checkIndex(index);
+		return (flags[index] & BUY) != 0;
+	}
+
+	public boolean isMarginCheck(int index)
+	{
+		checkIndex(index);
+		return (flags[index] & MARGIN_CHECK) != 0;
+	}
+
+	@Override
+	public OfferEvent set(int index, OfferEvent offer)
+	{
+		OfferEvent previous = get(index);
+		write(index, offer);
+		return previous;
+	}
+
+	@Override
+	public void add(int index, OfferEvent offer)
+	{
+		if (index < 0 || index > size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+		ensureCapacity(size + 1);
+		if (index < size)
+		{
+			shift(index, index + 1, size - index);
+		}
+		size++;
+		modCount++;
+		write(index, offer);
+	}
+
+	@Override
+	public OfferEvent remove(int index)
+	{
+		OfferEvent removed = get(index);
+		shift(index + 1, index, size - index - 1);
+		size--;
+		modCount++;
+		return removed;
+	}
+
+	/**
+	 * Compacts the columns in one pass instead of shifting every column once per removed offer, which is what
+	 * the default implementation would end up doing.
+	 */
+	@Override
+	public boolean removeIf(Predicate<? super OfferEvent> filter)
+	{
+		Objects.requireNonNull(filter);
+		//test everything first so the columns are left untouched if the filter throws
+		BitSet toRemove = new BitSet(size);
+		for (int i = 0; i < size; i++)
+		{
+			if (filter.test(get(i)))
+			{
+				toRemove.set(i);
+			}
+		}
+		if (toRemove.isEmpty())
+		{
+			return false;
+		}
+
+		int kept = 0;
+		for (int i = 0; i < size; i++)
+		{
+			if (!toRemove.get(i))
+			{
+				if (kept != i)
+				{
+					shift(i, kept, 1);
+				}
+				kept++;
+			}
+		}
+		size = kept;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void clear()
+	{
+		size = 0;
+		modCount++;
+	}
+
+	private void write(int index, OfferEvent offer)
+	{
+		byte flag = writeUuid(index, offer.getUuid());
+		if (offer.isBuy())
+		{
+			flag |= BUY;
+		}
+		if (offer.isBeforeLogin())
+		{
+			flag |= BEFORE_LOGIN;
+		}
+		if (offer.isMarginCheck())
+		{
+			flag |= MARGIN_CHECK;
+		}
+		flags[index] = flag;
+		times[index] = offer.getTime() == null ? NO_TIME : offer.getTime().toEpochMilli();
+		tradeStartedAts[index] = offer.getTradeStartedAt() == null ? NO_TIME : offer.getTradeStartedAt().toEpochMilli();
+		itemIds[index] = offer.getItemId();
+		prices[index] = offer.getPreTaxPrice();
+		currentQuantities[index] = offer.getCurrentQuantityInTrade();
+		totalQuantities[index] = offer.getTotalQuantityInTrade();
+		ticksArrivedAt[index] = offer.getTickArrivedAt();
+		ticksSinceFirstOffer[index] = offer.getTicksSinceFirstOffer();
+		slots[index] = (byte) offer.getSlot();
+		states[index] = offer.getState() == null ? -1 : (byte) offer.getState().ordinal();
+		itemNames[index] = indexOf(offer.getItemName());
+		madeBys[index] = indexOf(offer.getMadeBy());
+	}
+
+	/**
+	 * @return the uuid flag of the written offer
+	 */
+	private byte writeUuid(int index, String uuid)
+	{
+		uuidMsbs[index] = 0;
+		uuidLsbs[index] = 0;
+		if (uuid == null)
+		{
+			return NO_UUID;
+		}
+		try
+		{
+			UUID parsed = UUID.fromString(uuid);
+			//UUID.fromString is lenient (upper case, missing leading zeroes), only keep it as two longs if it turns
+			//back into exactly the same string.
+			if (parsed.toString().equals(uuid))
+			{
+				uuidMsbs[index] = parsed.getMostSignificantBits();
+				uuidLsbs[index] = parsed.getLeastSignificantBits();
+				return 0;
+			}
+		}
+		catch (IllegalArgumentException ignored)
+		{
+		}
+		Integer rawIndex = rawUuidIndexes.get(uuid);
+		if (rawIndex == null)
+		{
+			rawIndex = rawUuids.size();
+			rawUuids.add(uuid);
+			rawUuidIndexes.put(uuid, rawIndex);
+		}
+		uuidMsbs[index] = rawIndex;
+		return RAW_UUID;
+	}
+
+	private String uuidAt(int index)
+	{
+		byte flag = flags[index];
+		if ((flag & NO_UUID) != 0)
+		{
+			return null;
+		}
+		if ((flag & RAW_UUID) != 0)
+		{
+			return rawUuids.get((int) uuidMsbs[index]);
+		}
+		return new UUID(uuidMsbs[index], uuidLsbs[index]).toString();
+	}
+
+	private short indexOf(String s)
+	{
+		if (s == null)
+		{
+			return NO_STRING;
+		}
+		Short index = stringIndexes.get(s);
+		if (index == null)
+		{
+			if (strings.size() == Short.MAX_VALUE)
+			{
+				throw new IllegalStateException("Too many distinct names in one offer list");
+			}
+			index = (short) strings.size();
+			strings.add(s);
+			stringIndexes.put(s, index);
+		}
+		return index;
+	}
+
+	private String stringAt(short index)
+	{
+		return index == NO_STRING ? null : strings.get(index);
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		}
+	}
+
+	private void shift(int from, int to, int length)
+	{
+		System.arraycopy(uuidMsbs, from, uuidMsbs, to, length);
+		System.arraycopy(uuidLsbs, from, uuidLsbs, to, length);
+		System.arraycopy(times, from, times, to, length);
+		System.arraycopy(tradeStartedAts, from, tradeStartedAts, to, length);
+		System.arraycopy(itemIds, from, itemIds, to, length);
+		System.arraycopy(prices, from, prices, to, length);
+		System.arraycopy(currentQuantities, from, currentQuantities, to, length);
+		System.arraycopy(totalQuantities, from, totalQuantities, to, length);
+		System.arraycopy(ticksArrivedAt, from, ticksArrivedAt, to, length);
+		System.arraycopy(ticksSinceFirstOffer, from, ticksSinceFirstOffer, to, length);
+		System.arraycopy(slots, from, slots, to, length);
+		System.arraycopy(states, from, states, to, length);
+		System.arraycopy(flags, from, flags, to, length);
+		System.arraycopy(itemNames, from, itemNames, to, length);
+		System.arraycopy(madeBys, from, madeBys, to, length);
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= times.length)
+		{
+			return;
+		}
+		int newCapacity = Math.max(capacity, times.length + (times.length >> 1));
+		uuidMsbs = Arrays.copyOf(uuidMsbs, newCapacity);
+		uuidLsbs = Arrays.copyOf(uuidLsbs, newCapacity);
+		times = Arrays.copyOf(times, newCapacity);
+		tradeStartedAts = Arrays.copyOf(tradeStartedAts, newCapacity);
+		itemIds = Arrays.copyOf(itemIds, newCapacity);
+		prices = Arrays.copyOf(prices, newCapacity);
+		currentQuantities = Arrays.copyOf(currentQuantities, newCapacity);
+		totalQuantities = Arrays.copyOf(totalQuantities, newCapacity);
+		ticksArrivedAt = Arrays.copyOf(ticksArrivedAt, newCapacity);
+		ticksSinceFirstOffer = Arrays.copyOf(ticksSinceFirstOffer, newCapacity);
+		slots = Arrays.copyOf(slots, newCapacity);
+		states = Arrays.copyOf(states, newCapacity);
+		flags = Arrays.copyOf(flags, newCapacity);
+		itemNames = Arrays.copyOf(itemNames, newCapacity);
+		madeBys = Arrays.copyOf(madeBys, newCapacity);
+	}
+
+	private void allocate(int capacity)
+	{
+		uuidMsbs = new long[capacity];
+		uuidLsbs = new long[capacity];
+		times = new long[capacity];
+		tradeStartedAts = new long[capacity];
+		itemIds = new int[capacity];
+		prices = new int[capacity];
+		currentQuantities = new int[capacity];
+		totalQuantities = new int[capacity];
+		ticksArrivedAt = new int[capacity];
+		ticksSinceFirstOffer = new int[capacity];
+		slots = new byte[capacity];
+		states = new byte[capacity];
+		flags = new byte[capacity];
+		itemNames = new short[capacity];
+		madeBys = new short[capacity];
+	}
+}
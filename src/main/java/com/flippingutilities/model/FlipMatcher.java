@@ -0,0 +1,422 @@
+package com.flippingutilities.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Matches the offers of one account into flips as they come in, giving the same flips as
+ * {@link HistoryManager#createFlips(List)} without going over (and cloning) every offer each time the flips are asked
+ * for. Offers have to be added in time order.
+ * <p>
+ * createFlips first pairs margin checks and then matches the remaining buys and sells in time order, where a sell
+ * takes the bought items that the sells before it didn't take. The matcher keeps the state of both between offers:
+ * <ul>
+ *     <li>the buy margin checks that haven't been paired with a sell margin check yet. Once an offer comes in more
+ *     than a minute after one of them, it can't be paired anymore, so it is matched like a regular buy. Likewise a
+ *     sell margin check without a buy margin check before it can still be paired with a buy margin check made in the
+ *     same second, until a later offer comes in</li>
+ *     <li>the index of the next sell to match, the buy the sells have gotten up to and how much of that buy is left.
+ *     Only sells that have been fully matched are moved past, a sell with not enough buys before it may still get
+ *     more buys</li>
+ * </ul>
+ * A checkpoint of the match state is kept for every matched sell. When an offer the matching already went past is
+ * removed (a partial offer replaced by a later one for the same trade) or a margin check buy is put back among the
+ * regular buys, the matching goes back to the last checkpoint that isn't affected and redoes only the sells after it.
+ */
+class FlipMatcher
+{
+	private static final long MARGIN_CHECK_PAIRING_MILLIS = 60000;
+
+	private final List<Flip> marginCheckFlips = new ArrayList<>();
+	//buy margin checks that may still be paired with a sell margin check, in time order
+	private final List<OfferEvent> unpairedMarginCheckBuys = new ArrayList<>();
+	//sell margin checks that may still be paired with a buy margin check made at the same time
+	private final List<OfferEvent> unpairedMarginCheckSells = new ArrayList<>();
+
+	//regular offers and the margin checks that weren't paired, in time order
+	private final List<OfferEvent> buys = new ArrayList<>();
+	private final List<OfferEvent> sells = new ArrayList<>();
+
+	//flips from the sells before nextSell
+	private final List<Flip> flips = new ArrayList<>();
+	private int nextSell;
+	private int buyCursor;
+	//how much of the buy at buyCursor hasn't been taken by a sell, -1 if none of it has been taken
+	private int buyCursorRemaining = -1;
+
+	//the buyCursor, buyCursorRemaining and flip count from before each sell was matched
+	private int[] checkpoints = new int[24];
+
+	//how far matching nextSell got the last time there weren't enough buys for it, so that a new buy only has to add
+	//itself instead of matching the sell from the start again
+	private boolean stalled;
+	private int stalledQuantity;
+	private int stalledRevenue;
+	private int stalledNextBuy;
+
+	void add(OfferEvent offer)
+	{
+		unpairExpiredMarginChecks(offer.getTime());
+
+		if (offer.isMarginCheck() && offer.isBuy())
+		{
+			if (unpairedMarginCheckSells.isEmpty())
+			{
+				unpairedMarginCheckBuys.add(offer);
+			}
+			else
+			{
+				pairMarginChecks(offer, unpairedMarginCheckSells.remove(0));
+			}
+		}
+		else if (offer.isMarginCheck())
+		{
+			if (!unpairedMarginCheckBuys.isEmpty() && millisBetween(unpairedMarginCheckBuys.get(0), offer) >= 0)
+			{
+				pairMarginChecks(unpairedMarginCheckBuys.remove(0), offer);
+			}
+			else
+			{
+				unpairedMarginCheckSells.add(offer);
+			}
+		}
+		else if (offer.isBuy())
+		{
+			insertBuy(regularOfferIndex(buys, offer), offer);
+		}
+		else
+		{
+			insertSell(regularOfferIndex(sells, offer), offer);
+		}
+
+		match();
+	}
+
+	/**
+	 * Removes an offer that was added before.
+	 *
+	 * @return false if the offer is a margin check, those can't be removed without matching everything again.
+	 */
+	boolean remove(OfferEvent offer)
+	{
+		if (offer.isMarginCheck())
+		{
+			return false;
+		}
+
+		List<OfferEvent> offers = offer.isBuy() ? buys : sells;
+		//removed offers are almost always recent ones
+		for (int i = offers.size() - 1; i >= 0; i--)
+		{
+			if (Objects.equals(offers.get(i).getUuid(), offer.getUuid()))
+			{
+				if (offer.isBuy())
+				{
+					rollBack(lastCheckpointBeforeBuy(i));
+					if (i < stalledNextBuy)
+					{
+						stalled = false;
+					}
+					buys.remove(i);
+				}
+				else
+				{
+					rollBack(Math.min(i, nextSell));
+					if (i <= nextSell)
+					{
+						stalled = false;
+					}
+					sells.remove(i);
+				}
+				match();
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the flips of the offers added so far. The margin checks that haven't been paired yet are matched like
+	 * regular offers, same as createFlips does with margin checks that don't have a companion offer.
+	 */
+	List<Flip> getFlips()
+	{
+		List<Flip> result = new ArrayList<>(marginCheckFlips.size() + flips.size() + 1);
+		result.addAll(marginCheckFlips);
+
+		if (unpairedMarginCheckBuys.isEmpty() && unpairedMarginCheckSells.isEmpty())
+		{
+			result.addAll(flips);
+			matchRemaining(buys, buyCursor, buyCursorRemaining, sells, nextSell, result);
+			return result;
+		}
+
+		int checkpoint = unpairedMarginCheckBuys.isEmpty() ?
+			nextSell :
+			lastCheckpointBeforeBuy(insertionIndex(buys, unpairedMarginCheckBuys.get(0).getTime()));
+		List<OfferEvent> remainingBuys = new ArrayList<>(buys.subList(cursorAt(checkpoint), buys.size()));
+		for (OfferEvent buy : unpairedMarginCheckBuys)
+		{
+			remainingBuys.add(insertionIndex(remainingBuys, buy.getTime()), buy);
+		}
+		List<OfferEvent> remainingSells = new ArrayList<>(sells.subList(checkpoint, sells.size()));
+		remainingSells.addAll(unpairedMarginCheckSells);
+
+		result.addAll(flips.subList(0, flipCountAt(checkpoint)));
+		matchRemaining(remainingBuys, 0, remainingAt(checkpoint), remainingSells, 0, result);
+		return result;
+	}
+
+	private void pairMarginChecks(OfferEvent buy, OfferEvent sell)
+	{
+		marginCheckFlips.add(new Flip(buy.getPrice(), sell.getPrice(), sell.getCurrentQuantityInTrade(), sell.getTime(), sell.isMarginCheck(), false));
+	}
+
+	/**
+	 * Margin checks that can't be paired anymore given an offer at the given time are moved to the regular offers.
+	 */
+	private void unpairExpiredMarginChecks(Instant time)
+	{
+		while (!unpairedMarginCheckBuys.isEmpty()
+			&& Duration.between(unpairedMarginCheckBuys.get(0).getTime(), time).toMillis() >= MARGIN_CHECK_PAIRING_MILLIS)
+		{
+			OfferEvent buy = unpairedMarginCheckBuys.remove(0);
+			insertBuy(insertionIndex(buys, buy.getTime()), buy);
+		}
+
+		if (!unpairedMarginCheckSells.isEmpty() && time.isAfter(unpairedMarginCheckSells.get(0).getTime()))
+		{
+			for (OfferEvent sell : unpairedMarginCheckSells)
+			{
+				insertSell(insertionIndex(sells, sell.getTime()), sell);
+			}
+			unpairedMarginCheckSells.clear();
+		}
+	}
+
+	private void insertBuy(int index, OfferEvent buy)
+	{
+		rollBack(lastCheckpointBeforeBuy(index));
+		if (index < stalledNextBuy)
+		{
+			stalled = false;
+		}
+		buys.add(index, buy);
+	}
+
+	private void insertSell(int index, OfferEvent sell)
+	{
+		rollBack(Math.min(index, nextSell));
+		if (index <= nextSell)
+		{
+			stalled = false;
+		}
+		sells.add(index, sell);
+	}
+
+	/**
+	 * Matches sells until there is a sell that there aren't enough buys for yet. Works like combineToFlips except it
+	 * doesn't change the quantity of the buys.
+	 */
+	private void match()
+	{
+		while (nextSell < sells.size())
+		{
+			OfferEvent sell = sells.get(nextSell);
+			int sellQuantity = sell.getCurrentQuantityInTrade();
+			if (sellQuantity == 0)
+			{
+				checkpoint();
+				nextSell++;
+				stalled = false;
+				continue;
+			}
+
+			int numBuysSeen = stalled ? stalledQuantity : 0;
+			int totalRevenue = stalled ? stalledRevenue : 0;
+			int buyIdx = stalled ? stalledNextBuy : buyCursor;
+			boolean matched = false;
+			while (buyIdx < buys.size())
+			{
+				OfferEvent buy = buys.get(buyIdx);
+				int buyQuantity = buyIdx == buyCursor && buyCursorRemaining >= 0 ? buyCursorRemaining : buy.getCurrentQuantityInTrade();
+				numBuysSeen += buyQuantity;
+
+				if (numBuysSeen >= sellQuantity)
+				{
+					int leftOver = numBuysSeen - sellQuantity;
+					totalRevenue += (buyQuantity - leftOver) * buy.getPrice();
+					checkpoint();
+					flips.add(new Flip(totalRevenue / sellQuantity, sell.getPrice(), sellQuantity, sell.getTime(), false, !sell.isComplete()));
+					nextSell++;
+					buyCursor = buyIdx;
+					buyCursorRemaining = leftOver;
+					matched = true;
+					break;
+				}
+				totalRevenue += buyQuantity * buy.getPrice();
+				buyIdx++;
+			}
+
+			if (!matched)
+			{
+				stalled = true;
+				stalledQuantity = numBuysSeen;
+				stalledRevenue = totalRevenue;
+				stalledNextBuy = buyIdx;
+				return;
+			}
+			stalled = false;
+		}
+	}
+
+	/**
+	 * Matches the sells from sellIdx against the buys from buyIdx exactly like combineToFlips, including the flip for a
+	 * sell that is only partially matched.
+	 *
+	 * @param remaining how much of the buy at buyIdx is left, -1 if none of it has been taken
+	 */
+	private static void matchRemaining(List<OfferEvent> buys, int buyIdx, int remaining, List<OfferEvent> sells, int sellIdx, List<Flip> flips)
+	{
+		for (OfferEvent sell : sells.subList(sellIdx, sells.size()))
+		{
+			int sellQuantity = sell.getCurrentQuantityInTrade();
+			if (sellQuantity == 0)
+			{
+				continue;
+			}
+			int numBuysSeen = 0;
+			int totalRevenue = 0;
+			while (buyIdx < buys.size())
+			{
+				OfferEvent buy = buys.get(buyIdx);
+				int buyQuantity = remaining >= 0 ? remaining : buy.getCurrentQuantityInTrade();
+				numBuysSeen += buyQuantity;
+
+				if (numBuysSeen >= sellQuantity)
+				{
+					int leftOver = numBuysSeen - sellQuantity;
+					totalRevenue += (buyQuantity - leftOver) * buy.getPrice();
+					remaining = leftOver;
+					flips.add(new Flip(totalRevenue / sellQuantity, sell.getPrice(), sellQuantity, sell.getTime(), false, !sell.isComplete()));
+					break;
+				}
+				totalRevenue += buyQuantity * buy.getPrice();
+				buyIdx++;
+				remaining = -1;
+			}
+
+			//buys only partially exhausted a sell
+			if (buyIdx == buys.size() && numBuysSeen != 0)
+			{
+				flips.add(new Flip(totalRevenue / numBuysSeen, sell.getPrice(), numBuysSeen, sell.getTime(), false, true));
+				break;
+			}
+		}
+	}
+
+	private void checkpoint()
+	{
+		int at = nextSell * 3;
+		if (at + 3 > checkpoints.length)
+		{
+			checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+		}
+		checkpoints[at] = buyCursor;
+		checkpoints[at + 1] = buyCursorRemaining;
+		checkpoints[at + 2] = flips.size();
+	}
+
+	/**
+	 * Goes back to the state from before the given sell was matched.
+	 */
+	private void rollBack(int sellIdx)
+	{
+		if (sellIdx >= nextSell)
+		{
+			return;
+		}
+		buyCursor = cursorAt(sellIdx);
+		buyCursorRemaining = remainingAt(sellIdx);
+		flips.subList(flipCountAt(sellIdx), flips.size()).clear();
+		nextSell = sellIdx;
+		stalled = false;
+	}
+
+	/**
+	 * Finds the last sell whose checkpoint has not taken anything from the buys at or after buyIdx, so that a buy can
+	 * be inserted or removed at buyIdx after rolling back to it. The current state counts as the checkpoint of
+	 * nextSell.
+	 */
+	private int lastCheckpointBeforeBuy(int buyIdx)
+	{
+		//the checkpoints only ever move further into the buys, and the first one hasn't taken anything
+		int low = 0;
+		int high = nextSell;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			int cursor = cursorAt(mid);
+			if (cursor < buyIdx || (cursor == buyIdx && remainingAt(mid) < 0))
+			{
+				low = mid;
+			}
+			else
+			{
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private int cursorAt(int sellIdx)
+	{
+		return sellIdx == nextSell ? buyCursor : checkpoints[sellIdx * 3];
+	}
+
+	private int remainingAt(int sellIdx)
+	{
+		return sellIdx == nextSell ? buyCursorRemaining : checkpoints[sellIdx * 3 + 1];
+	}
+
+	private int flipCountAt(int sellIdx)
+	{
+		return sellIdx == nextSell ? flips.size() : checkpoints[sellIdx * 3 + 2];
+	}
+
+	/**
+	 * createFlips puts the margin checks that weren't paired after the regular offers made at the same time, so a
+	 * regular offer goes before any unpaired margin checks at the end of the list with the same time.
+	 */
+	private static int regularOfferIndex(List<OfferEvent> offers, OfferEvent offer)
+	{
+		int index = offers.size();
+		while (index > 0 && offers.get(index - 1).isMarginCheck() && offers.get(index - 1).getTime().equals(offer.getTime()))
+		{
+			index--;
+		}
+		return index;
+	}
+
+	/**
+	 * Index after the last offer that isn't after the given time, same place a stable sort would put it.
+	 */
+	private static int insertionIndex(List<OfferEvent> offers, Instant time)
+	{
+		int index = offers.size();
+		while (index > 0 && offers.get(index - 1).getTime().isAfter(time))
+		{
+			index--;
+		}
+		return index;
+	}
+
+	private static long millisBetween(OfferEvent buy, OfferEvent sell)
+	{
+		return Duration.between(buy.getTime(), sell.getTime()).toMillis();
+	}
+}
@@ -38,6 +38,7 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * This class is the representation of an item that a user is flipping. It contains information about the
@@ -61,12 +62,10 @@ public class FlippingItem implements Searchable
 
 	@SerializedName("name")
 	@Getter
-	@Setter
 	private String itemName;
 
 	@SerializedName("tGL")
 	@Getter
-	@Setter
 	private int totalGELimit;
 
 	@SerializedName("h")
@@ -76,7 +75,6 @@ public class FlippingItem implements Searchable
 
 	@SerializedName("fB")
 	@Getter
-	@Setter
 	private String flippedBy;
 
 	//whether the item should be on the flipping panel or not.
@@ -86,11 +84,9 @@ public class FlippingItem implements Searchable
 	private Boolean validFlippingPanelItem;
 
 	@Getter
-	@Setter
 	private boolean favorite;
 
 	@Getter
-	@Setter
 	private String favoriteCode = "1";
 
 	//non persisted fields start here.
@@ -119,6 +115,10 @@ public class FlippingItem implements Searchable
 	@Setter
 	private transient Boolean expand;
 
+	//set when the offers were loaded with their ids, names and madeBy already filled in, see AccountSnapshotStore
+	@Setter
+	private transient boolean offersHydrated;
+
 	public FlippingItem(int itemId, String itemName, int totalGeLimit, String flippedBy)
 	{
 		this.latestInstaBuy = Optional.empty();
@@ -130,6 +130,8 @@ public class FlippingItem implements Searchable
 		this.totalGELimit = totalGeLimit;
 		this.flippedBy = flippedBy;
 		this.latestActivityTime = Constants.DUMMY_ITEM.equals(flippedBy)? Instant.EPOCH : Instant.now();
+		//a newly created item has never been stored
+		history.getPendingChanges().recordItemChanged();
 	}
 
 	public FlippingItem clone()
@@ -192,34 +194,46 @@ public class FlippingItem implements Searchable
 	}
 
 	/**
-	 * combines two flipping items together (this only makes sense if they are for the same item) by adding
-	 * their histories together and retaining the other properties of the latest active item. This is used to
+	 * combines flipping items from different accounts together (this only makes sense if they are for the same item)
+	 * by merging their histories and retaining the other properties of the latest active item. This is used to
 	 * construct the account wide view as flipping items (referencing the same item) from different accounts need
-	 * to be merged into one.
+	 * to be merged into one. The given items are left untouched: the merged item's history shares their offers
+	 * instead of copying them, so it should only be read.
 	 *
 	 * @return merged flipping item
 	 */
-	public static FlippingItem merge(FlippingItem item1, FlippingItem item2)
+	public static FlippingItem merge(List<FlippingItem> items)
 	{
-		if (item1 == null)
+		FlippingItem latest = items.get(0);
+		boolean favorite = false;
+		for (FlippingItem item : items)
 		{
-			return item2;
+			if (item.getLatestActivityTime().compareTo(latest.getLatestActivityTime()) > 0)
+			{
+				latest = item;
+			}
+			favorite |= item.isFavorite();
 		}
 
-		if (item1.getLatestActivityTime().compareTo(item2.getLatestActivityTime()) >= 0)
-		{
-			item1.getHistory().getCompressedOfferEvents().addAll(item2.getHistory().getCompressedOfferEvents());
-			item1.getHistory().getCompressedOfferEvents().sort(Comparator.comparing(OfferEvent::getTime));
-			item1.setFavorite(item1.isFavorite() || item2.isFavorite());
-			return item1;
-		}
-		else
-		{
-			item2.getHistory().getCompressedOfferEvents().addAll(item1.getHistory().getCompressedOfferEvents());
-			item2.getHistory().getCompressedOfferEvents().sort(Comparator.comparing(OfferEvent::getTime));
-			item2.setFavorite(item2.isFavorite() || item1.isFavorite());
-			return item2;
-		}
+		HistoryManager mergedHistory = HistoryManager.mergedView(
+			latest.history,
+			items.stream().map(FlippingItem::getHistory).collect(Collectors.toList()));
+
+		return new FlippingItem(
+				latest.itemId,
+				latest.itemName,
+				latest.totalGELimit,
+				mergedHistory,
+				latest.flippedBy,
+				latest.validFlippingPanelItem,
+				favorite,
+				latest.favoriteCode,
+				latest.latestInstaBuy,
+				latest.latestInstaSell,
+				latest.latestBuy,
+				latest.latestSell,
+				latest.latestActivityTime,
+				latest.expand);
 	}
 
 	public static long getProfit(List<OfferEvent> tradeList)
@@ -293,8 +307,57 @@ public class FlippingItem implements Searchable
 	{
 		history.deleteOffers(offerList);
 	}
+	public void setItemName(String itemName)
+	{
+		if (!Objects.equals(this.itemName, itemName))
+		{
+			this.itemName = itemName;
+			history.getPendingChanges().recordItemChanged();
+		}
+	}
+
+	public void setTotalGELimit(int totalGELimit)
+	{
+		if (this.totalGELimit != totalGELimit)
+		{
+			this.totalGELimit = totalGELimit;
+			history.getPendingChanges().recordItemChanged();
+		}
+	}
+
+	public void setFlippedBy(String flippedBy)
+	{
+		if (!Objects.equals(this.flippedBy, flippedBy))
+		{
+			this.flippedBy = flippedBy;
+			history.getPendingChanges().recordItemChanged();
+		}
+	}
+
+	public void setFavorite(boolean favorite)
+	{
+		if (this.favorite != favorite)
+		{
+			this.favorite = favorite;
+			history.getPendingChanges().recordItemChanged();
+		}
+	}
+
+	public void setFavoriteCode(String favoriteCode)
+	{
+		if (!Objects.equals(this.favoriteCode, favoriteCode))
+		{
+			this.favoriteCode = favoriteCode;
+			history.getPendingChanges().recordItemChanged();
+		}
+	}
+
 	public void setValidFlippingPanelItem(boolean isValid)
 	{
+		if (!Boolean.valueOf(isValid).equals(validFlippingPanelItem))
+		{
+			history.getPendingChanges().recordItemChanged();
+		}
 		validFlippingPanelItem = isValid;
 		if (!isValid)
 		{
@@ -375,9 +438,12 @@ public class FlippingItem implements Searchable
 	public void hydrate(int geLimit) {
 		setTotalGELimit(geLimit);
 		syncState();
-		setOfferIds();
-		setOfferNames();
-		setOfferMadeBy();
+		if (!offersHydrated)
+		{
+			setOfferIds();
+			setOfferNames();
+			setOfferMadeBy();
+		}
 		//when this change was made the field will not exist and will be null
 		if (validFlippingPanelItem == null)
 		{
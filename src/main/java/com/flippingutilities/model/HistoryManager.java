@@ -37,58 +37,279 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Manages the history for an item. This class is responsible for figuring out how much profit a user made for
  * an item along with tracking how many items they bought since the last ge limit refresh and when the
  * next ge limit refresh for this an item will be.
+ * <p>
+ * The offers are changed on the TradeStateWriter while the panels read them on the swing thread, so everything that
+ * touches the offers or what is cached from them holds this history's lock, and the offers only leave it as copies.
+ * Nothing is called back while the lock is held, as the callers can hold the DataHandler's lock while they change
+ * the history.
  */
 @Slf4j
-@AllArgsConstructor
 @NoArgsConstructor
 public class HistoryManager
 {
+	//the slots' trades in progress are kept track of per slot and side, see openTradeKey
+	private static final int OPEN_TRADE_KEYS = 8 * 2;
+
+	//the live list, for loading, storing and tests. Anything else reads the offers through the methods below.
 	@SerializedName("sO")
 	@Getter
-	@Setter
 	private List<OfferEvent> compressedOfferEvents = new ArrayList<>();
 
 	@SerializedName("nGLR")
-	@Getter
 	private Instant nextGeLimitRefresh;
 
 	@SerializedName("iBTLW")
-	@Getter
 	private int itemsBoughtThisLimitWindow;
 
 	@SerializedName("pIB")
 	private int itemsBoughtThroughCompleteOffers;
 
-	public HistoryManager clone()
+	//what has changed since this history was last stored, see PendingChanges
+	@Getter
+	private transient PendingChanges pendingChanges = new PendingChanges();
+
+	//bumped whenever the offers change so the cached aggregate knows it is stale, see getAggregate
+	private transient long offersVersion;
+	private transient CachedAggregate cachedAggregate;
+
+	//the flips of the offers after some time, extended as offers come in, see getIntervalFlips
+	private transient CachedFlips cachedFlips;
+
+	//whether the offers are in time order as of offersVersion. Offers are almost always appended in time order,
+	//which is what lets interval queries binary search, see isTimeOrdered.
+	private transient long timeOrderCheckedVersion = -1;
+	private transient boolean timeOrdered;
+
+	//for each slot and side (see openTradeKey), the positions of the offers of its trade in progress, oldest first:
+	//the last complete offer of the slot and side, if it has one, and every offer after it. Null until it's first
+	//needed, see getOpenTrades.
+	private transient Map<Integer, List<Integer>> openTrades;
+
+	//the daily totals of the offers that have been moved to the archive, in day order. The archived offers themselves
+	//are only read from the database when they are looked at, see OfferArchiveRepository.
+	private transient List<OfferRollup> archivedRollups = new ArrayList<>();
+
+	private HistoryManager(List<OfferEvent> compressedOfferEvents, Instant nextGeLimitRefresh, int itemsBoughtThisLimitWindow, int itemsBoughtThroughCompleteOffers)
 	{
-		List<OfferEvent> clonedCompressedOfferEvents = compressedOfferEvents.stream().map(OfferEvent::clone).collect(Collectors.toList());
+		this.compressedOfferEvents = compressedOfferEvents;
+		this.nextGeLimitRefresh = nextGeLimitRefresh;
+		this.itemsBoughtThisLimitWindow = itemsBoughtThisLimitWindow;
+		this.itemsBoughtThroughCompleteOffers = itemsBoughtThroughCompleteOffers;
+	}
+
+	public synchronized HistoryManager clone()
+	{
+		List<OfferEvent> clonedCompressedOfferEvents = compressedOfferEvents instanceof ColumnarOfferList ?
+			((ColumnarOfferList) compressedOfferEvents).copy() :
+			compressedOfferEvents.stream().map(OfferEvent::clone).collect(Collectors.toList());
 		Instant clonedGeLimitRefresh = nextGeLimitRefresh == null ? null : Instant.ofEpochMilli(nextGeLimitRefresh.toEpochMilli());
-		return new HistoryManager(
+		HistoryManager clone = new HistoryManager(
 				clonedCompressedOfferEvents,
 				clonedGeLimitRefresh,
 				itemsBoughtThisLimitWindow,
 				itemsBoughtThroughCompleteOffers
 		);
+		//never changed in place, only replaced
+		clone.archivedRollups = archivedRollups;
+		return clone;
+	}
+
+	public synchronized Instant getNextGeLimitRefresh()
+	{
+		return nextGeLimitRefresh;
+	}
+
+	public synchronized int getItemsBoughtThisLimitWindow()
+	{
+		return itemsBoughtThisLimitWindow;
+	}
+
+	/**
+	 * Switches how the offers are held in memory. Columnar storage keeps them in a {@link ColumnarOfferList}, which
+	 * takes a fraction of the memory but creates a new OfferEvent every time an offer is read.
+	 */
+	public synchronized void setColumnarStorage(boolean columnar)
+	{
+		if (columnar == isColumnarStorage())
+		{
+			return;
+		}
+		compressedOfferEvents = columnar ? new ColumnarOfferList(compressedOfferEvents) : new ArrayList<>(compressedOfferEvents);
+		cachedFlips = null;
 	}
 
-	public void updateHistory(OfferEvent newOffer)
+	public synchronized boolean isColumnarStorage()
 	{
+		return compressedOfferEvents instanceof ColumnarOfferList;
+	}
+
+	public synchronized void setCompressedOfferEvents(List<OfferEvent> compressedOfferEvents)
+	{
+		this.compressedOfferEvents = compressedOfferEvents;
+		offersVersion++;
+		cachedFlips = null;
+		//found again from the new offers when next needed
+		openTrades = null;
+	}
+
+	/**
+	 * Creates a history holding the offers of all the given histories in time order, used for the account wide view.
+	 * The histories are already in time order (almost always), so they are k-way merged rather than concatenated
+	 * and sorted. The offer objects are shared with the given histories rather than copied, so the merged history is
+	 * only meant to be read. The ge limit state is taken from the primary history.
+	 */
+	public static HistoryManager mergedView(HistoryManager primary, List<HistoryManager> histories)
+	{
+		//each history's offers are taken under its own lock, holding every history's lock for the whole merge could
+		//deadlock with another merge taking them in another order
+		List<List<OfferEvent>> offerLists = new ArrayList<>(histories.size());
+		boolean timeOrdered = true;
+		List<OfferRollup> rollups = new ArrayList<>();
+		for (HistoryManager history : histories)
+		{
+			synchronized (history)
+			{
+				offerLists.add(history.isColumnarStorage() ? ((ColumnarOfferList) history.compressedOfferEvents).copy() :
+					new ArrayList<>(history.compressedOfferEvents));
+				timeOrdered &= history.isTimeOrdered();
+				//never changed in place, only replaced
+				rollups.addAll(history.archivedRollups);
+			}
+		}
+		int totalOffers = offerLists.stream().mapToInt(List::size).sum();
+		List<OfferEvent> merged = primary.isColumnarStorage() ? new ColumnarOfferList(totalOffers) : new ArrayList<>(totalOffers);
+
+		if (timeOrdered)
+		{
+			//cursor[0] is the index of the history, cursor[1] the index of its next offer. Ties go to the history
+			//given first, same as a stable sort of the concatenated offers would do.
+			PriorityQueue<int[]> cursors = new PriorityQueue<>(Math.max(1, offerLists.size()), Comparator
+				.<int[], Instant>comparing(c -> offerLists.get(c[0]).get(c[1]).getTime())
+				.thenComparingInt(c -> c[0]));
+			for (int i = 0; i < offerLists.size(); i++)
+			{
+				if (!offerLists.get(i).isEmpty())
+				{
+					cursors.add(new int[]{i, 0});
+				}
+			}
+			while (!cursors.isEmpty())
+			{
+				int[] cursor = cursors.poll();
+				List<OfferEvent> offers = offerLists.get(cursor[0]);
+				merged.add(offers.get(cursor[1]));
+				cursor[1]++;
+				if (cursor[1] < offers.size())
+				{
+					cursors.add(cursor);
+				}
+			}
+		}
+		else
+		{
+			offerLists.forEach(merged::addAll);
+			merged.sort(Comparator.comparing(OfferEvent::getTime));
+		}
+
+		HistoryManager mergedHistory;
+		synchronized (primary)
+		{
+			mergedHistory = new HistoryManager(
+				merged,
+				primary.nextGeLimitRefresh,
+				primary.itemsBoughtThisLimitWindow,
+				primary.itemsBoughtThroughCompleteOffers);
+		}
+		mergedHistory.markTimeOrdered(true);
+		if (!rollups.isEmpty())
+		{
+			rollups.sort(Comparator.comparingLong(OfferRollup::getDay));
+			mergedHistory.archivedRollups = rollups;
+		}
+		return mergedHistory;
+	}
+
+	public synchronized void updateHistory(OfferEvent newOffer)
+	{
+		boolean wasTimeOrdered = isTimeOrdered();
+
 		//if slot is -1 than the offer was added manually from GE history.
 		//Since we don't know when it came or its slot/it doesn't have a time or slot, there is no point in updating ge
 		//properties or trying to delete previous offers for the trade.
+		int superseded = -1;
 		if (newOffer.getSlot() != -1)
 		{
 			updateGeLimitProperties(newOffer);
-			deletePreviousOffersForTrade(newOffer);
+			superseded = deletePreviousOffersForTrade(newOffer, true);
 		}
 
-		compressedOfferEvents.add(newOffer);
+		int size = compressedOfferEvents.size();
+		//the offer it supersedes is replaced in place when it's the latest offer, which is what it usually is. When
+		//other offers came in after it, it's removed instead, as replacing it would put the history out of time order.
+		if (superseded != -1 && superseded != size - 1)
+		{
+			removeOffer(superseded, compressedOfferEvents.get(superseded));
+			superseded = -1;
+			size--;
+		}
+		if (superseded != -1)
+		{
+			boolean inOrder = superseded == 0 || !isOfferAfter(superseded - 1, newOffer.getTime());
+			replaceOffer(superseded, newOffer);
+			markTimeOrdered(wasTimeOrdered && inOrder);
+			CachedFlips flips = cachedFlips;
+			if (flips != null && isTimeOrdered())
+			{
+				flips.offerAdded(newOffer);
+			}
+			else
+			{
+				cachedFlips = null;
+			}
+			return;
+		}
+
+		boolean inOrder = size == 0 || !isOfferAfter(size - 1, newOffer.getTime());
+		//manually added offers can be older than the latest offer, put them where they belong so the history stays
+		//in time order. Offers from slots are always appended as the position of the offers for a slot matters to
+		//deletePreviousOffersForTrade.
+		int index;
+		if (!inOrder && wasTimeOrdered && newOffer.getSlot() == -1)
+		{
+			index = firstIndexAfter(newOffer.getTime());
+			compressedOfferEvents.add(index, newOffer);
+			inOrder = true;
+			cachedFlips = null;
+		}
+		else
+		{
+			index = size;
+			compressedOfferEvents.add(newOffer);
+		}
+		pendingChanges.recordAddedOffer(newOffer);
+		offersVersion++;
+		markTimeOrdered(wasTimeOrdered && inOrder);
+		if (openTrades != null)
+		{
+			addToOpenTrades(index, newOffer);
+		}
+
+		CachedFlips flips = cachedFlips;
+		if (flips != null && isTimeOrdered())
+		{
+			flips.offerAdded(newOffer);
+		}
+		else
+		{
+			cachedFlips = null;
+		}
 	}
 
 	/**
@@ -162,31 +383,229 @@ public class HistoryManager
 	//properties of the offers match (except currentQuantityInTrade). But, there is no way to be 100% sure because all
 	//those properties could match but it could still be from a different trade if they cancel and make a trade outside of
 	//RL
-	public void deletePreviousOffersForTrade(OfferEvent newOfferEvent)
+	public synchronized void deletePreviousOffersForTrade(OfferEvent newOfferEvent)
 	{
-		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
+		deletePreviousOffersForTrade(newOfferEvent, false);
+	}
+
+	/**
+	 * @param keepLatest whether to leave the latest of the offers to delete where it is, for the new offer to
+	 *                   replace it in place
+	 * @return the position of the offer that was left, or -1 if there isn't one
+	 */
+	private int deletePreviousOffersForTrade(OfferEvent newOfferEvent, boolean keepLatest)
+	{
+		//only the offers of the slot's trade in progress can be deleted, so they are looked up rather than going
+		//through the whole history for them
+		List<Integer> trade = newOfferEvent.getSlot() == -1 ? null : getOpenTrades().get(openTradeKey(newOfferEvent));
+		if (trade == null)
+		{
+			return -1;
+		}
+		int kept = -1;
+		//from the latest back, so deleting an offer doesn't move the ones still to be looked at
+		for (int t = trade.size() - 1; t > -1; t--)
 		{
+			int i = trade.get(t);
 			OfferEvent aPreviousOffer = compressedOfferEvents.get(i);
 
 			// if the previous offer was cancelled while a partial offer came through, the old (now invalid quantity)
 			// cancelled offer must be deleted
-			if (newOfferEvent.isUpdateForCancelled(aPreviousOffer)) {
-				compressedOfferEvents.remove(i);
+			boolean updateForCancelled = newOfferEvent.isUpdateForCancelled(aPreviousOffer);
+			//if it belongs to the same slot and its complete, it must belong to a previous trade given that
+			//the most recent offer was for the same slot
+			if (!updateForCancelled && aPreviousOffer.isComplete())
+			{
+				return kept;
 			}
-			if (aPreviousOffer.getSlot() == newOfferEvent.getSlot() && aPreviousOffer.isBuy() == newOfferEvent.isBuy())
+			if (keepLatest && kept == -1)
 			{
-				//if it belongs to the same slot and its complete, it must belong to a previous trade given that
-				//the most recent offer was for the same slot
-				if (aPreviousOffer.isComplete())
-				{
-					return;
-				}
-				else
+				kept = i;
+			}
+			else
+			{
+				removeOffer(i, aPreviousOffer);
+				if (kept != -1)
 				{
-					compressedOfferEvents.remove(i);
+					kept--;
 				}
 			}
+			if (updateForCancelled)
+			{
+				return kept;
+			}
+		}
+		return kept;
+	}
+
+	private void removeOffer(int index, OfferEvent offer)
+	{
+		compressedOfferEvents.remove(index);
+		pendingChanges.recordDeletedOffer(offer);
+		offersVersion++;
+		if (openTrades != null)
+		{
+			removeFromOpenTrades(Collections.singletonList(index));
+		}
+
+		CachedFlips flips = cachedFlips;
+		if (flips != null && !flips.offerRemoved(offer))
+		{
+			cachedFlips = null;
+		}
+	}
+
+	/**
+	 * Puts the new offer in the place of one it supersedes, which saves moving the offers after it (and every column
+	 * of them, for columnar storage) twice over to remove one and add the other.
+	 */
+	private void replaceOffer(int index, OfferEvent newOffer)
+	{
+		OfferEvent superseded = compressedOfferEvents.get(index);
+		compressedOfferEvents.set(index, newOffer);
+		pendingChanges.recordDeletedOffer(superseded);
+		pendingChanges.recordAddedOffer(newOffer);
+		offersVersion++;
+		if (openTrades != null)
+		{
+			int key = openTradeKey(newOffer);
+			if (newOffer.isComplete())
+			{
+				openTrades.put(key, new ArrayList<>(Collections.singletonList(index)));
+			}
+			else if (superseded.isComplete())
+			{
+				//a cancelled offer replaced by the update for it, the trade goes back further than it now
+				putOpenTrade(key, findOpenTrade(key));
+			}
+			//otherwise the offer takes the superseded one's place in its trade
+		}
+
+		CachedFlips flips = cachedFlips;
+		if (flips != null && !flips.offerRemoved(superseded))
+		{
+			cachedFlips = null;
+		}
+	}
+
+	private static int openTradeKey(OfferEvent offer)
+	{
+		return offer.getSlot() << 1 | (offer.isBuy() ? 1 : 0);
+	}
+
+	/**
+	 * Gets the positions of each slot and side's trade in progress. They are found by going back through the offers
+	 * the first time they're needed after the history was loaded, and kept up to date by every change to the offers
+	 * from then on.
+	 */
+	private Map<Integer, List<Integer>> getOpenTrades()
+	{
+		if (openTrades != null)
+		{
+			return openTrades;
+		}
+		Map<Integer, List<Integer>> trades = new HashMap<>();
+		Set<Integer> started = new HashSet<>();
+		//once every slot and side has come across its last complete offer, the offers further back can't be in any
+		//trade in progress
+		for (int i = compressedOfferEvents.size() - 1; i > -1 && started.size() < OPEN_TRADE_KEYS; i--)
+		{
+			OfferEvent offer = compressedOfferEvents.get(i);
+			if (offer.getSlot() == -1)
+			{
+				continue;
+			}
+			int key = openTradeKey(offer);
+			if (started.contains(key))
+			{
+				continue;
+			}
+			trades.computeIfAbsent(key, k -> new ArrayList<>()).add(0, i);
+			if (offer.isComplete())
+			{
+				started.add(key);
+			}
+		}
+		openTrades = trades;
+		return openTrades;
+	}
+
+	/**
+	 * Goes back through the offers for one slot and side's trade in progress, for when the complete offer it went
+	 * back to was removed.
+	 */
+	private List<Integer> findOpenTrade(int key)
+	{
+		List<Integer> trade = new ArrayList<>();
+		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
+		{
+			OfferEvent offer = compressedOfferEvents.get(i);
+			if (offer.getSlot() == -1 || openTradeKey(offer) != key)
+			{
+				continue;
+			}
+			trade.add(0, i);
+			if (offer.isComplete())
+			{
+				break;
+			}
+		}
+		return trade;
+	}
+
+	private void putOpenTrade(int key, List<Integer> trade)
+	{
+		if (trade.isEmpty())
+		{
+			openTrades.remove(key);
+		}
+		else
+		{
+			openTrades.put(key, trade);
+		}
+	}
+
+	private void addToOpenTrades(int index, OfferEvent offer)
+	{
+		if (index < compressedOfferEvents.size() - 1)
+		{
+			openTrades.values().forEach(trade -> trade.replaceAll(i -> i >= index ? i + 1 : i));
+		}
+		if (offer.getSlot() != -1)
+		{
+			if (offer.isComplete())
+			{
+				openTrades.put(openTradeKey(offer), new ArrayList<>(Collections.singletonList(index)));
+			}
+			else
+			{
+				openTrades.computeIfAbsent(openTradeKey(offer), k -> new ArrayList<>()).add(index);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the open trades up to date with offers that were just removed from the history.
+	 *
+	 * @param positions the positions the removed offers were at, in ascending order
+	 */
+	private void removeFromOpenTrades(List<Integer> positions)
+	{
+		List<Integer> startsRemoved = new ArrayList<>();
+		for (Map.Entry<Integer, List<Integer>> entry : openTrades.entrySet())
+		{
+			List<Integer> trade = entry.getValue();
+			if (Collections.binarySearch(positions, trade.get(0)) >= 0)
+			{
+				//the offer the trade went back to is gone, so it goes back further now
+				startsRemoved.add(entry.getKey());
+				continue;
+			}
+			trade.removeIf(i -> Collections.binarySearch(positions, i) >= 0);
+			//each offer moves back by the number of offers removed in front of it
+			trade.replaceAll(i -> i - (-Collections.binarySearch(positions, i) - 1));
 		}
+		startsRemoved.forEach(key -> putOpenTrade(key, findOpenTrade(key)));
 	}
 
 	/**
@@ -195,8 +614,13 @@ public class HistoryManager
 	 * @param earliestTime the earliest time that trades from the trade history are added to the resulting list.
 	 * @return A list of offers that were within the interval of earliestTime and now.
 	 */
-	public ArrayList<OfferEvent> getIntervalsHistory(Instant earliestTime)
+	public synchronized ArrayList<OfferEvent> getIntervalsHistory(Instant earliestTime)
 	{
+		if (isTimeOrdered())
+		{
+			return new ArrayList<>(intervalView(earliestTime));
+		}
+
 		ArrayList<OfferEvent> result = new ArrayList<>();
 
 		for (OfferEvent offer : compressedOfferEvents)
@@ -210,13 +634,93 @@ public class HistoryManager
 		return result;
 	}
 
+	/**
+	 * Same as {@link #getIntervalsHistory(Instant)}, but the copy can't be changed.
+	 */
+	public synchronized List<OfferEvent> getIntervalView(Instant earliestTime)
+	{
+		return Collections.unmodifiableList(getIntervalsHistory(earliestTime));
+	}
+
+	/**
+	 * Same as {@link #getIntervalsHistory(Instant)} but, when the offers are in time order, returns a view of the
+	 * history instead of copying the offers. The view is only valid until the history next changes, so it is only
+	 * used for calculations done right away while holding the lock.
+	 */
+	private List<OfferEvent> intervalView(Instant earliestTime)
+	{
+		if (!isTimeOrdered())
+		{
+			return getIntervalsHistory(earliestTime);
+		}
+		return compressedOfferEvents.subList(firstIndexAfter(earliestTime), compressedOfferEvents.size());
+	}
+
+	/**
+	 * @return the index of the first offer after the given time, assuming the offers are in time order.
+	 */
+	private int firstIndexAfter(Instant time)
+	{
+		int low = 0;
+		int high = compressedOfferEvents.size();
+		while (low < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (isOfferAfter(mid, time))
+			{
+				high = mid;
+			}
+			else
+			{
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	private boolean isOfferAfter(int index, Instant time)
+	{
+		//avoids creating an OfferEvent just to read its time. Columnar times are whole millis, so comparing against
+		//the truncated millis of the given time gives the same answer as Instant.isAfter.
+		if (compressedOfferEvents instanceof ColumnarOfferList)
+		{
+			return ((ColumnarOfferList) compressedOfferEvents).getEpochMilli(index) > time.toEpochMilli();
+		}
+		return compressedOfferEvents.get(index).getTime().isAfter(time);
+	}
+
+	/**
+	 * Offers come in in time order, apart from the odd manually added offer and whatever the history was loaded with,
+	 * so this only scans the offers when the history was changed in some way that wasn't tracked.
+	 */
+	private boolean isTimeOrdered()
+	{
+		if (timeOrderCheckedVersion == offersVersion)
+		{
+			return timeOrdered;
+		}
+		boolean ordered = true;
+		for (int i = 1; i < compressedOfferEvents.size() && ordered; i++)
+		{
+			ordered = !compressedOfferEvents.get(i - 1).getTime().isAfter(compressedOfferEvents.get(i).getTime());
+		}
+		markTimeOrdered(ordered);
+		return ordered;
+	}
+
+	private void markTimeOrdered(boolean ordered)
+	{
+		timeOrdered = ordered;
+		timeOrderCheckedVersion = offersVersion;
+	}
+
 	/**
 	 * This is to prevent old values from remaining for items that a user has bought and whose
 	 * refresh times have already passed. If the user buys the item again, the values will be up to date,
 	 * so this method wouldn't be needed, but there is no guarantee the user buys the item again after the
 	 * limit refreshes. This method should be called periodically to ensure no old values will remain.
 	 */
-	public void validateGeProperties()
+	public synchronized void validateGeProperties()
 	{
 		if (nextGeLimitRefresh == null)
 		{
@@ -227,20 +731,59 @@ public class HistoryManager
 		{
 			nextGeLimitRefresh = null;
 			itemsBoughtThisLimitWindow = 0;
+			pendingChanges.recordItemChanged();
 		}
 	}
 
-	public boolean hasValidOffers()
+	public synchronized boolean hasValidOffers()
 	{
 		return compressedOfferEvents.size() > 0;
 	}
 
-	public boolean hasOfferInInterval(Instant earliestTime) {
+	public synchronized boolean hasArchivedOffers()
+	{
+		return !archivedRollups.isEmpty();
+	}
+
+	/**
+	 * @return the archived days starting at or after earliestTime
+	 */
+	public synchronized List<OfferRollup> getArchivedRollups(Instant earliestTime)
+	{
+		if (archivedRollups.isEmpty() || !archivedRollups.get(0).getStart().isBefore(earliestTime))
+		{
+			return archivedRollups;
+		}
+		return archivedRollups.stream().filter(r -> !r.getStart().isBefore(earliestTime)).collect(Collectors.toList());
+	}
+
+	public synchronized void setArchivedRollups(List<OfferRollup> rollups)
+	{
+		archivedRollups = rollups;
+		offersVersion++;
+	}
+
+	/**
+	 * Deletes the archived days starting at or after earliestTime along with their archived offers, which are deleted
+	 * from the database on the next store.
+	 */
+	public synchronized void deleteArchivedOffers(Instant earliestTime)
+	{
+		List<OfferRollup> kept = archivedRollups.stream().filter(r -> r.getStart().isBefore(earliestTime)).collect(Collectors.toList());
+		if (kept.size() == archivedRollups.size())
+		{
+			return;
+		}
+		archivedRollups = kept;
+		pendingChanges.recordArchivedOffersDeleted(earliestTime);
+		offersVersion++;
+	}
+
+	public synchronized boolean hasOfferInInterval(Instant earliestTime) {
 		if (!hasValidOffers()) {
 			return false;
 		}
-		OfferEvent lastOffer = compressedOfferEvents.get(compressedOfferEvents.size()-1);
-		return lastOffer.getTime().isAfter(earliestTime);
+		return isOfferAfter(compressedOfferEvents.size() - 1, earliestTime);
 	}
 
 	/**
@@ -248,14 +791,135 @@ public class HistoryManager
 	 * by which offers are deleted.
 	 * @param offerList the offers being invalidated
 	 */
-	public void deleteOffers(List<OfferEvent> offerList)
+	public synchronized void deleteOffers(List<OfferEvent> offerList)
 	{
 		if (offerList.isEmpty()) {
 			return;
 		}
 
+		boolean wasTimeOrdered = isTimeOrdered();
 		Set<String> idsOfOffersToBeDeleted = offerList.stream().map(OfferEvent::getUuid).collect(Collectors.toSet());
+		//where the deleted offers are, to keep the open trades up to date with
+		List<Integer> deletedPositions = new ArrayList<>();
+		for (int i = 0; i < compressedOfferEvents.size(); i++) {
+			OfferEvent offer = compressedOfferEvents.get(i);
+			if (idsOfOffersToBeDeleted.contains(offer.getUuid())) {
+				pendingChanges.recordDeletedOffer(offer);
+				deletedPositions.add(i);
+			}
+		}
+		if (deletedPositions.isEmpty()) {
+			return;
+		}
 		compressedOfferEvents.removeIf(o -> idsOfOffersToBeDeleted.contains(o.getUuid()));
+		offersVersion++;
+		cachedFlips = null;
+		//removing offers can't put the rest out of order
+		markTimeOrdered(wasTimeOrdered);
+		if (openTrades != null) {
+			removeFromOpenTrades(deletedPositions);
+		}
+	}
+
+	/**
+	 * Gets the totals (profit, expense, tax, flip count, etc) of the offers after earliestTime, adjusted for the
+	 * parts of offers consumed by recipe flips, together with the archived days after earliestTime. Sorting the
+	 * statistics tab and the cumulative stats ask for this for every item, usually with the same interval several
+	 * times over, so the result is kept until the offers, the interval or the recipe flips change.
+	 *
+	 * @param partialOfferVersion changes whenever any recipe flip changes
+	 * @param partialOffers supplies the offer id to partial offer map, only called if the aggregate is recomputed
+	 */
+	public ItemAggregate getAggregate(Instant earliestTime, long partialOfferVersion, Supplier<Map<String, PartialOffer>> partialOffers)
+	{
+		synchronized (this)
+		{
+			CachedAggregate cached = cachedAggregate;
+			if (cached != null && cached.offersVersion == offersVersion && cached.partialOfferVersion == partialOfferVersion
+				&& cached.earliestTime.equals(earliestTime))
+			{
+				return cached.aggregate;
+			}
+			if (intervalView(earliestTime).isEmpty() && getArchivedRollups(earliestTime).isEmpty())
+			{
+				return aggregate(earliestTime, partialOfferVersion, Collections.emptyMap());
+			}
+		}
+		//found without the lock, see the class comment
+		Map<String, PartialOffer> offerIdToPartialOffer = partialOffers.get();
+		synchronized (this)
+		{
+			return aggregate(earliestTime, partialOfferVersion, offerIdToPartialOffer);
+		}
+	}
+
+	private ItemAggregate aggregate(Instant earliestTime, long partialOfferVersion, Map<String, PartialOffer> offerIdToPartialOffer)
+	{
+		List<OfferEvent> intervalHistory = intervalView(earliestTime);
+		List<OfferRollup> rollups = getArchivedRollups(earliestTime);
+		ItemAggregate aggregate = ItemAggregate.EMPTY;
+		if (!intervalHistory.isEmpty() || !rollups.isEmpty())
+		{
+			aggregate = ItemAggregate.of(
+				rollups,
+				getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer),
+				intervalFlips(earliestTime, partialOfferVersion, offerIdToPartialOffer).size());
+		}
+		cachedAggregate = new CachedAggregate(earliestTime, partialOfferVersion, offersVersion, aggregate);
+		return aggregate;
+	}
+
+	/**
+	 * Gets the flips of the offers after earliestTime, adjusted for the parts of offers consumed by recipe flips. These
+	 * are the same flips getFlips gives, but they are kept and extended as offers come in (see {@link FlipMatcher})
+	 * rather than matching every offer in the interval again whenever the stats tab is rebuilt.
+	 *
+	 * @param partialOfferVersion changes whenever any recipe flip changes
+	 * @param partialOffers supplies the offer id to partial offer map, only called if the flips are matched again
+	 */
+	public List<Flip> getIntervalFlips(Instant earliestTime, long partialOfferVersion, Supplier<Map<String, PartialOffer>> partialOffers)
+	{
+		synchronized (this)
+		{
+			if (hasCachedFlips(earliestTime, partialOfferVersion))
+			{
+				return cachedFlips.getFlips();
+			}
+		}
+		//found without the lock, see the class comment
+		Map<String, PartialOffer> offerIdToPartialOffer = partialOffers.get();
+		synchronized (this)
+		{
+			return intervalFlips(earliestTime, partialOfferVersion, offerIdToPartialOffer);
+		}
+	}
+
+	private boolean hasCachedFlips(Instant earliestTime, long partialOfferVersion)
+	{
+		CachedFlips cached = cachedFlips;
+		return cached != null && cached.partialOfferVersion == partialOfferVersion && cached.earliestTime.equals(earliestTime);
+	}
+
+	private List<Flip> intervalFlips(Instant earliestTime, long partialOfferVersion, Map<String, PartialOffer> offerIdToPartialOffer)
+	{
+		if (hasCachedFlips(earliestTime, partialOfferVersion))
+		{
+			return cachedFlips.getFlips();
+		}
+
+		List<OfferEvent> adjustedOffers = getPartialOfferAdjustedView(intervalView(earliestTime), offerIdToPartialOffer);
+		//the matchers need the offers in time order, and they hold on to every offer they are given which would undo
+		//the point of columnar storage, so those histories are matched from scratch every time.
+		if (!isTimeOrdered() || isColumnarStorage())
+		{
+			cachedFlips = null;
+			return getFlips(adjustedOffers);
+		}
+
+		CachedFlips cached = new CachedFlips(earliestTime, partialOfferVersion);
+		adjustedOffers.forEach(cached::offerAdded);
+		cachedFlips = cached;
+		return cached.getFlips();
 	}
 
 	/**
@@ -268,7 +932,7 @@ public class HistoryManager
 	 * @return offers that could potentially be duplicates of the given offer event.
 	 * @param limit max amount of potentially duplicate offers to find.
 	 */
-	public List<OfferEvent> getOfferMatches(OfferEvent offer, int limit)
+	public synchronized List<OfferEvent> getOfferMatches(OfferEvent offer, int limit)
 	{
 		List<OfferEvent> matches = new ArrayList<>();
 		int count = 0;
@@ -296,7 +960,7 @@ public class HistoryManager
 	 * Gets the YOUNGEST offer that matches some arbitrary conditions
 	 * @param predicate conditions
 	 */
-	public Optional<OfferEvent> getLatestOfferThatMatchesPredicate(Predicate<OfferEvent> predicate)
+	public synchronized Optional<OfferEvent> getLatestOfferThatMatchesPredicate(Predicate<OfferEvent> predicate)
 	{
 		for (int i = compressedOfferEvents.size() - 1; i > -1; i--)
 		{
@@ -310,28 +974,38 @@ public class HistoryManager
 
 	/**
 	 * Because we don't persist the itemName field in an OfferEvent, we need to hydrate every
-	 * OfferEvent with it
+	 * OfferEvent with it. replaceAll is used (here and below) rather than forEach so the change is written back
+	 * when the offers are held in a ColumnarOfferList.
 	 */
-	public void setOfferNames(String itemName) {
-		compressedOfferEvents.forEach(o -> o.setItemName(itemName));
+	public synchronized void setOfferNames(String itemName) {
+		compressedOfferEvents.replaceAll(o -> {
+			o.setItemName(itemName);
+			return o;
+		});
 	}
 
 	/**
 	 * We don't persist the madeBy field, so it has to be hydrated.
 	 */
-	public void setOfferMadeBy(String name) {
-		compressedOfferEvents.forEach(o -> o.setMadeBy(name));
+	public synchronized void setOfferMadeBy(String name) {
+		compressedOfferEvents.replaceAll(o -> {
+			o.setMadeBy(name);
+			return o;
+		});
+		//the flips are grouped by who made the offers
+		cachedFlips = null;
 	}
 
 	/**
 	 * Every new offer event created nowadays has a uuid associated with it. However, the old
 	 * offer events that have already been persisted need their uuids' set.
 	 */
-	public void setOfferIds() {
-		compressedOfferEvents.forEach(o -> {
+	public synchronized void setOfferIds() {
+		compressedOfferEvents.replaceAll(o -> {
 			if (o.getUuid() == null) {
 				o.setUuid(UUID.randomUUID().toString());
 			}
+			return o;
 		});
 	}
 
@@ -418,7 +1092,7 @@ public class HistoryManager
 	 * @return the amount of money spent on the offer list, up to the amount of items specified by the
 	 * limit
 	 */
-	private static long getValueOfOffersUpToLimit(List<OfferEvent> tradeList, long itemLimit)
+	static long getValueOfOffersUpToLimit(List<OfferEvent> tradeList, long itemLimit)
 	{
 		int itemsSeen = 0;
 		long moneySpent = 0;
@@ -648,4 +1322,61 @@ public class HistoryManager
 
 		return flips;
 	}
-}
\ No newline at end of file
+
+	@AllArgsConstructor
+	private static class CachedAggregate
+	{
+		private final Instant earliestTime;
+		private final long partialOfferVersion;
+		private final long offersVersion;
+		private final ItemAggregate aggregate;
+	}
+
+	/**
+	 * The flips of the offers after earliestTime, with a matcher per account as getFlips doesn't match offers made by
+	 * different accounts. Only used while holding the history's lock.
+	 */
+	@RequiredArgsConstructor
+	private static class CachedFlips
+	{
+		private final Instant earliestTime;
+		private final long partialOfferVersion;
+		private final Map<String, FlipMatcher> matchers = new HashMap<>();
+		private List<Flip> flips;
+
+		void offerAdded(OfferEvent offer)
+		{
+			if (offer.getTime().isAfter(earliestTime))
+			{
+				matchers.computeIfAbsent(offer.getMadeBy(), madeBy -> new FlipMatcher()).add(offer);
+				flips = null;
+			}
+		}
+
+		/**
+		 * @return false if the offer couldn't be removed, in which case the flips have to be matched again.
+		 */
+		boolean offerRemoved(OfferEvent offer)
+		{
+			FlipMatcher matcher = matchers.get(offer.getMadeBy());
+			if (matcher == null || !offer.getTime().isAfter(earliestTime))
+			{
+				return true;
+			}
+			flips = null;
+			return matcher.remove(offer);
+		}
+
+		List<Flip> getFlips()
+		{
+			if (flips == null)
+			{
+				List<Flip> allFlips = new ArrayList<>();
+				matchers.values().forEach(matcher -> allFlips.addAll(matcher.getFlips()));
+				allFlips.sort(Comparator.comparing(Flip::getTime));
+				flips = Collections.unmodifiableList(allFlips);
+			}
+			return flips;
+		}
+	}
+}
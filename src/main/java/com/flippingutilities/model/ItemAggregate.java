@@ -0,0 +1,95 @@
+package com.flippingutilities.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The totals for an item's offers in some interval, already adjusted for the parts of offers consumed by recipe
+ * flips. See {@link HistoryManager#getAggregate}.
+ */
+@Getter
+@AllArgsConstructor
+public class ItemAggregate {
+    public static final ItemAggregate EMPTY = new ItemAggregate(0, 0, 0, 0, 0);
+
+    //value of the matched buys and sells, these are what profit is calculated from
+    private final long expense;
+    private final long revenue;
+    private final long taxPaid;
+    private final int flipQuantity;
+    private final int flipCount;
+
+    static ItemAggregate of(List<OfferEvent> adjustedOffers, int flipCount) {
+        if (adjustedOffers.isEmpty()) {
+            return EMPTY;
+        }
+        return new ItemAggregate(
+            HistoryManager.getValueOfMatchedOffers(adjustedOffers, true),
+            HistoryManager.getValueOfMatchedOffers(adjustedOffers, false),
+            adjustedOffers.stream().mapToLong(OfferEvent::getTaxPaid).sum(),
+            HistoryManager.countFlipQuantity(adjustedOffers),
+            flipCount);
+    }
+
+    /**
+     * The totals of the offers together with the totals of archived offers. The archived days are taken to come
+     * before the offers, and when only part of a day's items are matched the day's value is prorated by its
+     * average price, as its individual offers aren't at hand.
+     *
+     * @param rollups the archived days, in day order
+     * @param flipCount the number of flips of the offers, the archived days' flips are added to it
+     */
+    static ItemAggregate of(List<OfferRollup> rollups, List<OfferEvent> adjustedOffers, int flipCount) {
+        if (rollups.isEmpty()) {
+            return of(adjustedOffers, flipCount);
+        }
+        long bought = 0;
+        long sold = 0;
+        long taxPaid = 0;
+        int archivedFlipCount = 0;
+        for (OfferRollup rollup : rollups) {
+            bought += rollup.getBuyQuantity();
+            sold += rollup.getSellQuantity();
+            taxPaid += rollup.getTaxPaid();
+            archivedFlipCount += rollup.getFlipCount();
+        }
+        for (OfferEvent offer : adjustedOffers) {
+            if (offer.isBuy()) {
+                bought += offer.getCurrentQuantityInTrade();
+            } else {
+                sold += offer.getCurrentQuantityInTrade();
+            }
+            taxPaid += offer.getTaxPaid();
+        }
+        long flipQuantity = Math.min(bought, sold);
+        return new ItemAggregate(
+            getValueOfMatched(rollups, adjustedOffers, true, flipQuantity),
+            getValueOfMatched(rollups, adjustedOffers, false, flipQuantity),
+            taxPaid,
+            (int) flipQuantity,
+            archivedFlipCount + flipCount);
+    }
+
+    private static long getValueOfMatched(List<OfferRollup> rollups, List<OfferEvent> offers, boolean isBuy, long itemLimit) {
+        long value = 0;
+        long remaining = itemLimit;
+        for (OfferRollup rollup : rollups) {
+            long quantity = isBuy ? rollup.getBuyQuantity() : rollup.getSellQuantity();
+            long dayValue = isBuy ? rollup.getBuyValue() : rollup.getSellValue();
+            if (quantity >= remaining) {
+                return remaining == 0 ? value : value + (long) ((double) dayValue * remaining / quantity);
+            }
+            value += dayValue;
+            remaining -= quantity;
+        }
+        return value + HistoryManager.getValueOfOffersUpToLimit(
+            offers.stream().filter(o -> o.isBuy() == isBuy).collect(Collectors.toList()), remaining);
+    }
+
+    public long getProfit() {
+        return revenue - expense;
+    }
+}
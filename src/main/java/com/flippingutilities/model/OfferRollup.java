@@ -0,0 +1,62 @@
+package com.flippingutilities.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * The totals of an item's offers on one day (UTC), kept in place of the offers once they have been moved to the
+ * archive. The values are the same ones the stats take from the offers: sell value is after tax.
+ */
+@Getter
+@AllArgsConstructor
+public class OfferRollup {
+    //days since the epoch
+    private final long day;
+    private final long buyQuantity;
+    private final long buyValue;
+    private final long sellQuantity;
+    private final long sellValue;
+    private final long taxPaid;
+    private final int flipCount;
+
+    public Instant getStart() {
+        return startOf(day);
+    }
+
+    /**
+     * @param offers the item's offers on the day, in time order
+     */
+    public static OfferRollup of(long day, List<OfferEvent> offers) {
+        long buyQuantity = 0;
+        long buyValue = 0;
+        long sellQuantity = 0;
+        long sellValue = 0;
+        long taxPaid = 0;
+        for (OfferEvent offer : offers) {
+            long quantity = offer.getCurrentQuantityInTrade();
+            if (offer.isBuy()) {
+                buyQuantity += quantity;
+                buyValue += quantity * offer.getPrice();
+            } else {
+                sellQuantity += quantity;
+                sellValue += quantity * offer.getPrice();
+            }
+            taxPaid += offer.getTaxPaid();
+        }
+        //offers of one item and one account, so they don't need grouping by account like getFlips does
+        return new OfferRollup(day, buyQuantity, buyValue, sellQuantity, sellValue, taxPaid,
+            HistoryManager.createFlips(offers).size());
+    }
+
+    public static long dayOf(Instant time) {
+        return Math.floorDiv(time.toEpochMilli(), ChronoUnit.DAYS.getDuration().toMillis());
+    }
+
+    public static Instant startOf(long day) {
+        return Instant.EPOCH.plus(day, ChronoUnit.DAYS);
+    }
+}
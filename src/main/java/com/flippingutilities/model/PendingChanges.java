@@ -0,0 +1,93 @@
+package com.flippingutilities.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records what has changed about a flipping item since it was last stored: which offers were added, which were
+ * deleted, from when its archived offers were deleted, and whether the item's own properties (name, favorite, ge limit state, etc) changed. The persister
+ * uses this to only write the rows that actually changed instead of rewriting the item's whole history on
+ * every store.
+ * <p>
+ * Stores happen off the client thread, so the persister takes a {@link Snapshot} of the changes, writes it, and
+ * then clears only what was in the snapshot. Anything recorded while the store was running is kept for the next one.
+ */
+public class PendingChanges {
+    private final Map<String, OfferEvent> addedOffers = new LinkedHashMap<>();
+    private final Set<String> deletedOfferIds = new HashSet<>();
+    private long itemVersion;
+    private long storedItemVersion;
+    //archived offers from this time on were deleted, see HistoryManager.deleteArchivedOffers
+    private Instant archivedOffersDeletedFrom;
+
+    public synchronized void recordAddedOffer(OfferEvent offer) {
+        deletedOfferIds.remove(offer.getUuid());
+        addedOffers.put(offer.getUuid(), offer);
+    }
+
+    /**
+     * The offer may or may not have been stored yet, we always record the deletion as deleting a row that
+     * doesn't exist is harmless.
+     */
+    public synchronized void recordDeletedOffer(OfferEvent offer) {
+        addedOffers.remove(offer.getUuid());
+        deletedOfferIds.add(offer.getUuid());
+    }
+
+    public synchronized void recordArchivedOffersDeleted(Instant from) {
+        if (archivedOffersDeletedFrom == null || from.isBefore(archivedOffersDeletedFrom)) {
+            archivedOffersDeletedFrom = from;
+        }
+    }
+
+    public synchronized void recordItemChanged() {
+        itemVersion++;
+    }
+
+    public synchronized boolean isEmpty() {
+        return addedOffers.isEmpty() && deletedOfferIds.isEmpty() && itemVersion == storedItemVersion
+            && archivedOffersDeletedFrom == null;
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(
+            new ArrayList<>(addedOffers.values()),
+            new HashSet<>(deletedOfferIds),
+            itemVersion,
+            archivedOffersDeletedFrom);
+    }
+
+    /**
+     * Clears the changes contained in the snapshot once they have been stored.
+     */
+    public synchronized void clear(Snapshot snapshot) {
+        snapshot.addedOffers.forEach(o -> addedOffers.remove(o.getUuid(), o));
+        deletedOfferIds.removeAll(snapshot.deletedOfferIds);
+        storedItemVersion = Math.max(storedItemVersion, snapshot.itemVersion);
+        //an earlier deletion recorded while the store ran still needs storing
+        if (archivedOffersDeletedFrom != null && archivedOffersDeletedFrom.equals(snapshot.archivedOffersDeletedFrom)) {
+            archivedOffersDeletedFrom = null;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final List<OfferEvent> addedOffers;
+        private final Set<String> deletedOfferIds;
+        private final long itemVersion;
+        private final Instant archivedOffersDeletedFrom;
+
+        public boolean hasOfferChanges() {
+            return !addedOffers.isEmpty() || !deletedOfferIds.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.flippingutilities.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * An account's trades list, newest item first, that also indexes the items by item id and by favorite code so the
+ * offer pipeline and the GE search don't have to go through every item the account has ever traded.
+ * <p>
+ * The items are kept oldest first in an array and the list is a reversed view of it, so adding an item to the front
+ * (which is where new items go) is an append instead of shifting every other item, while getting an item by index
+ * stays constant time.
+ * <p>
+ * The item id index is kept up to date by every change to the list. An item's favorite and favorite code can change
+ * without the list knowing, so that index is rebuilt on the next lookup after {@link #favoritesChanged()}.
+ */
+public class TradeList extends AbstractList<FlippingItem> implements RandomAccess {
+    //oldest first, the reverse of the list's order
+    private final ArrayList<FlippingItem> items = new ArrayList<>();
+    //the item that comes first in the list for each item id, like the trades list was searched from the front
+    private final Map<Integer, FlippingItem> itemsById = new HashMap<>();
+    private Map<String, List<FlippingItem>> favoritesByCode;
+
+    public TradeList() {
+    }
+
+    public TradeList(Collection<? extends FlippingItem> trades) {
+        items.ensureCapacity(trades.size());
+        List<FlippingItem> newestFirst = new ArrayList<>(trades);
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            items.add(newestFirst.get(i));
+        }
+        rebuildItemIndex();
+    }
+
+    /**
+     * @return the account's item with the id, or null if it doesn't have one
+     */
+    public FlippingItem findByItemId(int itemId) {
+        return itemsById.get(itemId);
+    }
+
+    /**
+     * @return the favorited items whose favorite code is the code, newest first
+     */
+    public List<FlippingItem> findFavoritesByCode(String code) {
+        if (favoritesByCode == null) {
+            favoritesByCode = new HashMap<>();
+            for (FlippingItem item : this) {
+                if (item.isFavorite() && item.getFavoriteCode() != null) {
+                    favoritesByCode.computeIfAbsent(item.getFavoriteCode(), k -> new ArrayList<>()).add(item);
+                }
+            }
+        }
+        return favoritesByCode.getOrDefault(code, Collections.emptyList());
+    }
+
+    /**
+     * Has to be called when an item's favorite or favorite code may have changed.
+     */
+    public void favoritesChanged() {
+        favoritesByCode = null;
+    }
+
+    @Override
+    public FlippingItem get(int index) {
+        return items.get(toArrayIndex(index));
+    }
+
+    @Override
+    public int size() {
+        return items.size();
+    }
+
+    @Override
+    public FlippingItem set(int index, FlippingItem item) {
+        FlippingItem previous = items.set(toArrayIndex(index), item);
+        unindex(previous);
+        index(item, index);
+        favoritesChanged();
+        return previous;
+    }
+
+    @Override
+    public void add(int index, FlippingItem item) {
+        rangeCheckForAdd(index);
+        items.add(items.size() - index, item);
+        modCount++;
+        index(item, index);
+        favoritesChanged();
+    }
+
+    @Override
+    public FlippingItem remove(int index) {
+        FlippingItem removed = items.remove(toArrayIndex(index));
+        modCount++;
+        unindex(removed);
+        favoritesChanged();
+        return removed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super FlippingItem> filter) {
+        if (!items.removeIf(filter)) {
+            return false;
+        }
+        modCount++;
+        rebuildItemIndex();
+        favoritesChanged();
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        items.clear();
+        modCount++;
+        itemsById.clear();
+        favoritesChanged();
+    }
+
+    private void index(FlippingItem item, int index) {
+        FlippingItem existing = itemsById.get(item.getItemId());
+        //an item with the same id further back in the list doesn't take the place of the one before it
+        if (existing == null || index == 0 || positionOf(existing) > index) {
+            itemsById.put(item.getItemId(), item);
+        }
+    }
+
+    private void unindex(FlippingItem item) {
+        if (itemsById.get(item.getItemId()) != item) {
+            return;
+        }
+        itemsById.remove(item.getItemId());
+        //there is only another item with the same id if some id has more than one item
+        if (itemsById.size() < items.size()) {
+            for (int i = items.size() - 1; i >= 0; i--) {
+                if (items.get(i).getItemId() == item.getItemId()) {
+                    itemsById.put(item.getItemId(), items.get(i));
+                    return;
+                }
+            }
+        }
+    }
+
+    private void rebuildItemIndex() {
+        itemsById.clear();
+        //oldest first, so the newest item with an id is the one left in the index
+        for (FlippingItem item : items) {
+            itemsById.put(item.getItemId(), item);
+        }
+    }
+
+    private int positionOf(FlippingItem item) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            if (items.get(i) == item) {
+                return items.size() - 1 - i;
+            }
+        }
+        return -1;
+    }
+
+    private int toArrayIndex(int index) {
+        if (index < 0 || index >= items.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + items.size());
+        }
+        return items.size() - 1 - index;
+    }
+
+    private void rangeCheckForAdd(int index) {
+        if (index < 0 || index > items.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + items.size());
+        }
+    }
+}
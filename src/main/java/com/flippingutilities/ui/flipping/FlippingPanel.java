@@ -197,20 +197,21 @@ public class FlippingPanel extends JPanel
 	}
 
 	/**
-	 * Handles rebuilding the flipping panel when a new offer event comes in. There are several cases
+	 * Handles rebuilding the flipping panel when new offer events come in. There are several cases
 	 * where we don't want to rebuildItemsDisplay either because it is unnecessary or visually annoying for a user.
-	 * @param offerEvent the new offer that just came in
+	 * @param itemIds the items of the offers that came in since the last rebuild
+	 * @param flippingItems the items of the current view
 	 */
-	public void onNewOfferEventRebuild(OfferEvent offerEvent) {
-		boolean newOfferEventAlreadyAtTop = activePanels.size() > 0 && activePanels.get(0).getFlippingItem().getItemId() == offerEvent.getItemId();
+	public void onNewOfferEventRebuild(Set<Integer> itemIds, List<FlippingItem> flippingItems) {
+		boolean newOfferEventAlreadyAtTop = itemIds.size() == 1 && activePanels.size() > 0 && itemIds.contains(activePanels.get(0).getFlippingItem().getItemId());
 		if (newOfferEventAlreadyAtTop) {
-			refreshPricesForFlippingItemPanel(offerEvent.getItemId());
+			refreshPricesForFlippingItemPanel(itemIds.iterator().next());
 			return;
 		}
 		//it's annoying when you have searched an item up or an item is
 		//highlighted and then the panel is rebuilt due to an offer coming in. This guard prevents that.
 		if (!isItemHighlighted() && !currentlySearching) {
-			rebuild(plugin.viewItemsForCurrentView());
+			rebuild(flippingItems);
 		}
 	}
 
@@ -27,6 +27,7 @@
 package com.flippingutilities.ui.statistics;
 
 import com.flippingutilities.controller.FlippingPlugin;
+import com.flippingutilities.db.MigrationProgress;
 import com.flippingutilities.model.*;
 import com.flippingutilities.ui.statistics.items.FlippingItemPanel;
 import com.flippingutilities.ui.statistics.items.FlippingItemContainerPanel;
@@ -382,18 +383,12 @@ public class StatsPanel extends JPanel
 
 		for (FlippingItem item : tradesList)
 		{
-			Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-			List<OfferEvent> intervalHistory = item.getIntervalHistory(startOfInterval);
-			if (intervalHistory.isEmpty()) {
-				continue;
-			}
-
-			List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(intervalHistory, offerIdToPartialOffer);
+			ItemAggregate aggregate = plugin.getIntervalAggregate(item, startOfInterval);
 
-			taxPaid += adjustedOffers.stream().mapToLong(OfferEvent::getTaxPaid).sum();
-			totalProfit += FlippingItem.getProfit(adjustedOffers);
-			totalExpenses += FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
-			totalFlips += FlippingItem.getFlips(adjustedOffers).size();
+			taxPaid += aggregate.getTaxPaid();
+			totalProfit += aggregate.getProfit();
+			totalExpenses += aggregate.getExpense();
+			totalFlips += aggregate.getFlipCount();
 		}
 
 		for (RecipeFlipGroup recipeFlipGroup : recipeFlipGroups) {
@@ -547,9 +542,10 @@ public class StatsPanel extends JPanel
 	 */
 	public void deleteItemPanel(FlippingItemPanel itemPanel) {
 		FlippingItem item = itemPanel.getItem();
-		plugin.deleteOffers(item.getIntervalHistory(startOfInterval), item);
-		this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
-		this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+		plugin.deleteOffers(startOfInterval, item).thenRun(() -> SwingUtilities.invokeLater(() -> {
+			this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
+			this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+		}));
 	}
 
 	public void deleteRecipeFlipGroupPanel(RecipeFlipGroupPanel recipeFlipGroupPanel) {
@@ -655,9 +651,10 @@ public class StatsPanel extends JPanel
 					//If the user pressed "Yes"
 					if (result == JOptionPane.YES_OPTION)
 					{
-						plugin.deleteOffers(startOfInterval);
-						StatsPanel.this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
-						StatsPanel.this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+						plugin.deleteOffers(startOfInterval).thenRun(() -> SwingUtilities.invokeLater(() -> {
+							StatsPanel.this.rebuildItemsDisplay(plugin.viewItemsForCurrentView());
+							StatsPanel.this.rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+						}));
 					}
 				}
 			}
@@ -895,6 +892,17 @@ public class StatsPanel extends JPanel
 
 		String displayText = calculateAutoSaveDisplayText();
 		autoSaveVal.setText(displayText);
+		MigrationProgress migration = plugin.tradePersister.getMigrationProgress();
+		if (migration != null)
+		{
+			autoSavePanel.setToolTipText(String.format("Saving resumes once the database is upgraded (%s: %d%%)",
+				migration.getDescription(), migration.getPercentDone()));
+		}
+		else
+		{
+			autoSavePanel.setToolTipText(String.format("Saves waiting to be written: %d, last save took %dms to be written",
+				plugin.tradePersister.getWriteQueueDepth(), plugin.tradePersister.getLastWriteLatencyMillis()));
+		}
 
 		subInfoPanel.add(autoSavePanel);
 		revalidate();
@@ -47,15 +47,19 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class FlippingItemPanel extends JPanel
 {
+	private static final int ARCHIVED_OFFERS_PAGE_SIZE = 50;
+
 	private FlippingPlugin plugin;
 	@Getter
 	private FlippingItem item;
@@ -83,6 +87,12 @@ public class FlippingItemPanel extends JPanel
 	private JPanel offersBackgroundPanel = new JPanel();
 	private JPanel flipsBackgroundPanel = new JPanel();
 
+	private List<OfferEvent> offers;
+	//pages of the item's archived offers, in time order, loaded when the user asks for them
+	private List<OfferEvent> archivedOffers = new ArrayList<>();
+	private Set<String> archivedOfferIds = new HashSet<>();
+	private JLabel loadArchivedOffersLabel = new JLabel("Load archived offers", SwingConstants.CENTER);
+
 	/**
 	 * This panel represents the middle layer of information. It contains general information about the item
 	 * along with being the container for the trade history of that item.
@@ -100,13 +110,11 @@ public class FlippingItemPanel extends JPanel
 		this.item = item;
 		this.statsPanel = plugin.getStatPanel();
 
-		List<OfferEvent> offers = item.getIntervalHistory(statsPanel.getStartOfInterval());
-		Map<String, PartialOffer> offerIdToPartialOffer = plugin.getOfferIdToPartialOffer(item.getItemId());
-		List<OfferEvent> adjustedOffers = FlippingItem.getPartialOfferAdjustedView(offers, offerIdToPartialOffer);
-		List<Flip> flips = FlippingItem.getFlips(adjustedOffers);
+		this.offers = item.getIntervalHistory(statsPanel.getStartOfInterval());
+		List<Flip> flips = plugin.getIntervalFlips(item, statsPanel.getStartOfInterval());
 
 		this.flipPaginator = createPaginator(() -> buildAllFlipsPanel(flips));
-		this.offerPaginator = createPaginator(() -> buildAllOffersPanels(offers));
+		this.offerPaginator = createPaginator(() -> buildAllOffersPanels(getShownOffers()));
 
 		offerPaginator.updateTotalPages(offers.size());
 		flipPaginator.updateTotalPages(flips.size());
@@ -122,11 +130,14 @@ public class FlippingItemPanel extends JPanel
 			avgSellPriceValLabel};
 
 		JPanel subInfoPanel = createSubInfoPanel(descriptionLabels, valueLabels);
-		JPanel tradeHistoryPanel = createTradeHistoryPanel(offersBackgroundPanel, flipsBackgroundPanel);
+		JPanel offersPanel = new JPanel(new BorderLayout());
+		offersPanel.add(offersBackgroundPanel, BorderLayout.CENTER);
+		offersPanel.add(createLoadArchivedOffersPanel(), BorderLayout.SOUTH);
+		JPanel tradeHistoryPanel = createTradeHistoryPanel(offersPanel, flipsBackgroundPanel);
 		JPanel subInfoAndHistoryContainer = createSubInfoAndHistoryContainer(subInfoPanel, tradeHistoryPanel);
         JPanel titlePanel = createTitlePanel(createIconPanel(plugin.getItemManager()), createNameAndProfitPanel(), createCollapseIcon(), subInfoAndHistoryContainer);
 
-        updateLabels(offers, adjustedOffers);
+        updateLabels(offers);
 
         add(titlePanel, BorderLayout.NORTH);
         add(subInfoAndHistoryContainer, BorderLayout.CENTER);
@@ -176,13 +187,89 @@ public class FlippingItemPanel extends JPanel
         List<OfferEvent> reversedHistory = new ArrayList<>(offers);
         Collections.reverse(reversedHistory);
         List<OfferEvent> offersOnCurrentPage = offerPaginator.getCurrentPageItems(reversedHistory);
+        //archived offers are shown plain, they can't be deleted or used in recipe flips from here
         offerPanels = offersOnCurrentPage.stream().map(
                 offerEvent -> new OfferPanel(
-                        plugin, item, offerEvent, false))
+                        plugin, item, offerEvent, archivedOfferIds.contains(offerEvent.getUuid())))
                 .collect(Collectors.toList());
 		putPanelsOnBackgroundPanel(new ArrayList<>(offerPanels), offersBackgroundPanel, offerPaginator);
 	}
 
+	private List<OfferEvent> getShownOffers() {
+		if (archivedOffers.isEmpty()) {
+			return offers;
+		}
+		List<OfferEvent> shownOffers = new ArrayList<>(archivedOffers);
+		shownOffers.addAll(offers);
+		return shownOffers;
+	}
+
+	/**
+	 * Creates the button under the offers which loads the next page of the item's archived offers. It is only shown
+	 * for a single account, if the item has archived offers in the interval, until they've all been loaded.
+	 */
+	private JPanel createLoadArchivedOffersPanel()
+	{
+		JPanel loadArchivedOffersPanel = new JPanel();
+		loadArchivedOffersPanel.setBackground(CustomColors.DARK_GRAY);
+		loadArchivedOffersPanel.setVisible(!plugin.getAccountCurrentlyViewed().equals(FlippingPlugin.ACCOUNT_WIDE)
+			&& !item.getHistory().getArchivedRollups(statsPanel.getStartOfInterval()).isEmpty());
+
+		loadArchivedOffersLabel.setFont(new Font("Whitney", Font.ITALIC, 10));
+		loadArchivedOffersLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
+		loadArchivedOffersPanel.add(loadArchivedOffersLabel);
+		loadArchivedOffersPanel.addMouseListener(new MouseAdapter()
+		{
+			@Override
+			public void mousePressed(MouseEvent e)
+			{
+				if (e.getButton() == MouseEvent.BUTTON1 && loadArchivedOffersLabel.isEnabled())
+				{
+					loadArchivedOffers(loadArchivedOffersPanel);
+				}
+			}
+
+			@Override
+			public void mouseEntered(MouseEvent e)
+			{
+				loadArchivedOffersPanel.setBackground(ColorScheme.DARKER_GRAY_HOVER_COLOR);
+			}
+
+			@Override
+			public void mouseExited(MouseEvent e)
+			{
+				loadArchivedOffersPanel.setBackground(CustomColors.DARK_GRAY);
+			}
+		});
+		return loadArchivedOffersPanel;
+	}
+
+	private void loadArchivedOffers(JPanel loadArchivedOffersPanel)
+	{
+		loadArchivedOffersLabel.setEnabled(false);
+		loadArchivedOffersLabel.setText("Loading...");
+		String accountName = plugin.getAccountCurrentlyViewed();
+		Instant startOfInterval = statsPanel.getStartOfInterval();
+		int loaded = archivedOffers.size();
+		plugin.getExecutor().execute(() ->
+		{
+			List<OfferEvent> page = plugin.tradePersister.loadArchivedOffers(
+				accountName, item.getItemId(), startOfInterval, loaded, ARCHIVED_OFFERS_PAGE_SIZE);
+			SwingUtilities.invokeLater(() ->
+			{
+				archivedOffers.addAll(0, page);
+				page.forEach(o -> archivedOfferIds.add(o.getUuid()));
+				loadArchivedOffersLabel.setEnabled(true);
+				loadArchivedOffersLabel.setText("Load archived offers");
+				loadArchivedOffersPanel.setVisible(page.size() == ARCHIVED_OFFERS_PAGE_SIZE);
+
+				List<OfferEvent> shownOffers = getShownOffers();
+				offerPaginator.updateTotalPages(shownOffers.size());
+				buildAllOffersPanels(shownOffers);
+			});
+		});
+	}
+
 	private void buildAllFlipsPanel(List<Flip> flips) {
 		List<Flip> flipsCopy = new ArrayList<>(flips);
 		Collections.reverse(flipsCopy);
@@ -448,7 +535,7 @@ public class FlippingItemPanel extends JPanel
 		return collapseIconLabel;
 	}
 
-	public void updateLabels(List<OfferEvent> offers, List<OfferEvent> adjustedOffers)
+	public void updateLabels(List<OfferEvent> offers)
 	{
         quantityFlipped.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
         avgBuyPriceValLabel.setForeground(ColorScheme.LIGHT_GRAY_COLOR);
@@ -470,12 +557,22 @@ public class FlippingItemPanel extends JPanel
 			}
 		}
 
-		int itemCountFlipped = FlippingItem.countFlipQuantity(adjustedOffers);
-		long revenueFromFlippedItems = FlippingItem.getValueOfMatchedOffers(adjustedOffers, false);
-		long expenseFromFlippedItems = FlippingItem.getValueOfMatchedOffers(adjustedOffers, true);
 		long totalRevenue = FlippingItem.getTotalRevenueOrExpense(offers, false);
 		long totalExpense = FlippingItem.getTotalRevenueOrExpense(offers, true);
-		long profit = revenueFromFlippedItems - expenseFromFlippedItems;
+		for (OfferRollup rollup : item.getHistory().getArchivedRollups(statsPanel.getStartOfInterval()))
+		{
+			totalItemsBought += rollup.getBuyQuantity();
+			totalItemsSold += rollup.getSellQuantity();
+			totalExpense += rollup.getBuyValue();
+			totalRevenue += rollup.getSellValue();
+		}
+
+		//the offers adjusted for recipe flips, plus the archived offers
+		ItemAggregate aggregate = plugin.getIntervalAggregate(item, statsPanel.getStartOfInterval());
+		int itemCountFlipped = aggregate.getFlipQuantity();
+		long revenueFromFlippedItems = aggregate.getRevenue();
+		long expenseFromFlippedItems = aggregate.getExpense();
+		long profit = aggregate.getProfit();
 
 		updateTitleLabels(profit, itemCountFlipped);
 		updateFlippingLabels(expenseFromFlippedItems, revenueFromFlippedItems, itemCountFlipped);
@@ -238,9 +238,10 @@ public class OfferPanel extends JPanel {
 
                 //If the user pressed "Yes"
                 if (result == JOptionPane.YES_OPTION) {
-                    plugin.deleteOffers(new ArrayList<>(Arrays.asList(offer)), item);
-                    plugin.getStatPanel().rebuildItemsDisplay(plugin.viewItemsForCurrentView());
-                    plugin.getStatPanel().rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+                    plugin.deleteOffers(new ArrayList<>(Arrays.asList(offer)), item).thenRun(() -> SwingUtilities.invokeLater(() -> {
+                        plugin.getStatPanel().rebuildItemsDisplay(plugin.viewItemsForCurrentView());
+                        plugin.getStatPanel().rebuildRecipesDisplay(plugin.viewRecipeFlipGroupsForCurrentView());
+                    }));
 
                 }
             }
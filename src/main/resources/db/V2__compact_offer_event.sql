@@ -0,0 +1,28 @@
+-- Compact offer events. CompactOfferEventMigration copies the rows over and swaps this table in for offer_event:
+--   time and trade_started_at are epoch millis instead of ISO-8601 text
+--   state is a small code (see OfferEventRepository.STATE_CODES) instead of the enum's name
+--   uuid is the uuid's 16 bytes. Uuids that aren't in the standard form are kept as text so they still
+--   round trip exactly, last_offer and partial_offer hold the same encoding in their offer_event_uuid columns.
+-- The table is clustered on (flipping_item_id, time) so an item's offers are stored together in the order
+-- they are loaded in.
+CREATE TABLE IF NOT EXISTS offer_event_v2 (
+    flipping_item_id INTEGER NOT NULL,
+    time INTEGER NOT NULL,
+    uuid BLOB NOT NULL,
+    is_buy INTEGER NOT NULL,
+    item_id INTEGER NOT NULL,
+    current_quantity_in_trade INTEGER NOT NULL,
+    price INTEGER NOT NULL,
+    slot INTEGER NOT NULL,
+    state INTEGER NOT NULL,
+    tick_arrived_at INTEGER DEFAULT 0,
+    ticks_since_first_offer INTEGER DEFAULT 0,
+    total_quantity_in_trade INTEGER NOT NULL,
+    trade_started_at INTEGER,
+    before_login INTEGER DEFAULT 0,
+    PRIMARY KEY (flipping_item_id, time, uuid),
+    FOREIGN KEY (flipping_item_id) REFERENCES flipping_item(id) ON DELETE CASCADE
+) WITHOUT ROWID;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_offer_event_uuid ON offer_event_v2(uuid);
+
@@ -0,0 +1,4 @@
+-- Lets RecipeFlipRepository load all of an account's recipe flips with one query per table instead of walking
+-- the groups and flips one at a time.
+CREATE INDEX IF NOT EXISTS idx_recipe_flip_group_account ON recipe_flip_group(account_name);
+CREATE INDEX IF NOT EXISTS idx_recipe_flip_group ON recipe_flip(recipe_flip_group_id);
@@ -0,0 +1,40 @@
+-- Cold storage for old offers, see OfferArchiveRepository. Offers older than the configured age are moved out of
+-- offer_event into offer_event_archive, which has the same compact columns, so they are no longer loaded with the
+-- account. They are only read when a user pages through an item's archived offers.
+CREATE TABLE IF NOT EXISTS offer_event_archive (
+    flipping_item_id INTEGER NOT NULL,
+    time INTEGER NOT NULL,
+    uuid BLOB NOT NULL,
+    is_buy INTEGER NOT NULL,
+    item_id INTEGER NOT NULL,
+    current_quantity_in_trade INTEGER NOT NULL,
+    price INTEGER NOT NULL,
+    slot INTEGER NOT NULL,
+    state INTEGER NOT NULL,
+    tick_arrived_at INTEGER DEFAULT 0,
+    ticks_since_first_offer INTEGER DEFAULT 0,
+    total_quantity_in_trade INTEGER NOT NULL,
+    trade_started_at INTEGER,
+    before_login INTEGER DEFAULT 0,
+    PRIMARY KEY (flipping_item_id, time, uuid),
+    FOREIGN KEY (flipping_item_id) REFERENCES flipping_item(id) ON DELETE CASCADE
+) WITHOUT ROWID;
+
+-- The totals of an item's archived offers per day (days since the epoch, UTC), which is what the profit of an
+-- interval reaching back into the archive is calculated from. The values are what the stats would take from the
+-- offers themselves: sell_value is after tax and tax_paid is the tax on the sells.
+CREATE TABLE IF NOT EXISTS offer_rollup (
+    flipping_item_id INTEGER NOT NULL,
+    day INTEGER NOT NULL,
+    buy_quantity INTEGER NOT NULL DEFAULT 0,
+    buy_value INTEGER NOT NULL DEFAULT 0,
+    sell_quantity INTEGER NOT NULL DEFAULT 0,
+    sell_value INTEGER NOT NULL DEFAULT 0,
+    tax_paid INTEGER NOT NULL DEFAULT 0,
+    flip_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (flipping_item_id, day),
+    FOREIGN KEY (flipping_item_id) REFERENCES flipping_item(id) ON DELETE CASCADE
+) WITHOUT ROWID;
+
+-- Offers a recipe flip consumed part of stay in offer_event, this is how archiving finds them.
+CREATE INDEX IF NOT EXISTS idx_partial_offer_offer_event ON partial_offer(offer_event_uuid);
@@ -0,0 +1,8 @@
+-- How far into the offer journal (see OfferJournal) each account has been stored. It is written in the same
+-- transaction as the offers, so journal entries up to the sequence are known to be in the database and the ones
+-- after it are replayed on the next start.
+CREATE TABLE IF NOT EXISTS offer_journal_checkpoint (
+    account_name TEXT PRIMARY KEY,
+    sequence INTEGER NOT NULL,
+    FOREIGN KEY (account_name) REFERENCES account(display_name) ON DELETE CASCADE
+);
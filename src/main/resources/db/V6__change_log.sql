@@ -0,0 +1,17 @@
+-- What each store changed, so that other clients using the same database can pick up just those changes instead of
+-- reloading whole accounts, see ChangeLogRepository. Rows are written in the same transaction as the store.
+CREATE TABLE IF NOT EXISTS change_log (
+    seq INTEGER PRIMARY KEY AUTOINCREMENT,
+    client_id TEXT NOT NULL,
+    kind INTEGER NOT NULL,
+    account_name TEXT,
+    item_id INTEGER,
+    changed_at INTEGER NOT NULL
+);
+
+-- How far into the change log each running client has read. Only used to know which rows every client is done with.
+CREATE TABLE IF NOT EXISTS change_log_cursor (
+    client_id TEXT PRIMARY KEY,
+    seq INTEGER NOT NULL,
+    updated_at INTEGER NOT NULL
+);
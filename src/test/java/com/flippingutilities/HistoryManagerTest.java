@@ -29,7 +29,10 @@ package com.flippingutilities;
 
 import com.flippingutilities.model.Flip;
 import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.ItemAggregate;
 import com.flippingutilities.model.OfferEvent;
+import com.flippingutilities.model.OfferRollup;
+import com.flippingutilities.model.PendingChanges;
 import net.runelite.api.GrandExchangeOfferState;
 import org.junit.Before;
 import org.junit.Test;
@@ -37,10 +40,14 @@ import org.junit.Test;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class HistoryManagerTest
 {
@@ -389,4 +396,266 @@ public class HistoryManagerTest
 
 		assertEquals(historyManager.getCompressedOfferEvents(), expectedCompressedEvents);
 	}
+
+	//tests that offers superseded by a later offer for the same trade are recorded as deleted, so that only the
+	//offer that is actually in the history gets stored.
+	@Test
+	public void pendingChangesTrackSupersededOffers()
+	{
+		HistoryManager historyManager = new HistoryManager();
+
+		OfferEvent partialOffer = Utils.offer(true, 10, 100, baseTime, 1, GrandExchangeOfferState.BUYING, 50);
+		OfferEvent completeOffer = Utils.offer(true, 50, 100, baseTime, 1, GrandExchangeOfferState.BOUGHT, 50);
+		historyManager.updateHistory(partialOffer);
+		historyManager.updateHistory(completeOffer);
+
+		PendingChanges.Snapshot changes = historyManager.getPendingChanges().snapshot();
+		assertEquals(Collections.singletonList(completeOffer), changes.getAddedOffers());
+		assertEquals(Collections.singleton(partialOffer.getUuid()), changes.getDeletedOfferIds());
+
+		historyManager.getPendingChanges().clear(changes);
+		assertTrue(historyManager.getPendingChanges().isEmpty());
+	}
+
+	//tests that the offers superseded by a later offer for the same slot are still found when the slots' offers are
+	//interleaved, when an offer is an update for a cancelled one, and after offers were deleted from outside
+	@Test
+	public void supersededOffersFoundThroughOpenTrades()
+	{
+		HistoryManager historyManager = new HistoryManager();
+
+		historyManager.updateHistory(Utils.offer(true, 10, 100, baseTime, 1, GrandExchangeOfferState.BUYING, 1, 0, 50));
+		historyManager.updateHistory(Utils.offer(false, 5, 120, baseTime, 2, GrandExchangeOfferState.SELLING, 1, 0, 20));
+		OfferEvent buyOffer = Utils.offer(true, 20, 100, baseTime, 1, GrandExchangeOfferState.BUYING, 2, 1, 50);
+		historyManager.updateHistory(buyOffer);
+		OfferEvent sellOffer = Utils.offer(false, 10, 120, baseTime, 2, GrandExchangeOfferState.SELLING, 2, 1, 20);
+		historyManager.updateHistory(sellOffer);
+
+		assertEquals(Arrays.asList(buyOffer, sellOffer), historyManager.getCompressedOfferEvents());
+
+		historyManager.setColumnarStorage(true);
+
+		//a partial offer that came through on the tick after the offer was cancelled replaces the cancelled offer
+		historyManager.updateHistory(Utils.offer(true, 20, 100, baseTime, 1, GrandExchangeOfferState.CANCELLED_BUY, 5, 4, 50));
+		OfferEvent updateForCancelled = Utils.offer(true, 25, 100, baseTime, 1, GrandExchangeOfferState.BUYING, 6, 5, 50);
+		historyManager.updateHistory(updateForCancelled);
+
+		assertEquals(Arrays.asList(sellOffer, updateForCancelled), historyManager.getCompressedOfferEvents());
+
+		historyManager.deleteOffers(Collections.singletonList(sellOffer));
+		OfferEvent completeOffer = Utils.offer(true, 50, 100, baseTime, 1, GrandExchangeOfferState.BOUGHT, 7, 6, 50);
+		historyManager.updateHistory(completeOffer);
+
+		assertEquals(Collections.singletonList(completeOffer), historyManager.getCompressedOfferEvents());
+	}
+
+	//tests that an offer superseding the latest offer takes its place, and that one superseding an offer other offers
+	//came in after goes to the end instead, so the history stays in time order
+	@Test
+	public void supersedingOfferKeepsTimeOrder()
+	{
+		HistoryManager historyManager = new HistoryManager();
+		historyManager.setColumnarStorage(true);
+		//columnar storage keeps whole millis
+		Instant time = baseTime.truncatedTo(ChronoUnit.SECONDS);
+		OfferEvent buyOffer = Utils.offer(true, 5, 100, time.minus(10, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BUYING, 1, 0, 20);
+		historyManager.updateHistory(buyOffer);
+		historyManager.updateHistory(Utils.offer(false, 2, 120, time.minus(9, ChronoUnit.MINUTES), 2, GrandExchangeOfferState.SELLING, 1, 0, 10));
+		OfferEvent sellOffer = Utils.offer(false, 4, 120, time.minus(8, ChronoUnit.MINUTES), 2, GrandExchangeOfferState.SELLING, 2, 1, 10);
+		historyManager.updateHistory(sellOffer);
+
+		assertEquals(Arrays.asList(buyOffer, sellOffer), historyManager.getCompressedOfferEvents());
+
+		OfferEvent laterBuyOffer = Utils.offer(true, 10, 100, time.minus(7, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BUYING, 3, 2, 20);
+		historyManager.updateHistory(laterBuyOffer);
+
+		assertEquals(Arrays.asList(sellOffer, laterBuyOffer), historyManager.getCompressedOfferEvents());
+		assertEquals(Collections.singletonList(laterBuyOffer), historyManager.getIntervalsHistory(time.minus(8, ChronoUnit.MINUTES)));
+		assertEquals(historyManager.getIntervalsHistory(time.minus(9, ChronoUnit.MINUTES)),
+			historyManager.getIntervalView(time.minus(9, ChronoUnit.MINUTES)));
+	}
+
+	//tests that the trades in progress kept up to date through every change to the offers give the same history as
+	//finding them again from the offers, which a copy of the history has to do
+	@Test
+	public void openTradesKeptUpToDateMatchFindingThemAgain()
+	{
+		openTradesKeptUpToDateMatchFindingThemAgain(false);
+		openTradesKeptUpToDateMatchFindingThemAgain(true);
+	}
+
+	private void openTradesKeptUpToDateMatchFindingThemAgain(boolean columnar)
+	{
+		HistoryManager historyManager = new HistoryManager();
+		historyManager.setColumnarStorage(columnar);
+		Instant time = baseTime.minus(1, ChronoUnit.HOURS).truncatedTo(ChronoUnit.SECONDS);
+		List<OfferEvent> offers = Arrays.asList(
+			Utils.offer(true, 5, 100, time.plusSeconds(1), 0, GrandExchangeOfferState.BUYING, 1, 0, 20),
+			Utils.offer(false, 3, 120, time.plusSeconds(2), 1, GrandExchangeOfferState.SELLING, 1, 0, 10),
+			Utils.offer(true, 10, 100, time.plusSeconds(3), 0, GrandExchangeOfferState.BUYING, 2, 1, 20),
+			Utils.offer(true, 15, 100, time.plusSeconds(4), 0, GrandExchangeOfferState.BUYING, 3, 2, 20),
+			Utils.offer(false, 10, 120, time.plusSeconds(5), 1, GrandExchangeOfferState.SOLD, 4, 3, 10),
+			Utils.offer(true, 15, 100, time.plusSeconds(6), 0, GrandExchangeOfferState.CANCELLED_BUY, 5, 4, 20),
+			Utils.offer(true, 17, 100, time.plusSeconds(7), 0, GrandExchangeOfferState.BUYING, 6, 5, 20),
+			Utils.offer(true, 20, 100, time.plusSeconds(8), 0, GrandExchangeOfferState.BOUGHT, 7, 6, 20),
+			Utils.offer(false, 2, 120, time.plusSeconds(9), 1, GrandExchangeOfferState.SELLING, 8, 0, 10),
+			Utils.offer(true, 4, 100, time.plusSeconds(10), 0, GrandExchangeOfferState.BUYING, 9, 0, 20),
+			Utils.offer(false, 10, 120, time.plusSeconds(11), 1, GrandExchangeOfferState.SOLD, 10, 2, 10));
+
+		for (int i = 0; i < offers.size(); i++)
+		{
+			if (i == 9)
+			{
+				//deleting the complete offer slot 0's trade went back to
+				historyManager.deleteOffers(Collections.singletonList(offers.get(7)));
+			}
+			HistoryManager copy = historyManager.clone();
+			historyManager.updateHistory(offers.get(i));
+			copy.updateHistory(offers.get(i).clone());
+			assertEquals(copy.getCompressedOfferEvents(), historyManager.getCompressedOfferEvents());
+		}
+		assertEquals(3, historyManager.getCompressedOfferEvents().size());
+	}
+
+	//tests that switching to columnar storage keeps the history intact and that the history can still be updated
+	@Test
+	public void columnarStorageKeepsHistory()
+	{
+		List<OfferEvent> offers = new ArrayList<>(historyManager.getCompressedOfferEvents());
+		historyManager.setColumnarStorage(true);
+
+		List<OfferEvent> columnarOffers = historyManager.getCompressedOfferEvents();
+		assertEquals(offers.size(), columnarOffers.size());
+		for (int i = 0; i < offers.size(); i++)
+		{
+			assertEquals(offers.get(i).getUuid(), columnarOffers.get(i).getUuid());
+			assertEquals(offers.get(i).getState(), columnarOffers.get(i).getState());
+			assertEquals(offers.get(i).getTime().toEpochMilli(), columnarOffers.get(i).getTime().toEpochMilli());
+		}
+
+		assertEquals(200, HistoryManager.getProfit(historyManager.getIntervalsHistory(baseTime.minus(1, ChronoUnit.HOURS))));
+
+		historyManager.updateHistory(Utils.offer(false, 5, 105, baseTime.minus(4, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.SOLD, 5, 0));
+		assertEquals(225, HistoryManager.getProfit(historyManager.getIntervalsHistory(baseTime.minus(1, ChronoUnit.HOURS))));
+	}
+
+	//tests that an older offer added manually from the ge history tab is put in time order, so interval queries
+	//still find it
+	@Test
+	public void manuallyAddedOlderOfferKeepsTimeOrder()
+	{
+		OfferEvent manualOffer = Utils.offer(true, 5, 100, baseTime.minus(50, ChronoUnit.MINUTES), -1, GrandExchangeOfferState.BOUGHT, 5);
+		historyManager.updateHistory(manualOffer);
+
+		assertEquals(manualOffer, historyManager.getCompressedOfferEvents().get(0));
+		assertEquals(7, historyManager.getIntervalsHistory(baseTime.minus(1, ChronoUnit.HOURS)).size());
+		assertEquals(6, historyManager.getIntervalsHistory(baseTime.minus(45, ChronoUnit.MINUTES)).size());
+		assertEquals(historyManager.getIntervalsHistory(baseTime.minus(11, ChronoUnit.MINUTES)),
+			historyManager.getIntervalView(baseTime.minus(11, ChronoUnit.MINUTES)));
+	}
+
+	//tests that the flips kept up to date as offers come in are the same as the flips matched from scratch after every
+	//offer, including when partial offers the flips already used are replaced and when margin checks aren't paired
+	@Test
+	public void intervalFlipsMatchFlipsFromScratch()
+	{
+		HistoryManager historyManager = new HistoryManager();
+		Instant startOfInterval = baseTime.minus(1, ChronoUnit.HOURS);
+
+		List<OfferEvent> offers = new ArrayList<>();
+		offers.add(Utils.offer(true, 1, 2, baseTime.minus(30, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BOUGHT, 1, 1, 1));
+		offers.add(Utils.offer(true, 5, 100, baseTime.minus(29, ChronoUnit.MINUTES), 2, GrandExchangeOfferState.BUYING, 10));
+		//a minute after the buy margin check, so they aren't paired
+		offers.add(Utils.offer(false, 1, 1, baseTime.minus(29, ChronoUnit.MINUTES), 3, GrandExchangeOfferState.SOLD, 1, 1, 1));
+		offers.add(Utils.offer(false, 4, 110, baseTime.minus(28, ChronoUnit.MINUTES), 4, GrandExchangeOfferState.SELLING, 8));
+		offers.add(Utils.offer(true, 10, 100, baseTime.minus(27, ChronoUnit.MINUTES), 2, GrandExchangeOfferState.BOUGHT, 10));
+		offers.add(Utils.offer(false, 8, 110, baseTime.minus(26, ChronoUnit.MINUTES), 4, GrandExchangeOfferState.SOLD, 8));
+		offers.add(Utils.offer(true, 1, 3, baseTime.minus(20, ChronoUnit.MINUTES), 5, GrandExchangeOfferState.BOUGHT, 1, 1, 1));
+		offers.add(Utils.offer(false, 1, 5, baseTime.minus(20, ChronoUnit.MINUTES).plusSeconds(30), 6, GrandExchangeOfferState.SOLD, 1, 1, 1));
+		offers.add(Utils.offer(true, 1, 4, baseTime.minus(10, ChronoUnit.MINUTES), 5, GrandExchangeOfferState.BOUGHT, 1, 1, 1));
+		offers.add(Utils.offer(false, 3, 120, baseTime.minus(9, ChronoUnit.MINUTES), 7, GrandExchangeOfferState.SELLING, 20));
+		offers.add(Utils.offer(true, 20, 90, baseTime.minus(8, ChronoUnit.MINUTES), 1, GrandExchangeOfferState.BOUGHT, 20));
+		offers.add(Utils.offer(false, 20, 120, baseTime.minus(7, ChronoUnit.MINUTES), 7, GrandExchangeOfferState.SOLD, 20));
+
+		for (OfferEvent offer : offers)
+		{
+			historyManager.updateHistory(offer);
+			assertEquals(
+				HistoryManager.getFlips(historyManager.getIntervalsHistory(startOfInterval)),
+				historyManager.getIntervalFlips(startOfInterval, 0, Collections::emptyMap));
+		}
+	}
+
+	//tests that an item's totals are the same whether its older offers are still in its history or have been archived
+	//and only their daily totals are left
+	@Test
+	public void aggregateWithArchivedRollupsMatchesOffers()
+	{
+		Instant firstDay = Instant.parse("2024-03-01T10:00:00Z");
+		Instant secondDay = Instant.parse("2024-03-02T10:00:00Z");
+
+		List<OfferEvent> archivedOffers = new ArrayList<>();
+		archivedOffers.add(Utils.offer(true, 10, 100, firstDay, 1, GrandExchangeOfferState.BOUGHT, 10));
+		archivedOffers.add(Utils.offer(false, 4, 150, firstDay.plus(1, ChronoUnit.HOURS), 2, GrandExchangeOfferState.SOLD, 4));
+		List<OfferEvent> offers = new ArrayList<>();
+		offers.add(Utils.offer(false, 10, 140, secondDay, 3, GrandExchangeOfferState.SOLD, 10));
+		offers.add(Utils.offer(true, 5, 120, secondDay.plus(1, ChronoUnit.HOURS), 4, GrandExchangeOfferState.BOUGHT, 5));
+
+		HistoryManager allOffers = new HistoryManager();
+		archivedOffers.forEach(allOffers::updateHistory);
+		offers.forEach(allOffers::updateHistory);
+		HistoryManager archived = new HistoryManager();
+		offers.forEach(archived::updateHistory);
+		archived.setArchivedRollups(Collections.singletonList(OfferRollup.of(OfferRollup.dayOf(firstDay), archivedOffers)));
+
+		for (Instant startOfInterval : new Instant[]{Instant.EPOCH, secondDay.minus(1, ChronoUnit.HOURS)})
+		{
+			ItemAggregate expected = allOffers.getAggregate(startOfInterval, 0, Collections::emptyMap);
+			ItemAggregate actual = archived.getAggregate(startOfInterval, 0, Collections::emptyMap);
+			assertEquals(expected.getExpense(), actual.getExpense());
+			assertEquals(expected.getRevenue(), actual.getRevenue());
+			assertEquals(expected.getTaxPaid(), actual.getTaxPaid());
+			assertEquals(expected.getFlipQuantity(), actual.getFlipQuantity());
+		}
+	}
+
+	//tests that the interval view is a copy, so an offer coming in while it's read doesn't change it
+	@Test
+	public void intervalViewIsntChangedByNewOffers()
+	{
+		Instant startOfInterval = baseTime.minus(1, ChronoUnit.HOURS);
+		List<OfferEvent> view = historyManager.getIntervalView(startOfInterval);
+
+		historyManager.updateHistory(Utils.offer(true, 5, 100, baseTime.minus(1, ChronoUnit.MINUTES), 6, GrandExchangeOfferState.BOUGHT, 5));
+
+		assertEquals(6, view.size());
+		assertEquals(7, historyManager.getIntervalView(startOfInterval).size());
+	}
+
+	//tests that the partial offers are found without holding the history's lock, so the trade state writer can change
+	//the history in the meantime, and that the aggregate is of the offers as they are after that change
+	@Test
+	public void partialOffersAreFoundWithoutTheLock() throws Exception
+	{
+		Instant startOfInterval = baseTime.minus(1, ChronoUnit.HOURS);
+		Thread writer = new Thread(() -> historyManager.updateHistory(
+			Utils.offer(true, 5, 100, baseTime.minus(1, ChronoUnit.MINUTES), 6, GrandExchangeOfferState.BOUGHT, 5)));
+
+		ItemAggregate aggregate = historyManager.getAggregate(startOfInterval, 0, () -> {
+			writer.start();
+			try
+			{
+				writer.join(5000);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			return Collections.emptyMap();
+		});
+
+		assertFalse(writer.isAlive());
+		assertEquals(7, historyManager.getIntervalsHistory(startOfInterval).size());
+		assertEquals(historyManager.getAggregate(startOfInterval, 1, Collections::emptyMap).getExpense(), aggregate.getExpense());
+	}
 }
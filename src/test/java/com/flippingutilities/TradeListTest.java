@@ -0,0 +1,147 @@
+package com.flippingutilities;
+
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.TradeList;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TradeListTest
+{
+	//tests that the list keeps the order it was made with and that new items go to the front
+	@Test
+	public void itemsKeepTheirOrder()
+	{
+		FlippingItem a = item(1);
+		FlippingItem b = item(2);
+		FlippingItem c = item(3);
+		TradeList trades = new TradeList(Arrays.asList(a, b));
+
+		trades.add(0, c);
+
+		assertEquals(Arrays.asList(c, a, b), trades);
+		assertSame(c, trades.findByItemId(3));
+		assertSame(b, trades.findByItemId(2));
+	}
+
+	//tests that when several items have the same id, the one found is the one nearest the front, like searching the
+	//list from the front would find
+	@Test
+	public void firstItemWithTheIdIsFound()
+	{
+		FlippingItem first = item(1);
+		FlippingItem second = item(1);
+		TradeList trades = new TradeList(Arrays.asList(first, item(2), second));
+
+		assertSame(first, trades.findByItemId(1));
+
+		trades.remove(0);
+		assertSame(second, trades.findByItemId(1));
+
+		//behind the one that's there doesn't change what's found, in front of it does
+		FlippingItem behind = item(1);
+		trades.add(trades.size(), behind);
+		assertSame(second, trades.findByItemId(1));
+		FlippingItem inFront = item(1);
+		trades.add(0, inFront);
+		assertSame(inFront, trades.findByItemId(1));
+	}
+
+	//tests that replacing an item updates the index for both the old and the new item's id
+	@Test
+	public void setReplacesTheIndexedItem()
+	{
+		FlippingItem first = item(1);
+		FlippingItem second = item(1);
+		TradeList trades = new TradeList(Arrays.asList(first, item(2), second));
+
+		FlippingItem replacement = item(3);
+		trades.set(0, replacement);
+		assertSame(second, trades.findByItemId(1));
+		assertSame(replacement, trades.findByItemId(3));
+
+		trades.set(2, item(4));
+		assertNull(trades.findByItemId(1));
+
+		//an item with an id that's already further back in the list
+		FlippingItem two = item(2);
+		trades.set(0, two);
+		assertSame(two, trades.findByItemId(2));
+		assertNull(trades.findByItemId(3));
+	}
+
+	//tests that removing by predicate keeps the index in line with what's left
+	@Test
+	public void removeIfRebuildsTheIndex()
+	{
+		FlippingItem first = item(1);
+		FlippingItem second = item(1);
+		TradeList trades = new TradeList(Arrays.asList(first, item(2), second));
+
+		assertTrue(trades.removeIf(item -> item == first));
+		assertSame(second, trades.findByItemId(1));
+
+		assertTrue(trades.removeIf(item -> item.getItemId() == 1));
+		assertNull(trades.findByItemId(1));
+		assertFalse(trades.removeIf(item -> item.getItemId() == 1));
+		assertEquals(1, trades.size());
+
+		trades.clear();
+		assertNull(trades.findByItemId(2));
+		assertTrue(trades.isEmpty());
+	}
+
+	//tests that the favorites are found by code, newest first, and that a changed code is only picked up once the
+	//list is told about it
+	@Test
+	public void favoritesAreFoundByCode()
+	{
+		FlippingItem older = favorite(1, "1");
+		FlippingItem newer = favorite(2, "1");
+		FlippingItem other = favorite(3, "2");
+		TradeList trades = new TradeList(Arrays.asList(newer, item(4), older, other));
+
+		assertEquals(Arrays.asList(newer, older), trades.findFavoritesByCode("1"));
+		assertEquals(Collections.singletonList(other), trades.findFavoritesByCode("2"));
+		assertTrue(trades.findFavoritesByCode("3").isEmpty());
+
+		older.setFavoriteCode("2");
+		trades.favoritesChanged();
+		assertEquals(Collections.singletonList(newer), trades.findFavoritesByCode("1"));
+		assertEquals(Arrays.asList(older, other), trades.findFavoritesByCode("2"));
+
+		//changes to the list itself don't need telling
+		FlippingItem added = favorite(5, "1");
+		trades.add(0, added);
+		assertEquals(Arrays.asList(added, newer), trades.findFavoritesByCode("1"));
+		trades.remove(0);
+		assertEquals(Collections.singletonList(newer), trades.findFavoritesByCode("1"));
+	}
+
+	//tests that indexes outside of the list are rejected like they would be by any list
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void indexOutsideTheListIsRejected()
+	{
+		new TradeList(Collections.singletonList(item(1))).get(1);
+	}
+
+	private static FlippingItem item(int itemId)
+	{
+		return new FlippingItem(itemId, "item " + itemId, 100, "acc");
+	}
+
+	private static FlippingItem favorite(int itemId, String code)
+	{
+		FlippingItem item = item(itemId);
+		item.setFavorite(true);
+		item.setFavoriteCode(code);
+		return item;
+	}
+}
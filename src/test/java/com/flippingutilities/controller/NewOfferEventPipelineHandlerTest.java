@@ -0,0 +1,88 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.OfferEvent;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NewOfferEventPipelineHandlerTest
+{
+	private static final Instant OFFER_TIME = Instant.parse("2024-03-01T12:00:00Z");
+
+	//tests that every slot reporting its state twice on login only leaves one offer per slot, in the order they came in
+	@Test
+	public void loginBurstDuplicatesAreDropped()
+	{
+		OfferEvent slotOne = offer(1, GrandExchangeOfferState.BUYING, 3, 1);
+		OfferEvent slotTwo = offer(2, GrandExchangeOfferState.SELLING, 0, 1);
+		List<NewOfferEventPipelineHandler.CapturedOffer> burst = captured(
+			slotOne,
+			slotTwo,
+			offer(1, GrandExchangeOfferState.BUYING, 3, 2),
+			offer(2, GrandExchangeOfferState.SELLING, 0, 2));
+
+		assertEquals(Arrays.asList(slotOne, slotTwo), offers(NewOfferEventPipelineHandler.dropDuplicates(burst)));
+	}
+
+	//tests that an offer that changed the slot's state is kept, as is one going back to an earlier state of the slot
+	@Test
+	public void changesOfASlotAreKept()
+	{
+		OfferEvent buying = offer(1, GrandExchangeOfferState.BUYING, 3, 1);
+		OfferEvent bought = offer(1, GrandExchangeOfferState.BOUGHT, 10, 2);
+		OfferEvent buyingAgain = offer(1, GrandExchangeOfferState.BUYING, 3, 3);
+		List<NewOfferEventPipelineHandler.CapturedOffer> burst = captured(buying, bought, buyingAgain);
+
+		assertEquals(Arrays.asList(buying, bought, buyingAgain), offers(NewOfferEventPipelineHandler.dropDuplicates(burst)));
+	}
+
+	//tests that offers that look the same but are in different slots aren't duplicates of each other
+	@Test
+	public void sameOfferInAnotherSlotIsKept()
+	{
+		OfferEvent slotOne = offer(1, GrandExchangeOfferState.BOUGHT, 10, 1);
+		OfferEvent slotTwo = offer(2, GrandExchangeOfferState.BOUGHT, 10, 1);
+
+		List<NewOfferEventPipelineHandler.CapturedOffer> kept = NewOfferEventPipelineHandler.dropDuplicates(
+			captured(slotOne, slotTwo));
+		assertEquals(2, kept.size());
+		assertSame(slotTwo, kept.get(1).getOffer());
+	}
+
+	//tests that a burst without offers stays empty
+	@Test
+	public void emptyBurstStaysEmpty()
+	{
+		assertTrue(NewOfferEventPipelineHandler.dropDuplicates(Collections.emptyList()).isEmpty());
+	}
+
+	private static OfferEvent offer(int slot, GrandExchangeOfferState state, int currentQuantityInTrade, int tickArrivedAt)
+	{
+		OfferEvent offer = Utils.offer(state == GrandExchangeOfferState.BUYING || state == GrandExchangeOfferState.BOUGHT,
+			currentQuantityInTrade, 100, OFFER_TIME, slot, state, tickArrivedAt, 0, 10);
+		offer.setItemId(560);
+		return offer;
+	}
+
+	private static List<NewOfferEventPipelineHandler.CapturedOffer> captured(OfferEvent... offers)
+	{
+		return Arrays.stream(offers)
+			.map(offer -> new NewOfferEventPipelineHandler.CapturedOffer(offer, "acc", "Death rune", 25000))
+			.collect(Collectors.toList());
+	}
+
+	private static List<OfferEvent> offers(List<NewOfferEventPipelineHandler.CapturedOffer> captured)
+	{
+		return captured.stream().map(NewOfferEventPipelineHandler.CapturedOffer::getOffer).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,128 @@
+package com.flippingutilities.controller;
+
+import com.flippingutilities.model.FlippingItem;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class PanelRebuildSchedulerTest
+{
+	private static final long TIMEOUT_MILLIS = 5000;
+
+	private ScheduledExecutorService executor;
+	private TradeStateWriter writer;
+	private RecordingPanels panels;
+	private PanelRebuildScheduler scheduler;
+
+	@Before
+	public void setUp()
+	{
+		executor = Executors.newSingleThreadScheduledExecutor();
+		writer = new TradeStateWriter();
+		panels = new RecordingPanels();
+		scheduler = new PanelRebuildScheduler(panels, executor, writer);
+	}
+
+	@After
+	public void tearDown()
+	{
+		executor.shutdownNow();
+		writer.close(TIMEOUT_MILLIS);
+	}
+
+	//tests that the requests made within the window are rebuilt once, and that each panel is counted as requested
+	//only when it was asked for
+	@Test
+	public void requestsInTheWindowAreCoalesced() throws Exception
+	{
+		//holds up the executor, so the rebuild can't run before the last request however slow the test is
+		CountDownLatch requestsMade = new CountDownLatch(1);
+		executor.execute(() -> Uninterruptibles.awaitUninterruptibly(requestsMade));
+		scheduler.requestOfferRebuild(Collections.singletonList(1));
+		scheduler.requestOfferRebuild(Collections.singletonList(2));
+		scheduler.requestOfferRebuild(Collections.emptyList());
+		requestsMade.countDown();
+		waitForRebuild();
+
+		assertEquals(5, scheduler.getRebuildsRequested());
+		assertEquals(2, scheduler.getRebuildsExecuted());
+		assertEquals(Collections.singletonList(new HashSet<>(Arrays.asList(1, 2))), panels.flippingPanelRebuilds);
+		assertEquals(1, panels.statsPanelRebuilds);
+	}
+
+	//tests that a request without items only rebuilds the stats panel, and counts only that
+	@Test
+	public void requestWithoutItemsOnlyRebuildsTheStatsPanel() throws Exception
+	{
+		scheduler.requestOfferRebuild(Collections.emptyList());
+		waitForRebuild();
+
+		assertEquals(1, scheduler.getRebuildsRequested());
+		assertEquals(1, scheduler.getRebuildsExecuted());
+		assertTrue(panels.flippingPanelRebuilds.isEmpty());
+		assertEquals(1, panels.statsPanelRebuilds);
+	}
+
+	//tests that the panels are given a copy of the trade list rather than the list the writer changes
+	@Test
+	public void panelsGetACopyOfTheTradeList() throws Exception
+	{
+		scheduler.requestOfferRebuild(Collections.singletonList(1));
+		waitForRebuild();
+
+		assertEquals(panels.items, panels.rebuiltItems);
+		assertNotSame(panels.items, panels.rebuiltItems);
+	}
+
+	private void waitForRebuild() throws Exception
+	{
+		//delayed tasks still run after a shutdown, and the rebuild they publish is applied by the time the writer drains
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		assertTrue(writer.drain(TIMEOUT_MILLIS));
+	}
+
+	private static class RecordingPanels implements PanelRebuildScheduler.Panels
+	{
+		private final List<FlippingItem> items = new ArrayList<>(Collections.singletonList(
+			new FlippingItem(560, "Death rune", 25000, "acc")));
+		private final List<Set<Integer>> flippingPanelRebuilds = new ArrayList<>();
+		private int statsPanelRebuilds;
+		private List<FlippingItem> rebuiltItems;
+
+		@Override
+		public List<FlippingItem> viewItemsForCurrentView()
+		{
+			return items;
+		}
+
+		@Override
+		public void rebuildFlippingPanel(Set<Integer> itemIds, List<FlippingItem> items)
+		{
+			flippingPanelRebuilds.add(new HashSet<>(itemIds));
+		}
+
+		@Override
+		public void rebuildStatsPanel(List<FlippingItem> items)
+		{
+			statsPanelRebuilds++;
+			rebuiltItems = items;
+		}
+	}
+}
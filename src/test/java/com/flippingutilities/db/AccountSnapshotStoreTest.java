@@ -0,0 +1,185 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AccountSnapshotStoreTest
+{
+	private static final Instant STORED_AT = Instant.parse("2024-03-01T12:00:00.123456789Z");
+	private static final Instant OFFER_TIME = Instant.parse("2024-03-01T11:00:00Z");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File directory;
+	private AccountSnapshotStore store;
+
+	@Before
+	public void setUp()
+	{
+		directory = new File(folder.getRoot(), "snapshots");
+		store = new AccountSnapshotStore(directory);
+	}
+
+	//tests that a snapshot gives back the trades it was written with, offers and all
+	@Test
+	public void snapshotIsReadBack()
+	{
+		AccountData account = account();
+		store.write("acc name", account);
+
+		List<FlippingItem> items = new AccountSnapshotStore(directory).read("acc name", STORED_AT);
+		assertNotNull(items);
+		assertEquals(2, items.size());
+
+		FlippingItem expected = account.getTrades().get(0);
+		FlippingItem item = items.get(0);
+		assertEquals(expected.getItemId(), item.getItemId());
+		assertEquals(expected.getItemName(), item.getItemName());
+		assertEquals(expected.getTotalGELimit(), item.getTotalGELimit());
+		assertEquals(expected.getFlippedBy(), item.getFlippedBy());
+		assertEquals(expected.getValidFlippingPanelItem(), item.getValidFlippingPanelItem());
+		assertTrue(item.isFavorite());
+		assertEquals("2", item.getFavoriteCode());
+
+		List<OfferEvent> expectedOffers = expected.getHistory().getCompressedOfferEvents();
+		List<OfferEvent> offers = item.getHistory().getCompressedOfferEvents();
+		assertEquals(expectedOffers.size(), offers.size());
+		for (int i = 0; i < offers.size(); i++)
+		{
+			OfferEvent expectedOffer = expectedOffers.get(i);
+			OfferEvent offer = offers.get(i);
+			assertEquals(expectedOffer.getUuid(), offer.getUuid());
+			assertEquals(expectedOffer.isBuy(), offer.isBuy());
+			assertEquals(expectedOffer.getCurrentQuantityInTrade(), offer.getCurrentQuantityInTrade());
+			assertEquals(expectedOffer.getPreTaxPrice(), offer.getPreTaxPrice());
+			assertEquals(expectedOffer.getTime(), offer.getTime());
+			assertEquals(expectedOffer.getSlot(), offer.getSlot());
+			assertEquals(expectedOffer.getState(), offer.getState());
+			assertEquals(expectedOffer.getTotalQuantityInTrade(), offer.getTotalQuantityInTrade());
+			assertEquals(expectedOffer.isBeforeLogin(), offer.isBeforeLogin());
+			assertEquals(expected.getItemName(), offer.getItemName());
+		}
+		assertTrue(items.get(1).getHistory().getCompressedOfferEvents().isEmpty());
+	}
+
+	//tests that a snapshot isn't used once the account has been stored since it was written
+	@Test
+	public void staleSnapshotIsIgnored()
+	{
+		store.write("acc", account());
+
+		assertNull(store.read("acc", STORED_AT.plusMillis(1)));
+		assertNull(store.read("acc", null));
+	}
+
+	//tests that a snapshot in another layout isn't read
+	@Test
+	public void snapshotOfAnotherVersionIsIgnored() throws Exception
+	{
+		store.write("acc", account());
+		try (RandomAccessFile file = new RandomAccessFile(snapshotFile(), "rw"))
+		{
+			file.seek(4);
+			file.writeInt(Integer.MAX_VALUE);
+		}
+
+		assertNull(store.read("acc", STORED_AT));
+	}
+
+	//tests that a snapshot that was cut short is ignored rather than giving part of the trades
+	@Test
+	public void damagedSnapshotIsIgnored() throws Exception
+	{
+		store.write("acc", account());
+		try (RandomAccessFile file = new RandomAccessFile(snapshotFile(), "rw"))
+		{
+			file.setLength(file.length() - 3);
+		}
+
+		assertNull(store.read("acc", STORED_AT));
+	}
+
+	//tests that an account that has a current snapshot isn't written again, but is after its snapshot was deleted
+	@Test
+	public void snapshotIsOnlyWrittenWhenNotCurrent()
+	{
+		AccountData account = account();
+		store.write("acc", account);
+		File file = snapshotFile();
+		assertTrue(file.delete());
+
+		store.write("acc", account);
+		assertFalse(file.exists());
+
+		store.delete("acc");
+		store.write("acc", account);
+		assertTrue(file.exists());
+	}
+
+	//tests that a deleted snapshot isn't read anymore
+	@Test
+	public void deletedSnapshotIsNotRead()
+	{
+		store.write("acc", account());
+		store.delete("acc");
+
+		assertNull(store.read("acc", STORED_AT));
+	}
+
+	private File snapshotFile()
+	{
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".snap"));
+		assertNotNull(files);
+		assertEquals(1, files.length);
+		return files[0];
+	}
+
+	private static AccountData account()
+	{
+		OfferEvent withoutUuid = Utils.offer(false, 5, 120, OFFER_TIME.plusSeconds(60), 2, GrandExchangeOfferState.SOLD, 5);
+		withoutUuid.setUuid(null);
+		//uuids that aren't canonical are kept as they are
+		OfferEvent legacyUuid = Utils.offer(true, 10, 100, OFFER_TIME.plusSeconds(120), 3, GrandExchangeOfferState.CANCELLED_BUY, 20);
+		legacyUuid.setUuid("not-a-uuid");
+		legacyUuid.setBeforeLogin(true);
+		List<OfferEvent> offers = new ArrayList<>(Arrays.asList(
+			Utils.offer(true, 10, 100, OFFER_TIME, 1, GrandExchangeOfferState.BOUGHT, 10),
+			withoutUuid,
+			legacyUuid));
+
+		FlippingItem deathRunes = new FlippingItem(560, "Death rune", 25000, "acc");
+		deathRunes.setValidFlippingPanelItem(true);
+		deathRunes.setFavorite(true);
+		deathRunes.setFavoriteCode("2");
+		HistoryManager history = new HistoryManager();
+		history.setCompressedOfferEvents(offers);
+		deathRunes.setHistory(history);
+
+		AccountData account = new AccountData();
+		account.setTrades(Arrays.asList(deathRunes, new FlippingItem(561, "Nature rune", 18000, "acc")));
+		account.setLastStoredAt(STORED_AT);
+		return account;
+	}
+}
@@ -0,0 +1,110 @@
+package com.flippingutilities.db;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseConnectionManagerTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DatabaseConnectionManager connectionManager;
+
+	@After
+	public void tearDown()
+	{
+		System.clearProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "synchronous");
+		System.clearProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "cache_size");
+		System.clearProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "temp_store");
+		System.clearProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "mmap_size");
+		if (connectionManager != null)
+		{
+			connectionManager.close();
+		}
+	}
+
+	//tests that both connections are tuned with the defaults when nothing is overridden
+	@Test
+	public void connectionsUseDefaultTuning() throws Exception
+	{
+		connectionManager = new DatabaseConnectionManager(new File(folder.getRoot(), "test.db"));
+
+		for (Connection conn : new Connection[]{connectionManager.getConnection(), connectionManager.getReadConnection()})
+		{
+			//NORMAL
+			assertEquals(1, pragma(conn, "synchronous"));
+			assertEquals(DatabaseConstants.CACHE_SIZE, pragma(conn, "cache_size"));
+			//MEMORY
+			assertEquals(2, pragma(conn, "temp_store"));
+		}
+		assertEquals("wal", pragmaText(connectionManager.getConnection(), "journal_mode"));
+	}
+
+	//tests that the tuning can be overridden with system properties and that values that aren't valid are ignored
+	@Test
+	public void tuningCanBeOverridden() throws Exception
+	{
+		System.setProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "synchronous", "full");
+		System.setProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "cache_size", "-2048");
+		System.setProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "temp_store", "MEMORY; DROP TABLE account");
+		System.setProperty(DatabaseConstants.TUNING_PROPERTY_PREFIX + "mmap_size", "-1");
+		connectionManager = new DatabaseConnectionManager(new File(folder.getRoot(), "test.db"));
+
+		Connection conn = connectionManager.getConnection();
+		//FULL
+		assertEquals(2, pragma(conn, "synchronous"));
+		assertEquals(-2048, pragma(conn, "cache_size"));
+		//the defaults
+		assertEquals(2, pragma(conn, "temp_store"));
+	}
+
+	//tests that a read made on its own connection doesn't use the shared read connection, and that its connection is
+	//read only and closed once the read is done
+	@Test
+	public void readOnOwnConnectionDoesntShareTheReadConnection() throws Exception
+	{
+		connectionManager = new DatabaseConnectionManager(new File(folder.getRoot(), "test.db"));
+		Connection shared = connectionManager.getReadConnection();
+
+		Connection own = connectionManager.readOnOwnConnection(() -> {
+			Connection conn = connectionManager.getReadConnection();
+			assertNotSame(shared, conn);
+			//nested reads stay on it
+			assertSame(conn, connectionManager.readOnOwnConnection(connectionManager::getReadConnection));
+			assertEquals(1, pragma(conn, "query_only"));
+			return conn;
+		});
+
+		assertTrue(own.isClosed());
+		assertSame(shared, connectionManager.getReadConnection());
+		assertTrue(shared.getAutoCommit());
+	}
+
+	private static long pragma(Connection conn, String name) throws SQLException
+	{
+		return Long.parseLong(pragmaText(conn, name));
+	}
+
+	private static String pragmaText(Connection conn, String name) throws SQLException
+	{
+		try (Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("PRAGMA " + name))
+		{
+			rs.next();
+			return rs.getString(1);
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.flippingutilities.db;
+
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseMigratorTest
+{
+	private static final int LATEST_VERSION = 6;
+	private static final Instant OFFER_TIME = Instant.parse("2024-03-01T12:00:00.123Z");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DatabaseConnectionManager connectionManager;
+
+	@Before
+	public void setUp()
+	{
+		connectionManager = new DatabaseConnectionManager(new File(folder.getRoot(), "test.db"));
+	}
+
+	@After
+	public void tearDown()
+	{
+		connectionManager.close();
+	}
+
+	//tests that a new database gets every version, with the compact offer table swapped in for the old one
+	@Test
+	public void newDatabaseIsMigratedToLatestVersion() throws Exception
+	{
+		migrate();
+
+		Connection conn = connectionManager.getConnection();
+		assertEquals(LATEST_VERSION, queryLong(conn, "SELECT MAX(version) FROM schema_version"));
+		for (String table : Arrays.asList("offer_event", "offer_event_archive", "offer_rollup",
+			"offer_journal_checkpoint", "change_log", "change_log_cursor"))
+		{
+			assertTrue(table, tableExists(conn, table));
+		}
+		assertFalse(tableExists(conn, "offer_event_v2"));
+		assertEquals("INTEGER", columnType(conn, "offer_event", "time"));
+		assertEquals(0, queryLong(conn, "SELECT COUNT(*) FROM migration_checkpoint"));
+	}
+
+	//tests that migrating again once the database is up to date doesn't do anything
+	@Test
+	public void upToDateDatabaseIsLeftAlone() throws Exception
+	{
+		migrate();
+		migrate();
+
+		assertEquals(LATEST_VERSION, queryLong(connectionManager.getConnection(), "SELECT COUNT(*) FROM schema_version"));
+	}
+
+	//tests that the offers of a version 1 database are copied to the compact table, with the uuids the last offers
+	//point at encoded the same way, and that rows that can't be read are left behind rather than failing the migration
+	@Test
+	public void version1OffersAreCompacted() throws Exception
+	{
+		String uuid = UUID.randomUUID().toString();
+		createVersion1Database();
+		Connection conn = connectionManager.getConnection();
+		insertVersion1Offer(conn, uuid, OFFER_TIME.toString(), "BOUGHT");
+		insertVersion1Offer(conn, "not-a-uuid", OFFER_TIME.plusSeconds(60).toString(), "SELLING");
+		insertVersion1Offer(conn, UUID.randomUUID().toString(), "yesterday", "BOUGHT");
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("INSERT INTO last_offer (account_name, slot, offer_event_uuid) VALUES ('acc', 3, '" + uuid + "')");
+		}
+
+		migrate();
+
+		assertEquals(2, queryLong(conn, "SELECT COUNT(*) FROM offer_event"));
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM offer_event WHERE uuid = ?"))
+		{
+			stmt.setObject(1, OfferEventRepository.encodeUuid(uuid));
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				assertTrue(rs.next());
+				assertEquals(OFFER_TIME.toEpochMilli(), rs.getLong("time"));
+				assertEquals(OfferEventRepository.encodeState(GrandExchangeOfferState.BOUGHT), rs.getInt("state"));
+				assertEquals(100, rs.getInt("price"));
+			}
+		}
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid FROM offer_event WHERE uuid = ?"))
+		{
+			stmt.setString(1, "not-a-uuid");
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				assertTrue(rs.next());
+			}
+		}
+		try (Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT offer_event_uuid FROM last_offer"))
+		{
+			assertTrue(rs.next());
+			assertArrayEquals((byte[]) OfferEventRepository.encodeUuid(uuid), rs.getBytes(1));
+		}
+	}
+
+	//tests that an interrupted migration carries on from its checkpoint rather than copying everything again
+	@Test
+	public void interruptedMigrationResumesFromCheckpoint() throws Exception
+	{
+		String copiedUuid = UUID.randomUUID().toString();
+		String remainingUuid = UUID.randomUUID().toString();
+		createVersion1Database();
+		Connection conn = connectionManager.getConnection();
+		insertVersion1Offer(conn, copiedUuid, OFFER_TIME.toString(), "BOUGHT");
+		insertVersion1Offer(conn, remainingUuid, OFFER_TIME.plusSeconds(60).toString(), "SOLD");
+
+		//as if the client was closed right after the batch with the first row was committed, which the checkpoint
+		//says has been copied even though it hasn't, so it must not be copied again
+		for (String sql : SqlLoader.loadStatements("V2__compact_offer_event.sql"))
+		{
+			try (Statement stmt = conn.createStatement())
+			{
+				stmt.execute(sql);
+			}
+		}
+		long firstRowId = queryLong(conn, "SELECT MIN(rowid) FROM offer_event");
+		try (Statement stmt = conn.createStatement())
+		{
+			stmt.execute("CREATE TABLE IF NOT EXISTS migration_checkpoint (version INTEGER PRIMARY KEY, checkpoint INTEGER NOT NULL)");
+			stmt.execute("INSERT INTO migration_checkpoint (version, checkpoint) VALUES (2, " + firstRowId + ")");
+		}
+
+		migrate();
+
+		assertEquals(1, queryLong(conn, "SELECT COUNT(*) FROM offer_event"));
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM offer_event WHERE uuid = ?"))
+		{
+			stmt.setObject(1, OfferEventRepository.encodeUuid(remainingUuid));
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				rs.next();
+				assertEquals(1, rs.getLong(1));
+			}
+		}
+		assertEquals(0, queryLong(conn, "SELECT COUNT(*) FROM migration_checkpoint"));
+		assertEquals(LATEST_VERSION, queryLong(conn, "SELECT MAX(version) FROM schema_version"));
+	}
+
+	private void migrate() throws SQLException
+	{
+		DatabaseMigrator migrator = new DatabaseMigrator(connectionManager);
+		migrator.migrate();
+		migrator.awaitCompletion();
+	}
+
+	private void createVersion1Database() throws SQLException
+	{
+		Connection conn = connectionManager.getConnection();
+		try (Statement stmt = conn.createStatement())
+		{
+			for (String sql : SqlLoader.loadStatements("V1__initial_schema.sql"))
+			{
+				stmt.execute(sql);
+			}
+			stmt.execute("INSERT INTO schema_version (version, applied_at) VALUES (1, '" + Instant.now() + "')");
+			stmt.execute("INSERT INTO account (display_name) VALUES ('acc')");
+			stmt.execute("INSERT INTO flipping_item (id, account_name, item_id, item_name) VALUES (1, 'acc', 560, 'Death rune')");
+		}
+	}
+
+	private static void insertVersion1Offer(Connection conn, String uuid, String time, String state) throws SQLException
+	{
+		try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO offer_event (uuid, flipping_item_id, is_buy, "
+			+ "item_id, current_quantity_in_trade, price, time, slot, state, total_quantity_in_trade) "
+			+ "VALUES (?, 1, 1, 560, 10, 100, ?, 3, ?, 10)"))
+		{
+			stmt.setString(1, uuid);
+			stmt.setString(2, time);
+			stmt.setString(3, state);
+			stmt.executeUpdate();
+		}
+	}
+
+	private static long queryLong(Connection conn, String sql) throws SQLException
+	{
+		try (Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery(sql))
+		{
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	private static boolean tableExists(Connection conn, String table) throws SQLException
+	{
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?"))
+		{
+			stmt.setString(1, table);
+			try (ResultSet rs = stmt.executeQuery())
+			{
+				return rs.next();
+			}
+		}
+	}
+
+	private static String columnType(Connection conn, String table, String column) throws SQLException
+	{
+		try (Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")"))
+		{
+			while (rs.next())
+			{
+				if (rs.getString("name").equals(column))
+				{
+					return rs.getString("type");
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,167 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.FlippingItem;
+import com.flippingutilities.model.HistoryManager;
+import com.flippingutilities.model.OfferEvent;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class JsonAccountImporterTest
+{
+	//more than fit in one of the importer's batches
+	private static final int OFFER_COUNT = 2500;
+	private static final Instant BASE_TIME = Instant.parse("2024-03-01T12:00:00Z");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestDatabase db;
+	private JsonAccountImporter importer;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		db = new TestDatabase(folder.newFolder("db"));
+		importer = new JsonAccountImporter(TestDatabase.GSON, db.accountRepository, db.flippingItemRepository,
+			db.offerEventRepository, db.recipeFlipRepository);
+	}
+
+	@After
+	public void tearDown()
+	{
+		db.close();
+	}
+
+	//tests that an account's items, all of their offers and its last offers are imported
+	@Test
+	public void accountIsImported() throws Exception
+	{
+		AccountData account = account();
+		File file = write(account);
+
+		assertEquals(OFFER_COUNT + 1, importer.importAccount(file, "acc"));
+
+		AccountData imported = db.accountRepository.findByName("acc");
+		assertNotNull(imported);
+		assertImported(account, imported);
+	}
+
+	//tests that importing an account again, as happens when an earlier import was interrupted, replaces what the
+	//earlier import got through instead of adding to it
+	@Test
+	public void importingAgainReplacesEarlierImport() throws Exception
+	{
+		AccountData account = account();
+		File file = write(account);
+
+		importer.importAccount(file, "acc");
+		importer.importAccount(file, "acc");
+
+		assertImported(account, db.accountRepository.findByName("acc"));
+	}
+
+	//tests that a file that doesn't hold an account isn't imported
+	@Test
+	public void fileWithoutAccountIsSkipped() throws Exception
+	{
+		File file = folder.newFile("acc.json");
+		Files.write(file.toPath(), "[]".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(-1, importer.importAccount(file, "acc"));
+		assertNull(db.accountRepository.findByName("acc"));
+	}
+
+	private static AccountData account()
+	{
+		List<OfferEvent> offers = new ArrayList<>();
+		for (int i = 0; i < OFFER_COUNT; i++)
+		{
+			OfferEvent offer = Utils.offer(i % 2 == 0, 10, 100, BASE_TIME.plus(i, ChronoUnit.MINUTES), 1,
+				i % 2 == 0 ? GrandExchangeOfferState.BOUGHT : GrandExchangeOfferState.SOLD, 10);
+			offer.setItemId(560);
+			offers.add(offer);
+		}
+		FlippingItem deathRunes = item(560, "Death rune", offers);
+
+		//offers stored before they had uuids get one on import
+		OfferEvent oldOffer = Utils.offer(true, 5, 200, BASE_TIME, 2, GrandExchangeOfferState.BOUGHT, 5);
+		oldOffer.setItemId(561);
+		oldOffer.setUuid(null);
+		FlippingItem natureRunes = item(561, "Nature rune", new ArrayList<>(Collections.singletonList(oldOffer)));
+
+		AccountData account = new AccountData();
+		account.setTrades(Arrays.asList(natureRunes, deathRunes));
+		account.getLastOffers().put(1, offers.get(offers.size() - 1));
+		return account;
+	}
+
+	private static FlippingItem item(int itemId, String name, List<OfferEvent> offers)
+	{
+		FlippingItem item = new FlippingItem(itemId, name, 25000, "acc");
+		HistoryManager history = new HistoryManager();
+		history.setCompressedOfferEvents(offers);
+		item.setHistory(history);
+		return item;
+	}
+
+	private File write(AccountData account) throws Exception
+	{
+		File file = folder.newFile("acc.json");
+		Files.write(file.toPath(), TestDatabase.GSON.toJson(account).getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	private static void assertImported(AccountData expected, AccountData imported)
+	{
+		assertEquals(expected.getTrades().size(), imported.getTrades().size());
+		for (FlippingItem expectedItem : expected.getTrades())
+		{
+			FlippingItem importedItem = imported.getTrades().findByItemId(expectedItem.getItemId());
+			assertNotNull(importedItem);
+			assertEquals(expectedItem.getItemName(), importedItem.getItemName());
+			assertEquals(expectedItem.getTotalGELimit(), importedItem.getTotalGELimit());
+
+			List<OfferEvent> expectedOffers = expectedItem.getHistory().getCompressedOfferEvents();
+			List<OfferEvent> importedOffers = importedItem.getHistory().getCompressedOfferEvents();
+			assertEquals(expectedOffers.size(), importedOffers.size());
+			Set<String> expectedUuids = expectedOffers.stream().map(OfferEvent::getUuid).filter(u -> u != null)
+				.collect(Collectors.toSet());
+			if (expectedUuids.size() == expectedOffers.size())
+			{
+				assertEquals(expectedUuids, importedOffers.stream().map(OfferEvent::getUuid).collect(Collectors.toSet()));
+			}
+			else
+			{
+				importedOffers.forEach(o -> assertNotNull(o.getUuid()));
+			}
+		}
+
+		OfferEvent expectedLastOffer = expected.getLastOffers().get(1);
+		OfferEvent importedLastOffer = imported.getLastOffers().get(1);
+		assertNotNull(importedLastOffer);
+		assertEquals(expectedLastOffer.getUuid(), importedLastOffer.getUuid());
+		assertEquals(expectedLastOffer.getTime(), importedLastOffer.getTime());
+	}
+}
@@ -0,0 +1,170 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.OfferEvent;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class OfferJournalTest
+{
+	private static final Instant OFFER_TIME = Instant.parse("2024-03-01T12:00:00Z");
+	private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private OfferJournal journal;
+
+	@After
+	public void tearDown()
+	{
+		if (journal != null)
+		{
+			journal.close(CLOSE_TIMEOUT_MILLIS);
+		}
+	}
+
+	//tests that the offers journaled before the client went away are read back, in order, the next time it starts
+	@Test
+	public void journaledOffersAreReadBackOnRestart() throws Exception
+	{
+		journal = open(Collections.emptyMap());
+		OfferEvent first = offer(1);
+		OfferEvent second = offer(2);
+		journal.append("acc", "Death rune", 25000, first);
+		journal.append("other", "Nature rune", 18000, offer(3));
+		journal.append("acc", "Death rune", 25000, second);
+		reopen(Collections.emptyMap());
+
+		List<OfferJournal.Entry> entries = journal.getEntriesAfter("acc", 0);
+		assertEquals(2, entries.size());
+		assertEquals(first.getUuid(), entries.get(0).getOffer().getUuid());
+		assertEquals(second.getUuid(), entries.get(1).getOffer().getUuid());
+		assertEquals(OFFER_TIME, entries.get(0).getOffer().getTime());
+		assertEquals("Death rune", entries.get(0).getItemName());
+		assertEquals(25000, entries.get(0).getGeLimit());
+		assertEquals(1, entries.get(0).getSequence());
+		assertEquals(3, entries.get(1).getSequence());
+		assertEquals(3, journal.getLastSequence());
+		assertEquals(2, journal.getAccountNames().size());
+	}
+
+	//tests that only the entries after the sequence an account was stored up to are handed out
+	@Test
+	public void onlyEntriesAfterTheStoredSequenceAreReplayed() throws Exception
+	{
+		journal = open(Collections.emptyMap());
+		journal.append("acc", "Death rune", 25000, offer(1));
+		OfferEvent unstored = offer(2);
+		journal.append("acc", "Death rune", 25000, unstored);
+
+		List<OfferJournal.Entry> entries = journal.getEntriesAfter("acc", 1);
+		assertEquals(1, entries.size());
+		assertEquals(unstored.getUuid(), entries.get(0).getOffer().getUuid());
+	}
+
+	//tests that compacting drops an account's stored entries from the file, leaving the rest of the journal alone
+	@Test
+	public void compactedEntriesAreDroppedFromTheFile() throws Exception
+	{
+		journal = open(Collections.emptyMap());
+		journal.append("acc", "Death rune", 25000, offer(1));
+		journal.append("other", "Nature rune", 18000, offer(2));
+		journal.append("acc", "Death rune", 25000, offer(3));
+		journal.compact("acc", 2);
+		reopen(Collections.singletonMap("acc", 2L));
+
+		assertEquals(Collections.singletonList(3L), sequences(journal.getEntriesAfter("acc", 0)));
+		assertEquals(Collections.singletonList(2L), sequences(journal.getEntriesAfter("other", 0)));
+		assertEquals(2, Files.readAllLines(journalFile().toPath(), StandardCharsets.UTF_8).size());
+	}
+
+	//tests that a line cut short by a crash is ignored, and dropped from the file so that it doesn't hide the entries
+	//appended after it
+	@Test
+	public void tornTailIsIgnored() throws Exception
+	{
+		journal = open(Collections.emptyMap());
+		journal.append("acc", "Death rune", 25000, offer(1));
+		journal.append("acc", "Death rune", 25000, offer(2));
+		journal.close(CLOSE_TIMEOUT_MILLIS);
+		Files.write(journalFile().toPath(), "{\"s\":3,\"a\":\"acc\",\"n\":\"Dea".getBytes(StandardCharsets.UTF_8),
+			StandardOpenOption.APPEND);
+
+		journal = open(Collections.emptyMap());
+		assertEquals(2, journal.getEntriesAfter("acc", 0).size());
+		journal.append("acc", "Death rune", 25000, offer(3));
+		reopen(Collections.emptyMap());
+
+		assertEquals(3, journal.getEntriesAfter("acc", 0).size());
+	}
+
+	//tests that a line whose checksum doesn't match isn't replayed
+	@Test
+	public void entryWithBadChecksumIsIgnored() throws Exception
+	{
+		journal = open(Collections.emptyMap());
+		journal.append("acc", "Death rune", 25000, offer(1));
+		journal.close(CLOSE_TIMEOUT_MILLIS);
+		List<String> lines = Files.readAllLines(journalFile().toPath(), StandardCharsets.UTF_8);
+		Files.write(journalFile().toPath(), Collections.singletonList(lines.get(0).replace("Death", "Fire!")),
+			StandardCharsets.UTF_8);
+
+		journal = open(Collections.emptyMap());
+		assertEquals(0, journal.getEntriesAfter("acc", 0).size());
+	}
+
+	//tests that the sequence numbers carry on from the stored sequences when the journal file is gone, so new entries
+	//aren't mistaken for stored ones
+	@Test
+	public void sequenceCarriesOnFromStoredSequences() throws Exception
+	{
+		Map<String, Long> stored = Collections.singletonMap("acc", 10L);
+		journal = open(stored);
+		journal.append("acc", "Death rune", 25000, offer(1));
+
+		assertEquals(11, journal.getLastSequence());
+		assertEquals(1, journal.getEntriesAfter("acc", 10).size());
+	}
+
+	private OfferJournal open(Map<String, Long> storedSequences) throws Exception
+	{
+		return new OfferJournal(TestDatabase.GSON, journalFile(), storedSequences);
+	}
+
+	private void reopen(Map<String, Long> storedSequences) throws Exception
+	{
+		journal.close(CLOSE_TIMEOUT_MILLIS);
+		journal = open(storedSequences);
+	}
+
+	private File journalFile()
+	{
+		return new File(folder.getRoot(), "offers.journal");
+	}
+
+	private static OfferEvent offer(int slot)
+	{
+		return Utils.offer(true, 10, 100, OFFER_TIME, slot, GrandExchangeOfferState.BUYING, 20);
+	}
+
+	private static List<Long> sequences(List<OfferJournal.Entry> entries)
+	{
+		return entries.stream().map(OfferJournal.Entry::getSequence).collect(Collectors.toList());
+	}
+}
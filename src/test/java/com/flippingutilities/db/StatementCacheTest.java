@@ -0,0 +1,133 @@
+package com.flippingutilities.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StatementCacheTest
+{
+	private static final String SELECT_SQL = "SELECT value FROM cached WHERE value = ?";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		File database = new File(folder.getRoot(), "test.db");
+		connection = StatementCache.wrap(DriverManager.getConnection("jdbc:sqlite:" + database.getAbsolutePath()));
+		try (Statement stmt = connection.createStatement())
+		{
+			stmt.execute("CREATE TABLE cached (value INTEGER NOT NULL)");
+			stmt.execute("INSERT INTO cached (value) VALUES (1), (2)");
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		connection.close();
+	}
+
+	//tests that a statement that was closed is handed out again for the same sql instead of being prepared again
+	@Test
+	public void closedStatementIsReused() throws Exception
+	{
+		PreparedStatement first = connection.prepareStatement(SELECT_SQL);
+		PreparedStatement firstStatement = first.unwrap(PreparedStatement.class);
+		first.close();
+		assertTrue(first.isClosed());
+
+		try (PreparedStatement second = connection.prepareStatement(SELECT_SQL))
+		{
+			assertSame(firstStatement, second.unwrap(PreparedStatement.class));
+			assertFalse(second.isClosed());
+			assertEquals(2, select(second, 2));
+		}
+	}
+
+	//tests that a statement in use isn't handed out to a second user at the same time
+	@Test
+	public void statementInUseIsNotSharedBetweenLeases() throws Exception
+	{
+		try (PreparedStatement first = connection.prepareStatement(SELECT_SQL);
+			PreparedStatement second = connection.prepareStatement(SELECT_SQL))
+		{
+			assertNotSame(first.unwrap(PreparedStatement.class), second.unwrap(PreparedStatement.class));
+			assertEquals(1, select(first, 1));
+			assertEquals(2, select(second, 2));
+		}
+	}
+
+	//tests that closing a lease a second time doesn't check the statement in again while another lease has it
+	@Test
+	public void closingLeaseTwiceDoesNotReturnStatementAgain() throws Exception
+	{
+		PreparedStatement first = connection.prepareStatement(SELECT_SQL);
+		first.close();
+		try (PreparedStatement second = connection.prepareStatement(SELECT_SQL))
+		{
+			first.close();
+			try (PreparedStatement third = connection.prepareStatement(SELECT_SQL))
+			{
+				assertNotSame(second.unwrap(PreparedStatement.class), third.unwrap(PreparedStatement.class));
+			}
+		}
+	}
+
+	//tests that the parameters a lease set don't carry over to the next lease of the statement
+	@Test
+	public void parametersAreClearedOnCheckIn() throws Exception
+	{
+		try (PreparedStatement first = connection.prepareStatement("INSERT INTO cached (value) VALUES (?)"))
+		{
+			first.setInt(1, 3);
+			first.addBatch();
+		}
+		try (PreparedStatement second = connection.prepareStatement("INSERT INTO cached (value) VALUES (?)"))
+		{
+			assertEquals(0, second.executeBatch().length);
+		}
+	}
+
+	//tests that closing the connection closes the statements waiting in the cache
+	@Test
+	public void closingConnectionClosesIdleStatements() throws Exception
+	{
+		PreparedStatement lease = connection.prepareStatement(SELECT_SQL);
+		PreparedStatement statement = lease.unwrap(PreparedStatement.class);
+		lease.close();
+		assertFalse(statement.isClosed());
+
+		connection.close();
+		assertTrue(statement.isClosed());
+	}
+
+	private static int select(PreparedStatement stmt, int value) throws SQLException
+	{
+		stmt.setInt(1, value);
+		try (ResultSet rs = stmt.executeQuery())
+		{
+			assertTrue(rs.next());
+			return rs.getInt(1);
+		}
+	}
+}
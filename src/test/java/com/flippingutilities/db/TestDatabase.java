@@ -0,0 +1,49 @@
+package com.flippingutilities.db;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.time.Instant;
+
+/**
+ * A database in a temporary folder with the schema brought up to date and the repositories wired up the same way
+ * TradePersister wires them.
+ */
+class TestDatabase
+{
+	//the gson the client injects knows how to (de)serialize Instants, so this one has to as well
+	static final Gson GSON = new GsonBuilder()
+		.registerTypeAdapter(Instant.class, (JsonSerializer<Instant>) (src, type, context) -> new JsonPrimitive(src.toEpochMilli()))
+		.registerTypeAdapter(Instant.class, (JsonDeserializer<Instant>) (json, type, context) -> Instant.ofEpochMilli(json.getAsLong()))
+		.create();
+	final DatabaseConnectionManager connectionManager;
+	final OfferEventRepository offerEventRepository;
+	final FlippingItemRepository flippingItemRepository;
+	final RecipeFlipRepository recipeFlipRepository;
+	final AccountRepository accountRepository;
+	final ChangeLogRepository changeLogRepository;
+
+	TestDatabase(File folder) throws SQLException
+	{
+		connectionManager = new DatabaseConnectionManager(new File(folder, DatabaseConstants.DATABASE_FILE_NAME));
+		DatabaseMigrator migrator = new DatabaseMigrator(connectionManager);
+		migrator.migrate();
+		migrator.awaitCompletion();
+		offerEventRepository = new OfferEventRepository(connectionManager);
+		flippingItemRepository = new FlippingItemRepository(connectionManager, offerEventRepository);
+		recipeFlipRepository = new RecipeFlipRepository(connectionManager, offerEventRepository, GSON);
+		accountRepository = new AccountRepository(connectionManager, flippingItemRepository, recipeFlipRepository,
+			offerEventRepository);
+		changeLogRepository = new ChangeLogRepository(connectionManager);
+	}
+
+	void close()
+	{
+		connectionManager.close();
+	}
+}
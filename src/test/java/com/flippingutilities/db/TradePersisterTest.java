@@ -0,0 +1,152 @@
+package com.flippingutilities.db;
+
+import com.flippingutilities.Utils;
+import com.flippingutilities.model.AccountData;
+import com.flippingutilities.model.AccountWideData;
+import com.flippingutilities.model.FlippingItem;
+import net.runelite.api.GrandExchangeOfferState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TradePersisterTest
+{
+	private static final Instant OFFER_TIME = Instant.parse("2024-03-01T12:00:00Z");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private TestDatabase db;
+	//two clients sharing the database
+	private TradePersister client;
+	private TradePersister otherClient;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		db = new TestDatabase(folder.newFolder("db"));
+		client = newTradePersister();
+		otherClient = newTradePersister();
+	}
+
+	@After
+	public void tearDown()
+	{
+		client.close();
+		otherClient.close();
+		db.close();
+	}
+
+	//tests that a client reads the items another client stored, but not the ones it stored itself
+	@Test
+	public void changesOfOtherClientsArePolled()
+	{
+		client.startReadingChanges();
+		otherClient.startReadingChanges();
+
+		AccountData account = accountWithItem(560);
+		otherClient.store("acc", account);
+		assertTrue(otherClient.flush());
+
+		List<ChangeLogRepository.Change> changes = client.pollChanges();
+		assertEquals(1, changes.size());
+		assertEquals(ChangeLogRepository.Kind.ITEM_CHANGED, changes.get(0).getKind());
+		assertEquals("acc", changes.get(0).getAccountName());
+		assertEquals(560, changes.get(0).getItemId());
+		assertTrue(otherClient.pollChanges().isEmpty());
+		//the cursor moved past them
+		assertTrue(client.pollChanges().isEmpty());
+	}
+
+	//tests that removing an item is passed on as such
+	@Test
+	public void removedItemsArePolled()
+	{
+		client.startReadingChanges();
+		AccountData account = accountWithItem(560);
+		otherClient.store("acc", account);
+		assertTrue(otherClient.flush());
+		client.pollChanges();
+
+		account.removeTrades(item -> item.getItemId() == 560);
+		otherClient.store("acc", account);
+		assertTrue(otherClient.flush());
+
+		List<ChangeLogRepository.Change> changes = client.pollChanges();
+		assertEquals(1, changes.size());
+		assertEquals(ChangeLogRepository.Kind.ITEM_REMOVED, changes.get(0).getKind());
+		assertEquals(560, changes.get(0).getItemId());
+	}
+
+	//tests that a change to the account wide data is passed on
+	@Test
+	public void accountWideChangesArePolled()
+	{
+		client.startReadingChanges();
+		AccountWideData accountWideData = new AccountWideData();
+		accountWideData.setDefaults();
+		otherClient.store("accountwide", accountWideData);
+		assertTrue(otherClient.flush());
+
+		List<ChangeLogRepository.Change> changes = client.pollChanges();
+		assertEquals(1, changes.size());
+		assertEquals(ChangeLogRepository.Kind.ACCOUNT_WIDE_CHANGED, changes.get(0).getKind());
+	}
+
+	//tests that only the changes made after a client loaded everything are read, and none before it started reading
+	@Test
+	public void changesBeforeReadingStartedAreSkipped()
+	{
+		otherClient.store("acc", accountWithItem(560));
+		assertTrue(otherClient.flush());
+		assertTrue(client.pollChanges().isEmpty());
+
+		client.startReadingChanges();
+		assertTrue(client.pollChanges().isEmpty());
+	}
+
+	//tests that a client reads every change when there are more than fit in a page
+	@Test
+	public void everyPageOfChangesIsRead() throws Exception
+	{
+		client.startReadingChanges();
+		List<Integer> itemIds = IntStream.range(0, 1234).boxed().collect(Collectors.toList());
+		db.changeLogRepository.insertAll("some other client", ChangeLogRepository.Kind.ITEM_CHANGED, "acc", itemIds);
+
+		List<ChangeLogRepository.Change> changes = client.pollChanges();
+		assertEquals(itemIds, changes.stream().map(ChangeLogRepository.Change::getItemId).collect(Collectors.toList()));
+	}
+
+	private TradePersister newTradePersister() throws Exception
+	{
+		File snapshots = folder.newFolder();
+		return new TradePersister(TestDatabase.GSON, db.connectionManager, new DatabaseMigrator(db.connectionManager),
+			db.offerEventRepository, db.flippingItemRepository, db.recipeFlipRepository, db.accountRepository,
+			new AccountWideDataRepository(db.connectionManager, TestDatabase.GSON),
+			new OfferArchiveRepository(db.connectionManager, db.offerEventRepository),
+			new DatabaseBackupManager(db.connectionManager), new AccountSnapshotStore(snapshots),
+			db.changeLogRepository);
+	}
+
+	private static AccountData accountWithItem(int itemId)
+	{
+		FlippingItem item = new FlippingItem(itemId, "Death rune", 25000, "acc");
+		item.updateHistory(Utils.offer(true, 10, 100, OFFER_TIME, 1, GrandExchangeOfferState.BOUGHT, 10));
+		AccountData account = new AccountData();
+		account.setTrades(new ArrayList<>(Collections.singletonList(item)));
+		return account;
+	}
+}
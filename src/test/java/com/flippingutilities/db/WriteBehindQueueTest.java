@@ -0,0 +1,204 @@
+package com.flippingutilities.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WriteBehindQueueTest
+{
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private DatabaseConnectionManager connectionManager;
+	private WriteBehindQueue queue;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		connectionManager = new DatabaseConnectionManager(new File(folder.getRoot(), "test.db"));
+		try (Statement stmt = connectionManager.getConnection().createStatement())
+		{
+			stmt.execute("CREATE TABLE written (value TEXT NOT NULL)");
+		}
+		queue = new WriteBehindQueue(connectionManager);
+	}
+
+	@After
+	public void tearDown()
+	{
+		queue.close(1000);
+		connectionManager.close();
+	}
+
+	//tests that a write queued while a write with the same key is still waiting replaces it
+	@Test
+	public void writesWithTheSameKeyAreCoalesced() throws Exception
+	{
+		List<String> committed = Collections.synchronizedList(new ArrayList<>());
+		queue.pause();
+		queue.enqueue("account", insert("first", committed));
+		queue.enqueue("account", insert("second", committed));
+		queue.enqueue("other", insert("other", committed));
+		assertEquals(2, queue.getQueueDepth());
+		assertTrue(queue.isPending("account"));
+
+		queue.resume();
+		assertTrue(queue.flush(5000));
+
+		assertEquals(Arrays.asList("second", "other"), written());
+		assertEquals(Arrays.asList("second", "other"), committed);
+		assertFalse(queue.isPending("account"));
+		assertEquals(2, queue.getLastFlushSize());
+	}
+
+	//tests that flush waits for the writes queued before it and that they are committed when it returns
+	@Test
+	public void flushWaitsForEverythingQueuedBeforeIt() throws Exception
+	{
+		CountDownLatch writing = new CountDownLatch(1);
+		queue.enqueue("slow", () ->
+		{
+			writing.countDown();
+			sleep(200);
+			insertRow("slow");
+		});
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		queue.enqueue("fast", insert("fast", new ArrayList<>()));
+
+		assertTrue(queue.flush(5000));
+		assertEquals(Arrays.asList("slow", "fast"), written());
+	}
+
+	//tests that flush gives up rather than waiting for writes that can't be written while the queue is paused
+	@Test
+	public void flushDoesNotWaitWhilePaused()
+	{
+		queue.pause();
+		queue.enqueue("account", insert("value", new ArrayList<>()));
+		assertFalse(queue.flush(5000));
+		queue.resume();
+		assertTrue(queue.flush(5000));
+	}
+
+	//tests that a write that fails doesn't stop the other writes of its batch from being written
+	@Test
+	public void failedWriteDoesNotTakeTheBatchDown() throws Exception
+	{
+		List<String> committed = Collections.synchronizedList(new ArrayList<>());
+		queue.pause();
+		queue.enqueue("before", insert("before", committed));
+		queue.enqueue("failing", () ->
+		{
+			insertRow("failing");
+			throw new SQLException("write failed");
+		});
+		queue.enqueue("after", insert("after", committed));
+		queue.resume();
+
+		assertTrue(queue.flush(5000));
+		assertEquals(Arrays.asList("before", "after"), written());
+		assertEquals(Arrays.asList("before", "after"), committed);
+	}
+
+	//tests that a write throwing a runtime exception is rolled back like one throwing an SQLException, rather than
+	//being committed half done when autocommit is turned back on
+	@Test
+	public void writeThrowingRuntimeExceptionIsRolledBack() throws Exception
+	{
+		List<String> committed = Collections.synchronizedList(new ArrayList<>());
+		queue.enqueue("throwing", () ->
+		{
+			insertRow("throwing");
+			throw new IllegalStateException("bug in a write");
+		});
+		assertTrue(queue.flush(5000));
+		assertEquals(Collections.emptyList(), written());
+
+		queue.pause();
+		queue.enqueue("before", insert("before", committed));
+		queue.enqueue("throwing", () ->
+		{
+			insertRow("throwing");
+			throw new NullPointerException();
+		});
+		queue.enqueue("after", insert("after", committed));
+		queue.resume();
+
+		assertTrue(queue.flush(5000));
+		assertEquals(Arrays.asList("before", "after"), written());
+		assertEquals(Arrays.asList("before", "after"), committed);
+	}
+
+	private WriteBehindQueue.Write insert(String value, List<String> committed)
+	{
+		return new WriteBehindQueue.Write()
+		{
+			@Override
+			public void write() throws SQLException
+			{
+				insertRow(value);
+			}
+
+			@Override
+			public void committed()
+			{
+				committed.add(value);
+			}
+		};
+	}
+
+	private void insertRow(String value) throws SQLException
+	{
+		try (PreparedStatement stmt = connectionManager.getConnection().prepareStatement("INSERT INTO written (value) VALUES (?)"))
+		{
+			stmt.setString(1, value);
+			stmt.executeUpdate();
+		}
+	}
+
+	private List<String> written() throws SQLException
+	{
+		List<String> values = new ArrayList<>();
+		Connection conn = connectionManager.getReadConnection();
+		try (PreparedStatement stmt = conn.prepareStatement("SELECT value FROM written ORDER BY rowid");
+			ResultSet rs = stmt.executeQuery())
+		{
+			while (rs.next())
+			{
+				values.add(rs.getString(1));
+			}
+		}
+		return values;
+	}
+
+	private static void sleep(long millis)
+	{
+		try
+		{
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}